@@ -10,6 +10,9 @@ public abstract class AST {
 
   public SourcePosition	position;
   public AST parent;
+
+  // set by the constructor of every concrete node class
+  public NodeKind kind;
  
   public AST (SourcePosition Position) {
     position = Position;
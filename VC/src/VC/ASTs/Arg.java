@@ -12,6 +12,7 @@ public class Arg extends Expr {
 
   public Arg (Expr eAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.ARG;
     E = eAST;
     eAST.parent = this;
   }
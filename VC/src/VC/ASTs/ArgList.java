@@ -12,6 +12,7 @@ public class ArgList extends List {
 
   public ArgList(Arg aAST, List alAST, SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.ARG_LIST;
     A = aAST;
     AL = alAST;
     A.parent = AL.parent = this;
@@ -13,6 +13,7 @@ public class ArrayExpr extends Expr {
 
   public ArrayExpr (Var idAST, Expr indexAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.ARRAY_EXPR;
     V = idAST;
     E = indexAST;
     V.parent = E.parent = this;
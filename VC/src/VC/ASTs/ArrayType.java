@@ -13,6 +13,7 @@ public class ArrayType extends Type {
 
   public ArrayType (Type tAST, Expr dAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.ARRAY_TYPE;
     T = tAST;
     E = dAST;
     T.parent = E.parent = this;
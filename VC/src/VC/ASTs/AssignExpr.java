@@ -12,6 +12,7 @@ public class AssignExpr extends Expr {
 
   public AssignExpr (Expr e1AST, Expr e2AST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.ASSIGN_EXPR;
     E1 = e1AST;
     E2 = e2AST;
     E1.parent = E2.parent = this;
@@ -14,6 +14,7 @@ public class BinaryExpr extends Expr {
 
   public BinaryExpr(Expr e1AST, Operator oAST, Expr e2AST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.BINARY_EXPR;
     O = oAST;
     E1 = e1AST;
     E2 = e2AST;
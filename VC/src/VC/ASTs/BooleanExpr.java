@@ -17,6 +17,7 @@ public class BooleanExpr extends Expr {
 
   public BooleanExpr(BooleanLiteral blAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.BOOLEAN_EXPR;
     BL = blAST;
     BL.parent = this;
   }
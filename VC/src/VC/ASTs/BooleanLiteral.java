@@ -10,6 +10,7 @@ public class BooleanLiteral extends Terminal {
 
   public BooleanLiteral (String value, SourcePosition position) {
     super (value, position);
+    kind = NodeKind.BOOLEAN_LITERAL;
   }
 
   public Object visit(Visitor v, Object o) {
@@ -10,6 +10,7 @@ public class BooleanType extends Type {
 
   public BooleanType (SourcePosition Position) {
     super (Position);
+    kind = NodeKind.BOOLEAN_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
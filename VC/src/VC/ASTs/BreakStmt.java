@@ -10,6 +10,7 @@ public class BreakStmt extends Stmt {
 
   public BreakStmt(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.BREAK_STMT;
   }
 
   public Object visit(Visitor v, Object o) {
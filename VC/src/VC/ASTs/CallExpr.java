@@ -13,6 +13,7 @@ public class CallExpr extends Expr {
 
   public CallExpr(Ident id, List aplAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.CALL_EXPR;
     I = id;
     AL = aplAST;
     I.parent = AL.parent = this;
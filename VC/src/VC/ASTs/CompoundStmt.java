@@ -13,6 +13,7 @@ public class CompoundStmt extends Stmt {
 
   public CompoundStmt(List dlAST, List slAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.COMPOUND_STMT;
     DL = dlAST;
     SL = slAST;
     DL.parent = SL.parent = this;
@@ -10,6 +10,7 @@ public class ContinueStmt extends Stmt {
 
   public ContinueStmt(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.CONTINUE_STMT;
   }
 
   public Object visit(Visitor v, Object o) {
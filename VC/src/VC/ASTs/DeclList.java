@@ -13,6 +13,7 @@ public class DeclList extends List {
 
   public DeclList(Decl dAST, List dlAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.DECL_LIST;
     D = dAST;
     DL = dlAST;
     D.parent = DL.parent = this;
@@ -10,6 +10,7 @@ public class EmptyArgList extends List {
 
   public EmptyArgList(SourcePosition position) {
     super (position);
+    kind = NodeKind.EMPTY_ARG_LIST;
   }
 
   public Object visit(Visitor v, Object o) {
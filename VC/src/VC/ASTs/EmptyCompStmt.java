@@ -10,6 +10,7 @@ public class EmptyCompStmt extends Stmt {
 
   public EmptyCompStmt(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_COMP_STMT;
   }
 
   public Object visit(Visitor v, Object o) {
@@ -10,6 +10,7 @@ public class EmptyDeclList extends List {
 
   public EmptyDeclList(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_DECL_LIST;
   }
 
   public Object visit(Visitor v, Object o) {
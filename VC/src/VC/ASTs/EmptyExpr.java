@@ -10,6 +10,7 @@ public class EmptyExpr extends Expr {
 
   public EmptyExpr (SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.EMPTY_EXPR;
   }
 
   public Object visit(Visitor v, Object o) {
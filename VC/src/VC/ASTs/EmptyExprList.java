@@ -10,6 +10,7 @@ public class EmptyExprList extends List {
 
   public EmptyExprList(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_EXPR_LIST;
   }
 
   public Object visit(Visitor v, Object o) {
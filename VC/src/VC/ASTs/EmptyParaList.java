@@ -10,6 +10,7 @@ public class EmptyParaList extends List {
 
   public EmptyParaList(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_PARA_LIST;
   }
 
   public Object visit(Visitor v, Object o) {
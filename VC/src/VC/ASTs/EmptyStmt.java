@@ -10,6 +10,7 @@ public class EmptyStmt extends Stmt {
 
   public EmptyStmt(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_STMT;
   }
 
   public Object visit(Visitor v, Object o) {
@@ -10,6 +10,7 @@ public class EmptyStmtList extends List {
 
   public EmptyStmtList(SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EMPTY_STMT_LIST;
   }
 
   public Object visit(Visitor v, Object o) {
@@ -10,6 +10,7 @@ public class ErrorType extends Type {
 
   public ErrorType(SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.ERROR_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
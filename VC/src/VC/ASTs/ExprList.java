@@ -15,6 +15,7 @@ public class ExprList extends List {
 
   public ExprList(Expr eAST, List elAST, SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.EXPR_LIST;
     E = eAST;
     EL = elAST;
     E.parent = EL.parent = this;
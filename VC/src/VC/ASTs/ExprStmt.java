@@ -12,6 +12,7 @@ public class ExprStmt extends Stmt {
 
   public ExprStmt (Expr eAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.EXPR_STMT;
     E = eAST;
     E.parent = this;
   }
@@ -12,6 +12,7 @@ public class FloatExpr extends Expr {
 
   public FloatExpr(FloatLiteral flAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.FLOAT_EXPR;
     FL = flAST;
     FL.parent = this;
   }
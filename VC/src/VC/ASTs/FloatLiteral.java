@@ -10,6 +10,7 @@ public class FloatLiteral extends Terminal {
 
   public FloatLiteral (String value, SourcePosition position) {
     super (value, position);
+    kind = NodeKind.FLOAT_LITERAL;
   }
 
   public Object visit(Visitor v, Object o) {
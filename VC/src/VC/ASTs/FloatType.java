@@ -10,6 +10,7 @@ public class FloatType extends Type {
 
   public FloatType (SourcePosition Position) {
     super (Position);
+    kind = NodeKind.FLOAT_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
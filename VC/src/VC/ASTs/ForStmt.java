@@ -12,6 +12,7 @@ public class ForStmt extends Stmt {
   public ForStmt(Expr e1AST, Expr e2AST, Expr e3AST, Stmt sAST,
                                               SourcePosition Position) {
     super (Position);
+    kind = NodeKind.FOR_STMT;
     E1 = e1AST;
     E2 = e2AST;
     E3 = e3AST;
@@ -16,6 +16,7 @@ public class FuncDecl extends Decl {
   public FuncDecl(Type tAST, Ident idAST, List fplAST, 
          Stmt cAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.FUNC_DECL;
     T = tAST;
     I = idAST;
     PL = fplAST;
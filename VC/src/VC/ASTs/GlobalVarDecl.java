@@ -12,6 +12,7 @@ public class GlobalVarDecl extends Decl {
 
   public GlobalVarDecl(Type tAST, Ident iAST, Expr eAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.GLOBAL_VAR_DECL;
     T = tAST;
     I = iAST;
     E = eAST;
@@ -12,6 +12,7 @@ public class Ident extends Terminal {
 
   public Ident(String value , SourcePosition position) {
     super (value, position);
+    kind = NodeKind.IDENT;
     decl = null;
   }
 
@@ -17,6 +17,7 @@ public class IfStmt extends Stmt {
 
   public IfStmt(Expr eAST, Stmt sAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.IF_STMT;
     E = eAST;
     S1 = sAST;
     S2 = new EmptyStmt(new SourcePosition());
@@ -25,6 +26,7 @@ public class IfStmt extends Stmt {
 
   public IfStmt(Expr eAST, Stmt s1AST, Stmt s2AST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.IF_STMT;
     E = eAST;
     S1 = s1AST;
     S2 = s2AST;
@@ -12,6 +12,7 @@ public class InitExpr extends Expr {
 
   public InitExpr (List ilAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.INIT_EXPR;
     IL = ilAST;
     IL.parent = this;
   }
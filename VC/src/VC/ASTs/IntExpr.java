@@ -12,6 +12,7 @@ public class IntExpr extends Expr {
 
   public IntExpr(IntLiteral ilAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.INT_EXPR;
     IL = ilAST;
     IL.parent = this;
   }
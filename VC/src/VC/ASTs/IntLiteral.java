@@ -10,6 +10,7 @@ public class IntLiteral extends Terminal {
 
   public IntLiteral (String value, SourcePosition position) {
     super (value, position);
+    kind = NodeKind.INT_LITERAL;
   }
 
   public Object visit(Visitor v, Object o) {
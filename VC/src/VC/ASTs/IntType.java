@@ -10,6 +10,7 @@ public class IntType extends Type {
 
   public IntType (SourcePosition Position) {
     super (Position);
+    kind = NodeKind.INT_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
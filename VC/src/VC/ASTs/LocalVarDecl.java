@@ -12,6 +12,7 @@ public class LocalVarDecl extends Decl {
 
   public LocalVarDecl(Type tAST, Ident iAST, Expr eAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.LOCAL_VAR_DECL;
     T = tAST;
     I = iAST;
     E = eAST;
@@ -0,0 +1,89 @@
+/*
+ * NodeKind.java
+ */
+
+package VC.ASTs;
+
+// One constant per concrete AST class. Every node records its kind in
+// AST.kind when it is constructed, so that a pass can select the
+// visitor method with a dense switch (see SwitchVisitor.java) instead
+// of going through the virtual call ast.visit(v, o).
+//
+// The constants are listed in the same order as the methods of
+// Visitor.java. Keep the two files in step when a node class is added.
+
+public enum NodeKind {
+
+  // Programs
+  PROGRAM,
+
+  // Lists for denoting the null reference
+  EMPTY_DECL_LIST,
+  EMPTY_STMT_LIST,
+  EMPTY_EXPR_LIST,
+  EMPTY_PARA_LIST,
+  EMPTY_ARG_LIST,
+
+  // Declarations
+  DECL_LIST,
+  FUNC_DECL,
+  GLOBAL_VAR_DECL,
+  LOCAL_VAR_DECL,
+
+  // Stmts
+  STMT_LIST,
+  IF_STMT,
+  WHILE_STMT,
+  FOR_STMT,
+  BREAK_STMT,
+  CONTINUE_STMT,
+  RETURN_STMT,
+  COMPOUND_STMT,
+  EXPR_STMT,
+  EMPTY_COMP_STMT,
+  EMPTY_STMT,
+
+  // Expressions
+  INT_EXPR,
+  FLOAT_EXPR,
+  BOOLEAN_EXPR,
+  STRING_EXPR,
+  UNARY_EXPR,
+  BINARY_EXPR,
+  INIT_EXPR,
+  EXPR_LIST,
+  ARRAY_EXPR,
+  VAR_EXPR,
+  CALL_EXPR,
+  ASSIGN_EXPR,
+  EMPTY_EXPR,
+
+  // Literals and identifiers
+  INT_LITERAL,
+  FLOAT_LITERAL,
+  BOOLEAN_LITERAL,
+  STRING_LITERAL,
+  IDENT,
+  OPERATOR,
+
+  // Parameters
+  PARA_LIST,
+  PARA_DECL,
+
+  // Arguments
+  ARG_LIST,
+  ARG,
+
+  // Types
+  VOID_TYPE,
+  BOOLEAN_TYPE,
+  INT_TYPE,
+  FLOAT_TYPE,
+  STRING_TYPE,
+  ARRAY_TYPE,
+  ERROR_TYPE,
+
+  // Variables
+  SIMPLE_VAR
+
+}
@@ -10,6 +10,7 @@ public class Operator extends Terminal {
 
   public Operator (String value, SourcePosition position) {
     super (value, position);
+    kind = NodeKind.OPERATOR;
   }
 
   public Object visit(Visitor v, Object o) {
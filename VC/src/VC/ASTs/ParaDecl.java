@@ -10,6 +10,7 @@ public class ParaDecl extends Decl {
 
   public ParaDecl (Type tAST, Ident idAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.PARA_DECL;
     T = tAST;
     I = idAST;
     T.parent = I.parent = this;
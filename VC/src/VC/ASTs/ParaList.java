@@ -13,6 +13,7 @@ public class ParaList extends List {
   public ParaList(ParaDecl pAST, List plAST,
                                    SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.PARA_LIST;
     P = pAST;
     PL = plAST;
     P.parent = PL.parent = this;
@@ -12,6 +12,7 @@ public class Program extends AST {
 
   public Program (List dlAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.PROGRAM;
     FL = dlAST;
     FL.parent = this;
   }
@@ -12,6 +12,7 @@ public class ReturnStmt extends Stmt {
 
   public ReturnStmt(Expr eAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.RETURN_STMT;
     E = eAST;
     E.parent = this;
   }
@@ -12,6 +12,7 @@ public class SimpleVar extends Var {
 
   public SimpleVar(Ident idAST, SourcePosition thePosition) {
     super (thePosition);
+    kind = NodeKind.SIMPLE_VAR;
     I = idAST;
     I.parent = this;
   }
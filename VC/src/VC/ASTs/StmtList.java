@@ -13,6 +13,7 @@ public class StmtList extends List {
 
   public StmtList(Stmt sAST, List slAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.STMT_LIST;
     S = sAST;
     SL = slAST;
     S.parent = SL.parent = this;
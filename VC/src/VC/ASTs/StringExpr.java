@@ -13,6 +13,7 @@ public class StringExpr extends Expr {
 
   public StringExpr(StringLiteral slAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.STRING_EXPR;
     SL = slAST;
     SL.parent = this;
   }
@@ -10,6 +10,7 @@ public class StringLiteral extends Terminal {
 
   public StringLiteral (String value, SourcePosition position) {
     super (value, position);
+    kind = NodeKind.STRING_LITERAL;
   }
 
   public Object visit(Visitor v, Object o) {
@@ -10,6 +10,7 @@ public class StringType extends Type {
 
   public StringType (SourcePosition Position) {
     super (Position);
+    kind = NodeKind.STRING_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
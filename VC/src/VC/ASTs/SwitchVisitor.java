@@ -0,0 +1,138 @@
+/*
+ * SwitchVisitor.java
+ */
+
+package VC.ASTs;
+
+// A Visitor whose children are visited with dispatch(ast, o) rather
+// than ast.visit(this, o).
+//
+// ast.visit(v, o) is a virtual call whose receiver can be any of the
+// ~60 node classes, so the call site is megamorphic and the JIT can
+// neither inline it nor the visitXXX call made from inside it.
+// dispatch() instead switches on the NodeKind stored in every node and
+// calls visitXXX on "this", whose class is known at each call site in a
+// final subclass such as Checker or Emitter.
+//
+// The two styles can be mixed freely: a SwitchVisitor is still a
+// Visitor, so ast.visit(v, o) continues to work.
+
+public abstract class SwitchVisitor implements Visitor {
+
+  public final Object dispatch(AST ast, Object o) {
+    // a node class that does not set its kind; switching on the null
+    // kind would throw
+    if (ast.kind == null)
+      return ast.visit(this, o);
+    switch (ast.kind) {
+      case PROGRAM:
+        return visitProgram((Program) ast, o);
+      case EMPTY_DECL_LIST:
+        return visitEmptyDeclList((EmptyDeclList) ast, o);
+      case EMPTY_STMT_LIST:
+        return visitEmptyStmtList((EmptyStmtList) ast, o);
+      case EMPTY_EXPR_LIST:
+        return visitEmptyExprList((EmptyExprList) ast, o);
+      case EMPTY_PARA_LIST:
+        return visitEmptyParaList((EmptyParaList) ast, o);
+      case EMPTY_ARG_LIST:
+        return visitEmptyArgList((EmptyArgList) ast, o);
+      case DECL_LIST:
+        return visitDeclList((DeclList) ast, o);
+      case FUNC_DECL:
+        return visitFuncDecl((FuncDecl) ast, o);
+      case GLOBAL_VAR_DECL:
+        return visitGlobalVarDecl((GlobalVarDecl) ast, o);
+      case LOCAL_VAR_DECL:
+        return visitLocalVarDecl((LocalVarDecl) ast, o);
+      case STMT_LIST:
+        return visitStmtList((StmtList) ast, o);
+      case IF_STMT:
+        return visitIfStmt((IfStmt) ast, o);
+      case WHILE_STMT:
+        return visitWhileStmt((WhileStmt) ast, o);
+      case FOR_STMT:
+        return visitForStmt((ForStmt) ast, o);
+      case BREAK_STMT:
+        return visitBreakStmt((BreakStmt) ast, o);
+      case CONTINUE_STMT:
+        return visitContinueStmt((ContinueStmt) ast, o);
+      case RETURN_STMT:
+        return visitReturnStmt((ReturnStmt) ast, o);
+      case COMPOUND_STMT:
+        return visitCompoundStmt((CompoundStmt) ast, o);
+      case EXPR_STMT:
+        return visitExprStmt((ExprStmt) ast, o);
+      case EMPTY_COMP_STMT:
+        return visitEmptyCompStmt((EmptyCompStmt) ast, o);
+      case EMPTY_STMT:
+        return visitEmptyStmt((EmptyStmt) ast, o);
+      case INT_EXPR:
+        return visitIntExpr((IntExpr) ast, o);
+      case FLOAT_EXPR:
+        return visitFloatExpr((FloatExpr) ast, o);
+      case BOOLEAN_EXPR:
+        return visitBooleanExpr((BooleanExpr) ast, o);
+      case STRING_EXPR:
+        return visitStringExpr((StringExpr) ast, o);
+      case UNARY_EXPR:
+        return visitUnaryExpr((UnaryExpr) ast, o);
+      case BINARY_EXPR:
+        return visitBinaryExpr((BinaryExpr) ast, o);
+      case INIT_EXPR:
+        return visitInitExpr((InitExpr) ast, o);
+      case EXPR_LIST:
+        return visitExprList((ExprList) ast, o);
+      case ARRAY_EXPR:
+        return visitArrayExpr((ArrayExpr) ast, o);
+      case VAR_EXPR:
+        return visitVarExpr((VarExpr) ast, o);
+      case CALL_EXPR:
+        return visitCallExpr((CallExpr) ast, o);
+      case ASSIGN_EXPR:
+        return visitAssignExpr((AssignExpr) ast, o);
+      case EMPTY_EXPR:
+        return visitEmptyExpr((EmptyExpr) ast, o);
+      case INT_LITERAL:
+        return visitIntLiteral((IntLiteral) ast, o);
+      case FLOAT_LITERAL:
+        return visitFloatLiteral((FloatLiteral) ast, o);
+      case BOOLEAN_LITERAL:
+        return visitBooleanLiteral((BooleanLiteral) ast, o);
+      case STRING_LITERAL:
+        return visitStringLiteral((StringLiteral) ast, o);
+      case IDENT:
+        return visitIdent((Ident) ast, o);
+      case OPERATOR:
+        return visitOperator((Operator) ast, o);
+      case PARA_LIST:
+        return visitParaList((ParaList) ast, o);
+      case PARA_DECL:
+        return visitParaDecl((ParaDecl) ast, o);
+      case ARG_LIST:
+        return visitArgList((ArgList) ast, o);
+      case ARG:
+        return visitArg((Arg) ast, o);
+      case VOID_TYPE:
+        return visitVoidType((VoidType) ast, o);
+      case BOOLEAN_TYPE:
+        return visitBooleanType((BooleanType) ast, o);
+      case INT_TYPE:
+        return visitIntType((IntType) ast, o);
+      case FLOAT_TYPE:
+        return visitFloatType((FloatType) ast, o);
+      case STRING_TYPE:
+        return visitStringType((StringType) ast, o);
+      case ARRAY_TYPE:
+        return visitArrayType((ArrayType) ast, o);
+      case ERROR_TYPE:
+        return visitErrorType((ErrorType) ast, o);
+      case SIMPLE_VAR:
+        return visitSimpleVar((SimpleVar) ast, o);
+      default:
+        // a NodeKind added without a case here
+        return ast.visit(this, o);
+    }
+  }
+
+}
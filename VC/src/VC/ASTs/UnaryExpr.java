@@ -13,6 +13,7 @@ public class UnaryExpr extends Expr {
 
   public UnaryExpr(Operator oAST, Expr eAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.UNARY_EXPR;
     O = oAST;
     E = eAST;
     O.parent = E.parent = this;
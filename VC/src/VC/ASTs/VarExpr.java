@@ -12,6 +12,7 @@ public class VarExpr extends Expr {
 
   public VarExpr (Var vAST, SourcePosition position) {
     super (position);
+    kind = NodeKind.VAR_EXPR;
     V = vAST;
     V.parent = this;
   }
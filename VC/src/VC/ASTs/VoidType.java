@@ -10,6 +10,7 @@ public class VoidType extends Type {
 
   public VoidType (SourcePosition Position) {
     super (Position);
+    kind = NodeKind.VOID_TYPE;
   }
 
   public Object visit (Visitor v, Object o) {
@@ -18,6 +18,7 @@ public class WhileStmt extends Stmt {
 
   public WhileStmt (Expr eAST, Stmt sAST, SourcePosition Position) {
     super (Position);
+    kind = NodeKind.WHILE_STMT;
     E = eAST;
     S = sAST;
     E.parent = S.parent = this;
@@ -0,0 +1,212 @@
+/*
+ * Batch.java
+ */
+
+package VC;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Compiles many VC programs in one JVM. Every file is compiled by a
+// CompilationSession of its own, with the same options, as a task on a
+// work-stealing pool; the code generator of a session forks its
+// methods onto the same pool. What a session prints goes to a buffer
+// of its own, and a file whose compilation fails, or even throws, only
+// changes the status of that file.
+//
+// The files are given by name, by a glob such as 'tests/**/*.vc' (in
+// quotes, so that the shell leaves it alone) or by @list, a file with
+// a name or glob on each line. The status of every file is printed in
+// the order the files were given once they are all compiled, followed
+// by the log of each file that failed and a summary.
+
+public final class Batch {
+
+  private static final class Unit {
+    final String filename;
+    String status = "ok";
+    String log = "";
+    long nanos;
+
+    Unit(String filename) {
+      this.filename = filename;
+    }
+
+    boolean ok() {
+      return status.equals("ok");
+    }
+  }
+
+  private final Options options;
+  private final int jobs;
+  private final ArrayList<Unit> units = new ArrayList<Unit>();
+  private final HashSet<String> added = new HashSet<String>();
+  private final ArrayList<String> problems = new ArrayList<String>();
+
+  // jobs is the number of files compiled at once, or 0 for one per
+  // processor
+  public Batch(Options options, int jobs) {
+    this.options = options;
+    this.jobs = jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+  }
+
+  // Adds the files named by a command line argument. A name, glob or
+  // list that names no file is reported in the summary.
+  public void add(String arg) {
+    LinkedHashSet<String> names = new LinkedHashSet<String>();
+    if (arg.startsWith("@"))
+      readList(arg.substring(1), names);
+    else
+      expand(arg, names);
+    // a file given twice is compiled once, as both would write the
+    // same output
+    for (String name : names)
+      if (added.add(new File(name).getAbsoluteFile().toPath().normalize().toString()))
+        units.add(new Unit(name));
+  }
+
+  private void readList(String listFilename, LinkedHashSet<String> names) {
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(listFilename));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#"))
+          expand(line, names);
+      }
+      reader.close();
+    } catch (IOException e) {
+      problems.add("cannot read " + listFilename + ": " + e.getMessage());
+    }
+  }
+
+  // A name without *, ?, [ or { is taken as it is. A glob is matched
+  // below the directories before its first such character, and the
+  // files it matches are taken in the order of their names.
+  private void expand(String pattern, LinkedHashSet<String> names) {
+    int glob = 0;
+    while (glob < pattern.length() && "*?[{".indexOf(pattern.charAt(glob)) < 0)
+      glob++;
+    if (glob == pattern.length()) {
+      names.add(pattern);
+      return;
+    }
+
+    int slash = pattern.lastIndexOf('/', glob);
+    File base = new File(slash < 0 ? "." : slash == 0 ? "/" : pattern.substring(0, slash));
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(slash + 1));
+    ArrayList<String> matches = new ArrayList<String>();
+    walk(base, slash < 0 ? "" : base.getPath() + "/", "", matcher, matches);
+    if (matches.isEmpty())
+      problems.add("no file matches " + pattern);
+    Collections.sort(matches);
+    names.addAll(matches);
+  }
+
+  // adds the files below dir whose paths relative to the base of a glob
+  // match it
+  private static void walk(File dir, String prefix, String relative, PathMatcher matcher,
+      ArrayList<String> matches) {
+    File[] files = dir.listFiles();
+    if (files == null)
+      return;
+    for (File f : files) {
+      String path = relative + f.getName();
+      if (f.isDirectory())
+        walk(f, prefix, path + "/", matcher, matches);
+      else if (matcher.matches(Paths.get(path)))
+        matches.add(prefix + path);
+    }
+  }
+
+  // Compiles all the files and prints the results. Returns true if
+  // every file was compiled without errors.
+  public boolean run(PrintStream out) {
+    long start = System.nanoTime();
+
+    // The largest files are started first, so that a large file does
+    // not keep one thread busy after the others have finished.
+    ArrayList<Unit> bySize = new ArrayList<Unit>(units);
+    Collections.sort(bySize, new Comparator<Unit>() {
+      public int compare(Unit a, Unit b) {
+        return Long.compare(new File(b.filename).length(), new File(a.filename).length());
+      }
+    });
+    final ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (final Unit unit : bySize)
+      tasks.add(new RecursiveAction() {
+        protected void compute() {
+          compile(unit);
+        }
+      });
+    ForkJoinPool pool = new ForkJoinPool(jobs);
+    try {
+      pool.invoke(new RecursiveAction() {
+        protected void compute() {
+          invokeAll(tasks);
+        }
+      });
+    } finally {
+      pool.shutdown();
+    }
+    long nanos = System.nanoTime() - start;
+
+    int failed = 0;
+    for (Unit unit : units) {
+      out.println(String.format("  %-10s %9.3f ms  %s", unit.ok() ? "ok" : "FAILED",
+          unit.nanos / 1e6, unit.filename + (unit.ok() ? "" : ": " + unit.status)));
+      if (!unit.ok())
+        failed++;
+    }
+    for (Unit unit : units)
+      if (!unit.ok() && !unit.log.isEmpty()) {
+        out.println();
+        out.println("[# vc #]: " + unit.filename + ":");
+        out.print(unit.log);
+      }
+    if (!problems.isEmpty())
+      out.println();
+    for (String problem : problems)
+      out.println("[# vc #]: " + problem);
+
+    out.println();
+    out.println(String.format("%d files, %d compiled, %d failed in %.3f ms on %d threads",
+        units.size(), units.size() - failed, failed, nanos / 1e6, jobs));
+    return failed == 0 && problems.isEmpty();
+  }
+
+  // Compiles one file. A file that cannot be read, or whose output
+  // cannot be written, aborts its session, which reports why in its
+  // log, and so fails like a file with errors.
+  private void compile(Unit unit) {
+    long start = System.nanoTime();
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(log);
+    try {
+      CompilationSession session = new CompilationSession(unit.filename, options, out);
+      if (!session.compile())
+        unit.status = session.aborted() ? "compilation aborted"
+            : session.reporter().numErrors + " error"
+                + (session.reporter().numErrors == 1 ? "" : "s");
+    } catch (RuntimeException | StackOverflowError e) {
+      unit.status = "the compiler failed with " + e;
+    }
+    out.flush();
+    unit.log = log.toString();
+    unit.nanos = System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * BasicBlock.java
+ */
+
+package VC.CFG;
+
+import java.util.ArrayList;
+
+import VC.ASTs.AST;
+import VC.ASTs.Expr;
+
+// A node of a control-flow graph.
+//
+// When the graph is built from the AST by CFGBuilder, stmts holds the
+// straight-line code of the block in execution order: local variable
+// declarations (which may initialise the variable), expression
+// statements, the initialiser and step expressions of a for statement
+// and return statements.
+//
+// A block either falls through to its only successor, or ends with a
+// two-way branch on cond, in which case succs.get(0) is taken when cond
+// is true and succs.get(1) when it is false. The exit block of a CFG
+// has no successors.
+
+public class BasicBlock {
+
+	// the position of this block in CFG.blocks
+	public int id;
+
+	public ArrayList<BasicBlock> preds;
+	public ArrayList<BasicBlock> succs;
+
+	public ArrayList<AST> stmts;
+	public Expr cond;
+
+	public BasicBlock(int id) {
+		this.id = id;
+		preds = new ArrayList<BasicBlock>();
+		succs = new ArrayList<BasicBlock>();
+		stmts = new ArrayList<AST>();
+		cond = null;
+	}
+
+	public boolean isBranch() {
+		return cond != null;
+	}
+
+	public String toString() {
+		return "B" + id;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * CFG.java
+ */
+
+package VC.CFG;
+
+import java.util.ArrayList;
+
+import VC.ASTs.FuncDecl;
+
+// The control-flow graph of one function.
+//
+// entry is the first block executed. Every return statement, and the
+// end of the function body if control can reach it, branch to exit,
+// which is an empty block with no successors.
+//
+// Code that cannot be executed, such as statements after a return, is
+// kept in blocks that have no predecessors. isReachable() tells such
+// blocks apart; removeUnreachable() deletes them.
+
+public final class CFG {
+
+	public FuncDecl func;
+	public ArrayList<BasicBlock> blocks;
+	public BasicBlock entry;
+	public BasicBlock exit;
+
+	public CFG(FuncDecl func) {
+		this.func = func;
+		blocks = new ArrayList<BasicBlock>();
+	}
+
+	public BasicBlock newBlock() {
+		BasicBlock b = new BasicBlock(blocks.size());
+		blocks.add(b);
+		return b;
+	}
+
+	// adds blocks created elsewhere, e.g., by a pass that extends
+	// BasicBlock
+	public void addBlock(BasicBlock b) {
+		b.id = blocks.size();
+		blocks.add(b);
+	}
+
+	public static void addEdge(BasicBlock from, BasicBlock to) {
+		from.succs.add(to);
+		to.preds.add(from);
+	}
+
+	public static void removeEdge(BasicBlock from, BasicBlock to) {
+		from.succs.remove(to);
+		to.preds.remove(from);
+	}
+
+	// blocks reachable from entry, marked by id
+	public boolean[] reachable() {
+		boolean[] seen = new boolean[blocks.size()];
+		ArrayList<BasicBlock> work = new ArrayList<BasicBlock>();
+		seen[entry.id] = true;
+		work.add(entry);
+		while (!work.isEmpty()) {
+			BasicBlock b = work.remove(work.size() - 1);
+			for (BasicBlock s : b.succs) {
+				if (!seen[s.id]) {
+					seen[s.id] = true;
+					work.add(s);
+				}
+			}
+		}
+		return seen;
+	}
+
+	public boolean isReachable(BasicBlock b) {
+		return reachable()[b.id];
+	}
+
+	// Deletes the blocks that cannot be reached from entry (exit is
+	// always kept) and renumbers the remaining ones.
+	public void removeUnreachable() {
+		boolean[] seen = reachable();
+		seen[exit.id] = true;
+		ArrayList<BasicBlock> live = new ArrayList<BasicBlock>();
+		for (BasicBlock b : blocks) {
+			if (seen[b.id]) {
+				live.add(b);
+			} else {
+				for (BasicBlock s : b.succs)
+					s.preds.remove(b);
+			}
+		}
+		for (int i = 0; i < live.size(); i++)
+			live.get(i).id = i;
+		blocks = live;
+	}
+
+	// blocks reachable from entry in reverse postorder
+	public ArrayList<BasicBlock> reversePostorder() {
+		ArrayList<BasicBlock> order = new ArrayList<BasicBlock>();
+		boolean[] visited = new boolean[blocks.size()];
+		// iterative DFS; next[i] is the next successor of stack[i] to try
+		BasicBlock[] stack = new BasicBlock[blocks.size()];
+		int[] next = new int[blocks.size()];
+		int sp = 0;
+		stack[sp] = entry;
+		next[sp] = 0;
+		visited[entry.id] = true;
+		while (sp >= 0) {
+			BasicBlock b = stack[sp];
+			if (next[sp] < b.succs.size()) {
+				BasicBlock s = b.succs.get(next[sp]++);
+				if (!visited[s.id]) {
+					visited[s.id] = true;
+					sp++;
+					stack[sp] = s;
+					next[sp] = 0;
+				}
+			} else {
+				order.add(b);
+				sp--;
+			}
+		}
+		java.util.Collections.reverse(order);
+		return order;
+	}
+}
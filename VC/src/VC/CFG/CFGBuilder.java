@@ -0,0 +1,198 @@
+/*
+ * CFGBuilder.java
+ */
+
+// Builds the control-flow graph of a function from its checked AST.
+//
+//   if (E) S1 else S2         while (E) S            for (E1; E2; E3) S
+//
+//      [ .. E ]                  [ .. ]                 [ .. E1 ]
+//      T/    \F                    |                       |
+//   [S1]      [S2]           +-> [ E ] --F--+        +-> [ E2 ] --F--+
+//      \      /              |     |T       |        |     |T        |
+//      [ join ]              +--- [S]       |        |    [S]        |
+//                                           |        |     |         |
+//                                 [ after ] <+       +--- [E3]       |
+//                                                                    |
+//                                                      [ after ] <---+
+//
+// A for statement without a condition has an unconditional header, and
+// so does a while or for whose condition is the literal true. continue
+// branches to the condition of a while and to E3 of a for. break
+// branches to the block after the loop. return branches to the exit
+// block of the CFG.
+//
+// Statements that follow a return, break or continue are placed in
+// blocks without predecessors.
+
+package VC.CFG;
+
+import java.util.Stack;
+
+import VC.ASTs.*;
+
+public final class CFGBuilder {
+
+	private CFG cfg;
+
+	// the block to which straight-line code is appended, or null if
+	// control cannot reach the statement being translated
+	private BasicBlock cur;
+
+	private Stack<BasicBlock> brkStack;
+	private Stack<BasicBlock> conStack;
+
+	// PRE: func has been checked (and optionally optimised)
+
+	public static CFG build(FuncDecl func) {
+		return new CFGBuilder().buildCFG(func);
+	}
+
+	private CFG buildCFG(FuncDecl func) {
+		cfg = new CFG(func);
+		brkStack = new Stack<BasicBlock>();
+		conStack = new Stack<BasicBlock>();
+		cfg.entry = cfg.newBlock();
+		cfg.exit = cfg.newBlock();
+		cur = cfg.entry;
+		stmt(func.S);
+		if (cur != null)
+			CFG.addEdge(cur, cfg.exit);
+		return cfg;
+	}
+
+	// the block for the next piece of straight-line code
+	private BasicBlock current() {
+		if (cur == null)
+			cur = cfg.newBlock(); // unreachable code
+		return cur;
+	}
+
+	// ends the current block with a jump to target
+	private void jump(BasicBlock target) {
+		if (cur != null)
+			CFG.addEdge(cur, target);
+		cur = null;
+	}
+
+	// ends the current block with a two-way branch on cond
+	private void branch(Expr cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+		BasicBlock b = current();
+		if (isTrue(cond)) {
+			CFG.addEdge(b, ifTrue);
+		} else {
+			b.cond = cond;
+			CFG.addEdge(b, ifTrue);
+			CFG.addEdge(b, ifFalse);
+		}
+		cur = null;
+	}
+
+	private static boolean isTrue(Expr e) {
+		return e instanceof BooleanExpr && ((BooleanExpr) e).BL.spelling.equals("true");
+	}
+
+	// A loop header must be a block of its own so that the back edge
+	// does not re-execute the code preceding the loop.
+	private BasicBlock startNewBlock() {
+		BasicBlock b = cfg.newBlock();
+		jump(b);
+		cur = b;
+		return b;
+	}
+
+	private void stmt(Stmt s) {
+		switch (s.kind) {
+		case COMPOUND_STMT: {
+			CompoundStmt c = (CompoundStmt) s;
+			List dl = c.DL;
+			while (!dl.isEmpty()) {
+				current().stmts.add(((DeclList) dl).D);
+				dl = ((DeclList) dl).DL;
+			}
+			List sl = c.SL;
+			while (!sl.isEmpty()) {
+				stmt(((StmtList) sl).S);
+				sl = ((StmtList) sl).SL;
+			}
+			break;
+		}
+		case EXPR_STMT:
+			if (!((ExprStmt) s).E.isEmptyExpr())
+				current().stmts.add(s);
+			break;
+		case IF_STMT: {
+			IfStmt ifStmt = (IfStmt) s;
+			BasicBlock thenB = cfg.newBlock();
+			BasicBlock join = cfg.newBlock();
+			BasicBlock elseB = ifStmt.S2.isEmptyStmt() ? join : cfg.newBlock();
+			branch(ifStmt.E, thenB, elseB);
+			cur = thenB;
+			stmt(ifStmt.S1);
+			jump(join);
+			if (elseB != join) {
+				cur = elseB;
+				stmt(ifStmt.S2);
+				jump(join);
+			}
+			cur = join;
+			break;
+		}
+		case WHILE_STMT: {
+			WhileStmt w = (WhileStmt) s;
+			BasicBlock header = startNewBlock();
+			BasicBlock body = cfg.newBlock();
+			BasicBlock after = cfg.newBlock();
+			branch(w.E, body, after);
+			loopBody(w.S, body, header, after);
+			jump(header);
+			cur = after;
+			break;
+		}
+		case FOR_STMT: {
+			ForStmt f = (ForStmt) s;
+			if (!f.E1.isEmptyExpr())
+				current().stmts.add(f.E1);
+			BasicBlock header = startNewBlock();
+			BasicBlock body = cfg.newBlock();
+			BasicBlock step = cfg.newBlock();
+			BasicBlock after = cfg.newBlock();
+			if (f.E2.isEmptyExpr())
+				jump(body);
+			else
+				branch(f.E2, body, after);
+			loopBody(f.S, body, step, after);
+			jump(step);
+			cur = step;
+			if (!f.E3.isEmptyExpr())
+				step.stmts.add(f.E3);
+			jump(header);
+			cur = after;
+			break;
+		}
+		case BREAK_STMT:
+			jump(brkStack.peek());
+			break;
+		case CONTINUE_STMT:
+			jump(conStack.peek());
+			break;
+		case RETURN_STMT:
+			current().stmts.add(s);
+			jump(cfg.exit);
+			break;
+		default:
+			// EmptyStmt and EmptyCompStmt
+			break;
+		}
+	}
+
+	private void loopBody(Stmt s, BasicBlock body, BasicBlock continueTarget,
+			BasicBlock breakTarget) {
+		conStack.push(continueTarget);
+		brkStack.push(breakTarget);
+		cur = body;
+		stmt(s);
+		conStack.pop();
+		brkStack.pop();
+	}
+}
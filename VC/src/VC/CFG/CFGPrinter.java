@@ -0,0 +1,73 @@
+/*
+ * CFGPrinter.java
+ *
+ * Prints the CFG of every function of a checked program, together with
+ * its dominator tree and loop nest, in a text form meant for debugging
+ * the later passes that are built on the CFG.
+ */
+
+package VC.CFG;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import VC.ASTs.*;
+import VC.ErrorReporter;
+
+public final class CFGPrinter {
+
+	private PrintWriter textOut;
+
+	public CFGPrinter(String filename) {
+		try {
+			textOut = new PrintWriter(new FileWriter(filename));
+		} catch (java.io.IOException e) {
+			throw new ErrorReporter.CompilationAborted("Caught IOException: " + e.getMessage());
+		}
+	}
+
+	public void print(AST ast) {
+		List list = ((Program) ast).FL;
+		while (!list.isEmpty()) {
+			DeclList dl = (DeclList) list;
+			if (dl.D instanceof FuncDecl)
+				print(CFGBuilder.build((FuncDecl) dl.D));
+			list = dl.DL;
+		}
+		textOut.close();
+	}
+
+	private void print(CFG cfg) {
+		DominatorTree dom = new DominatorTree(cfg);
+		LoopNest nest = new LoopNest(cfg, dom);
+
+		textOut.println("function " + cfg.func.I.spelling
+				+ " (entry " + cfg.entry + ", exit " + cfg.exit + ")");
+		for (BasicBlock b : cfg.blocks) {
+			StringBuffer sb = new StringBuffer("  " + b + ":");
+			if (!dom.isReachable(b))
+				sb.append(" unreachable");
+			else if (dom.idom(b) != null)
+				sb.append(" idom " + dom.idom(b));
+			if (nest.depth(b) > 0)
+				sb.append(" loop depth " + nest.depth(b));
+			textOut.println(sb);
+			for (AST s : b.stmts)
+				textOut.println("    " + describe(s));
+			if (b.isBranch())
+				textOut.println("    if " + describe(b.cond)
+						+ " then " + b.succs.get(0) + " else " + b.succs.get(1));
+			else if (!b.succs.isEmpty())
+				textOut.println("    goto " + b.succs.get(0));
+		}
+		for (Loop loop : nest.loops)
+			textOut.println("  depth " + loop.depth + " " + loop);
+		textOut.println();
+	}
+
+	private static String describe(AST s) {
+		if (s instanceof Decl)
+			return s.kind + " " + ((Decl) s).I.spelling + "@" + s.position.lineStart;
+		return s.kind + "@" + s.position.lineStart;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * DominatorTree.java
+ */
+
+// Immediate dominators of the blocks of a CFG, computed with the
+// iterative algorithm of Cooper, Harvey and Kennedy ("A Simple, Fast
+// Dominance Algorithm", 2001). A block d dominates a block b if every
+// path from entry to b goes through d.
+//
+// Blocks that are unreachable from entry have no immediate dominator
+// and are not part of the tree.
+
+package VC.CFG;
+
+import java.util.ArrayList;
+
+public final class DominatorTree {
+
+	private final CFG cfg;
+
+	// indexed by block id
+	private BasicBlock[] idom;
+	private int[] rpoNumber;
+	private int[] depth;
+	private ArrayList<ArrayList<BasicBlock>> children;
+
+	private ArrayList<BasicBlock> rpo;
+
+	public DominatorTree(CFG cfg) {
+		this.cfg = cfg;
+		compute();
+	}
+
+	private void compute() {
+		int n = cfg.blocks.size();
+		rpo = cfg.reversePostorder();
+		rpoNumber = new int[n];
+		for (int i = 0; i < n; i++)
+			rpoNumber[i] = -1;
+		for (int i = 0; i < rpo.size(); i++)
+			rpoNumber[rpo.get(i).id] = i;
+
+		idom = new BasicBlock[n];
+		idom[cfg.entry.id] = cfg.entry;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1; i < rpo.size(); i++) {
+				BasicBlock b = rpo.get(i);
+				BasicBlock newIdom = null;
+				for (BasicBlock p : b.preds) {
+					if (idom[p.id] == null)
+						continue; // unreachable or not processed yet
+					newIdom = (newIdom == null) ? p : intersect(p, newIdom);
+				}
+				if (idom[b.id] != newIdom) {
+					idom[b.id] = newIdom;
+					changed = true;
+				}
+			}
+		}
+		idom[cfg.entry.id] = null;
+
+		children = new ArrayList<ArrayList<BasicBlock>>(n);
+		for (int i = 0; i < n; i++)
+			children.add(new ArrayList<BasicBlock>());
+		depth = new int[n];
+		for (BasicBlock b : rpo) {
+			if (idom[b.id] != null) {
+				children.get(idom[b.id].id).add(b);
+				depth[b.id] = depth[idom[b.id].id] + 1;
+			}
+		}
+	}
+
+	private BasicBlock intersect(BasicBlock a, BasicBlock b) {
+		while (a != b) {
+			while (rpoNumber[a.id] > rpoNumber[b.id])
+				a = idom[a.id];
+			while (rpoNumber[b.id] > rpoNumber[a.id])
+				b = idom[b.id];
+		}
+		return a;
+	}
+
+	// the immediate dominator of b, or null for entry and for
+	// unreachable blocks
+	public BasicBlock idom(BasicBlock b) {
+		return idom[b.id];
+	}
+
+	public ArrayList<BasicBlock> children(BasicBlock b) {
+		return children.get(b.id);
+	}
+
+	public boolean isReachable(BasicBlock b) {
+		return rpoNumber[b.id] >= 0;
+	}
+
+	// true if a dominates b; every block dominates itself
+	public boolean dominates(BasicBlock a, BasicBlock b) {
+		if (!isReachable(a) || !isReachable(b))
+			return false;
+		while (depth[b.id] > depth[a.id])
+			b = idom[b.id];
+		return a == b;
+	}
+
+	// the reachable blocks in reverse postorder, so that every block
+	// comes after its dominators
+	public ArrayList<BasicBlock> reversePostorder() {
+		return rpo;
+	}
+}
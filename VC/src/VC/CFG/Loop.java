@@ -0,0 +1,69 @@
+/*
+ * Loop.java
+ */
+
+package VC.CFG;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+// A natural loop: a header that dominates all blocks of the loop, and
+// the blocks from which one of the back edges to the header can be
+// reached without going through the header.
+
+public final class Loop {
+
+	public BasicBlock header;
+
+	// all blocks of the loop, including those of inner loops; the
+	// header comes first
+	public ArrayList<BasicBlock> blocks;
+
+	// the sources of the back edges
+	public ArrayList<BasicBlock> latches;
+
+	// the innermost loop containing this one, or null
+	public Loop parent;
+	public ArrayList<Loop> children;
+
+	// 1 for an outermost loop
+	public int depth;
+
+	private HashSet<BasicBlock> members;
+
+	public Loop(BasicBlock header) {
+		this.header = header;
+		blocks = new ArrayList<BasicBlock>();
+		latches = new ArrayList<BasicBlock>();
+		children = new ArrayList<Loop>();
+		parent = null;
+		depth = 0;
+		members = new HashSet<BasicBlock>();
+	}
+
+	public boolean contains(BasicBlock b) {
+		return members.contains(b);
+	}
+
+	// returns false if b is already part of the loop
+	public boolean add(BasicBlock b) {
+		if (!members.add(b))
+			return false;
+		blocks.add(b);
+		return true;
+	}
+
+	// the blocks outside the loop that are targets of an edge leaving it
+	public ArrayList<BasicBlock> exits() {
+		ArrayList<BasicBlock> result = new ArrayList<BasicBlock>();
+		for (BasicBlock b : blocks)
+			for (BasicBlock s : b.succs)
+				if (!contains(s) && !result.contains(s))
+					result.add(s);
+		return result;
+	}
+
+	public String toString() {
+		return "loop " + header + " " + blocks;
+	}
+}
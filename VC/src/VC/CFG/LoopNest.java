@@ -0,0 +1,97 @@
+/*
+ * LoopNest.java
+ */
+
+// Finds the natural loops of a CFG and arranges them in a tree by
+// nesting. An edge t -> h is a back edge if h dominates t. Loops that
+// share a header are merged into one. Since VC only has structured
+// loops, every CFG built from a VC function is reducible and every
+// cycle is found this way.
+
+package VC.CFG;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+public final class LoopNest {
+
+	// all loops, outer loops before the loops nested inside them
+	public ArrayList<Loop> loops;
+
+	// the loops that are not nested in another loop
+	public ArrayList<Loop> topLevel;
+
+	// indexed by block id: the innermost loop containing the block
+	private Loop[] innermost;
+
+	public LoopNest(CFG cfg, DominatorTree dom) {
+		loops = new ArrayList<Loop>();
+		topLevel = new ArrayList<Loop>();
+		innermost = new Loop[cfg.blocks.size()];
+
+		for (BasicBlock h : dom.reversePostorder()) {
+			Loop loop = null;
+			for (BasicBlock t : h.preds) {
+				if (!dom.dominates(h, t))
+					continue;
+				if (loop == null) {
+					loop = new Loop(h);
+					loop.add(h);
+				}
+				loop.latches.add(t);
+				collectBody(loop, t, dom);
+			}
+			if (loop != null)
+				loops.add(loop);
+		}
+
+		// Outer loops are larger than the loops nested inside them, so
+		// visiting loops from the largest to the smallest assigns every
+		// block its innermost loop last.
+		Collections.sort(loops, new Comparator<Loop>() {
+			public int compare(Loop a, Loop b) {
+				return b.blocks.size() - a.blocks.size();
+			}
+		});
+		for (Loop loop : loops) {
+			Loop parent = innermost[loop.header.id];
+			loop.parent = parent;
+			if (parent == null) {
+				loop.depth = 1;
+				topLevel.add(loop);
+			} else {
+				loop.depth = parent.depth + 1;
+				parent.children.add(loop);
+			}
+			for (BasicBlock b : loop.blocks)
+				innermost[b.id] = loop;
+		}
+	}
+
+	// adds to the loop every reachable block from which latch can be
+	// reached without passing through the header
+	private void collectBody(Loop loop, BasicBlock latch, DominatorTree dom) {
+		ArrayList<BasicBlock> work = new ArrayList<BasicBlock>();
+		if (loop.add(latch))
+			work.add(latch);
+		while (!work.isEmpty()) {
+			BasicBlock b = work.remove(work.size() - 1);
+			for (BasicBlock p : b.preds) {
+				if (dom.isReachable(p) && loop.add(p))
+					work.add(p);
+			}
+		}
+	}
+
+	// the innermost loop containing b, or null
+	public Loop loopOf(BasicBlock b) {
+		return (b.id < innermost.length) ? innermost[b.id] : null;
+	}
+
+	// the number of loops containing b
+	public int depth(BasicBlock b) {
+		Loop loop = loopOf(b);
+		return (loop == null) ? 0 : loop.depth;
+	}
+}
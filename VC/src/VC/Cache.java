@@ -0,0 +1,330 @@
+/*
+ * Cache.java
+ */
+
+package VC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A cache of compilations on disk. An entry holds what a compilation
+// printed, its number of errors and the .j or .class file it wrote,
+// and is named by the SHA-256 of the compiler, the options, the name
+// of the input file (which is the name of the class) and the bytes of
+// the source, so a changed source, option or compiler is a miss rather
+// than a stale hit.
+//
+// The compiler is identified by the names, sizes and modification
+// times of its own class files (or of its jar), taken once per JVM, so
+// rebuilding it changes every key without the cost of reading it. No
+// cache is used if the class files cannot be found.
+//
+// An entry is written to a temporary file in the cache and renamed,
+// so that a compiler in another JVM sees a whole entry or none. A hit
+// maps the entry and copies it out, and sets its modification time, by
+// which the least recently used entries are deleted once the entries
+// take more than the size of the cache. The total is counted by the
+// Cache of the directory in this JVM, and recounted from the directory
+// when it is over, to include the entries of other JVMs.
+//
+// An entry is
+//
+//   int MAGIC, int errors, int n, n bytes printed,
+//   int m, m bytes of the output file (m is -1 if none was written)
+
+public final class Cache {
+
+  public static final long DEFAULT_SIZE = 256L << 20;
+
+  private static final int MAGIC = 0x56434301;
+
+  // the caches used by this JVM, by directory
+  private static final ConcurrentHashMap<String, Cache> caches = new ConcurrentHashMap<String, Cache>();
+
+  private static byte[] compiler;
+  private static boolean compilerHashed;
+
+  private final Path directory;
+  private final long size;
+
+  // the bytes taken by the entries, or -1 if they have not been counted
+  private final AtomicLong total = new AtomicLong(-1);
+
+  private Cache(Path directory, long size) {
+    this.directory = directory;
+    this.size = size;
+  }
+
+  // The cache in directory, or null if the compiler cannot be
+  // identified or the directory cannot be made.
+  static Cache at(String directory, long size) {
+    if (compilerHash() == null)
+      return null;
+    File dir = new File(directory).getAbsoluteFile();
+    if (!dir.isDirectory() && !dir.mkdirs())
+      return null;
+    Cache cache = caches.get(dir.getPath());
+    if (cache == null) {
+      caches.putIfAbsent(dir.getPath(), new Cache(dir.toPath(), size));
+      cache = caches.get(dir.getPath());
+    }
+    return cache;
+  }
+
+  // Only compilations that print and write nothing else are cached.
+  static boolean cacheable(Options options) {
+    return options.drawingAST == 0 && !options.printingAST && !options.unparsingAST
+        && !options.jsonDiagnostics && !options.printingIR && !options.loggingInlining
+        && !options.printingCFG && !options.timing && !options.running;
+  }
+
+  // the key of a compilation, or null if the source cannot be read
+  String key(Options options, String inputFilename, File source) {
+    MessageDigest sha;
+    try {
+      sha = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      return null;
+    }
+    sha.update(compilerHash());
+    // the options that change what a compilation prints or writes
+    String settings = "O" + options.optimising + " b" + options.inlineBudget
+        + " V" + options.verifyingIR + " P" + options.disabledRules
+        + " c" + options.writingClassFile + " s" + options.staticMethods
+        + " e" + options.maxErrors + " " + inputFilename + "\n";
+    sha.update(settings.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    try {
+      sha.update(Files.readAllBytes(source.toPath()));
+    } catch (IOException e) {
+      return null;
+    }
+    return hex(sha.digest());
+  }
+
+  // Prints the output of the compilation with key to out, writes its
+  // output file to output, and returns its number of errors, or -1 if
+  // it is not in the cache.
+  int load(String key, File output, PrintStream out) {
+    Path entry = directory.resolve(key);
+    MappedByteBuffer bytes;
+    try {
+      FileChannel in = FileChannel.open(entry, StandardOpenOption.READ);
+      bytes = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+      in.close();
+    } catch (IOException e) {
+      // not in the cache, or deleted by another JVM
+      return -1;
+    }
+    int errors;
+    ByteBuffer printed, written;
+    try {
+      if (bytes.getInt() != MAGIC)
+        return -1;
+      errors = bytes.getInt();
+      printed = slice(bytes, bytes.getInt());
+      int m = bytes.getInt();
+      written = m < 0 ? null : slice(bytes, m);
+    } catch (RuntimeException e) {
+      // a damaged entry, e.g. one cut short by a full disk
+      return -1;
+    }
+
+    if (written != null) {
+      try {
+        FileChannel file = FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        while (written.hasRemaining())
+          file.write(written);
+        file.close();
+      } catch (IOException e) {
+        return -1;
+      }
+    }
+    byte[] text = new byte[printed.remaining()];
+    printed.get(text);
+    out.write(text, 0, text.length);
+    out.flush();
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // deleted by another JVM since it was read
+    }
+    return errors;
+  }
+
+  private static ByteBuffer slice(ByteBuffer bytes, int n) {
+    ByteBuffer slice = bytes.slice();
+    slice.limit(n);
+    bytes.position(bytes.position() + n);
+    return slice;
+  }
+
+  // Adds a compilation that printed printed and wrote output, or
+  // nothing if output is null, to the cache.
+  void store(String key, byte[] printed, int errors, File output) {
+    Path tmp = null;
+    try {
+      byte[] written = output == null ? null : Files.readAllBytes(output.toPath());
+      ByteArrayOutputStream entry = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(entry);
+      data.writeInt(MAGIC);
+      data.writeInt(errors);
+      data.writeInt(printed.length);
+      data.write(printed);
+      data.writeInt(written == null ? -1 : written.length);
+      if (written != null)
+        data.write(written);
+      data.flush();
+
+      tmp = Files.createTempFile(directory, key, ".tmp");
+      Files.write(tmp, entry.toByteArray());
+      try {
+        Files.move(tmp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+      if (total.get() < 0 || total.addAndGet(entry.size()) > size)
+        evict();
+    } catch (IOException e) {
+      // a compilation that cannot be cached is compiled the next time
+    } finally {
+      if (tmp != null)
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          // left for the next eviction
+        }
+    }
+  }
+
+  // A temporary file is taken to be left by a compiler that stopped
+  // once it is this old; a younger one may be an entry being written.
+  private static final long STALE_MILLIS = 60 * 1000;
+
+  // Counts the entries and deletes the least recently used ones while
+  // they take more than nine tenths of the size of the cache. Only the
+  // entries and the temporary files of entries are counted or deleted,
+  // as the cache may be a directory that holds other files too.
+  private synchronized void evict() {
+    File[] files = directory.toFile().listFiles(new FileFilter() {
+      public boolean accept(File f) {
+        return f.isFile() && (isEntry(f.getName()) || isTemporary(f.getName()));
+      }
+    });
+    if (files == null)
+      return;
+    final long[] modified = new long[files.length];
+    Integer[] order = new Integer[files.length];
+    long bytes = 0;
+    for (int i = 0; i < files.length; i++) {
+      modified[i] = files[i].lastModified();
+      order[i] = i;
+      bytes += files[i].length();
+    }
+    if (bytes > size) {
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return Long.compare(modified[a], modified[b]);
+        }
+      });
+      long stale = System.currentTimeMillis() - STALE_MILLIS;
+      for (int i = 0; i < order.length && bytes > size / 10 * 9; i++) {
+        File f = files[order[i]];
+        if (isTemporary(f.getName()) && modified[order[i]] > stale)
+          continue;
+        long length = f.length();
+        if (f.delete())
+          bytes -= length;
+      }
+    }
+    total.set(bytes);
+  }
+
+  // an entry is named by its key, 64 lowercase hex digits
+  private static boolean isEntry(String name) {
+    if (name.length() != 64)
+      return false;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f'))
+        return false;
+    }
+    return true;
+  }
+
+  // the temporary file of an entry, named by store as its key, some
+  // digits and .tmp
+  private static boolean isTemporary(String name) {
+    return name.length() > 64 + 4 && name.endsWith(".tmp") && isEntry(name.substring(0, 64));
+  }
+
+  // the hash of the stamps of the class files of the compiler, or null
+  // if they cannot be found
+  private static synchronized byte[] compilerHash() {
+    if (compilerHashed)
+      return compiler;
+    compilerHashed = true;
+    try {
+      MessageDigest sha = MessageDigest.getInstance("SHA-256");
+      File location = new File(vc.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      ArrayList<File> files = new ArrayList<File>();
+      if (location.isDirectory())
+        classFiles(new File(location, "VC"), files);
+      else
+        files.add(location);
+      if (files.isEmpty())
+        return null;
+      Collections.sort(files);
+      for (File f : files) {
+        String stamp = f.getPath().substring(location.getPath().length())
+            + " " + f.length() + " " + f.lastModified() + "\n";
+        sha.update(stamp.getBytes("UTF-8"));
+      }
+      compiler = sha.digest();
+    } catch (Exception e) {
+      // no code source, or one that is not a file: no cache
+    }
+    return compiler;
+  }
+
+  private static void classFiles(File dir, ArrayList<File> files) {
+    File[] entries = dir.listFiles();
+    if (entries == null)
+      return;
+    for (File f : entries)
+      if (f.isDirectory())
+        classFiles(f, files);
+      else if (f.getName().endsWith(".class"))
+        files.add(f);
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+      sb.append(String.format("%02x", b & 0xff));
+    return sb.toString();
+  }
+}
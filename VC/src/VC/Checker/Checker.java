@@ -12,7 +12,7 @@ import VC.Scanner.SourcePosition;
 import VC.ErrorReporter;
 import VC.StdEnvironment;
 
-public final class Checker implements Visitor {
+public final class Checker extends SwitchVisitor {
 
 	private String errMesg[] = {
 			"*0: main function is missing",
@@ -72,9 +72,10 @@ public final class Checker implements Visitor {
 			"*30: statement(s) not reached", "*31: missing return statement", };
 
 	private SymbolTable idTable;
-	private static SourcePosition dummyPos = new SourcePosition();
+	private SourcePosition dummyPos = new SourcePosition();
 	private ErrorReporter reporter;
-	private final static Ident dummyI = new Ident("x", dummyPos);
+	private StdEnvironment env;
+	private final Ident dummyI = new Ident("x", dummyPos);
 	private Vector<FuncDecl> functionHasRet;
 
 	// Checks whether the source program, represented by its AST,
@@ -83,15 +84,18 @@ public final class Checker implements Visitor {
 	// (1) Each applied occurrence of an identifier is linked to
 	// the corresponding declaration of that identifier.
 	// (2) Each expression and variable is decorated by its type.
-	public Checker(ErrorReporter reporter) {
+	// The built-in types and functions are entered into env, which the
+	// later phases of the same compilation use.
+	public Checker(ErrorReporter reporter, StdEnvironment env) {
 		this.reporter = reporter;
+		this.env = env;
 		this.idTable = new SymbolTable();
 		establishStdEnvironment();
 		functionHasRet = new Vector<FuncDecl>();
 	}
 
 	public void check(AST ast) {
-		ast.visit(this, null);
+		dispatch(ast, null);
 	}
 
 	// auxiliary methods
@@ -111,7 +115,7 @@ public final class Checker implements Visitor {
 	 */
 	@Override
 	public Object visitProgram(Program program, Object o) {
-		program.FL.visit(this, null);
+		dispatch(program.FL, null);
 		Decl mainDecl = idTable.retrieve("main");
 		if (mainDecl == null || !mainDecl.isFuncDecl()) {
 			// no main function
@@ -148,7 +152,7 @@ public final class Checker implements Visitor {
 		 */
 		// funcDecl.PL.visit(this, null);
 		// pass declaration of function to return statement
-		funcDecl.S.visit(this, funcDecl);
+		dispatch(funcDecl.S, funcDecl);
 		/*
 		 * check whether the function with return value has corresponding return statement.
 		 * when checker visit return statement, it will put the function declaration with
@@ -164,8 +168,8 @@ public final class Checker implements Visitor {
 
 	@Override
 	public Object visitDeclList(DeclList ast, Object o) {
-		ast.D.visit(this, null);
-		ast.DL.visit(this, null);
+		dispatch(ast.D, null);
+		dispatch(ast.DL, null);
 		return null;
 	}
 
@@ -191,7 +195,7 @@ public final class Checker implements Visitor {
 			}
 		}
 
-		Object exprTypeOrArrayLength = globalVarDecl.E.visit(this,globalVarDecl.T);
+		Object exprTypeOrArrayLength = dispatch(globalVarDecl.E, globalVarDecl.T);
 		if (globalVarDecl.T.isArrayType()) {
 			if (globalVarDecl.E instanceof InitExpr) {
 				Integer initLength = (Integer) exprTypeOrArrayLength;
@@ -243,7 +247,7 @@ public final class Checker implements Visitor {
 			}
 		}
 		// pass the variable declaration type to initializer
-		Object exprTypeOrInitLength = localVarDecl.E.visit(this, localVarDecl.T);
+		Object exprTypeOrInitLength = dispatch(localVarDecl.E, localVarDecl.T);
 		if (localVarDecl.T.isArrayType()) {
 			if (localVarDecl.E instanceof InitExpr) {
 				Integer initListLength = (Integer) exprTypeOrInitLength;
@@ -277,38 +281,38 @@ public final class Checker implements Visitor {
 	// Statements
 	@Override
 	public Object visitIfStmt(IfStmt ifStmt, Object o) {
-		Type exprType = (Type) ifStmt.E.visit(this, null);
+		Type exprType = (Type) dispatch(ifStmt.E, null);
 		if (exprType == null || !exprType.isBooleanType()) {
 			// not a boolean expression
 			reporter.reportError(errMesg[20], "", ifStmt.E.position);
 		}
 		// Object o is the declaration of function that this statement belongs to
-		ifStmt.S1.visit(this, o);
-		ifStmt.S2.visit(this, o);
+		dispatch(ifStmt.S1, o);
+		dispatch(ifStmt.S2, o);
 		return null;
 	}
 
 	@Override
 	public Object visitForStmt(ForStmt forStmt, Object o) {
-		forStmt.E1.visit(this, null);
-		Type exprType = (Type) forStmt.E2.visit(this, null);
+		dispatch(forStmt.E1, null);
+		Type exprType = (Type) dispatch(forStmt.E2, null);
 		if (exprType == null || !forStmt.E2.isEmptyExpr() && !exprType.isBooleanType()) {
 			// not a boolean expression
 			reporter.reportError(errMesg[21], "", forStmt.E2.position);
 		}
-		forStmt.E3.visit(this, null);
-		forStmt.S.visit(this, o);
+		dispatch(forStmt.E3, null);
+		dispatch(forStmt.S, o);
 		return null;
 	}
 
 	@Override
 	public Object visitWhileStmt(WhileStmt whileStmt, Object o) {
-		Type exprType = (Type) whileStmt.E.visit(this, null);
+		Type exprType = (Type) dispatch(whileStmt.E, null);
 		if (exprType == null || !exprType.isBooleanType()) {
 			// not a boolean expression
 			reporter.reportError(errMesg[22], "", whileStmt.position);
 		}
-		whileStmt.S.visit(this, o);
+		dispatch(whileStmt.S, o);
 		return null;
 	}
 
@@ -356,7 +360,7 @@ public final class Checker implements Visitor {
 	@Override
 	public Object visitReturnStmt(ReturnStmt retStmt, Object o) {
 		Type funcRetType = ((FuncDecl) o).T;
-		Type retExprType = (Type) retStmt.E.visit(this, null);
+		Type retExprType = (Type) dispatch(retStmt.E, null);
 		boolean hasCorrectRet = false;
 		// xor logic
 		if (funcRetType.isVoidType() ^ retStmt.E.isEmptyExpr()) {
@@ -388,30 +392,30 @@ public final class Checker implements Visitor {
 			// visit parameter list here so that variables declared in parameter
 			// list will be
 			// in the scope of compound statement
-			funcDecl.PL.visit(this, null);
+			dispatch(funcDecl.PL, null);
 		}
-		compoundStmt.DL.visit(this, null);
+		dispatch(compoundStmt.DL, null);
 		// Object o is declaration of function
-		compoundStmt.SL.visit(this, o);
+		dispatch(compoundStmt.SL, o);
 		idTable.closeScope();
 		return null;
 	}
 
 	@Override
 	public Object visitStmtList(StmtList ast, Object o) {
-		ast.S.visit(this, o);
+		dispatch(ast.S, o);
 		if (ast.S instanceof ReturnStmt && !ast.SL.isEmptyStmtList()) {
 			// Unreachable statements after return statement
 			reporter.reportError(errMesg[30], "", ast.SL.position);
 		}
-		ast.SL.visit(this, o);
+		dispatch(ast.SL, o);
 		return null;
 	}
 
 	// Object o is the declaration of function to which expression statement belongs
 	@Override
 	public Object visitExprStmt(ExprStmt ast, Object o) {
-		ast.E.visit(this, o);
+		dispatch(ast.E, o);
 		return null;
 	}
 
@@ -442,24 +446,24 @@ public final class Checker implements Visitor {
 	}
 
 	public Object visitIntExpr(IntExpr ast, Object o) {
-		ast.type = StdEnvironment.intType;
+		ast.type = env.intType;
 		return ast.type;
 	}
 
 	public Object visitFloatExpr(FloatExpr ast, Object o) {
-		ast.type = StdEnvironment.floatType;
+		ast.type = env.floatType;
 		return ast.type;
 	}
 
 	@Override
 	public Object visitBooleanExpr(BooleanExpr ast, Object o) {
-		ast.type = StdEnvironment.booleanType;
+		ast.type = env.booleanType;
 		return ast.type;
 	}
 
 	@Override
 	public Object visitStringExpr(StringExpr ast, Object o) {
-		ast.type = StdEnvironment.stringType;
+		ast.type = env.stringType;
 		return ast.type;
 	}
 
@@ -470,7 +474,7 @@ public final class Checker implements Visitor {
 	 */
 	@Override
 	public Object visitUnaryExpr(UnaryExpr unaryExpr, Object o) {
-		Type exprType = (Type) unaryExpr.E.visit(this, null);
+		Type exprType = (Type) dispatch(unaryExpr.E, null);
 		String op = unaryExpr.O.spelling;
 		if (op.equals("+") || op.equals("-")) {
 			if (exprType.isIntType() || exprType.isFloatType()) {
@@ -478,17 +482,17 @@ public final class Checker implements Visitor {
 			} else {
 				// apply + and - to wrong type
 				reporter.reportError(errMesg[10] + ": incompatible type %", exprType.toString(), unaryExpr.E.position);
-				unaryExpr.type = StdEnvironment.errorType;
+				unaryExpr.type = env.errorType;
 			}
 		}
 		if (op.equals("!")) {
 			if (exprType.isBooleanType()) {
-				unaryExpr.O.spelling = "i" + unaryExpr.O.spelling;
+				// "i" is prepended below together with the other operators
 				unaryExpr.type = exprType;
 			} else {
 				// apply ! to wrong type
 				reporter.reportError(errMesg[10] + ": incompatible type % here", exprType.toString(), unaryExpr.E.position);
-				unaryExpr.type = StdEnvironment.errorType;
+				unaryExpr.type = env.errorType;
 			}
 		}
 		// apply operator overloading
@@ -506,25 +510,25 @@ public final class Checker implements Visitor {
 	 */
 	@Override
 	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object o) {
-		Type e1Type = (Type) binaryExpr.E1.visit(this, null);
-		Type e2Type = (Type) binaryExpr.E2.visit(this, null);
+		Type e1Type = (Type) dispatch(binaryExpr.E1, null);
+		Type e2Type = (Type) dispatch(binaryExpr.E2, null);
 		if (e1Type.isErrorType() || e2Type.isErrorType()) {
-			binaryExpr.type = StdEnvironment.errorType;
+			binaryExpr.type = env.errorType;
 		} else if (e1Type.isFloatType() && e2Type.isIntType()) {
 			binaryExpr.E2 = i2f(binaryExpr.E2);
-			binaryExpr.type = StdEnvironment.floatType;
+			binaryExpr.type = env.floatType;
 		} else if (e1Type.isIntType() && e2Type.isFloatType()) {
 			binaryExpr.E1 = i2f(binaryExpr.E1);
-			binaryExpr.type = StdEnvironment.floatType;
+			binaryExpr.type = env.floatType;
 		} else if(e1Type.isIntType() && e2Type.isIntType()) {
-			binaryExpr.type = StdEnvironment.intType;
+			binaryExpr.type = env.intType;
 		} else if(e1Type.isFloatType() && e2Type.isFloatType()) {
-			binaryExpr.type = StdEnvironment.floatType;
+			binaryExpr.type = env.floatType;
 		} else if(e1Type.isBooleanType() && e2Type.isBooleanType()) {
-			binaryExpr.type = StdEnvironment.booleanType;
+			binaryExpr.type = env.booleanType;
 		} else {
 			reporter.reportError(errMesg[9] + ": incompatible type %", binaryExpr.O.spelling, binaryExpr.O.position);
-			binaryExpr.type = StdEnvironment.errorType;
+			binaryExpr.type = env.errorType;
 		}
 		boolean convert2IntOp = false;
 		boolean convert2FloatOp = false;
@@ -544,10 +548,10 @@ public final class Checker implements Visitor {
 			if(op.equals(">") || op.equals(">=") || op.equals("<") || op.equals("<=")) {
 				if (binaryExpr.type.isIntType()) {
 					convert2IntOp = true;
-					binaryExpr.type = StdEnvironment.booleanType;
+					binaryExpr.type = env.booleanType;
 				} else if (binaryExpr.type.isFloatType()) {
 					convert2FloatOp = true;
-					binaryExpr.type = StdEnvironment.booleanType;
+					binaryExpr.type = env.booleanType;
 				} else {
 					reportError = true;
 				}
@@ -562,10 +566,10 @@ public final class Checker implements Visitor {
 			if (op.equals("==") || op.equals("!=")) {
 				if (binaryExpr.type.isIntType()	|| binaryExpr.type.isBooleanType()) {
 					convert2IntOp = true;
-					binaryExpr.type = StdEnvironment.booleanType;
+					binaryExpr.type = env.booleanType;
 				} else if (binaryExpr.type.isFloatType()) {
 					convert2FloatOp = true;
-					binaryExpr.type = StdEnvironment.booleanType;
+					binaryExpr.type = env.booleanType;
 				} else {
 					reportError = true;
 				}
@@ -579,7 +583,7 @@ public final class Checker implements Visitor {
 		}
 		if (reportError) {
 			reporter.reportError(errMesg[9] + ": incompatible type %", binaryExpr.O.spelling, binaryExpr.O.position);
-			binaryExpr.type = StdEnvironment.errorType;
+			binaryExpr.type = env.errorType;
 		}
 		return binaryExpr.type;
 	}
@@ -594,11 +598,11 @@ public final class Checker implements Visitor {
 		if (!declType.isArrayType()) {
 			// array initializer for scalar
 			reporter.reportError(errMesg[14], "", initExpr.position);
-			initExpr.type = StdEnvironment.errorType;
+			initExpr.type = env.errorType;
 			return initExpr.type;
 		}
 		initExpr.type = declType;
-		return initExpr.IL.visit(this, ((ArrayType) declType).T);
+		return dispatch(initExpr.IL, ((ArrayType) declType).T);
 	}
 
 	/*
@@ -609,7 +613,7 @@ public final class Checker implements Visitor {
 	@Override
 	public Object visitExprList(ExprList exprList, Object o) {
 		Type elementTpye = (Type) o;
-		exprList.E.visit(this, null);
+		dispatch(exprList.E, null);
 		if (elementTpye.assignable(exprList.E.type)) {
 			if (!elementTpye.equals(exprList.E.type)) {
 				exprList.E = i2f(exprList.E);
@@ -622,7 +626,7 @@ public final class Checker implements Visitor {
 			return new Integer(exprList.index + 1);
 		} else {
 			((ExprList)exprList.EL).index = exprList.index + 1;
-			return (Integer) exprList.EL.visit(this, o);
+			return (Integer) dispatch(exprList.EL, o);
 		}
 	}
 
@@ -630,15 +634,15 @@ public final class Checker implements Visitor {
 	// check index expression is integer or not
 	@Override
 	public Object visitArrayExpr(ArrayExpr arrayExpr, Object o) {
-		Type varType = (Type) arrayExpr.V.visit(this, null);
-		arrayExpr.type = StdEnvironment.errorType;
+		Type varType = (Type) dispatch(arrayExpr.V, null);
+		arrayExpr.type = env.errorType;
 		if (!varType.isArrayType()) {
 			// variable not declared as array
 			reporter.reportError(errMesg[12] + ": % is not an array", ((SimpleVar) arrayExpr.V).I.spelling, arrayExpr.V.position);
 		} else {
 			arrayExpr.type = ((ArrayType) varType).T;
 		}
-		Type exprType = (Type) arrayExpr.E.visit(this, null);
+		Type exprType = (Type) dispatch(arrayExpr.E, null);
 		if (!exprType.isIntType()) {
 			// index expression is not a integer
 			reporter.reportError(errMesg[17] + ": index of array % is not integer",
@@ -649,7 +653,7 @@ public final class Checker implements Visitor {
 
 	@Override
 	public Object visitVarExpr(VarExpr varExpr, Object o) {
-		varExpr.type = (Type) varExpr.V.visit(this, o);
+		varExpr.type = (Type) dispatch(varExpr.V, o);
 		return varExpr.type;
 	}
 
@@ -659,16 +663,18 @@ public final class Checker implements Visitor {
 		if (funcDecl == null) {
 			// cannot find symbol
 			reporter.reportError(errMesg[5] + ": % is undeclared", call.I.spelling, call.position);
-			call.type = StdEnvironment.errorType;
+			call.type = env.errorType;
 		} else if (funcDecl.isFuncDecl()) {
+			// link the applied occurrence to its declaration for the code generator
+			call.I.decl = funcDecl;
 			// fetch formal parameter list from function declaration and pass it
 			// to actual parameters
-			call.AL.visit(this, ((FuncDecl) funcDecl).PL);
+			dispatch(call.AL, ((FuncDecl) funcDecl).PL);
 			call.type = funcDecl.T;
 		} else {
 			// use scalar or array as a function
 			reporter.reportError(errMesg[19] + ": % is not a function", call.I.spelling, call.position);
-			call.type = StdEnvironment.errorType;
+			call.type = env.errorType;
 		}
 		return call.type;
 	}
@@ -676,18 +682,18 @@ public final class Checker implements Visitor {
 	//
 	@Override
 	public Object visitAssignExpr(AssignExpr assignExpr, Object o) {
-		assignExpr.E1.visit(this, o);
-		assignExpr.E2.visit(this, o);
+		dispatch(assignExpr.E1, o);
+		dispatch(assignExpr.E2, o);
 		if (!(assignExpr.E1 instanceof VarExpr || assignExpr.E1 instanceof ArrayExpr)) {
 			// lvalue of assignment can just be variable expression or array expression
 			reporter.reportError(errMesg[7], "", assignExpr.E1.position);
-			assignExpr.type = StdEnvironment.errorType;
+			assignExpr.type = env.errorType;
 		} else if (assignExpr.E1 instanceof VarExpr) {
 			Decl decl = idTable.retrieve(((SimpleVar)((VarExpr)assignExpr.E1).V).I.spelling);
 			if (decl instanceof FuncDecl) {
 				// function cannot be assigned
 				reporter.reportError(errMesg[7] + ": % is declared as a function", decl.I.spelling, assignExpr.E1.position);
-				assignExpr.type = StdEnvironment.errorType;
+				assignExpr.type = env.errorType;
 			}
 			// here we do not need to check the lvalue is an array since this is checked in visitSimpleVar
 		}
@@ -695,13 +701,13 @@ public final class Checker implements Visitor {
 		if (assignExpr.E1.type.assignable(assignExpr.E2.type)) {
 			if (!assignExpr.E1.type.equals(assignExpr.E2.type)) {
 				assignExpr.E2 = i2f(assignExpr.E2);
-				assignExpr.type = StdEnvironment.floatType;
+				assignExpr.type = env.floatType;
 			}
 			assignExpr.type = assignExpr.E1.type;
 		} else {
 			// type is incompatible
 			reporter.reportError(errMesg[6], "", assignExpr.E1.position);
-			assignExpr.type = StdEnvironment.errorType;
+			assignExpr.type = env.errorType;
 		}
 		return assignExpr.type;
 	}
@@ -709,9 +715,9 @@ public final class Checker implements Visitor {
 	@Override
 	public Object visitEmptyExpr(EmptyExpr emptyExpr, Object o) {
 		if (emptyExpr.parent instanceof ReturnStmt) {
-			emptyExpr.type = StdEnvironment.voidType;
+			emptyExpr.type = env.voidType;
 		} else {
-			emptyExpr.type = StdEnvironment.errorType;
+			emptyExpr.type = env.errorType;
 		}
 		return emptyExpr.type;
 	}
@@ -719,22 +725,22 @@ public final class Checker implements Visitor {
 	// Literals, Identifiers and Operators
 	@Override
 	public Object visitIntLiteral(IntLiteral IL, Object o) {
-		return StdEnvironment.intType;
+		return env.intType;
 	}
 
 	@Override
 	public Object visitFloatLiteral(FloatLiteral IL, Object o) {
-		return StdEnvironment.floatType;
+		return env.floatType;
 	}
 
 	@Override
 	public Object visitBooleanLiteral(BooleanLiteral SL, Object o) {
-		return StdEnvironment.booleanType;
+		return env.booleanType;
 	}
 
 	@Override
 	public Object visitStringLiteral(StringLiteral IL, Object o) {
-		return StdEnvironment.stringType;
+		return env.stringType;
 	}
 
 	@Override
@@ -754,8 +760,8 @@ public final class Checker implements Visitor {
 	// Parameters
 	@Override
 	public Object visitParaList(ParaList ast, Object o) {
-		ast.P.visit(this, null);
-		ast.PL.visit(this, null);
+		dispatch(ast.P, null);
+		dispatch(ast.PL, null);
 		return null;
 	}
 
@@ -793,8 +799,8 @@ public final class Checker implements Visitor {
 			// too many actual arguments
 			reporter.reportError(errMesg[25], "", argList.position);
 		} else {
-			argList.A.visit(this, ((ParaList) formalParaList).P);
-			argList.AL.visit(this, ((ParaList) formalParaList).PL);
+			dispatch(argList.A, ((ParaList) formalParaList).P);
+			dispatch(argList.AL, ((ParaList) formalParaList).PL);
 		}
 		return null;
 	}
@@ -808,7 +814,7 @@ public final class Checker implements Visitor {
 	public Object visitArg(Arg arg, Object o) {
 		Decl formalParam = (Decl) o;
 		Type formalType = formalParam.T;
-		Type actualType = (Type) arg.E.visit(this, null);
+		Type actualType = (Type) dispatch(arg.E, null);
 		boolean isMatch = false;
 		if (formalType.isArrayType()) {
 			if (actualType.isArrayType()) {
@@ -826,7 +832,7 @@ public final class Checker implements Visitor {
 		if (!isMatch) {
 			reporter.reportError(errMesg[27] + ": % expect here", formalParam.T.toString(), arg.E.position);
 		}
-		if (isMatch && !formalType.equals(actualType)) {
+		if (isMatch && !formalType.isArrayType() && !formalType.equals(actualType)) {
 			arg.E = i2f(arg.E);
 		}
 		return null;
@@ -848,27 +854,27 @@ public final class Checker implements Visitor {
 
 	@Override
 	public Object visitVoidType(VoidType ast, Object o) {
-		return StdEnvironment.voidType;
+		return env.voidType;
 	}
 
 	@Override
 	public Object visitBooleanType(BooleanType ast, Object o) {
-		return StdEnvironment.booleanType;
+		return env.booleanType;
 	}
 
 	@Override
 	public Object visitIntType(IntType ast, Object o) {
-		return StdEnvironment.intType;
+		return env.intType;
 	}
 
 	@Override
 	public Object visitFloatType(FloatType ast, Object o) {
-		return StdEnvironment.floatType;
+		return env.floatType;
 	}
 
 	@Override
 	public Object visitStringType(StringType ast, Object o) {
-		return StdEnvironment.stringType;
+		return env.stringType;
 	}
 
 	@Override
@@ -878,7 +884,7 @@ public final class Checker implements Visitor {
 
 	@Override
 	public Object visitErrorType(ErrorType ast, Object o) {
-		return StdEnvironment.errorType;
+		return env.errorType;
 	}
 
 	/*
@@ -888,7 +894,7 @@ public final class Checker implements Visitor {
 	@Override
 	public Object visitSimpleVar(SimpleVar simpleVar, Object o) {
 		Decl decl = idTable.retrieve(simpleVar.I.spelling);
-		simpleVar.type = StdEnvironment.errorType;
+		simpleVar.type = env.errorType;
 		if (decl == null) {
 			// undeclared identifier
 			reporter.reportError(errMesg[5] + ": % is undeclared", simpleVar.I.spelling, simpleVar.I.position);
@@ -896,6 +902,7 @@ public final class Checker implements Visitor {
 			// identifier collides with function name
 			reporter.reportError(errMesg[11] + ": % is not a scalar", simpleVar.I.spelling, simpleVar.I.position);
 		} else {
+			simpleVar.I.decl = decl;
 			simpleVar.type = decl.T;
 		}
 		// if array name are not used as a actual argument
@@ -917,7 +924,7 @@ public final class Checker implements Visitor {
 	private Expr i2f(Expr currentExpr) {
 		Expr newExpr = new UnaryExpr(new Operator("i2f", currentExpr.position),
 				currentExpr, currentExpr.position);
-		newExpr.type = StdEnvironment.floatType;
+		newExpr.type = env.floatType;
 		newExpr.parent = currentExpr.parent;
 		currentExpr.parent = newExpr;
 		return newExpr;
@@ -929,51 +936,51 @@ public final class Checker implements Visitor {
 	private void establishStdEnvironment() {
 		// Define four primitive types
 		// errorType is assigned to ill-typed expressions
-		StdEnvironment.booleanType = new BooleanType(dummyPos);
-		StdEnvironment.intType = new IntType(dummyPos);
-		StdEnvironment.floatType = new FloatType(dummyPos);
-		StdEnvironment.stringType = new StringType(dummyPos);
-		StdEnvironment.voidType = new VoidType(dummyPos);
-		StdEnvironment.errorType = new ErrorType(dummyPos);
+		env.booleanType = new BooleanType(dummyPos);
+		env.intType = new IntType(dummyPos);
+		env.floatType = new FloatType(dummyPos);
+		env.stringType = new StringType(dummyPos);
+		env.voidType = new VoidType(dummyPos);
+		env.errorType = new ErrorType(dummyPos);
 		// enter into the declarations for built-in functions into the table
-		StdEnvironment.getIntDecl = declareStdFunc(StdEnvironment.intType,
+		env.getIntDecl = declareStdFunc(env.intType,
 				"getInt", new EmptyParaList(dummyPos));
-		StdEnvironment.putIntDecl = declareStdFunc(StdEnvironment.voidType,
-				"putInt", new ParaList(new ParaDecl(StdEnvironment.intType,
+		env.putIntDecl = declareStdFunc(env.voidType,
+				"putInt", new ParaList(new ParaDecl(env.intType,
 						dummyI, dummyPos), new EmptyParaList(dummyPos),
 						dummyPos));
-		StdEnvironment.putIntLnDecl = declareStdFunc(StdEnvironment.voidType,
-				"putIntLn", new ParaList(new ParaDecl(StdEnvironment.intType,
+		env.putIntLnDecl = declareStdFunc(env.voidType,
+				"putIntLn", new ParaList(new ParaDecl(env.intType,
 						dummyI, dummyPos), new EmptyParaList(dummyPos),
 						dummyPos));
-		StdEnvironment.getFloatDecl = declareStdFunc(StdEnvironment.floatType,
+		env.getFloatDecl = declareStdFunc(env.floatType,
 				"getFloat", new EmptyParaList(dummyPos));
-		StdEnvironment.putFloatDecl = declareStdFunc(StdEnvironment.voidType,
-				"putFloat", new ParaList(new ParaDecl(StdEnvironment.floatType,
+		env.putFloatDecl = declareStdFunc(env.voidType,
+				"putFloat", new ParaList(new ParaDecl(env.floatType,
 						dummyI, dummyPos), new EmptyParaList(dummyPos),
 						dummyPos));
-		StdEnvironment.putFloatLnDecl = declareStdFunc(StdEnvironment.voidType,
+		env.putFloatLnDecl = declareStdFunc(env.voidType,
 				"putFloatLn", new ParaList(new ParaDecl(
-						StdEnvironment.floatType, dummyI, dummyPos),
+						env.floatType, dummyI, dummyPos),
 						new EmptyParaList(dummyPos), dummyPos));
-		StdEnvironment.putBoolDecl = declareStdFunc(StdEnvironment.voidType,
+		env.putBoolDecl = declareStdFunc(env.voidType,
 				"putBool", new ParaList(new ParaDecl(
-						StdEnvironment.booleanType, dummyI, dummyPos),
+						env.booleanType, dummyI, dummyPos),
 						new EmptyParaList(dummyPos), dummyPos));
-		StdEnvironment.putBoolLnDecl = declareStdFunc(StdEnvironment.voidType,
+		env.putBoolLnDecl = declareStdFunc(env.voidType,
 				"putBoolLn", new ParaList(new ParaDecl(
-						StdEnvironment.booleanType, dummyI, dummyPos),
+						env.booleanType, dummyI, dummyPos),
 						new EmptyParaList(dummyPos), dummyPos));
-		StdEnvironment.putStringLnDecl = declareStdFunc(
-				StdEnvironment.voidType, "putStringLn", new ParaList(
-						new ParaDecl(StdEnvironment.stringType, dummyI,
+		env.putStringLnDecl = declareStdFunc(
+				env.voidType, "putStringLn", new ParaList(
+						new ParaDecl(env.stringType, dummyI,
 								dummyPos), new EmptyParaList(dummyPos),
 								dummyPos));
-		StdEnvironment.putStringDecl = declareStdFunc(StdEnvironment.voidType,
+		env.putStringDecl = declareStdFunc(env.voidType,
 				"putString", new ParaList(new ParaDecl(
-						StdEnvironment.stringType, dummyI, dummyPos),
+						env.stringType, dummyI, dummyPos),
 						new EmptyParaList(dummyPos), dummyPos));
-		StdEnvironment.putLnDecl = declareStdFunc(StdEnvironment.voidType,
+		env.putLnDecl = declareStdFunc(env.voidType,
 				"putLn", new EmptyParaList(dummyPos));
 	}
 }
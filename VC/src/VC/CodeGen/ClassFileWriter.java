@@ -0,0 +1,710 @@
+/*
+ * ClassFileWriter.java
+ */
+
+// Writes the code store as a class file, without going through Jasmin.
+//
+// The directives give the structure of the class: .class, .super,
+// .field, and for every method .method, .limit, .var and .end. The
+// constants, classes, fields and methods referred to are entered into
+// the constant pool once each, in the order they are first used, so
+// the same code store always gives the same bytes.
+//
+// A jump whose offset does not fit in 16 bits is written as goto_w,
+// and a conditional jump as the opposite jump over a goto_w. Making a
+// jump longer can only move targets further away, so the offsets are
+// recomputed until no more jumps need to be widened. Loads and stores
+// of locals 0 to 3 use the short forms, and locals above 255 use wide.
+//
+// Every method gets a LineNumberTable from the source lines of its
+// instructions, a LocalVariableTable from its .var directives and a
+// StackMapTable from the frames StackMapFrames computes for it. With
+// the stack map the class can have version 52, which the JVM verifies
+// by checking the frames in one pass rather than by inferring them.
+// Each frame is written in the shortest form that describes its change
+// from the previous one.
+
+package VC.CodeGen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import VC.ErrorReporter;
+
+final class ClassFileWriter {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 52, MINOR_VERSION = 0;
+
+	private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002,
+			ACC_PROTECTED = 0x0004, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010,
+			ACC_SUPER = 0x0020;
+
+	private static final int NOP = 0x00, ATHROW = 0xbf, WIDE = 0xc4, GOTO_W = 0xc8,
+			LDC_W = 0x13;
+
+	// the forms of stack map frames
+	private static final int SAME = 0, SAME_LOCALS_1_STACK_ITEM = 64,
+			SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247, CHOP = 251, SAME_FRAME_EXTENDED = 251,
+			APPEND = 251, FULL_FRAME = 255;
+
+	// the tags of the verification types
+	private static final int ITEM_TOP = 0, ITEM_INTEGER = 1, ITEM_FLOAT = 2,
+			ITEM_UNINITIALIZED_THIS = 6, ITEM_OBJECT = 7, ITEM_UNINITIALIZED = 8;
+
+	private final String sourceFile;
+
+	private ConstantPool pool;
+	private String thisClass;
+	private String superClass;
+	private int classAccess;
+	private ByteArrayOutputStream fields, methods;
+	private int fieldCount, methodCount;
+
+	ClassFileWriter(String sourceFile) {
+		this.sourceFile = sourceFile;
+	}
+
+	void write(Instruction[] code, int size, String filename) {
+		try {
+			byte[] bytes = toBytes(code, size);
+			FileOutputStream out = new FileOutputStream(filename);
+			out.write(bytes);
+			out.close();
+		} catch (IOException e) {
+			throw new ErrorReporter.CompilationAborted("Error writing class file: " + e);
+		}
+	}
+
+	byte[] toBytes(Instruction[] code, int size) {
+		try {
+			return classFile(code, size);
+		} catch (IOException e) {
+			// a ByteArrayOutputStream does not throw
+			throw new ErrorReporter.CompilationAborted("cannot write the class file: " + e);
+		}
+	}
+
+	private byte[] classFile(Instruction[] code, int size) throws IOException {
+		pool = new ConstantPool();
+		fields = new ByteArrayOutputStream();
+		methods = new ByteArrayOutputStream();
+		fieldCount = methodCount = 0;
+		superClass = "java/lang/Object";
+
+		for (int addr = 0; addr < size; addr++) {
+			Instruction inst = code[addr];
+			if (inst.isDirective(JVM.CLASS)) {
+				thisClass = inst.args[inst.args.length - 1];
+				classAccess = access(inst.args) | ACC_SUPER;
+			} else if (inst.isDirective(JVM.SUPER)) {
+				superClass = inst.args[0];
+			} else if (inst.isDirective(".field")) {
+				// .field static name descriptor
+				DataOutputStream out = new DataOutputStream(fields);
+				out.writeShort(access(inst.args));
+				out.writeShort(pool.utf8(inst.args[inst.args.length - 2]));
+				out.writeShort(pool.utf8(inst.args[inst.args.length - 1]));
+				out.writeShort(0);
+				fieldCount++;
+			} else if (inst.isDirective(JVM.METHOD_START)) {
+				int end = addr;
+				while (!code[end].isDirective(JVM.METHOD_END))
+					end++;
+				writeMethod(code, addr, end);
+				methodCount++;
+				addr = end;
+			}
+		}
+
+		int thisIndex = pool.classRef(thisClass);
+		int superIndex = pool.classRef(superClass);
+		int sourceName = pool.utf8("SourceFile");
+		int sourceIndex = pool.utf8(sourceFile);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeShort(MINOR_VERSION);
+		out.writeShort(MAJOR_VERSION);
+		pool.write(out);
+		out.writeShort(classAccess);
+		out.writeShort(thisIndex);
+		out.writeShort(superIndex);
+		out.writeShort(0); // interfaces
+		out.writeShort(fieldCount);
+		fields.writeTo(out);
+		out.writeShort(methodCount);
+		methods.writeTo(out);
+		out.writeShort(1);
+		out.writeShort(sourceName);
+		out.writeInt(2);
+		out.writeShort(sourceIndex);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static int access(String[] args) {
+		int flags = 0;
+		for (String a : args)
+			if (a.equals("public"))
+				flags |= ACC_PUBLIC;
+			else if (a.equals("private"))
+				flags |= ACC_PRIVATE;
+			else if (a.equals("protected"))
+				flags |= ACC_PROTECTED;
+			else if (a.equals("static"))
+				flags |= ACC_STATIC;
+			else if (a.equals("final"))
+				flags |= ACC_FINAL;
+		return flags;
+	}
+
+	// Methods
+
+	// writes the method from code[start], its .method, to code[end], its
+	// .end method
+	private void writeMethod(Instruction[] code, int start, int end) throws IOException {
+		String[] args = code[start].args;
+		String signature = args[args.length - 1];
+		int paren = signature.indexOf('(');
+
+		int maxStack = 0, maxLocals = 0;
+		ArrayList<Instruction> insts = new ArrayList<Instruction>();
+		ArrayList<Instruction> vars = new ArrayList<Instruction>();
+		for (int addr = start + 1; addr < end; addr++) {
+			Instruction inst = code[addr];
+			if (inst.isDirective(JVM.LIMIT)) {
+				int n = Integer.parseInt(inst.args[1]);
+				if (inst.args[0].equals("stack"))
+					maxStack = n;
+				else
+					maxLocals = n;
+			} else if (inst.isDirective(JVM.VAR)) {
+				vars.add(inst);
+			} else if (inst.isCode() || inst.isLabel()) {
+				insts.add(inst);
+			}
+		}
+
+		String name = signature.substring(0, paren);
+		String descriptor = signature.substring(paren);
+		MethodCode body = new MethodCode(insts);
+		byte[] bytecode = body.assemble(name, descriptor, (access(args) & ACC_STATIC) != 0,
+				maxLocals);
+		if (bytecode.length > JVM.MAX_SHORT)
+			throw new ErrorReporter.CompilationAborted("the code of " + signature + " is too large ("
+					+ bytecode.length + " bytes, at most " + JVM.MAX_SHORT + ")");
+		if (body.hasUnreachableCode)
+			maxStack = Math.max(maxStack, 1); // for the athrow
+
+		ByteArrayOutputStream attrs = new ByteArrayOutputStream();
+		DataOutputStream a = new DataOutputStream(attrs);
+		int attrCount = 0;
+		if (!body.lines.isEmpty()) {
+			a.writeShort(pool.utf8("LineNumberTable"));
+			a.writeInt(2 + 4 * body.lines.size());
+			a.writeShort(body.lines.size());
+			for (int[] l : body.lines) {
+				a.writeShort(l[0]);
+				a.writeShort(l[1]);
+			}
+			attrCount++;
+		}
+		if (!vars.isEmpty()) {
+			a.writeShort(pool.utf8("LocalVariableTable"));
+			a.writeInt(2 + 10 * vars.size());
+			a.writeShort(vars.size());
+			for (Instruction v : vars) {
+				// .var n is name descriptor from L1 to L2
+				int from = body.labels.get(v.args[5]);
+				int to = body.labels.get(v.args[7]);
+				a.writeShort(from);
+				a.writeShort(to - from);
+				a.writeShort(pool.utf8(v.args[2]));
+				a.writeShort(pool.utf8(v.args[3]));
+				a.writeShort(Integer.parseInt(v.args[0]));
+			}
+			attrCount++;
+		}
+		if (!body.frames.isEmpty()) {
+			byte[] table = stackMapTable(body.entryLocals, body.frames);
+			a.writeShort(pool.utf8("StackMapTable"));
+			a.writeInt(2 + table.length);
+			a.writeShort(body.frames.size());
+			a.write(table);
+			attrCount++;
+		}
+
+		DataOutputStream out = new DataOutputStream(methods);
+		out.writeShort(access(args));
+		out.writeShort(pool.utf8(name));
+		out.writeShort(pool.utf8(descriptor));
+		out.writeShort(1);
+		out.writeShort(pool.utf8("Code"));
+		out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2 + attrs.size());
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(bytecode.length);
+		out.write(bytecode);
+		out.writeShort(0); // exception table
+		out.writeShort(attrCount);
+		attrs.writeTo(out);
+	}
+
+	// the frames of a StackMapTable, each relative to the one before it,
+	// starting from the locals on entry to the method
+	private byte[] stackMapTable(String[] entryLocals, List<StackMapFrames.Frame> frames)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		String[] previous = entryLocals;
+		int last = -1;
+		for (StackMapFrames.Frame f : frames) {
+			int delta = f.offset - last - 1;
+			last = f.offset;
+			String[] locals = f.locals;
+			int common = 0;
+			while (common < locals.length && common < previous.length
+					&& locals[common].equals(previous[common]))
+				common++;
+			boolean sameLocals = common == locals.length && common == previous.length;
+
+			if (sameLocals && f.stack.length == 0) {
+				if (delta < 64) {
+					out.writeByte(SAME + delta);
+				} else {
+					out.writeByte(SAME_FRAME_EXTENDED);
+					out.writeShort(delta);
+				}
+			} else if (sameLocals && f.stack.length == 1) {
+				if (delta < 64) {
+					out.writeByte(SAME_LOCALS_1_STACK_ITEM + delta);
+				} else {
+					out.writeByte(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+					out.writeShort(delta);
+				}
+				writeType(f.stack[0], out);
+			} else if (f.stack.length == 0 && common == locals.length
+					&& previous.length - common <= 3) {
+				out.writeByte(CHOP - (previous.length - common));
+				out.writeShort(delta);
+			} else if (f.stack.length == 0 && common == previous.length
+					&& locals.length - common <= 3) {
+				out.writeByte(APPEND + (locals.length - common));
+				out.writeShort(delta);
+				for (int k = common; k < locals.length; k++)
+					writeType(locals[k], out);
+			} else {
+				out.writeByte(FULL_FRAME);
+				out.writeShort(delta);
+				out.writeShort(locals.length);
+				for (String t : locals)
+					writeType(t, out);
+				out.writeShort(f.stack.length);
+				for (String t : f.stack)
+					writeType(t, out);
+			}
+			previous = locals;
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	// a verification type, written as StackMapFrames describes
+	private void writeType(String type, DataOutputStream out) throws IOException {
+		if (type.equals(StackMapFrames.TOP)) {
+			out.writeByte(ITEM_TOP);
+		} else if (type.equals(StackMapFrames.INT)) {
+			out.writeByte(ITEM_INTEGER);
+		} else if (type.equals(StackMapFrames.FLOAT)) {
+			out.writeByte(ITEM_FLOAT);
+		} else if (type.equals(StackMapFrames.UNINITIALIZED_THIS)) {
+			out.writeByte(ITEM_UNINITIALIZED_THIS);
+		} else if (type.startsWith("U")) {
+			out.writeByte(ITEM_UNINITIALIZED);
+			out.writeShort(Integer.parseInt(type.substring(1)));
+		} else {
+			out.writeByte(ITEM_OBJECT);
+			out.writeShort(pool.classRef(type.substring(1)));
+		}
+	}
+
+	// The bytecode of a method, with the offsets of its labels, the
+	// offsets at which its source lines start and its stack map frames.
+	// Code that cannot be reached is replaced with nops ending in an
+	// athrow.
+
+	private final class MethodCode {
+
+		final ArrayList<Instruction> insts;
+		final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+		final ArrayList<int[]> lines = new ArrayList<int[]>();
+		final ArrayList<StackMapFrames.Frame> frames = new ArrayList<StackMapFrames.Frame>();
+		String[] entryLocals;
+		boolean hasUnreachableCode;
+
+		private int[] offsets;
+		private boolean[] wide; // jumps written as goto_w
+
+		MethodCode(ArrayList<Instruction> insts) {
+			this.insts = insts;
+		}
+
+		byte[] assemble(String name, String descriptor, boolean isStatic, int maxLocals)
+				throws IOException {
+			// the constant pool index decides between ldc and ldc_w
+			for (Instruction inst : insts)
+				if (inst.isCode())
+					operandIndex(inst);
+
+			offsets = new int[insts.size()];
+			wide = new boolean[insts.size()];
+			boolean changed = true;
+			while (changed) {
+				layout();
+				changed = false;
+				for (int i = 0; i < insts.size(); i++) {
+					Instruction inst = insts.get(i);
+					if (inst.isCode() && inst.opcode.isJump() && !wide[i]) {
+						int offset = labels.get(inst.label) - offsets[i];
+						if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+							wide[i] = true;
+							changed = true;
+						}
+					}
+				}
+			}
+
+			StackMapFrames analysis = new StackMapFrames(insts, offsets, thisClass);
+			analysis.analyse(name, descriptor, isStatic, maxLocals);
+			entryLocals = analysis.entryLocals();
+			frames.addAll(analysis.frames());
+			// the instruction after a goto_w that a conditional jump skips
+			for (int i = 0; i < insts.size(); i++)
+				if (wide[i] && insts.get(i).opcode.isConditional() && analysis.frameAt(i + 1) != null)
+					frames.add(analysis.frameAt(i + 1));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			int line = 0;
+			boolean reachable = true;
+			for (int i = 0; i < insts.size(); i++) {
+				Instruction inst = insts.get(i);
+				if (!inst.isCode())
+					continue;
+				if (!analysis.isReachable(i)) {
+					if (reachable)
+						frames.add(StackMapFrames.unreachable(offsets[i]));
+					reachable = false;
+					hasUnreachableCode = true;
+					for (int k = size(inst, i); k > 1; k--)
+						out.writeByte(NOP);
+					out.writeByte(endsUnreachableCode(analysis, i) ? ATHROW : NOP);
+					continue;
+				}
+				reachable = true;
+				if (inst.line > 0 && inst.line != line) {
+					line = inst.line;
+					lines.add(new int[] {offsets[i], line});
+				}
+				encode(inst, i, out);
+			}
+			out.flush();
+			Collections.sort(frames, new Comparator<StackMapFrames.Frame>() {
+				public int compare(StackMapFrames.Frame f1, StackMapFrames.Frame f2) {
+					return f1.offset - f2.offset;
+				}
+			});
+			for (int k = frames.size() - 1; k > 0; k--)
+				if (frames.get(k).offset == frames.get(k - 1).offset)
+					frames.remove(k);
+			return bytes.toByteArray();
+		}
+
+		// true if insts[i] is the last of a stretch of unreachable code
+		private boolean endsUnreachableCode(StackMapFrames analysis, int i) {
+			for (int k = i + 1; k < insts.size(); k++)
+				if (insts.get(k).isCode())
+					return analysis.isReachable(k);
+			return true;
+		}
+
+		private void layout() {
+			int pc = 0;
+			for (int i = 0; i < insts.size(); i++) {
+				Instruction inst = insts.get(i);
+				offsets[i] = pc;
+				if (inst.isLabel())
+					labels.put(inst.label, pc);
+				else
+					pc += size(inst, i);
+			}
+		}
+
+		private int size(Instruction inst, int i) {
+			switch (inst.opcode.operand) {
+			case NONE:
+				return 1;
+			case LOCAL:
+				return inst.value <= 3 ? 1 : inst.value <= 255 ? 2 : 4;
+			case IINC:
+				return isByte(inst.value, inst.increment) ? 3 : 6;
+			case BYTE:
+			case ARRAY_TYPE:
+				return 2;
+			case CONSTANT:
+				return operandIndex(inst) <= 255 ? 2 : 3;
+			case LABEL:
+				if (!wide[i])
+					return 3;
+				return inst.is(Opcode.GOTO) ? 5 : 8;
+			default: // SHORT, FIELD, METHOD, CLASS
+				return 3;
+			}
+		}
+
+		private boolean isByte(int local, int increment) {
+			return local <= 255 && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE;
+		}
+
+		private void encode(Instruction inst, int i, DataOutputStream out) throws IOException {
+			Opcode op = inst.opcode;
+			switch (op.operand) {
+			case NONE:
+				out.writeByte(op.code);
+				break;
+			case LOCAL:
+				if (inst.value <= 3) {
+					out.writeByte(shortForm(op) + inst.value);
+				} else if (inst.value <= 255) {
+					out.writeByte(op.code);
+					out.writeByte(inst.value);
+				} else {
+					out.writeByte(WIDE);
+					out.writeByte(op.code);
+					out.writeShort(inst.value);
+				}
+				break;
+			case IINC:
+				if (isByte(inst.value, inst.increment)) {
+					out.writeByte(op.code);
+					out.writeByte(inst.value);
+					out.writeByte(inst.increment);
+				} else {
+					out.writeByte(WIDE);
+					out.writeByte(op.code);
+					out.writeShort(inst.value);
+					out.writeShort(inst.increment);
+				}
+				break;
+			case BYTE:
+				out.writeByte(op.code);
+				out.writeByte(inst.value);
+				break;
+			case SHORT:
+				out.writeByte(op.code);
+				out.writeShort(inst.value);
+				break;
+			case CONSTANT: {
+				int index = operandIndex(inst);
+				if (index <= 255) {
+					out.writeByte(op.code);
+					out.writeByte(index);
+				} else {
+					out.writeByte(LDC_W);
+					out.writeShort(index);
+				}
+				break;
+			}
+			case LABEL: {
+				int offset = labels.get(inst.label) - offsets[i];
+				if (!wide[i]) {
+					out.writeByte(op.code);
+					out.writeShort(offset);
+				} else if (inst.is(Opcode.GOTO)) {
+					out.writeByte(GOTO_W);
+					out.writeInt(offset);
+				} else {
+					// the opposite jump over a goto_w
+					out.writeByte(op.negate().code);
+					out.writeShort(8);
+					out.writeByte(GOTO_W);
+					out.writeInt(offset - 3);
+				}
+				break;
+			}
+			case ARRAY_TYPE:
+				out.writeByte(op.code);
+				out.writeByte(arrayType(inst.name));
+				break;
+			default: // FIELD, METHOD, CLASS
+				out.writeByte(op.code);
+				out.writeShort(operandIndex(inst));
+				break;
+			}
+		}
+	}
+
+	// iload_0, fload_0, ...
+	private static int shortForm(Opcode op) {
+		switch (op) {
+		case ILOAD: return 0x1a;
+		case FLOAD: return 0x22;
+		case ALOAD: return 0x2a;
+		case ISTORE: return 0x3b;
+		case FSTORE: return 0x43;
+		default: return 0x4b; // ASTORE
+		}
+	}
+
+	// the atype operand of newarray
+	private static int arrayType(String type) {
+		if (type.equals("boolean"))
+			return 4;
+		else if (type.equals("float"))
+			return 6;
+		else // if (type.equals("int"))
+			return 10;
+	}
+
+	// the constant pool entry an instruction refers to
+	private int operandIndex(Instruction inst) {
+		switch (inst.opcode.operand) {
+		case CONSTANT:
+			return pool.constant(inst.constant);
+		case FIELD:
+			return pool.memberRef(ConstantPool.FIELDREF, inst.owner, inst.name, inst.descriptor);
+		case METHOD:
+			return pool.memberRef(ConstantPool.METHODREF, inst.owner, inst.name, inst.descriptor);
+		case CLASS:
+			return pool.classRef(inst.owner);
+		default:
+			return 0;
+		}
+	}
+
+	// The constant pool. Every entry is keyed by its tag and contents so
+	// that it is entered only once.
+
+	private static final class ConstantPool {
+
+		static final int UTF8 = 1, INTEGER = 3, FLOAT = 4, CLASS = 7, STRING = 8,
+				FIELDREF = 9, METHODREF = 10, NAME_AND_TYPE = 12;
+
+		private final LinkedHashMap<String, Integer> indices =
+				new LinkedHashMap<String, Integer>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private int count = 1;
+
+		int utf8(String s) {
+			String key = UTF8 + ":" + s;
+			Integer index = indices.get(key);
+			if (index != null)
+				return index;
+			try {
+				out.writeByte(UTF8);
+				out.writeUTF(s);
+			} catch (IOException e) {
+				// more than 65535 bytes in modified UTF-8
+				throw new ErrorReporter.CompilationAborted("a string of " + s.length()
+						+ " characters is too long for the constant pool");
+			}
+			return enter(key);
+		}
+
+		int classRef(String name) {
+			return entry(CLASS, name, utf8(name));
+		}
+
+		int constant(Object c) {
+			if (c instanceof String)
+				return entry(STRING, (String) c, utf8((String) c));
+			String key = (c instanceof Integer ? INTEGER : FLOAT) + ":" + c;
+			Integer index = indices.get(key);
+			if (index != null)
+				return index;
+			try {
+				if (c instanceof Integer) {
+					out.writeByte(INTEGER);
+					out.writeInt((Integer) c);
+				} else {
+					out.writeByte(FLOAT);
+					out.writeInt(Float.floatToIntBits((Float) c));
+				}
+			} catch (IOException e) {
+				throw new ErrorReporter.CompilationAborted("cannot write the constant pool: " + e);
+			}
+			return enter(key);
+		}
+
+		int memberRef(int tag, String owner, String name, String descriptor) {
+			String key = tag + ":" + owner + "." + name + descriptor;
+			Integer index = indices.get(key);
+			if (index != null)
+				return index;
+			int cls = classRef(owner);
+			int nat = nameAndType(name, descriptor);
+			return entry(key, tag, cls, nat);
+		}
+
+		private int nameAndType(String name, String descriptor) {
+			String key = NAME_AND_TYPE + ":" + name + ":" + descriptor;
+			Integer index = indices.get(key);
+			if (index != null)
+				return index;
+			int n = utf8(name);
+			int d = utf8(descriptor);
+			return entry(key, NAME_AND_TYPE, n, d);
+		}
+
+		// an entry with one index
+		private int entry(int tag, String value, int index) {
+			String key = tag + ":" + value;
+			Integer i = indices.get(key);
+			if (i != null)
+				return i;
+			try {
+				out.writeByte(tag);
+				out.writeShort(index);
+			} catch (IOException e) {
+				throw new ErrorReporter.CompilationAborted("cannot write the constant pool: " + e);
+			}
+			return enter(key);
+		}
+
+		// an entry with two indices
+		private int entry(String key, int tag, int first, int second) {
+			try {
+				out.writeByte(tag);
+				out.writeShort(first);
+				out.writeShort(second);
+			} catch (IOException e) {
+				throw new ErrorReporter.CompilationAborted("cannot write the constant pool: " + e);
+			}
+			return enter(key);
+		}
+
+		private int enter(String key) {
+			if (count > JVM.MAX_SHORT - 1)
+				throw new ErrorReporter.CompilationAborted("the constant pool is full");
+			indices.put(key, count);
+			return count++;
+		}
+
+		void write(DataOutputStream dest) throws IOException {
+			dest.writeShort(count);
+			out.flush();
+			bytes.writeTo(dest);
+		}
+	}
+}
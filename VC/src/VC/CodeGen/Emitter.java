@@ -12,50 +12,109 @@
 
 package VC.CodeGen;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import VC.ASTs.*;
 import VC.ErrorReporter;
 import VC.StdEnvironment;
+import VC.IR.IRFunction;
+import VC.IR.IRProgram;
+import VC.Optimiser.ConstantFolder;
 
-public final class Emitter implements Visitor {
+public final class Emitter extends SwitchVisitor {
 
 	private ErrorReporter errorReporter;
 	private String inputFilename;
 	private String classname;
 	private String outputFilename;
-	private Map<String, String> arithmeticOp;
+	private Map<String, Opcode> arithmeticOp;
 	private Set<String> compOp;
-	private boolean isEmitRetForMain;
 
-	public Emitter(String inputFilename, ErrorReporter reporter) {
+	// false after a goto or a return until a label that is the target of
+	// an earlier jump in the same method; see emit(String)
+	private boolean isReachable;
+	private Set<String> jumpTargets;
+
+	// the source line of the statement being translated
+	private int line;
+
+	// the IR of the functions, if the program is optimised
+	private IRProgram program;
+
+	private StdEnvironment env;
+	private JVM jvm;
+
+	// rewrites the code of every method before it is written, if set
+	private Peephole peephole;
+	private boolean writeClassFile;
+	private boolean keepClassFile;
+	private byte[] classFile;
+	private boolean staticMethods;
+
+	// the directory the class file or .j is written to if classname is
+	// relative, or null for the current directory
+	private File directory;
+
+	// generate the methods on a ForkJoinPool if there are enough of them
+	private boolean parallel;
+
+	// the function being translated, and the label after its prologue
+	// to which a self tail call jumps
+	private FuncDecl function;
+	private String entryLabel;
+
+	// The code is generated into jvm, using the types of env set up by
+	// the checker.
+
+	public Emitter(String inputFilename, ErrorReporter reporter, StdEnvironment env, JVM jvm) {
 		this.inputFilename = inputFilename;
 		errorReporter = reporter;
+		this.env = env;
+		this.jvm = jvm;
 
-		int i = inputFilename.lastIndexOf('.');
-		if (i > 0)
-			classname = inputFilename.substring(0, i);
-		else
-			classname = inputFilename;
-		arithmeticOp = new HashMap<String, String>();
+		classname = className(inputFilename);
+		arithmeticOp = new HashMap<String, Opcode>();
 		compOp = new HashSet<String>();
 		initOpContainers();
-		isEmitRetForMain = false;
+		isReachable = true;
+		jumpTargets = new HashSet<String>();
+	}
+	// An emitter for the methods of the class that parent generates, with
+	// a code store of its own.
+
+	private Emitter(Emitter parent) {
+		inputFilename = parent.inputFilename;
+		errorReporter = parent.errorReporter;
+		classname = parent.classname;
+		env = parent.env;
+		program = parent.program;
+		staticMethods = parent.staticMethods;
+		jvm = new JVM();
+		arithmeticOp = parent.arithmeticOp;
+		compOp = parent.compOp;
+		isReachable = true;
+		jumpTargets = new HashSet<String>();
 	}
 
+
 	private void initOpContainers() {
-		arithmeticOp.put("i+", JVM.IADD);
-		arithmeticOp.put("i-", JVM.ISUB);
-		arithmeticOp.put("i*", JVM.IMUL);
-		arithmeticOp.put("i/", JVM.IDIV);
+		arithmeticOp.put("i+", Opcode.IADD);
+		arithmeticOp.put("i-", Opcode.ISUB);
+		arithmeticOp.put("i*", Opcode.IMUL);
+		arithmeticOp.put("i/", Opcode.IDIV);
 
-		arithmeticOp.put("f+", JVM.FADD);
-		arithmeticOp.put("f-", JVM.FSUB);
-		arithmeticOp.put("f*", JVM.FMUL);
-		arithmeticOp.put("f/", JVM.FDIV);
+		arithmeticOp.put("f+", Opcode.FADD);
+		arithmeticOp.put("f-", Opcode.FSUB);
+		arithmeticOp.put("f*", Opcode.FMUL);
+		arithmeticOp.put("f/", Opcode.FDIV);
 
 		compOp.add("i>");
 		compOp.add("i>=");
@@ -75,8 +134,80 @@ public final class Emitter implements Visitor {
 	// PRE: ast must be a Program node
 
 	public final void gen(AST ast) {
-		ast.visit(this, null); 
-		JVM.dump(classname + ".j");
+		dispatch(ast, null); 
+		if (peephole != null)
+			peephole.optimise(jvm);
+		String source = new File(inputFilename).getName();
+		if (keepClassFile)
+			classFile = new ClassFileWriter(source).toBytes(jvm.code, jvm.nextInstAddr);
+		else if (writeClassFile)
+			new ClassFileWriter(source).write(jvm.code, jvm.nextInstAddr, outputFile(".class"));
+		else
+			jvm.dump(outputFile(".j"));
+	}
+
+	// Generates the bodies of the functions from their IR rather than
+	// from the AST. Global variables are still translated from the AST.
+
+	public final void gen(AST ast, IRProgram program) {
+		this.program = program;
+		gen(ast);
+	}
+
+	public void setPeephole(Peephole peephole) {
+		this.peephole = peephole;
+	}
+
+	// Writes classname.class directly instead of classname.j.
+
+	public void setWriteClassFile(boolean writeClassFile) {
+		this.writeClassFile = writeClassFile;
+	}
+
+	// Keeps the class file in memory, to be returned by classFile(),
+	// instead of writing any file.
+
+	public void setKeepClassFile(boolean keepClassFile) {
+		this.keepClassFile = keepClassFile;
+	}
+
+	public byte[] classFile() {
+		return classFile;
+	}
+
+	// Compiles the functions other than main to static methods, called
+	// with invokestatic, so that main creates no vc$ object.
+
+	public void setStaticMethods(boolean staticMethods) {
+		this.staticMethods = staticMethods;
+	}
+
+	// the name of the class compiled from inputFilename, which is also
+	// the name of its output file without .j or .class
+
+	public static String className(String inputFilename) {
+		int i = inputFilename.lastIndexOf('.');
+		if (i > 0)
+			return inputFilename.substring(0, i);
+		else
+			return inputFilename;
+	}
+
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+	private String outputFile(String extension) {
+		if (directory == null || new File(classname).isAbsolute())
+			return classname + extension;
+		return new File(directory, classname + extension).getPath();
+	}
+
+	// Generates the methods of a program with at least PARALLEL_METHODS
+	// functions concurrently; see genMethods.
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
 	}
 
 	// Programs
@@ -122,12 +253,13 @@ public final class Emitter implements Visitor {
 			DeclList dlAST = (DeclList) list;
 			if (dlAST.D instanceof GlobalVarDecl) {
 				GlobalVarDecl vAST = (GlobalVarDecl) dlAST.D;
+				setLine(vAST);
 				// modified
 				if(vAST.T.isArrayType()) {
 					ArrayType arrayType = (ArrayType)vAST.T;
-					arrayType.visit(this, frame);
+					dispatch(arrayType, frame);
 					if(!vAST.E.isEmptyExpr()) {
-						vAST.E.visit(this, frame);
+						dispatch(vAST.E, frame);
 					}
 					emitPUTSTATIC(VCtoJavaType(arrayType), vAST.I.spelling);
 					frame.pop();
@@ -135,12 +267,12 @@ public final class Emitter implements Visitor {
 					continue;
 				}
 				if (!vAST.E.isEmptyExpr()) {
-					vAST.E.visit(this, frame);
+					dispatch(vAST.E, frame);
 				} else {
-					if (vAST.T.equals(StdEnvironment.floatType))
-						emit(JVM.FCONST_0);
+					if (vAST.T.equals(env.floatType))
+						emit(Opcode.FCONST_0);
 					else
-						emit(JVM.ICONST_0);
+						emit(Opcode.ICONST_0);
 					frame.push();
 				}
 				emitPUTSTATIC(VCtoJavaType(vAST.T), vAST.I.spelling);
@@ -151,33 +283,91 @@ public final class Emitter implements Visitor {
 
 		emit("");
 		emit("; set limits used by this method");
-		emit(JVM.LIMIT, "locals", frame.getNewIndex());
+		emit(JVM.LIMIT, "locals", frame.getMaximumLocals());
 
 		emit(JVM.LIMIT, "stack", frame.getMaximumStackSize());
-		emit(JVM.RETURN);
+		emit(Opcode.RETURN);
 		emit(JVM.METHOD_END, "method");
 
 		emit("");
 
 		// (3) Generate Java bytecode for the VC program
 
+		setLine(0); // the constructor has no source
 		emit("; standard constructor initializer ");
 		emit(JVM.METHOD_START, "public <init>()V");
 		emit(JVM.LIMIT, "stack 1");
 		emit(JVM.LIMIT, "locals 1");
-		emit(JVM.ALOAD_0);
-		emit(JVM.INVOKESPECIAL, "java/lang/Object/<init>()V");
-		emit(JVM.RETURN);
+		emitALOAD(0);
+		emit(Opcode.INVOKESPECIAL, "java/lang/Object/<init>()V");
+		emit(Opcode.RETURN);
 		emit(JVM.METHOD_END, "method");
 
-		return ast.FL.visit(this, o);
+		genMethods(ast.FL);
+		return null;
+	}
+
+	// Every function is translated by an emitter of its own into a code
+	// store of its own, with a Frame of its own. A function reads only
+	// the declarations of the program and changes only its own part of
+	// the AST (the indices of its variables) and its own IR, so the
+	// functions can be translated in any order, or concurrently. Their
+	// code is appended to the class in the order they are declared, so
+	// the class is the same either way.
+	//
+	// In parallel mode, a program with at least PARALLEL_METHODS
+	// functions has them translated on the ForkJoinPool the compiler runs
+	// on, or on the common pool.
+
+	static final int PARALLEL_METHODS = 16;
+
+	private void genMethods(List list) {
+		final ArrayList<FuncDecl> functions = new ArrayList<FuncDecl>();
+		while (!list.isEmpty()) {
+			DeclList dlAST = (DeclList) list;
+			if (dlAST.D instanceof FuncDecl)
+				functions.add((FuncDecl) dlAST.D);
+			list = dlAST.DL;
+		}
+
+		final Emitter[] emitters = new Emitter[functions.size()];
+		for (int k = 0; k < emitters.length; k++)
+			emitters[k] = new Emitter(this);
+
+		if (parallel && functions.size() >= PARALLEL_METHODS) {
+			final ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			for (int k = 0; k < emitters.length; k++) {
+				final int n = k;
+				tasks.add(new RecursiveAction() {
+					protected void compute() {
+						emitters[n].visitFuncDecl(functions.get(n), null);
+					}
+				});
+			}
+			RecursiveAction all = new RecursiveAction() {
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			};
+			if (ForkJoinTask.inForkJoinPool())
+				all.invoke();
+			else
+				ForkJoinPool.commonPool().invoke(all);
+		} else {
+			for (int k = 0; k < emitters.length; k++)
+				emitters[k].visitFuncDecl(functions.get(k), null);
+		}
+
+		for (Emitter e : emitters)
+			for (int addr = 0; addr < e.jvm.nextInstAddr; addr++)
+				jvm.append(e.jvm.code[addr]);
 	}
 
 	// Statements
 
 	public Object visitStmtList(StmtList ast, Object o) {
-		ast.S.visit(this, o);
-		ast.SL.visit(this, o);
+		dispatch(ast.S, o);
+		dispatch(ast.SL, o);
 		return null;
 	}
 
@@ -186,30 +376,38 @@ public final class Emitter implements Visitor {
 
 		String scopeStart = frame.getNewLabel();
 		String scopeEnd = frame.getNewLabel();
+		// the locals declared in this block are free again at its end,
+		// so sibling blocks share their indices
+		int firstLocal = frame.getLocalVarIndex();
 		frame.scopeStart.push(scopeStart);
 		frame.scopeEnd.push(scopeEnd);
 
-		emit(scopeStart + ":");
+		emitLabel(scopeStart);
 		if (ast.parent instanceof FuncDecl) {
 			if (((FuncDecl) ast.parent).I.spelling.equals("main")) {
 				emit(JVM.VAR, "0 is argv [Ljava/lang/String; from " + (String) frame.scopeStart.peek() + " to " +  (String) frame.scopeEnd.peek());
-				emit(JVM.VAR, "1 is vc$ L" + classname + "; from " + (String) frame.scopeStart.peek() + " to " +  (String) frame.scopeEnd.peek());
-				// Generate code for the initialiser vc$ = new classname();
-				emit(JVM.NEW, classname);
-				emit(JVM.DUP);
-				frame.push(2);
-				emit("invokenonvirtual", classname + "/<init>()V");
-				frame.pop();
-				emit(JVM.ASTORE_1);
-				frame.pop();
+				if (frame.hasReceiver()) {
+					emit(JVM.VAR, frame.getReceiver() + " is vc$ L" + classname + "; from " + (String) frame.scopeStart.peek() + " to " +  (String) frame.scopeEnd.peek());
+					// Generate code for the initialiser vc$ = new classname();
+					emit(Opcode.NEW, classname);
+					emit(Opcode.DUP);
+					frame.push(2);
+					emit(Opcode.INVOKESPECIAL, classname + "/<init>()V");
+					frame.pop();
+					emitASTORE(frame.getReceiver());
+					frame.pop();
+				}
 			} else {
-				emit(JVM.VAR, "0 is this L" + classname + "; from " + (String) frame.scopeStart.peek() + " to " +  (String) frame.scopeEnd.peek());
-				((FuncDecl) ast.parent).PL.visit(this, o);
+				if (frame.hasReceiver())
+					emit(JVM.VAR, frame.getReceiver() + " is this L" + classname + "; from " + (String) frame.scopeStart.peek() + " to " +  (String) frame.scopeEnd.peek());
+				dispatch(((FuncDecl) ast.parent).PL, o);
+				emitLabel(entryLabel);
 			}
 		}
-		ast.DL.visit(this, o);
-		ast.SL.visit(this, o);
-		emit(scopeEnd + ":");
+		dispatch(ast.DL, o);
+		dispatch(ast.SL, o);
+		emitLabel(scopeEnd);
+		frame.setLocalVarIndex(firstLocal);
 
 		frame.scopeStart.pop();
 		frame.scopeEnd.pop();
@@ -219,6 +417,7 @@ public final class Emitter implements Visitor {
 	@Override
 	public Object visitReturnStmt(ReturnStmt ast, Object o) {
 		Frame frame = (Frame)o;
+		setLine(ast);
 		/*
   int main() { return 0; } must be interpretted as 
   public static void main(String[] args) { return ; }
@@ -227,23 +426,54 @@ public final class Emitter implements Visitor {
 		 */
 
 		if (frame.isMain())  {
-			emit(JVM.RETURN);
-			isEmitRetForMain = true;
+			emit(Opcode.RETURN);
 			return null;
 		}
 		if(ast.E.isEmptyExpr()) {
-			emit(JVM.RETURN);
+			emit(Opcode.RETURN);
+		} else if(isSelfCall(ast.E)) {
+			emitTailCall((CallExpr) ast.E, frame);
 		} else {
-			ast.E.visit(this, o);
+			dispatch(ast.E, o);
 			if(ast.E.type.isFloatType()) {
-				emit(JVM.FRETURN);
+				emit(Opcode.FRETURN);
 			} else {
-				emit(JVM.IRETURN);
+				emit(Opcode.IRETURN);
 			}
+			frame.pop();
 		}
 		return null;
 	}
 
+	private boolean isSelfCall(Expr e) {
+		return e instanceof CallExpr && ((CallExpr) e).I.decl == function;
+	}
+
+	// return f(args) in f, or a call f(args) in tail position if f
+	// returns void: the arguments are evaluated, then stored into the
+	// parameters, and the body is run again from the start, so that the
+	// recursion takes no stack
+	private void emitTailCall(CallExpr call, Frame frame) {
+		dispatch(call.AL, frame);
+		ArrayList<ParaDecl> params = new ArrayList<ParaDecl>();
+		List pl = function.PL;
+		while (!pl.isEmpty()) {
+			params.add(((ParaList) pl).P);
+			pl = ((ParaList) pl).PL;
+		}
+		for (int k = params.size() - 1; k >= 0; k--) {
+			ParaDecl p = params.get(k);
+			if (p.T.isArrayType())
+				emitASTORE(p.index);
+			else if (p.T.isFloatType())
+				emitFSTORE(p.index);
+			else
+				emitISTORE(p.index);
+			frame.pop();
+		}
+		emit(Opcode.GOTO, entryLabel);
+	}
+
 	public Object visitEmptyStmtList(EmptyStmtList ast, Object o) {
 		return null;
 	}
@@ -263,60 +493,61 @@ public final class Emitter implements Visitor {
 		String fname = ast.I.spelling;
 
 		if (fname.equals("getInt")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System.getInt()I");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/getInt()I");
 			frame.push();
 		} else if (fname.equals("putInt")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System.putInt(I)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putInt(I)V");
 			frame.pop();
 		} else if (fname.equals("putIntLn")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putIntLn(I)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putIntLn(I)V");
 			frame.pop();
 		} else if (fname.equals("getFloat")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/getFloat()F");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/getFloat()F");
 			frame.push();
 		} else if (fname.equals("putFloat")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putFloat(F)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putFloat(F)V");
 			frame.pop();
 		} else if (fname.equals("putFloatLn")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putFloatLn(F)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putFloatLn(F)V");
 			frame.pop();
 		} else if (fname.equals("putBool")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putBool(Z)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putBool(Z)V");
 			frame.pop();
 		} else if (fname.equals("putBoolLn")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putBoolLn(Z)V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putBoolLn(Z)V");
 			frame.pop();
 		} else if (fname.equals("putString")) {
-			ast.AL.visit(this, o);
-			emit(JVM.INVOKESTATIC, "VC/lang/System/putString(Ljava/lang/String;)V");
+			dispatch(ast.AL, o);
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putString(Ljava/lang/String;)V");
 			frame.pop();
 		} else if (fname.equals("putStringLn")) {
-			ast.AL.visit(this, o);
-			emit(JVM.INVOKESTATIC, "VC/lang/System/putStringLn(Ljava/lang/String;)V");
+			dispatch(ast.AL, o);
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putStringLn(Ljava/lang/String;)V");
 			frame.pop();
 		} else if (fname.equals("putLn")) {
-			ast.AL.visit(this, o); // push args (if any) into the op stack
-			emit("invokestatic VC/lang/System/putLn()V");
+			dispatch(ast.AL, o); // push args (if any) into the op stack
+			emit(Opcode.INVOKESTATIC, "VC/lang/System/putLn()V");
 		} else { // programmer-defined functions
 
 			FuncDecl fAST = (FuncDecl) ast.I.decl;
 
-			// all functions except main are assumed to be instance methods
-			if (frame.isMain()) 
-				emit("aload_1"); // vc.funcname(...)
-			else
-				emit("aload_0"); // this.funcname(...)
-			frame.push();
+			// all functions except main are instance methods, called
+			// on vc$ in main and on this in the others, unless they are
+			// compiled to static methods
+			if (frame.hasReceiver()) {
+				emitALOAD(frame.getReceiver());
+				frame.push();
+			}
 
-			ast.AL.visit(this, o);
+			dispatch(ast.AL, o);
 
 			String retType = VCtoJavaType(fAST.T);
 
@@ -328,11 +559,11 @@ public final class Emitter implements Visitor {
 			int paraNumber = 0;
 			List fpl = fAST.PL;
 			while (! fpl.isEmpty()) {
-				if (((ParaList) fpl).P.T.equals(StdEnvironment.booleanType))
+				if (((ParaList) fpl).P.T.equals(env.booleanType))
 					argsTypes.append("Z");         
-				else if (((ParaList) fpl).P.T.equals(StdEnvironment.intType))
+				else if (((ParaList) fpl).P.T.equals(env.intType))
 					argsTypes.append("I");
-				else if (((ParaList) fpl).P.T.equals(StdEnvironment.floatType))
+				else if (((ParaList) fpl).P.T.equals(env.floatType))
 					argsTypes.append("F"); 
 				else if(((ParaList) fpl).P.T.isArrayType()) {
 					ArrayType type = (ArrayType)((ParaList) fpl).P.T;
@@ -348,10 +579,10 @@ public final class Emitter implements Visitor {
 				fpl = ((ParaList) fpl).PL;
 			}
 
-			emit("invokevirtual", classname + "/" + fname + "(" + argsTypes + ")" + retType);
-			//frame.pop(argsTypes.length() + 1);
-			//System.out.println(paraNumber);
-			frame.pop(paraNumber);
+			emit(staticMethods ? Opcode.INVOKESTATIC : Opcode.INVOKEVIRTUAL,
+					classname + "/" + fname + "(" + argsTypes + ")" + retType);
+			// the arguments and the object reference
+			frame.pop(paraNumber + (frame.hasReceiver() ? 1 : 0));
 			
 			if (! retType.equals("V"))
 				frame.push();
@@ -364,30 +595,30 @@ public final class Emitter implements Visitor {
 	}
 
 	public Object visitIntExpr(IntExpr ast, Object o) {
-		ast.IL.visit(this, o);
+		dispatch(ast.IL, o);
 		return null;
 	}
 
 	public Object visitFloatExpr(FloatExpr ast, Object o) {
-		ast.FL.visit(this, o);
+		dispatch(ast.FL, o);
 		return null;
 	}
 
 	public Object visitBooleanExpr(BooleanExpr ast, Object o) {
-		ast.BL.visit(this, o);
+		dispatch(ast.BL, o);
 		return null;
 	}
 
 	public Object visitStringExpr(StringExpr ast, Object o) {
-		ast.SL.visit(this, o);
+		dispatch(ast.SL, o);
 		return null;
 	}
 
 	// Declarations
 
 	public Object visitDeclList(DeclList ast, Object o) {
-		ast.D.visit(this, o);
-		ast.DL.visit(this, o);
+		dispatch(ast.D, o);
+		dispatch(ast.DL, o);
 		return null;
 	}
 
@@ -398,29 +629,29 @@ public final class Emitter implements Visitor {
 	public Object visitFuncDecl(FuncDecl ast, Object o) {
 
 		Frame frame; 
+		setLine(ast);
 
 		if (ast.I.spelling.equals("main")) {
 
 			frame = new Frame(true);
 
-			// Assume that main has one String parameter and reserve 0 for it
-			frame.getNewIndex(); 
-
-			emit(JVM.METHOD_START, "public static main([Ljava/lang/String;)V"); 
+			// Assume that main has one String parameter and reserve 0 for it.
 			// Assume implicitly that
 			//      classname vc$; 
-			// appears before all local variable declarations.
-			// (1) Reserve 1 for this object reference.
+			// appears before all local variable declarations and reserve 1
+			// for this object reference, unless there is no object.
+			frame.reserveLocals(staticMethods);
 
-			frame.getNewIndex(); 
+			emit(JVM.METHOD_START, "public static main([Ljava/lang/String;)V"); 
 
 		} else {
 
 			frame = new Frame(false);
 
 			// all other programmer-defined functions are treated as if
-			// they were instance methods
-			frame.getNewIndex(); // reserve 0 for "this"
+			// they were instance methods, reserving 0 for "this", unless
+			// they are compiled to static methods
+			frame.reserveLocals(staticMethods);
 
 			String retType = VCtoJavaType(ast.T);
 
@@ -431,11 +662,11 @@ public final class Emitter implements Visitor {
 			StringBuffer argsTypes = new StringBuffer("");
 			List fpl = ast.PL;
 			while (! fpl.isEmpty()) {
-				if (((ParaList) fpl).P.T.equals(StdEnvironment.booleanType))
+				if (((ParaList) fpl).P.T.equals(env.booleanType))
 					argsTypes.append("Z");         
-				else if (((ParaList) fpl).P.T.equals(StdEnvironment.intType))
+				else if (((ParaList) fpl).P.T.equals(env.intType))
 					argsTypes.append("I");
-				else if (((ParaList) fpl).P.T.equals(StdEnvironment.floatType))
+				else if (((ParaList) fpl).P.T.equals(env.floatType))
 					argsTypes.append("F"); 
 				else if(((ParaList) fpl).P.T.isArrayType()) {
 					ArrayType type = (ArrayType)((ParaList) fpl).P.T;
@@ -450,38 +681,57 @@ public final class Emitter implements Visitor {
 				fpl = ((ParaList) fpl).PL;
 			}
 
-			emit(JVM.METHOD_START, ast.I.spelling + "(" + argsTypes + ")" + retType);
+			if (staticMethods)
+				emit(JVM.METHOD_START, "static", ast.I.spelling + "(" + argsTypes + ")" + retType);
+			else
+				emit(JVM.METHOD_START, ast.I.spelling + "(" + argsTypes + ")" + retType);
+		}
+
+		IRFunction irFunction = (program == null) ? null : program.function(ast);
+		if (irFunction != null) {
+			new IREmitter(this, classname, frame).emitFunction(irFunction);
+			emit("");
+			emit("; set limits used by this method");
+			emit(JVM.LIMIT, "locals", frame.getMaximumLocals());
+			emit(JVM.LIMIT, "stack", frame.getMaximumStackSize());
+			emit(JVM.METHOD_END, "method");
+			return null;
 		}
 
-		ast.S.visit(this, frame);
+		function = ast;
+		entryLabel = frame.getNewLabel();
+		dispatch(ast.S, frame);
 		
-		// JVM requires an explicit return in every method. 
+		// JVM requires that control never runs off the end of a method. 
 		// In VC, a function returning void may not contain a return, and
-		// a function returning int or float is not guaranteed to contain
-		// a return. Therefore, we add one at the end just to be sure.
+		// a function returning int or float is not guaranteed to execute
+		// a return. Therefore, we add one at the end if the end can be
+		// reached, returning 0 from an int or float function.
 
-		if (ast.T.equals(StdEnvironment.voidType)) {
+		if (isReachable) {
 			emit("");
-			emit("; return may not be present in a VC function returning void"); 
 			emit("; The following return inserted by the VC compiler");
-			emit(JVM.RETURN); 
-		} else if (ast.I.spelling.equals("main") && !isEmitRetForMain) {
-			// In case VC's main does not have a return itself
-			// if main function has a return statement, the return instruction has been generated
-			// in visitReturnStatement(). Therefore, in visitReturnStatement(), if the return instruction
-			// for main function has been generated, then do not generated return instruction here.
-			// This is trivial but important.
-			emit(JVM.RETURN);
-			isEmitRetForMain = true;
-		} else
-			emit(JVM.NOP); 
+			if (ast.T.equals(env.voidType) || frame.isMain()) {
+				emit(Opcode.RETURN); 
+			} else if (ast.T.equals(env.floatType)) {
+				emit(Opcode.FCONST_0);
+				frame.push();
+				emit(Opcode.FRETURN);
+				frame.pop();
+			} else {
+				emit(Opcode.ICONST_0);
+				frame.push();
+				emit(Opcode.IRETURN);
+				frame.pop();
+			}
+		}
 
 		emit("");
 		emit("; set limits used by this method");
-		emit(JVM.LIMIT, "locals", frame.getNewIndex());
+		emit(JVM.LIMIT, "locals", frame.getMaximumLocals());
 
 		emit(JVM.LIMIT, "stack", frame.getMaximumStackSize());
-		emit(".end method");
+		emit(JVM.METHOD_END, "method");
 
 		return null;
 	}
@@ -493,6 +743,7 @@ public final class Emitter implements Visitor {
 
 	public Object visitLocalVarDecl(LocalVarDecl ast, Object o) {
 		Frame frame = (Frame) o;
+		setLine(ast);
 		ast.index = frame.getNewIndex();
 		String T = VCtoJavaType(ast.T);
 
@@ -501,9 +752,9 @@ public final class Emitter implements Visitor {
 		// modified
 		if(ast.T.isArrayType()) {
 			ArrayType arrayType = (ArrayType) ast.T;
-			arrayType.visit(this, o);
+			dispatch(arrayType, o);
 			if(!ast.E.isEmptyExpr()) {
-				ast.E.visit(this, o);
+				dispatch(ast.E, o);
 			}
 			emitASTORE(ast.index);
 			frame.pop();
@@ -511,25 +762,15 @@ public final class Emitter implements Visitor {
 		}
 
 		if (!ast.E.isEmptyExpr()) {
-			ast.E.visit(this, o);
-
-			if (ast.T.equals(StdEnvironment.floatType)) {
-				// cannot call emitFSTORE(ast.I) since this I is not an
-				// applied occurrence 
-				if (ast.index >= 0 && ast.index <= 3) 
-					emit(JVM.FSTORE + "_" + ast.index); 
-				else
-					emit(JVM.FSTORE, ast.index); 
-				frame.pop();
-			} else {
-				// cannot call emitISTORE(ast.I) since this I is not an
-				// applied occurrence 
-				if (ast.index >= 0 && ast.index <= 3) 
-					emit(JVM.ISTORE + "_" + ast.index); 
-				else
-					emit(JVM.ISTORE, ast.index); 
-				frame.pop();
-			}
+			dispatch(ast.E, o);
+
+			// cannot call emitFSTORE(ast.I) or emitISTORE(ast.I) since
+			// this I is not an applied occurrence 
+			if (ast.T.equals(env.floatType))
+				emitFSTORE(ast.index); 
+			else
+				emitISTORE(ast.index); 
+			frame.pop();
 		}
 		return null;
 	}
@@ -537,8 +778,8 @@ public final class Emitter implements Visitor {
 	// Parameters
 
 	public Object visitParaList(ParaList ast, Object o) {
-		ast.P.visit(this, o);
-		ast.PL.visit(this, o);
+		dispatch(ast.P, o);
+		dispatch(ast.PL, o);
 		return null;
 	}
 
@@ -558,13 +799,13 @@ public final class Emitter implements Visitor {
 	// Arguments
 
 	public Object visitArgList(ArgList ast, Object o) {
-		ast.A.visit(this, o);
-		ast.AL.visit(this, o);
+		dispatch(ast.A, o);
+		dispatch(ast.AL, o);
 		return null;
 	}
 
 	public Object visitArg(Arg ast, Object o) {
-		ast.E.visit(this, o);
+		dispatch(ast.E, o);
 		return null;
 	}
 
@@ -623,7 +864,7 @@ public final class Emitter implements Visitor {
 
 	public Object visitStringLiteral(StringLiteral ast, Object o) {
 		Frame frame = (Frame) o;
-		emit(JVM.LDC, "\"" + ast.spelling + "\"");
+		emit(Opcode.LDC, ast.spelling);
 		frame.push();
 		return null;
 	}
@@ -661,30 +902,126 @@ public final class Emitter implements Visitor {
 	// The following method appends an instruction directly into the JVM 
 	// Code Store. It is called by all other overloaded emit methods.
 
-	private void emit(String s) {
-		JVM.append(new Instruction(s)); 
+	//
+	// Instructions that cannot be executed, because they follow a goto or
+	// a return and no jump to a later label has been emitted, are dropped.
+	// In structured VC code every label that is reached other than by
+	// falling through is the target of a jump emitted before it, except
+	// for the bodies of loops, which are entered from the test below
+	// them and are added to jumpTargets before they are emitted. Labels,
+	// directives and comments are always kept.
+	//
+	// Every instruction is tagged with the source line being translated.
+
+	void emit(Instruction inst) {
+		if (inst.isDirective(JVM.METHOD_START)) {
+			isReachable = true;
+			jumpTargets.clear();
+		} else if (inst.isLabel()) {
+			isReachable = isReachable || jumpTargets.contains(inst.label);
+		} else if (inst.isCode()) {
+			if (!isReachable)
+				return;
+			if (inst.opcode.isJump())
+				jumpTargets.add(inst.label);
+			if (inst.opcode.endsFlow())
+				isReachable = false;
+			inst.line = line;
+		}
+		jvm.append(inst); 
 	}
 
-	private void emit(String s1, String s2) {
-		emit(s1 + " " + s2);
+	void emitLabel(String label) {
+		emit(Instruction.label(label));
 	}
 
-	private void emit(String s1, int i) {
-		emit(s1 + " " + i);
+	void setLine(int line) {
+		this.line = line;
 	}
 
-	private void emit(String s1, float f) {
-		emit(s1 + " " + f);
+	// the source line of a statement, if it has one
+	private void setLine(AST ast) {
+		if (ast.position != null && ast.position.lineStart > 0)
+			line = ast.position.lineStart;
 	}
 
-	private void emit(String s1, String s2, int i) {
+	// A directive, such as .limit stack 4, a comment or a blank line
+
+	void emit(String s) {
+		if (s.isEmpty() || s.startsWith(";")) {
+			emit(Instruction.comment(s));
+		} else if (s.startsWith(".")) {
+			String[] parts = s.split(" ");
+			String[] args = new String[parts.length - 1];
+			System.arraycopy(parts, 1, args, 0, args.length);
+			emit(Instruction.directive(parts[0], args));
+		} else {
+			throw new IllegalArgumentException("not a directive: " + s);
+		}
+	}
+
+	void emit(String s1, String s2) {
+		emit(s1 + " " + s2);
+	}
+
+	void emit(String s1, String s2, int i) {
 		emit(s1 + " " + s2 + " " + i);
 	}
 
-	private void emit(String s1, String s2, String s3) {
+	void emit(String s1, String s2, String s3) {
 		emit(s1 + " " + s2 + " " + s3);
 	}
 
+	// Instructions
+
+	void emit(Opcode op) {
+		emit(Instruction.code(op));
+	}
+
+	// a local, the value of bipush or sipush, or an int constant
+	void emit(Opcode op, int i) {
+		switch (op.operand) {
+		case LOCAL:
+			emit(Instruction.local(op, i));
+			break;
+		case CONSTANT:
+			emit(Instruction.ldc(i));
+			break;
+		default:
+			emit(Instruction.push(op, i));
+		}
+	}
+
+	void emit(Opcode op, float f) {
+		emit(Instruction.ldc(f));
+	}
+
+	// a label, a class, an array type, a method such as
+	// VC/lang/System/putInt(I)V, or a String constant
+	void emit(Opcode op, String s) {
+		switch (op.operand) {
+		case LABEL:
+			emit(Instruction.jump(op, s));
+			break;
+		case METHOD:
+			int paren = s.indexOf('(');
+			int slash = s.lastIndexOf('/', paren);
+			emit(Instruction.invoke(op, s.substring(0, slash), s.substring(slash + 1, paren),
+					s.substring(paren)));
+			break;
+		case CONSTANT:
+			emit(Instruction.ldc(s));
+			break;
+		default:
+			emit(Instruction.type(op, s));
+		}
+	}
+
+	// a field of the class being generated
+	void emit(Opcode op, String field, String descriptor) {
+		emit(Instruction.field(op, classname, field, descriptor));
+	}
+
 	@Override
 	public Object visitEmptyExprList(EmptyExprList ast, Object o) {
 		return null;
@@ -694,63 +1031,114 @@ public final class Emitter implements Visitor {
 	@Override
 	public Object visitIfStmt(IfStmt ast, Object o) {
 		Frame frame = (Frame)o;
+		setLine(ast);
+		if (isLiteral(ast.E, true) || isLiteral(ast.E, false)) {
+			// only the branch that can be taken is translated
+			dispatch(isLiteral(ast.E, true) ? ast.S1 : ast.S2, o);
+			return null;
+		}
 		String L1 = frame.getNewLabel();
 		String L2 = frame.getNewLabel();
-		ast.E.visit(this, o);
-		emit(JVM.IFEQ, L1);
-		ast.S1.visit(this, o);
-		emit(JVM.GOTO, L2);
-		emit(L1 + ":");
-		ast.S2.visit(this, o);
-		emit(L2 + ":");
+		emitJump(ast.E, false, L1, frame);
+		dispatch(ast.S1, o);
+		emit(Opcode.GOTO, L2);
+		emitLabel(L1);
+		dispatch(ast.S2, o);
+		emitLabel(L2);
 		return null;
 	}
 
+	// Loops are rotated so that the test is at the bottom:
+	//
+	//      goto test             (unless the test is always true)
+	//   body:
+	//      S
+	//   continue:                (E3 of a for)
+	//   test:
+	//      if E goto body
+	//   break:
+	//
+	// Each iteration then executes a single conditional jump.
+
 	@Override
 	public Object visitWhileStmt(WhileStmt ast, Object o) {
 		Frame frame = (Frame)o;
+		if (isLiteral(ast.E, false))
+			return null;
 		String L1 = frame.getNewLabel();
 		String L2 = frame.getNewLabel();
-		frame.conStack.push(L1);
+		String L3 = frame.getNewLabel();
+		frame.conStack.push(L3);
 		frame.brkStack.push(L2);
-		emit(L1 + ":");
-		ast.E.visit(this, o);
-		emit(JVM.IFEQ, L2);
-		ast.S.visit(this, o);
-		emit(JVM.GOTO, L1);
-		emit(L2 + ":");
+		setLine(ast);
+		emitLoopBody(!isLiteral(ast.E, true), L1, L3);
+		dispatch(ast.S, o);
+		emitLabel(L3);
+		setLine(ast);
+		emitJump(ast.E, true, L1, frame);
+		emitLabel(L2);
+		frame.conStack.pop();
+		frame.brkStack.pop();
 		return null;
 	}
 
+	// jumps to the test if the loop may not be entered, and starts the
+	// body, which is reached from below
+	private void emitLoopBody(boolean hasTest, String body, String test) {
+		if (hasTest)
+			emit(Opcode.GOTO, test);
+		jumpTargets.add(body);
+		emitLabel(body);
+	}
+
 	private void generatePOPInst(Expr expr, Frame frame) {
 		if(!(expr instanceof CallExpr && expr.type.isVoidType() || expr instanceof EmptyExpr || expr instanceof AssignExpr)) {
-			emit(JVM.POP);
+			emit(Opcode.POP);
 			frame.pop();
 		}
 	}
 	
+	// Evaluates e for its side effects only. An expression that has none
+	// and cannot trap is not translated at all.
+	private void emitDiscarded(Expr e, Frame frame) {
+		if (ConstantFolder.isPure(e))
+			return;
+		dispatch(e, frame);
+		generatePOPInst(e, frame);
+	}
+
+	private static boolean isLiteral(Expr e, boolean value) {
+		return e instanceof BooleanExpr
+				&& ((BooleanExpr) e).BL.spelling.equals(value ? "true" : "false");
+	}
+
 	@Override
 	public Object visitForStmt(ForStmt ast, Object o) {
 		Frame frame = (Frame)o;
-		// L1 marks beginning of loop, L2 marks end of loop, L3 marks where continue statement should go 
+		// L1 marks the body, L2 the end of the loop, L3 where a continue
+		// statement goes and L4 the test
 		String L1 = frame.getNewLabel();
 		String L2 = frame.getNewLabel();
 		String L3 = frame.getNewLabel();
+		String L4 = frame.getNewLabel();
+		setLine(ast);
+		emitDiscarded(ast.E1, frame);
+		if (isLiteral(ast.E2, false))
+			return null;
 		frame.conStack.push(L3);
 		frame.brkStack.push(L2);
-		ast.E1.visit(this, o);
-		generatePOPInst(ast.E1, frame);
-		emit(L1 + ":");
-		ast.E2.visit(this, o);
-		if(!ast.E2.isEmptyExpr()) {
-			emit(JVM.IFEQ, L2);
-		}
-		ast.S.visit(this, o);
-		emit(L3 + ":");
-		ast.E3.visit(this, o);
-		generatePOPInst(ast.E3, frame);
-		emit(JVM.GOTO, L1);
-		emit(L2 + ":");
+		boolean hasTest = !ast.E2.isEmptyExpr() && !isLiteral(ast.E2, true);
+		emitLoopBody(hasTest, L1, L4);
+		dispatch(ast.S, o);
+		emitLabel(L3);
+		setLine(ast);
+		emitDiscarded(ast.E3, frame);
+		emitLabel(L4);
+		if (ast.E2.isEmptyExpr())
+			emit(Opcode.GOTO, L1);
+		else
+			emitJump(ast.E2, true, L1, frame);
+		emitLabel(L2);
 		frame.conStack.pop();
 		frame.brkStack.pop();
 		return null;
@@ -759,47 +1147,71 @@ public final class Emitter implements Visitor {
 	@Override
 	public Object visitBreakStmt(BreakStmt ast, Object o) {
 		Frame frame = (Frame)o;
-		emit(JVM.GOTO, frame.brkStack.peek());
+		setLine(ast);
+		emit(Opcode.GOTO, frame.brkStack.peek());
 		return null;
 	}
 
 	@Override
 	public Object visitContinueStmt(ContinueStmt ast, Object o) {
 		Frame frame = (Frame) o;
-		emit(JVM.GOTO, frame.conStack.peek());
+		setLine(ast);
+		emit(Opcode.GOTO, frame.conStack.peek());
 		return null;
 	}
 
 	@Override
 	public Object visitExprStmt(ExprStmt ast, Object o) {
-		Frame frame = (Frame) o;
-		ast.E.visit(this, o);
-		generatePOPInst(ast.E, frame);
+		setLine(ast);
+		if (function.T.isVoidType() && isSelfCall(ast.E) && isInTailPosition(ast))
+			emitTailCall((CallExpr) ast.E, (Frame) o);
+		else
+			emitDiscarded(ast.E, (Frame) o);
 		return null;
 	}
 
+	// true if the function returns right after s: s is the last
+	// statement of the body, or is followed by return, possibly from
+	// within compound and if statements but not loops
+	private static boolean isInTailPosition(Stmt s) {
+		AST node = s;
+		while (!(node.parent instanceof FuncDecl)) {
+			AST parent = node.parent;
+			if (parent instanceof StmtList) {
+				List rest = ((StmtList) parent).SL;
+				if (!rest.isEmpty() && !isReturn(((StmtList) rest).S))
+					return false;
+				while (parent instanceof StmtList)
+					parent = parent.parent;
+			} else if (!(parent instanceof IfStmt)) {
+				return false;
+			}
+			node = parent;
+		}
+		return true;
+	}
+
+	private static boolean isReturn(Stmt s) {
+		return s instanceof ReturnStmt && ((ReturnStmt) s).E.isEmptyExpr();
+	}
+
 	@Override
 	public Object visitUnaryExpr(UnaryExpr ast, Object o) {
 		// TODO Auto-generated method stub
 		Frame frame = (Frame) o;
-		String L1 = frame.getNewLabel();
-		String L2 = frame.getNewLabel();
-		ast.E.visit(this, o);
 		String op = ast.O.spelling;
+		if (op.equals("i!")) {
+			emitBooleanValue(ast, frame);
+			return null;
+		}
+		dispatch(ast.E, o);
 		// the size of stack does not change
-		if(op.equals("i!")) {
-			emit(JVM.IFNE, L1);
-			emitBCONST(true);
-			emit(JVM.GOTO, L2);
-			emit(L1);
-			emitBCONST(false);
-			emit(L2);
-		} else if (op.equals("i-")){
-			emit(JVM.INEG);
+		if (op.equals("i-")){
+			emit(Opcode.INEG);
 		} else if(op.equals("f-")) {
-			emit(JVM.FNEG);
+			emit(Opcode.FNEG);
 		} else if(op.equals("i2f")) {
-			emit(JVM.I2F);
+			emit(Opcode.I2F);
 		}
 		return null;
 	}
@@ -809,48 +1221,89 @@ public final class Emitter implements Visitor {
 		Frame frame = (Frame) o;
 		String op = ast.O.spelling;
 		if(arithmeticOp.containsKey(op)) {
-			ast.E1.visit(this, o);
-			ast.E2.visit(this, o);
+			dispatch(ast.E1, o);
+			dispatch(ast.E2, o);
 			emit(arithmeticOp.get(op));
 			// two operands are popped and result is pushed into operand stack, shrink the stack
 			frame.pop();
-		} else if(compOp.contains(op)) {
-			ast.E1.visit(this, o);
-			ast.E2.visit(this, o);
-			if(op.contains("f")) {
-				emitFCMP(op, frame);
-			} else if(op.contains("i")) {
-				emitIF_ICMPCOND(op, frame);
+		} else if (compOp.contains(op) || op.equals("i&&") || op.equals("i||")) {
+			emitBooleanValue(ast, frame);
+		}
+		return null;
+	}
+
+	// Conditions
+	//
+	// A condition is translated into jumping code: emitJump(e, sense, L)
+	// jumps to L if e evaluates to sense and falls through otherwise,
+	// without leaving e on the stack. A comparison branches directly with
+	// if_icmpXX, or with fcmpX and ifXX, and the operands of !, && and ||
+	// are translated in the same way, so no 0 or 1 is pushed only to be
+	// tested again. Any other expression is evaluated and tested.
+
+	private void emitJump(Expr e, boolean sense, String target, Frame frame) {
+		if (isLiteral(e, sense)) {
+			emit(Opcode.GOTO, target);
+			return;
+		} else if (isLiteral(e, !sense)) {
+			return;
+		}
+		String op = null;
+		if (e instanceof UnaryExpr)
+			op = ((UnaryExpr) e).O.spelling;
+		else if (e instanceof BinaryExpr)
+			op = ((BinaryExpr) e).O.spelling;
+
+		if (op != null && op.equals("i!")) {
+			emitJump(((UnaryExpr) e).E, !sense, target, frame);
+		} else if (op != null && (op.equals("i&&") || op.equals("i||"))) {
+			BinaryExpr b = (BinaryExpr) e;
+			// a && b jumps if both are true and skips b if a is false;
+			// a || b is the other way round
+			boolean isAnd = op.equals("i&&");
+			if (sense == isAnd) {
+				String skip = frame.getNewLabel();
+				emitJump(b.E1, !isAnd, skip, frame);
+				emitJump(b.E2, isAnd, target, frame);
+				emitLabel(skip);
+			} else {
+				emitJump(b.E1, !isAnd, target, frame);
+				emitJump(b.E2, !isAnd, target, frame);
+			}
+		} else if (op != null && compOp.contains(op)) {
+			BinaryExpr b = (BinaryExpr) e;
+			dispatch(b.E1, frame);
+			dispatch(b.E2, frame);
+			Opcode opcode;
+			if (op.startsWith("f")) {
+				// NaN is unordered: fcmpg makes < and <= false and fcmpl
+				// makes > and >= false
+				emit(op.startsWith("f>") ? Opcode.FCMPL : Opcode.FCMPG);
+				frame.pop();
+				opcode = compareWithZero(op);
+			} else {
+				opcode = compareInts(op);
 			}
+			emit(sense ? opcode : opcode.negate(), target);
+			frame.pop(op.startsWith("f") ? 1 : 2);
+		} else {
+			dispatch(e, frame);
+			emit(sense ? Opcode.IFNE : Opcode.IFEQ, target);
 			frame.pop();
-		} else if(op.equals("i&&")) {
-			String L1 = frame.getNewLabel();
-			String L2 = frame.getNewLabel();
-			ast.E1.visit(this, o);
-			emit(JVM.IFEQ, L1);
-			ast.E2.visit(this, o);
-			emit(JVM.IFEQ, L1);
-			emitICONST(1);
-			emit(JVM.GOTO, L2);
-			emit(L1 + ":");
-			emitICONST(0);
-			emit(L2 + ":");
-			frame.push();
-		} else if(op.equals("i||")) {
-			String L1 = frame.getNewLabel();
-			String L2 = frame.getNewLabel();
-			ast.E1.visit(this, o);
-			emit(JVM.IFNE, L1);
-			ast.E2.visit(this, o);
-			emit(JVM.IFNE, L1);
-			emitICONST(0);
-			emit(JVM.GOTO, L2);
-			emit(L1 + ":");
-			emitICONST(1);
-			emit(L2 + ":");
-			frame.push();
 		}
-		return null;
+	}
+
+	// pushes the value of a boolean expression as 0 or 1
+	private void emitBooleanValue(Expr e, Frame frame) {
+		String trueLabel = frame.getNewLabel();
+		String nextLabel = frame.getNewLabel();
+		emitJump(e, true, trueLabel, frame);
+		emit(Opcode.ICONST_0);
+		emit(Opcode.GOTO, nextLabel);
+		emitLabel(trueLabel);
+		emit(Opcode.ICONST_1);
+		frame.push();
+		emitLabel(nextLabel);
 	}
 
 	@Override
@@ -863,17 +1316,17 @@ public final class Emitter implements Visitor {
 			//+---------------------
 			//|arrayref index value
 			//+---------------------
-			emit(JVM.DUP);
+			emit(Opcode.DUP);
 			frame.push();
 			emitICONST(index);
 			frame.push();
-			exprList.E.visit(this, o);
+			dispatch(exprList.E, o);
 			if(exprList.E.type.isFloatType()) {
-				emit(JVM.FASTORE);
+				emit(Opcode.FASTORE);
 			} else if (exprList.E.type.isBooleanType()){
-				emit(JVM.BASTORE);
+				emit(Opcode.BASTORE);
 			} else {
-				emit(JVM.IASTORE);
+				emit(Opcode.IASTORE);
 			}
 			frame.pop(3);
 			index++;
@@ -893,14 +1346,14 @@ public final class Emitter implements Visitor {
 		//+--------------
 		//|arrayref index
 		//+--------------
-		ast.V.visit(this, o);
-		ast.E.visit(this, o);
+		dispatch(ast.V, o);
+		dispatch(ast.E, o);
 		if(ast.type.isFloatType()) {
-			emit(JVM.FALOAD);
+			emit(Opcode.FALOAD);
 		} else if (ast.type.isBooleanType()){
-			emit(JVM.BALOAD);
+			emit(Opcode.BALOAD);
 		} else {
-			emit(JVM.IALOAD);
+			emit(Opcode.IALOAD);
 		}
 		frame.pop();
 		return null;
@@ -908,35 +1361,57 @@ public final class Emitter implements Visitor {
 
 	@Override
 	public Object visitVarExpr(VarExpr ast, Object o) {
-		ast.V.visit(this, o);
+		dispatch(ast.V, o);
 		return null;
 	}
 
 	@Override
 	public Object visitAssignExpr(AssignExpr ast, Object o) {
 		Frame frame = (Frame) o;
+		// The value of an assignment is left on the stack only if it is
+		// used, as in a = b = 1, f(a = 1) or the test of a for statement.
+		// The first and last parts of a for statement discard it, and
+		// generatePOPInst relies on this.
+		boolean isValueUsed = !(ast.parent instanceof ExprStmt
+				|| ast.parent instanceof ForStmt && ((ForStmt) ast.parent).E2 != ast);
 		if(ast.E1 instanceof ArrayExpr) {
 			//+--------------------
 			//|arrayref index value
 			//+--------------------
 			ArrayExpr arrayExpr = (ArrayExpr) ast.E1;
-			arrayExpr.V.visit(this, o);
-			arrayExpr.E.visit(this, o);
-			ast.E2.visit(this, o);
+			dispatch(arrayExpr.V, o);
+			dispatch(arrayExpr.E, o);
+			dispatch(ast.E2, o);
+			if(isValueUsed) {
+				emit(Opcode.DUP_X2);
+				frame.push();
+			}
 			// Java has different array store instruction for integer, boolean and float
 			if(ast.E2.type.isFloatType()) {
-				emit(JVM.FASTORE);
+				emit(Opcode.FASTORE);
 			} else if (ast.E2.type.isBooleanType()){
-				emit(JVM.BASTORE);
+				emit(Opcode.BASTORE);
 			} else {
-				emit(JVM.IASTORE);
+				emit(Opcode.IASTORE);
 			}
 			frame.pop(3);
 		} else if(ast.E1 instanceof VarExpr) {
 			SimpleVar var = (SimpleVar)((VarExpr)ast.E1).V;
-			ast.E2.visit(this, o);
-			if(ast.parent instanceof AssignExpr) {
-				emit(JVM.DUP);
+			Integer increment = localIncrement(var, ast.E2);
+			if(increment != null) {
+				// i = i + c on an int local
+				int index = ((Decl) var.I.decl).index;
+				emitIINC(index, increment);
+				if(isValueUsed) {
+					emitILOAD(index);
+					frame.push();
+				}
+				return null;
+			}
+			dispatch(ast.E2, o);
+			if(isValueUsed) {
+				emit(Opcode.DUP);
+				frame.push();
 			}
 			if(var.I.decl instanceof GlobalVarDecl) {
 				emitPUTSTATIC(VCtoJavaType(var.type), var.I.spelling);
@@ -947,10 +1422,42 @@ public final class Emitter implements Visitor {
 					emitISTORE(var.I);
 				}
 			}
+			frame.pop();
 		}
 		return null;
 	}
 
+	// Returns c if e is var + c, c + var or var - c, where var is an int
+	// local and c is an int literal that fits the operand of iinc, and
+	// null otherwise. The value is negated for var - c.
+	private static Integer localIncrement(SimpleVar var, Expr e) {
+		if(var.I.decl instanceof GlobalVarDecl || !var.type.isIntType()
+				|| !(e instanceof BinaryExpr))
+			return null;
+		BinaryExpr b = (BinaryExpr) e;
+		String op = b.O.spelling;
+		Expr literal;
+		if(op.equals("i+") && isVar(b.E1, var))
+			literal = b.E2;
+		else if(op.equals("i+") && isVar(b.E2, var))
+			literal = b.E1;
+		else if(op.equals("i-") && isVar(b.E1, var))
+			literal = b.E2;
+		else
+			return null;
+		if(!(literal instanceof IntExpr))
+			return null;
+		long c = Long.parseLong(((IntExpr) literal).IL.spelling);
+		if(op.equals("i-"))
+			c = -c;
+		return (c >= Short.MIN_VALUE && c <= Short.MAX_VALUE) ? Integer.valueOf((int) c) : null;
+	}
+
+	private static boolean isVar(Expr e, SimpleVar var) {
+		return e instanceof VarExpr && ((VarExpr) e).V instanceof SimpleVar
+				&& ((SimpleVar) ((VarExpr) e).V).I.decl == var.I.decl;
+	}
+
 	@Override
 	public Object visitStringType(StringType ast, Object o) {
 		return null;
@@ -963,170 +1470,122 @@ public final class Emitter implements Visitor {
 		int length = Integer.parseInt(((IntExpr)ast.E).IL.spelling);
 		emitICONST(length);
 		frame.push();
-		emit(JVM.NEWARRAY, ast.T.toString());
+		emit(Opcode.NEWARRAY, ast.T.toString());
 		return null;
 	}
 
-	private void emitIF_ICMPCOND(String op, Frame frame) {
-		String opcode;
-
+	private static Opcode compareInts(String op) {
 		if (op.equals("i!="))
-			opcode = JVM.IF_ICMPNE;
+			return Opcode.IF_ICMPNE;
 		else if (op.equals("i=="))
-			opcode = JVM.IF_ICMPEQ;
+			return Opcode.IF_ICMPEQ;
 		else if (op.equals("i<"))
-			opcode = JVM.IF_ICMPLT;
+			return Opcode.IF_ICMPLT;
 		else if (op.equals("i<="))
-			opcode = JVM.IF_ICMPLE;
+			return Opcode.IF_ICMPLE;
 		else if (op.equals("i>"))
-			opcode = JVM.IF_ICMPGT;
+			return Opcode.IF_ICMPGT;
 		else // if (op.equals("i>="))
-			opcode = JVM.IF_ICMPGE;
-
-		String falseLabel = frame.getNewLabel();
-		String nextLabel = frame.getNewLabel();
-
-		emit(opcode, falseLabel);
-		frame.pop(2); 
-		emit("iconst_0");
-		emit("goto", nextLabel);
-		emit(falseLabel + ":");
-		emit(JVM.ICONST_1);
-		frame.push(); 
-		emit(nextLabel + ":");
+			return Opcode.IF_ICMPGE;
 	}
 
-	private void emitFCMP(String op, Frame frame) {
-		String opcode;
-
+	// the test of the result of fcmpX for a float comparison
+	private static Opcode compareWithZero(String op) {
 		if (op.equals("f!="))
-			opcode = JVM.IFNE;
+			return Opcode.IFNE;
 		else if (op.equals("f=="))
-			opcode = JVM.IFEQ;
+			return Opcode.IFEQ;
 		else if (op.equals("f<"))
-			opcode = JVM.IFLT;
+			return Opcode.IFLT;
 		else if (op.equals("f<="))
-			opcode = JVM.IFLE;
+			return Opcode.IFLE;
 		else if (op.equals("f>"))
-			opcode = JVM.IFGT;
+			return Opcode.IFGT;
 		else // if (op.equals("f>="))
-			opcode = JVM.IFGE;
-
-		String falseLabel = frame.getNewLabel();
-		String nextLabel = frame.getNewLabel();
-
-		emit(JVM.FCMPG);
-		frame.pop(2);
-		emit(opcode, falseLabel);
-		emit(JVM.ICONST_0);
-		emit("goto", nextLabel);
-		emit(falseLabel + ":");
-		emit(JVM.ICONST_1);
-		frame.push();
-		emit(nextLabel + ":");
-
+			return Opcode.IFGE;
 	}
 
-	private void emitILOAD(int index) {
-		if (index >= 0 && index <= 3) 
-			emit(JVM.ILOAD + "_" + index); 
-		else
-			emit(JVM.ILOAD, index); 
+	// The short forms such as iload_0 are chosen when the code is written.
+
+	void emitILOAD(int index) {
+		emit(Opcode.ILOAD, index); 
 	}
 
-	private void emitFLOAD(int index) {
-		if (index >= 0 && index <= 3) 
-			emit(JVM.FLOAD + "_"  + index); 
-		else
-			emit(JVM.FLOAD, index); 
+	void emitFLOAD(int index) {
+		emit(Opcode.FLOAD, index); 
 	}
 	
-	private void emitALOAD(int index) {
-		if (index >= 0 && index <= 3) 
-			emit(JVM.ALOAD + "_"  + index); 
-		else
-			emit(JVM.ALOAD, index); 
+	void emitALOAD(int index) {
+		emit(Opcode.ALOAD, index); 
 	}
 	
-	private void emitASTORE(int index) {
-		if(index >= 0 && index <= 3) {
-			emit(JVM.ASTORE + "_" + index);
-		} else {
-			emit(JVM.ASTORE, index);
-		}
+	void emitASTORE(int index) {
+		emit(Opcode.ASTORE, index);
 	}
 	
-	
-	private void emitGETSTATIC(String T, String I) {
-		emit(JVM.GETSTATIC, classname + "/" + I, T); 
+	void emitGETSTATIC(String T, String I) {
+		emit(Opcode.GETSTATIC, I, T); 
 	}
 
 	private void emitISTORE(Ident ast) {
-		int index;
-		if (ast.decl instanceof ParaDecl)
-			index = ((ParaDecl) ast.decl).index; 
-		else
-			index = ((LocalVarDecl) ast.decl).index; 
+		emitISTORE(((Decl) ast.decl).index);
+	}
 
-		if (index >= 0 && index <= 3) 
-			emit(JVM.ISTORE + "_" + index); 
-		else
-			emit(JVM.ISTORE, index); 
+	void emitISTORE(int index) {
+		emit(Opcode.ISTORE, index); 
 	}
 
 	private void emitFSTORE(Ident ast) {
-		int index;
-		if (ast.decl instanceof ParaDecl)
-			index = ((ParaDecl) ast.decl).index; 
-		else
-			index = ((LocalVarDecl) ast.decl).index; 
-		if (index >= 0 && index <= 3) 
-			emit(JVM.FSTORE + "_" + index); 
-		else
-			emit(JVM.FSTORE, index); 
+		emitFSTORE(((Decl) ast.decl).index);
+	}
+
+	void emitFSTORE(int index) {
+		emit(Opcode.FSTORE, index); 
+	}
+
+	void emitIINC(int index, int value) {
+		emit(Instruction.iinc(index, value));
 	}
 
-	private void emitPUTSTATIC(String T, String I) {
-		emit(JVM.PUTSTATIC, classname + "/" + I, T); 
+	void emitPUTSTATIC(String T, String I) {
+		emit(Opcode.PUTSTATIC, I, T); 
 	}
 
-	private void emitICONST(int value) {
-		if (value == -1)
-			emit(JVM.ICONST_M1); 
-		else if (value >= 0 && value <= 5) 
-			emit(JVM.ICONST + "_" + value); 
+	void emitICONST(int value) {
+		if (value >= -1 && value <= 5) 
+			emit(Opcode.iconst(value)); 
 		else if (value >= -128 && value <= 127) 
-			emit(JVM.BIPUSH, value); 
+			emit(Opcode.BIPUSH, value); 
 		else if (value >= -32768 && value <= 32767)
-			emit(JVM.SIPUSH, value); 
+			emit(Opcode.SIPUSH, value); 
 		else 
-			emit(JVM.LDC, value); 
+			emit(Opcode.LDC, value); 
 	}
 
-	private void emitFCONST(float value) {
+	void emitFCONST(float value) {
 		if(value == 0.0)
-			emit(JVM.FCONST_0); 
+			emit(Opcode.FCONST_0); 
 		else if(value == 1.0)
-			emit(JVM.FCONST_1); 
+			emit(Opcode.FCONST_1); 
 		else if(value == 2.0)
-			emit(JVM.FCONST_2); 
+			emit(Opcode.FCONST_2); 
 		else 
-			emit(JVM.LDC, value); 
+			emit(Opcode.LDC, value); 
 	}
 
 	private void emitBCONST(boolean value) {
 		if (value)
-			emit(JVM.ICONST_1);
+			emit(Opcode.ICONST_1);
 		else
-			emit(JVM.ICONST_0);
+			emit(Opcode.ICONST_0);
 	}
 
 	private String VCtoJavaType(Type t) {
-		if (t.equals(StdEnvironment.booleanType))
+		if (t.equals(env.booleanType))
 			return "Z";
-		else if (t.equals(StdEnvironment.intType))
+		else if (t.equals(env.intType))
 			return "I";
-		else if (t.equals(StdEnvironment.floatType))
+		else if (t.equals(env.floatType))
 			return "F";
 		else if(t.isArrayType()) {
 			ArrayType arrayType = (ArrayType) t;
@@ -1140,7 +1599,7 @@ public final class Emitter implements Visitor {
 				return null;
 			}
 		}
-		else // if (t.equals(StdEnvironment.voidType))
+		else // if (t.equals(env.voidType))
 			return "V";
 	}
 }
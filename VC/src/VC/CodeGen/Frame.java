@@ -6,6 +6,8 @@ package VC.CodeGen;
 
 import java.util.Stack;
 
+import VC.ErrorReporter;
+
  public class Frame {
 
     // true if the function being compiled is main and false otherwise
@@ -40,6 +42,22 @@ import java.util.Stack;
 
    private int localVarIndex;
 
+   // The index of the local holding the object whose methods the VC
+   // functions are compiled to: vc$ in main and this in the others, or
+   // -1 if they are compiled to static methods and there is no object.
+   //
+   // With static methods, the indices of a function with n parameters
+   // are those of a class method above, and main has argv at 0 and its
+   // first local variable at 1.
+
+   private int receiver;
+
+   // The number of local variables needed by the method: indices are
+   // reused once the scope of the variables holding them has ended,
+   // so this is the largest index ever handed out plus one.
+
+   private int maximumLocals;
+
    // Simulate the execution of byte code to determine at compile-time
    // the maximum depth of the operand stack for a method. 
    // See page 73, T Lindholm and F Yellin, The JVM spec, 2nd ed.
@@ -64,6 +82,8 @@ import java.util.Stack;
      this._main = _main;
      label = 0;
      localVarIndex = 0;
+     receiver = -1;
+     maximumLocals = 0;
      currentStackSize = 0;
      maximumStackSize = 0;
      conStack = new Stack<String>();
@@ -76,14 +96,56 @@ import java.util.Stack;
      return _main;
    }
 
+  // reserves the indices of the calling convention: argv and vc$ in
+  // main, or this in the other functions, leaving out vc$ and this if
+  // the functions are static methods
+
+   public void reserveLocals(boolean staticMethods) {
+     if (_main)
+       getNewIndex(); // argv
+     if (!staticMethods)
+       receiver = getNewIndex();
+   }
+
+   public boolean hasReceiver() {
+     return receiver >= 0;
+   }
+
+   public int getReceiver() {
+     return receiver;
+   }
+
   // returns the next new local variable index for this frame
 
    public int getNewIndex() { 
      if (localVarIndex >= JVM.MAX_LOCALVARINDEX) {
-       System.out.println("The maximum local variable index (" + JVM.MAX_LOCALVARINDEX + ") reached.");
-       System.exit(1);
+       throw new ErrorReporter.CompilationAborted(
+           "The maximum local variable index (" + JVM.MAX_LOCALVARINDEX + ") reached.");
      }
-     return localVarIndex++;
+     localVarIndex++;
+     if (localVarIndex > maximumLocals)
+       maximumLocals = localVarIndex;
+     return localVarIndex - 1;
+   }
+
+  // returns the index getNewIndex will return next
+
+   public int getLocalVarIndex() {
+     return localVarIndex;
+   }
+
+  // makes getNewIndex continue from index: a smaller index frees the
+  // indices of the variables whose scope has ended, a larger one
+  // reserves the indices in between
+
+   public void setLocalVarIndex(int index) {
+     localVarIndex = index;
+     if (localVarIndex > maximumLocals)
+       maximumLocals = localVarIndex;
+   }
+
+   public int getMaximumLocals() {
+     return maximumLocals;
    }
 
   // returns the next new label for this frame
@@ -103,12 +165,9 @@ import java.util.Stack;
    //System.out.println("\t push called "  + i );
      currentStackSize += i;
      if (currentStackSize < 0 || currentStackSize > JVM.MAX_OPSTACK) {
-       System.out.println("Invalid operand stack size.");
-       System.out.println("Current operand stack size is " + currentStackSize + ".");
-       System.out.println("You wanted to push " + i + ((i == 1) ? " operand" : " operands") + " to the stack.");
-       System.out.println("The size of the operand stack is limited to the range 0 .. " + JVM.MAX_OPSTACK + ".");
-       System.out.println("Good luck with debugging your code generator."); 
-       System.exit(1);
+       throw new ErrorReporter.CompilationAborted("Invalid operand stack size " + currentStackSize
+           + " after pushing " + i + ((i == 1) ? " operand" : " operands")
+           + " (the range is 0 .. " + JVM.MAX_OPSTACK + ").");
      }
 
      if (currentStackSize > maximumStackSize)
@@ -124,12 +183,9 @@ import java.util.Stack;
      currentStackSize -= i;
      
      if (currentStackSize < 0) {
-       System.out.println("Invalid operand stack size.");
-       System.out.println("Current operand stack size is " + currentStackSize + ".");
-       System.out.println("You wanted to pop " + i + ((i == 1) ? " operand" : " operands") + " to the stack.");
-       System.out.println("The size of the operand stack is limited to the range 0 .. " + JVM.MAX_OPSTACK + ".");
-       System.out.println("Good luck with debugging your code generator."); 
-       System.exit(1);
+       throw new ErrorReporter.CompilationAborted("Invalid operand stack size " + currentStackSize
+           + " after popping " + i + ((i == 1) ? " operand" : " operands")
+           + " (the range is 0 .. " + JVM.MAX_OPSTACK + ").");
      }
    }
   
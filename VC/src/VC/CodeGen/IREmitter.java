@@ -0,0 +1,549 @@
+/*
+ * IREmitter.java
+ */
+
+// Lowers the IR of one function into Jasmin instructions appended to
+// the JVM code store. Emitter writes the method header and limits and
+// calls this class for the body when the program has been translated
+// into the IR.
+//
+// Every phi, and every other value that is not used as explained below,
+// is held in a JVM local variable, which it shares with the values that
+// are never live at the same time (see SlotAllocator). A value used
+// exactly once, by the next instruction of the same block that has not
+// been placed on the stack already, is instead computed where it is used
+// and passed on the operand stack. For straight-line expressions this
+// reproduces the code of the expression tree.
+//
+// Phis are resolved by copies at the end of the predecessors: all
+// incoming values are pushed before any phi local is stored, which
+// gives the copies their parallel semantics. Critical edges into blocks
+// with phis are split first, so a block with copies always ends with a
+// jump. Jumps to a simple exit block become returns.
+//
+// An int phi updated by adding a constant at the end of a predecessor,
+// as the counter of a loop is, shares its local with the update, which
+// becomes an iinc; the copy into the phi is then not needed.
+
+package VC.CodeGen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import VC.CFG.BasicBlock;
+import VC.IR.*;
+
+final class IREmitter {
+
+	private final Emitter emitter;
+	private final String classname;
+	private final Frame frame;
+	private IRFunction fn;
+
+	// the local of each value held in a local
+	private HashMap<Value, Integer> slots;
+
+	// the values computed where they are used
+	private HashSet<Instr> onStack;
+
+	// the updates emitted as iinc -> the phi whose local they update
+	private HashMap<Instr, Instr> increments;
+
+	private HashMap<BasicBlock, String> labels;
+	private ArrayList<IRBlock> layout;
+
+	// true if jumps to the exit block are replaced by its return
+	private boolean inlineReturn;
+
+	IREmitter(Emitter emitter, String classname, Frame frame) {
+		this.emitter = emitter;
+		this.classname = classname;
+		this.frame = frame;
+	}
+
+	// PRE: the local variables reserved by the calling convention (this,
+	// or argv and vc$ for main, without this and vc$ if the functions are
+	// static methods) have been allocated in frame
+
+	void emitFunction(IRFunction f) {
+		fn = f;
+		onStack = new HashSet<Instr>();
+		increments = new HashMap<Instr, Instr>();
+		labels = new HashMap<BasicBlock, String>();
+
+		splitCriticalEdges();
+		layout = new ArrayList<IRBlock>();
+		for (BasicBlock b : fn.cfg.reversePostorder())
+			layout.add((IRBlock) b);
+		placeReturns();
+		for (IRBlock b : layout)
+			stackify(b);
+		for (IRBlock b : layout)
+			for (Instr i : b.instrs)
+				findIncrement(i);
+		int reserved = frame.getLocalVarIndex();
+		slots = new SlotAllocator(fn, layout, onStack, increments, inlineReturn)
+				.allocate(reserved);
+		int locals = reserved + fn.params.size();
+		for (int slot : slots.values())
+			locals = Math.max(locals, slot + 1);
+		frame.setLocalVarIndex(locals);
+		for (IRBlock b : layout)
+			labels.put(b, frame.getNewLabel());
+
+		if (fn.isMain() && frame.hasReceiver()) {
+			// vc$ = new classname();
+			emitter.emit(Opcode.NEW, classname);
+			emitter.emit(Opcode.DUP);
+			frame.push(2);
+			emitter.emit(Opcode.INVOKESPECIAL, classname + "/<init>()V");
+			frame.pop();
+			emitter.emitASTORE(frame.getReceiver());
+			frame.pop();
+		}
+		for (int k = 0; k < layout.size(); k++) {
+			IRBlock b = layout.get(k);
+			IRBlock next = (k + 1 < layout.size()) ? layout.get(k + 1) : null;
+			emitter.emitLabel(labels.get(b));
+			for (Instr i : b.instrs) {
+				if (i.isPhi() || onStack.contains(i))
+					continue;
+				if (i.line > 0)
+					emitter.setLine(i.line);
+				if (i.isTerminator())
+					emitTerminator(i, next);
+				else
+					emitStatement(i);
+			}
+		}
+	}
+
+	private void splitCriticalEdges() {
+		for (IRBlock b : fn.blocks()) {
+			if (b.succs.size() < 2)
+				continue;
+			for (int k = 0; k < b.succs.size(); k++) {
+				IRBlock s = b.succ(k);
+				if (s.preds.size() > 1 && !s.phis().isEmpty())
+					fn.splitEdge(b, s);
+			}
+		}
+	}
+
+	// The exit block holds at most a phi of the returned values and the
+	// return. If it can only be entered by jumps, every jump is replaced
+	// by a return of its own and the block is not emitted.
+	private void placeReturns() {
+		IRBlock exit = fn.exit();
+		int n = exit.phis().size();
+		inlineReturn = exit.instrs.size() == n + 1 && n <= 1;
+		if (!inlineReturn || !layout.contains(exit))
+			return;
+		for (BasicBlock p : exit.preds)
+			if (((IRBlock) p).terminator().op != Op.JUMP)
+				return;
+		layout.remove(exit);
+	}
+
+	// Marks the values that are passed on the operand stack, walking the
+	// block backwards: an operand may stay on the stack if it is defined
+	// by the instruction just before the code already claimed by its
+	// user, and used nowhere else. A jump replaced by a return uses the
+	// returned value.
+	private void stackify(IRBlock b) {
+		int pos = b.instrs.size() - 1;
+		Instr t = b.terminator();
+		if (t.op == Op.JUMP && isInlinedReturn(b.succ(0))
+				&& fn.exit().terminator().numOperands() > 0)
+			pos = stackify(returnedValue(fn.exit().terminator(), b), pos - 1, b);
+		while (pos >= 0)
+			pos = stackify(b.instrs.get(pos), pos - 1, b);
+	}
+
+	private int stackify(Instr user, int pos, IRBlock b) {
+		if (user.isPhi())
+			return pos;
+		for (int k = user.numOperands() - 1; k >= 0; k--)
+			pos = stackify(user.operand(k), pos, b);
+		return pos;
+	}
+
+	// claims v for the stack if it is defined at pos; returns the
+	// position before the code of v
+	private int stackify(Value v, int pos, IRBlock b) {
+		if (pos < 0 || v != b.instrs.get(pos))
+			return pos;
+		Instr def = (Instr) v;
+		if (def.isPhi() || def.users.size() != 1)
+			return pos;
+		onStack.add(def);
+		return stackify(def, pos - 1, b);
+	}
+
+	// Records i if it is add phi, c or sub phi, c for a constant c that
+	// fits iinc, and its only use is as the value of phi flowing in from
+	// the end of its block. The old value of phi must not be needed
+	// after i: neither later in the block nor by the other phi copies.
+	private void findIncrement(Instr i) {
+		if (i.type != IRType.INT || i.users.size() != 1 || onStack.contains(i))
+			return;
+		Instr phi = i.users.get(0);
+		if (!phi.isPhi() || i.block.terminator().op != Op.JUMP
+				|| i.block.succ(0) != phi.block)
+			return;
+		int index = phi.block.preds.indexOf(i.block);
+		if (phi.operand(index) != i || increment(i, phi) == null)
+			return;
+		for (Instr other : phi.block.phis())
+			if (other.operand(index) == phi)
+				return;
+		ArrayList<Instr> instrs = i.block.instrs;
+		for (int k = instrs.indexOf(i) + 1; k < instrs.size(); k++)
+			if (instrs.get(k).operands.contains(phi))
+				return;
+		increments.put(i, phi);
+	}
+
+	// the constant i adds to phi, or null
+	private static Integer increment(Instr i, Instr phi) {
+		Value c;
+		if (i.op == Op.ADD && i.operand(0) == phi)
+			c = i.operand(1);
+		else if (i.op == Op.ADD && i.operand(1) == phi)
+			c = i.operand(0);
+		else if (i.op == Op.SUB && i.operand(0) == phi)
+			c = i.operand(1);
+		else
+			return null;
+		if (!(c instanceof Constant))
+			return null;
+		long n = ((Constant) c).intValue;
+		if (i.op == Op.SUB)
+			n = -n;
+		return (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) ? Integer.valueOf((int) n) : null;
+	}
+
+	private boolean isInlinedReturn(IRBlock s) {
+		return s == fn.exit() && inlineReturn;
+	}
+
+	// the value returned by ret, seen from pred if ret is emitted in
+	// place of a jump from pred
+	private static Value returnedValue(Instr ret, IRBlock pred) {
+		Value v = ret.operand(0);
+		if (pred != null && v instanceof Instr && ((Instr) v).block == ret.block)
+			v = ((Instr) v).operand(((Instr) v).block.preds.indexOf(pred));
+		return v;
+	}
+
+	// Instructions
+
+	// emits an instruction that is not passed on the stack, and stores or
+	// discards its value
+	private void emitStatement(Instr i) {
+		if (increments.containsKey(i)) {
+			emitter.emitIINC(slots.get(i), increment(i, increments.get(i)));
+			return;
+		}
+		emitInstr(i);
+		if (i.type == IRType.VOID)
+			return;
+		if (slots.containsKey(i)) {
+			store(i.type, slots.get(i));
+		} else {
+			emitter.emit(Opcode.POP);
+			frame.pop();
+		}
+	}
+
+	// pushes the value v
+	private void load(Value v) {
+		if (v instanceof Constant) {
+			Constant c = (Constant) v;
+			switch (c.type) {
+			case FLOAT:
+				emitter.emitFCONST(c.floatValue);
+				break;
+			case STRING:
+				emitter.emit(Opcode.LDC, c.stringValue);
+				break;
+			default:
+				emitter.emitICONST(c.intValue);
+				break;
+			}
+			frame.push();
+		} else if (onStack.contains(v)) {
+			emitInstr((Instr) v);
+		} else {
+			int slot = slots.get(v);
+			if (v.type.isIntLike())
+				emitter.emitILOAD(slot);
+			else if (v.type == IRType.FLOAT)
+				emitter.emitFLOAD(slot);
+			else
+				emitter.emitALOAD(slot);
+			frame.push();
+		}
+	}
+
+	private void store(IRType type, int slot) {
+		if (type.isIntLike())
+			emitter.emitISTORE(slot);
+		else if (type == IRType.FLOAT)
+			emitter.emitFSTORE(slot);
+		else
+			emitter.emitASTORE(slot);
+		frame.pop();
+	}
+
+	private void loadOperands(Instr i) {
+		for (Value v : i.operands)
+			load(v);
+	}
+
+	// emits the code of i, leaving its value, if any, on the stack
+	private void emitInstr(Instr i) {
+		boolean isFloat = i.numOperands() > 0 && i.operand(0).type == IRType.FLOAT;
+		switch (i.op) {
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+			loadOperands(i);
+			emitter.emit(arithmetic(i.op, isFloat));
+			frame.pop();
+			break;
+		case NEG:
+			loadOperands(i);
+			emitter.emit(isFloat ? Opcode.FNEG : Opcode.INEG);
+			break;
+		case I2F:
+			loadOperands(i);
+			emitter.emit(Opcode.I2F);
+			break;
+		case NOT:
+			loadOperands(i);
+			emitter.emit(Opcode.ICONST_1);
+			frame.push();
+			emitter.emit(Opcode.IXOR);
+			frame.pop();
+			break;
+		case EQ:
+		case NE:
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+			loadOperands(i);
+			emitComparison(i.op, isFloat);
+			break;
+		case NEWARRAY:
+			loadOperands(i);
+			emitter.emit(Opcode.NEWARRAY, elementName(i.type.elementType()));
+			break;
+		case ALOAD:
+			loadOperands(i);
+			emitter.emit(i.type == IRType.FLOAT ? Opcode.FALOAD
+					: i.type == IRType.BOOL ? Opcode.BALOAD : Opcode.IALOAD);
+			frame.pop();
+			break;
+		case ASTORE: {
+			loadOperands(i);
+			IRType t = i.operand(2).type;
+			emitter.emit(t == IRType.FLOAT ? Opcode.FASTORE
+					: t == IRType.BOOL ? Opcode.BASTORE : Opcode.IASTORE);
+			frame.pop(3);
+			break;
+		}
+		case GETSTATIC:
+			emitter.emitGETSTATIC(i.type.descriptor, i.symbol);
+			frame.push();
+			break;
+		case PUTSTATIC:
+			loadOperands(i);
+			emitter.emitPUTSTATIC(i.operand(0).type.descriptor, i.symbol);
+			frame.pop();
+			break;
+		case CALL:
+			// all functions except main are instance methods, unless
+			// they are compiled to static methods
+			if (frame.hasReceiver()) {
+				emitter.emitALOAD(frame.getReceiver());
+				frame.push();
+			}
+			loadOperands(i);
+			emitter.emit(frame.hasReceiver() ? Opcode.INVOKEVIRTUAL : Opcode.INVOKESTATIC,
+					classname + "/" + i.callee.I.spelling + descriptor(i));
+			frame.pop(i.numOperands() + (frame.hasReceiver() ? 1 : 0));
+			if (i.type != IRType.VOID)
+				frame.push();
+			break;
+		case INTRINSIC:
+			loadOperands(i);
+			emitter.emit(Opcode.INVOKESTATIC, "VC/lang/System/" + i.symbol + descriptor(i));
+			frame.pop(i.numOperands());
+			if (i.type != IRType.VOID)
+				frame.push();
+			break;
+		default:
+			throw new IllegalStateException("cannot lower " + IRPrinter.format(i));
+		}
+	}
+
+	private static Opcode arithmetic(Op op, boolean isFloat) {
+		switch (op) {
+		case ADD:
+			return isFloat ? Opcode.FADD : Opcode.IADD;
+		case SUB:
+			return isFloat ? Opcode.FSUB : Opcode.ISUB;
+		case MUL:
+			return isFloat ? Opcode.FMUL : Opcode.IMUL;
+		default:
+			return isFloat ? Opcode.FDIV : Opcode.IDIV;
+		}
+	}
+
+	// Compares the two values on the stack and pushes 1 if op holds and
+	// 0 otherwise. fcmpl and fcmpg push -1 and 1 respectively when an
+	// operand is NaN, and are chosen so that every comparison with NaN
+	// except != is false.
+	private void emitComparison(Op op, boolean isFloat) {
+		String trueLabel = frame.getNewLabel();
+		String nextLabel = frame.getNewLabel();
+		if (isFloat) {
+			emitter.emit((op == Op.GT || op == Op.GE) ? Opcode.FCMPL : Opcode.FCMPG);
+			frame.pop();
+			emitter.emit(compareWithZero(op), trueLabel);
+			frame.pop();
+		} else {
+			emitter.emit(compareInts(op), trueLabel);
+			frame.pop(2);
+		}
+		emitter.emit(Opcode.ICONST_0);
+		emitter.emit(Opcode.GOTO, nextLabel);
+		emitter.emitLabel(trueLabel);
+		emitter.emit(Opcode.ICONST_1);
+		frame.push();
+		emitter.emitLabel(nextLabel);
+	}
+
+	private static Opcode compareInts(Op op) {
+		switch (op) {
+		case EQ:
+			return Opcode.IF_ICMPEQ;
+		case NE:
+			return Opcode.IF_ICMPNE;
+		case LT:
+			return Opcode.IF_ICMPLT;
+		case LE:
+			return Opcode.IF_ICMPLE;
+		case GT:
+			return Opcode.IF_ICMPGT;
+		default:
+			return Opcode.IF_ICMPGE;
+		}
+	}
+
+	private static Opcode compareWithZero(Op op) {
+		switch (op) {
+		case EQ:
+			return Opcode.IFEQ;
+		case NE:
+			return Opcode.IFNE;
+		case LT:
+			return Opcode.IFLT;
+		case LE:
+			return Opcode.IFLE;
+		case GT:
+			return Opcode.IFGT;
+		default:
+			return Opcode.IFGE;
+		}
+	}
+
+	private static String elementName(IRType t) {
+		switch (t) {
+		case FLOAT:
+			return "float";
+		case BOOL:
+			return "boolean";
+		default:
+			return "int";
+		}
+	}
+
+	// the method descriptor of a call
+	private static String descriptor(Instr call) {
+		StringBuffer sb = new StringBuffer("(");
+		for (Value v : call.operands)
+			sb.append(v.type.descriptor);
+		sb.append(")" + call.type.descriptor);
+		return sb.toString();
+	}
+
+	// Terminators
+
+	private void emitTerminator(Instr t, IRBlock next) {
+		IRBlock b = t.block;
+		switch (t.op) {
+		case JUMP: {
+			IRBlock s = b.succ(0);
+			if (isInlinedReturn(s)) {
+				emitReturn(s.terminator(), b);
+				break;
+			}
+			emitPhiCopies(b, s);
+			if (s != next)
+				emitter.emit(Opcode.GOTO, labels.get(s));
+			break;
+		}
+		case BRANCH: {
+			IRBlock ifTrue = b.succ(0);
+			IRBlock ifFalse = b.succ(1);
+			load(t.operand(0));
+			if (ifTrue == next) {
+				emitter.emit(Opcode.IFEQ, labels.get(ifFalse));
+			} else {
+				emitter.emit(Opcode.IFNE, labels.get(ifTrue));
+				if (ifFalse != next)
+					emitter.emit(Opcode.GOTO, labels.get(ifFalse));
+			}
+			frame.pop();
+			break;
+		}
+		default:
+			emitReturn(t, null);
+			break;
+		}
+	}
+
+	// Pushes the values flowing from b into the phis of s, then stores
+	// them into the locals of the phis. A phi receiving its own value,
+	// or an update emitted as iinc, needs no copy.
+	private void emitPhiCopies(IRBlock b, IRBlock s) {
+		int index = s.preds.indexOf(b);
+		ArrayList<Instr> copies = new ArrayList<Instr>();
+		for (Instr phi : s.phis()) {
+			if (phi.operand(index) != phi && increments.get(phi.operand(index)) != phi) {
+				load(phi.operand(index));
+				copies.add(phi);
+			}
+		}
+		for (int k = copies.size() - 1; k >= 0; k--)
+			store(copies.get(k).type, slots.get(copies.get(k)));
+	}
+
+	// Emits ret. If ret is emitted in place of a jump from pred, a phi
+	// operand is returned instead of the phi.
+	private void emitReturn(Instr ret, IRBlock pred) {
+		if (ret.numOperands() == 0) {
+			emitter.emit(Opcode.RETURN);
+			return;
+		}
+		Value v = returnedValue(ret, pred);
+		load(v);
+		emitter.emit(v.type == IRType.FLOAT ? Opcode.FRETURN : Opcode.IRETURN);
+		frame.pop();
+	}
+}
@@ -2,22 +2,190 @@
  * Instruction.java
  */
 
+// A line of the code store: a JVM instruction, a label, a directive
+// such as .method or .limit, or a comment.
+//
+// An instruction has an Opcode and the operand its Opcode.Operand
+// calls for:
+//
+//   LOCAL        value is the local
+//   IINC         value is the local and increment is added to it
+//   BYTE, SHORT  value is the value pushed
+//   CONSTANT     constant is an Integer, a Float or a String
+//   LABEL        label is the target
+//   FIELD        owner, name and descriptor of the field
+//   METHOD       owner, name and descriptor of the method
+//   CLASS        owner is the class
+//   ARRAY_TYPE   name is int, float or boolean
+//
+// A label has its name in label, a directive its name (e.g. ".limit")
+// in text and its arguments in args, and a comment its text, which is
+// empty for a blank line. line is the source line an instruction was
+// translated from, or 0 if it is unknown.
+//
+// Instructions are immutable except for their line; a rewrite creates
+// a new instruction.
+
 package VC.CodeGen;
 
-import java.io.PrintWriter;
+public final class Instruction {
+
+	public enum Kind { CODE, LABEL, DIRECTIVE, COMMENT }
+
+	public final Kind kind;
+	public final Opcode opcode;
+	public final int value;
+	public final int increment;
+	public final Object constant;
+	public final String label;
+	public final String owner, name, descriptor;
+	public final String text;
+	public final String[] args;
+
+	public int line;
+
+	private Instruction(Kind kind, Opcode opcode, int value, int increment, Object constant,
+			String label, String owner, String name, String descriptor, String text,
+			String[] args) {
+		this.kind = kind;
+		this.opcode = opcode;
+		this.value = value;
+		this.increment = increment;
+		this.constant = constant;
+		this.label = label;
+		this.owner = owner;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.text = text;
+		this.args = args;
+	}
+
+	private static Instruction code(Opcode op, Opcode.Operand operand, int value,
+			int increment, Object constant, String label, String owner, String name,
+			String descriptor) {
+		if (op.operand != operand)
+			throw new IllegalArgumentException(op.mnemonic + " takes a "
+					+ op.operand + " operand, not " + operand);
+		return new Instruction(Kind.CODE, op, value, increment, constant, label, owner, name,
+				descriptor, null, null);
+	}
+
+	public static Instruction code(Opcode op) {
+		return code(op, Opcode.Operand.NONE, 0, 0, null, null, null, null, null);
+	}
+
+	public static Instruction local(Opcode op, int local) {
+		return code(op, Opcode.Operand.LOCAL, local, 0, null, null, null, null, null);
+	}
+
+	public static Instruction iinc(int local, int increment) {
+		return code(Opcode.IINC, Opcode.Operand.IINC, local, increment, null, null, null, null,
+				null);
+	}
+
+	// bipush or sipush
+	public static Instruction push(Opcode op, int value) {
+		return code(op, op == Opcode.BIPUSH ? Opcode.Operand.BYTE : Opcode.Operand.SHORT, value,
+				0, null, null, null, null, null);
+	}
+
+	public static Instruction ldc(Object constant) {
+		return code(Opcode.LDC, Opcode.Operand.CONSTANT, 0, 0, constant, null, null, null, null);
+	}
+
+	public static Instruction jump(Opcode op, String label) {
+		return code(op, Opcode.Operand.LABEL, 0, 0, null, label, null, null, null);
+	}
+
+	public static Instruction field(Opcode op, String owner, String name, String descriptor) {
+		return code(op, Opcode.Operand.FIELD, 0, 0, null, null, owner, name, descriptor);
+	}
+
+	public static Instruction invoke(Opcode op, String owner, String name, String descriptor) {
+		return code(op, Opcode.Operand.METHOD, 0, 0, null, null, owner, name, descriptor);
+	}
+
+	// new of a class, or newarray of an element type
+	public static Instruction type(Opcode op, String type) {
+		if (op == Opcode.NEW)
+			return code(op, Opcode.Operand.CLASS, 0, 0, null, null, type, null, null);
+		return code(op, Opcode.Operand.ARRAY_TYPE, 0, 0, null, null, null, type, null);
+	}
+
+	public static Instruction label(String name) {
+		return new Instruction(Kind.LABEL, null, 0, 0, null, name, null, null, null, null, null);
+	}
+
+	public static Instruction directive(String name, String... args) {
+		return new Instruction(Kind.DIRECTIVE, null, 0, 0, null, null, null, null, null, name,
+				args);
+	}
+
+	public static Instruction comment(String text) {
+		return new Instruction(Kind.COMMENT, null, 0, 0, null, null, null, null, null, text,
+				null);
+	}
+
+	public boolean isCode() {
+		return kind == Kind.CODE;
+	}
+
+	public boolean isLabel() {
+		return kind == Kind.LABEL;
+	}
+
+	public boolean isDirective(String name) {
+		return kind == Kind.DIRECTIVE && text.equals(name);
+	}
+
+	public boolean is(Opcode op) {
+		return opcode == op;
+	}
+
+	// the same jump to another label
+	public Instruction retarget(String target) {
+		return at(jump(opcode, target));
+	}
+
+	// the same jump taken when this one is not
+	public Instruction negate() {
+		return at(jump(opcode.negate(), label));
+	}
 
-public class Instruction {
+	// inst, from the same source line as this instruction
+	public Instruction at(Instruction inst) {
+		inst.line = line;
+		return inst;
+	}
 
-  public String inst; // Jasmin assembly instruction
+	// {values popped, values pushed}
+	public int[] stackEffect() {
+		switch (opcode) {
+		case GETSTATIC:
+			return new int[] {0, 1};
+		case PUTSTATIC:
+			return new int[] {1, 0};
+		case INVOKEVIRTUAL:
+		case INVOKESPECIAL:
+		case INVOKESTATIC:
+			int args = 0;
+			for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+				char c = descriptor.charAt(i);
+				if (c == '[')
+					continue;
+				if (c == 'L')
+					i = descriptor.indexOf(';', i);
+				args++;
+			}
+			if (opcode != Opcode.INVOKESTATIC)
+				args++; // the receiver
+			return new int[] {args, descriptor.endsWith(")V") ? 0 : 1};
+		default:
+			return new int[] {opcode.pops, opcode.pushes};
+		}
+	}
 
-  public Instruction (String inst) {
-    this.inst = inst;
-  }
-  
-  public void write(PrintWriter writer) {
-    if (! (inst.startsWith(".") || inst.endsWith(":")))
-      writer.print("\t");
-    writer.println(inst);
-  }
- 
-}  
+	public String toString() {
+		return JasminWriter.format(this);
+	}
+}
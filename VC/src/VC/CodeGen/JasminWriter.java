@@ -0,0 +1,97 @@
+/*
+ * JasminWriter.java
+ */
+
+// Writes the code store as Jasmin assembly. A .line directive is
+// written before an instruction whose source line differs from that of
+// the previous instruction in the same method.
+
+package VC.CodeGen;
+
+import java.io.PrintWriter;
+
+final class JasminWriter {
+
+	private final PrintWriter writer;
+
+	JasminWriter(PrintWriter writer) {
+		this.writer = writer;
+	}
+
+	void write(Instruction[] code, int size) {
+		int line = 0;
+		for (int addr = 0; addr < size; addr++) {
+			Instruction inst = code[addr];
+			if (inst.isDirective(JVM.METHOD_START))
+				line = 0;
+			if (inst.isCode() && inst.line > 0 && inst.line != line) {
+				line = inst.line;
+				writer.println(JVM.LINE + " " + line);
+			}
+			if (inst.isCode())
+				writer.print("\t");
+			writer.println(format(inst));
+		}
+	}
+
+	static String format(Instruction inst) {
+		switch (inst.kind) {
+		case LABEL:
+			return inst.label + ":";
+		case COMMENT:
+			return inst.text;
+		case DIRECTIVE:
+			StringBuffer sb = new StringBuffer(inst.text);
+			for (String arg : inst.args)
+				sb.append(" ").append(arg);
+			return sb.toString();
+		default:
+			break;
+		}
+
+		String op = inst.opcode.mnemonic;
+		switch (inst.opcode.operand) {
+		case NONE:
+			return op;
+		case LOCAL:
+			return inst.value <= 3 ? op + "_" + inst.value : op + " " + inst.value;
+		case IINC:
+			return op + " " + inst.value + " " + inst.increment;
+		case BYTE:
+		case SHORT:
+			return op + " " + inst.value;
+		case CONSTANT:
+			if (inst.constant instanceof String)
+				return op + " " + quote((String) inst.constant);
+			return op + " " + inst.constant;
+		case LABEL:
+			return op + " " + inst.label;
+		case FIELD:
+			return op + " " + inst.owner + "/" + inst.name + " " + inst.descriptor;
+		case METHOD:
+			return op + " " + inst.owner + "/" + inst.name + inst.descriptor;
+		case CLASS:
+			return op + " " + inst.owner;
+		default: // ARRAY_TYPE
+			return op + " " + inst.name;
+		}
+	}
+
+	private static String quote(String s) {
+		StringBuffer sb = new StringBuffer("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':  sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\b': sb.append("\\b"); break;
+			case '\f': sb.append("\\f"); break;
+			default:   sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Opcode.java
+ */
+
+// The JVM instructions that the code generators emit, with their
+// Jasmin mnemonics, their opcodes in a class file, the kind of operand
+// they take and their effect on the operand stack.
+//
+// A load or store of a local is a single instruction whatever the
+// local; the short forms such as iload_0 are chosen when the code is
+// written out. The stack effect of getstatic, putstatic and the invokes
+// depends on their descriptor and is computed by Instruction.
+
+package VC.CodeGen;
+
+public enum Opcode {
+
+	NOP("nop", 0x00, Operand.NONE, 0, 0),
+
+	// constants
+	ICONST_M1("iconst_m1", 0x02, Operand.NONE, 0, 1),
+	ICONST_0("iconst_0", 0x03, Operand.NONE, 0, 1),
+	ICONST_1("iconst_1", 0x04, Operand.NONE, 0, 1),
+	ICONST_2("iconst_2", 0x05, Operand.NONE, 0, 1),
+	ICONST_3("iconst_3", 0x06, Operand.NONE, 0, 1),
+	ICONST_4("iconst_4", 0x07, Operand.NONE, 0, 1),
+	ICONST_5("iconst_5", 0x08, Operand.NONE, 0, 1),
+	FCONST_0("fconst_0", 0x0b, Operand.NONE, 0, 1),
+	FCONST_1("fconst_1", 0x0c, Operand.NONE, 0, 1),
+	FCONST_2("fconst_2", 0x0d, Operand.NONE, 0, 1),
+	BIPUSH("bipush", 0x10, Operand.BYTE, 0, 1),
+	SIPUSH("sipush", 0x11, Operand.SHORT, 0, 1),
+	LDC("ldc", 0x12, Operand.CONSTANT, 0, 1),
+
+	// locals
+	ILOAD("iload", 0x15, Operand.LOCAL, 0, 1),
+	FLOAD("fload", 0x17, Operand.LOCAL, 0, 1),
+	ALOAD("aload", 0x19, Operand.LOCAL, 0, 1),
+	ISTORE("istore", 0x36, Operand.LOCAL, 1, 0),
+	FSTORE("fstore", 0x38, Operand.LOCAL, 1, 0),
+	ASTORE("astore", 0x3a, Operand.LOCAL, 1, 0),
+	IINC("iinc", 0x84, Operand.IINC, 0, 0),
+
+	// arrays
+	IALOAD("iaload", 0x2e, Operand.NONE, 2, 1),
+	FALOAD("faload", 0x30, Operand.NONE, 2, 1),
+	BALOAD("baload", 0x33, Operand.NONE, 2, 1),
+	IASTORE("iastore", 0x4f, Operand.NONE, 3, 0),
+	FASTORE("fastore", 0x51, Operand.NONE, 3, 0),
+	BASTORE("bastore", 0x54, Operand.NONE, 3, 0),
+	NEWARRAY("newarray", 0xbc, Operand.ARRAY_TYPE, 1, 1),
+
+	// the operand stack
+	POP("pop", 0x57, Operand.NONE, 1, 0),
+	DUP("dup", 0x59, Operand.NONE, 1, 2),
+	DUP_X2("dup_x2", 0x5b, Operand.NONE, 3, 4),
+
+	// arithmetic
+	IADD("iadd", 0x60, Operand.NONE, 2, 1),
+	FADD("fadd", 0x62, Operand.NONE, 2, 1),
+	ISUB("isub", 0x64, Operand.NONE, 2, 1),
+	FSUB("fsub", 0x66, Operand.NONE, 2, 1),
+	IMUL("imul", 0x68, Operand.NONE, 2, 1),
+	FMUL("fmul", 0x6a, Operand.NONE, 2, 1),
+	IDIV("idiv", 0x6c, Operand.NONE, 2, 1),
+	FDIV("fdiv", 0x6e, Operand.NONE, 2, 1),
+	INEG("ineg", 0x74, Operand.NONE, 1, 1),
+	FNEG("fneg", 0x76, Operand.NONE, 1, 1),
+	IXOR("ixor", 0x82, Operand.NONE, 2, 1),
+	I2F("i2f", 0x86, Operand.NONE, 1, 1),
+	FCMPL("fcmpl", 0x95, Operand.NONE, 2, 1),
+	FCMPG("fcmpg", 0x96, Operand.NONE, 2, 1),
+
+	// control transfer
+	IFEQ("ifeq", 0x99, Operand.LABEL, 1, 0),
+	IFNE("ifne", 0x9a, Operand.LABEL, 1, 0),
+	IFLT("iflt", 0x9b, Operand.LABEL, 1, 0),
+	IFGE("ifge", 0x9c, Operand.LABEL, 1, 0),
+	IFGT("ifgt", 0x9d, Operand.LABEL, 1, 0),
+	IFLE("ifle", 0x9e, Operand.LABEL, 1, 0),
+	IF_ICMPEQ("if_icmpeq", 0x9f, Operand.LABEL, 2, 0),
+	IF_ICMPNE("if_icmpne", 0xa0, Operand.LABEL, 2, 0),
+	IF_ICMPLT("if_icmplt", 0xa1, Operand.LABEL, 2, 0),
+	IF_ICMPGE("if_icmpge", 0xa2, Operand.LABEL, 2, 0),
+	IF_ICMPGT("if_icmpgt", 0xa3, Operand.LABEL, 2, 0),
+	IF_ICMPLE("if_icmple", 0xa4, Operand.LABEL, 2, 0),
+	GOTO("goto", 0xa7, Operand.LABEL, 0, 0),
+	IRETURN("ireturn", 0xac, Operand.NONE, 1, 0),
+	FRETURN("freturn", 0xae, Operand.NONE, 1, 0),
+	RETURN("return", 0xb1, Operand.NONE, 0, 0),
+
+	// fields, methods and objects
+	GETSTATIC("getstatic", 0xb2, Operand.FIELD, 0, 1),
+	PUTSTATIC("putstatic", 0xb3, Operand.FIELD, 1, 0),
+	INVOKEVIRTUAL("invokevirtual", 0xb6, Operand.METHOD, -1, -1),
+	INVOKESPECIAL("invokespecial", 0xb7, Operand.METHOD, -1, -1),
+	INVOKESTATIC("invokestatic", 0xb8, Operand.METHOD, -1, -1),
+	NEW("new", 0xbb, Operand.CLASS, 0, 1);
+
+	public enum Operand {
+		NONE,
+		LOCAL,      // the number of a local
+		IINC,       // a local and a signed increment
+		BYTE,       // a signed 8-bit value
+		SHORT,      // a signed 16-bit value
+		CONSTANT,   // an int, float or String constant
+		LABEL,      // a jump target
+		FIELD,      // a class, a field name and a descriptor
+		METHOD,     // a class, a method name and a descriptor
+		CLASS,      // a class name
+		ARRAY_TYPE  // int, float or boolean
+	}
+
+	public final String mnemonic;
+	public final int code;
+	public final Operand operand;
+
+	// the values popped and pushed, or -1 if they depend on a descriptor
+	final int pops, pushes;
+
+	Opcode(String mnemonic, int code, Operand operand, int pops, int pushes) {
+		this.mnemonic = mnemonic;
+		this.code = code;
+		this.operand = operand;
+		this.pops = pops;
+		this.pushes = pushes;
+	}
+
+	public boolean isJump() {
+		return operand == Operand.LABEL;
+	}
+
+	public boolean isConditional() {
+		return isJump() && this != GOTO;
+	}
+
+	public boolean isReturn() {
+		return this == RETURN || this == IRETURN || this == FRETURN;
+	}
+
+	// true if control never falls through to the next instruction
+	public boolean endsFlow() {
+		return this == GOTO || isReturn();
+	}
+
+	public boolean isLoad() {
+		return this == ILOAD || this == FLOAD || this == ALOAD;
+	}
+
+	public boolean isStore() {
+		return this == ISTORE || this == FSTORE || this == ASTORE;
+	}
+
+	// the load of the same type as a store
+	public Opcode load() {
+		return this == ISTORE ? ILOAD : this == FSTORE ? FLOAD : ALOAD;
+	}
+
+	// the conditional jump taken exactly when this one is not
+	public Opcode negate() {
+		switch (this) {
+		case IFEQ: return IFNE;
+		case IFNE: return IFEQ;
+		case IFLT: return IFGE;
+		case IFGE: return IFLT;
+		case IFGT: return IFLE;
+		case IFLE: return IFGT;
+		case IF_ICMPEQ: return IF_ICMPNE;
+		case IF_ICMPNE: return IF_ICMPEQ;
+		case IF_ICMPLT: return IF_ICMPGE;
+		case IF_ICMPGE: return IF_ICMPLT;
+		case IF_ICMPGT: return IF_ICMPLE;
+		case IF_ICMPLE: return IF_ICMPGT;
+		default:
+			throw new IllegalArgumentException("not a conditional jump: " + mnemonic);
+		}
+	}
+
+	// iconst_m1 .. iconst_5
+	public static Opcode iconst(int value) {
+		return values()[ICONST_0.ordinal() + value];
+	}
+}
@@ -0,0 +1,504 @@
+/*
+ * Peephole.java
+ */
+
+// Rewrites short sequences of the Jasmin code in a code store, one method
+// at a time, just before it is written out.
+//
+// Each rule looks at the instruction at some position and the ones that
+// follow it. Blank lines, comments and directives are skipped, but a
+// label is never: code before and after a label is only rewritten as a
+// sequence if the label is the target of no jump. The rules are tried at
+// every position until none applies any more, so one rewrite may enable
+// another, e.g. a jump to the next label is only removed once the jumps
+// to the jump have been redirected.
+//
+//   boolean-branch   ifXX Lt; iconst_0; goto Ln; Lt: iconst_1; Ln: ifeq L
+//                    => if!XX L
+//   constant-branch  iconst_0; ifeq L => goto L, iconst_1; ifeq L => (none)
+//   branch-over-goto ifXX L1; goto L2; L1: => if!XX L2; L1:
+//   jump-chain       a jump to L: goto M => a jump to M,
+//                    goto L where L: xreturn => xreturn
+//   goto-next        goto L; L: => L:
+//   unreachable      code after a goto or a return and before a label
+//   unused-label     a label that is the target of no jump
+//   store-load       xstore n; xload n => dup; xstore n
+//   push-pop         a push without side effects, or dup, followed by pop
+//
+// Since a rule may change how deep the operand stack gets (store-load
+// does), the .limit stack of the method is recomputed afterwards from
+// the stack effect of every instruction along every path.
+//
+// A rewritten instruction keeps the source line of the one it replaces.
+//
+// Every rule can be disabled by name, and the number of times each rule
+// was applied is counted so that its effect can be reported.
+
+package VC.CodeGen;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public final class Peephole {
+
+	private ArrayList<Rule> rules;
+
+	public Peephole() {
+		rules = new ArrayList<Rule>();
+		rules.add(new BooleanBranch());
+		rules.add(new ConstantBranch());
+		rules.add(new BranchOverGoto());
+		rules.add(new JumpChain());
+		rules.add(new GotoNext());
+		rules.add(new Unreachable());
+		rules.add(new UnusedLabel());
+		rules.add(new StoreLoad());
+		rules.add(new PushPop());
+	}
+
+	// Returns false if there is no rule of this name.
+	public boolean disable(String name) {
+		for (Rule r : rules)
+			if (r.name.equals(name)) {
+				r.enabled = false;
+				return true;
+			}
+		return false;
+	}
+
+	public void disableAll() {
+		for (Rule r : rules)
+			r.enabled = false;
+	}
+
+	public String ruleNames() {
+		StringBuffer sb = new StringBuffer();
+		for (Rule r : rules)
+			sb.append(sb.length() == 0 ? "" : ", ").append(r.name);
+		return sb.toString();
+	}
+
+	public void report(PrintStream out) {
+		out.println("Peephole rules applied:");
+		for (Rule r : rules)
+			out.println(String.format("  %-20s %6d%s", r.name, r.hits,
+					r.enabled ? "" : "  (disabled)"));
+	}
+
+	// Optimises every method in the code store of jvm.
+	public void optimise(JVM jvm) {
+		ArrayList<Instruction> out = new ArrayList<Instruction>();
+		Method m = null;
+		for (int addr = 0; addr < jvm.nextInstAddr; addr++) {
+			Instruction inst = jvm.code[addr];
+			if (inst.isDirective(JVM.METHOD_START))
+				m = new Method();
+			if (m == null) {
+				out.add(inst);
+				continue;
+			}
+			m.lines.add(inst);
+			if (inst.isDirective(JVM.METHOD_END)) {
+				optimise(m);
+				out.addAll(m.lines);
+				m = null;
+			}
+		}
+		if (m != null)
+			out.addAll(m.lines);
+		jvm.nextInstAddr = 0;
+		for (Instruction inst : out)
+			jvm.append(inst);
+	}
+
+	private void optimise(Method m) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			m.countTargets();
+			for (int i = 0; i < m.lines.size(); i++) {
+				if (!m.isSignificant(i))
+					continue;
+				for (Rule r : rules)
+					if (r.enabled && r.apply(m, i)) {
+						r.hits++;
+						changed = true;
+						m.countTargets();
+						if (i >= m.lines.size() || !m.isSignificant(i))
+							break;
+					}
+			}
+		}
+		int limit = maxStack(m);
+		for (int i = 0; i < m.lines.size(); i++)
+			if (m.get(i).isDirective(JVM.LIMIT) && m.get(i).args[0].equals("stack"))
+				m.set(i, Instruction.directive(JVM.LIMIT, "stack", String.valueOf(limit)));
+	}
+
+	// The code of one method, from .method to .end method
+
+	private static final class Method {
+
+		ArrayList<Instruction> lines = new ArrayList<Instruction>();
+
+		// label -> number of jumps and directives that refer to it
+		HashMap<String, Integer> targets = new HashMap<String, Integer>();
+
+		Instruction get(int i) {
+			return lines.get(i);
+		}
+
+		void set(int i, Instruction inst) {
+			lines.set(i, inst);
+		}
+
+		void remove(int i) {
+			lines.remove(i);
+		}
+
+		boolean isSignificant(int i) {
+			return get(i).isCode() || get(i).isLabel();
+		}
+
+		// the first instruction or label after i, or -1
+		int next(int i) {
+			for (int j = i + 1; j < lines.size(); j++)
+				if (isSignificant(j))
+					return j;
+			return -1;
+		}
+
+		// the first instruction after i, skipping labels, or -1
+		int nextCode(int i) {
+			for (int j = i + 1; j < lines.size(); j++)
+				if (get(j).isCode())
+					return j;
+			return -1;
+		}
+
+		// true if the instruction or label at i is followed by op
+		boolean isFollowedBy(int i, Opcode op) {
+			int j = next(i);
+			return j >= 0 && get(j).is(op);
+		}
+
+		int labelIndex(String label) {
+			for (int i = 0; i < lines.size(); i++)
+				if (get(i).isLabel() && get(i).label.equals(label))
+					return i;
+			return -1;
+		}
+
+		int uses(String label) {
+			Integer n = targets.get(label);
+			return n == null ? 0 : n;
+		}
+
+		void countTargets() {
+			targets.clear();
+			for (Instruction inst : lines) {
+				if (inst.isCode() && inst.opcode.isJump())
+					use(inst.label);
+				else if (inst.isDirective(JVM.VAR)) {
+					// .var n is name type from L1 to L2
+					use(inst.args[inst.args.length - 3]);
+					use(inst.args[inst.args.length - 1]);
+				}
+			}
+		}
+
+		private void use(String label) {
+			targets.put(label, uses(label) + 1);
+		}
+	}
+
+	// Rules
+
+	private abstract static class Rule {
+
+		final String name;
+		boolean enabled = true;
+		int hits = 0;
+
+		Rule(String name) {
+			this.name = name;
+		}
+
+		// Rewrites the code at i, which is an instruction or a label, and
+		// returns true if it has changed.
+		abstract boolean apply(Method m, int i);
+	}
+
+	private static final class BooleanBranch extends Rule {
+
+		BooleanBranch() {
+			super("boolean-branch");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction jump = m.get(i);
+			if (!jump.isCode() || !jump.opcode.isConditional())
+				return false;
+			int[] at = new int[6];
+			int j = i;
+			for (int k = 0; k < 6; k++) {
+				j = m.next(j);
+				if (j < 0)
+					return false;
+				at[k] = j;
+			}
+			Instruction exit = m.get(at[1]);
+			Instruction test = m.get(at[5]);
+			if (!m.get(at[0]).is(Opcode.ICONST_0) || !exit.is(Opcode.GOTO)
+					|| !isLabel(m.get(at[2]), jump.label) || !m.get(at[3]).is(Opcode.ICONST_1)
+					|| !isLabel(m.get(at[4]), exit.label)
+					|| !(test.is(Opcode.IFEQ) || test.is(Opcode.IFNE))
+					|| m.uses(jump.label) != 1 || m.uses(exit.label) != 1)
+				return false;
+			Instruction taken = jump.retarget(test.label);
+			m.set(i, test.is(Opcode.IFEQ) ? taken.negate() : taken);
+			for (int k = 5; k >= 0; k--)
+				m.remove(at[k]);
+			return true;
+		}
+	}
+
+	private static final class ConstantBranch extends Rule {
+
+		ConstantBranch() {
+			super("constant-branch");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction c = m.get(i);
+			if (!(c.is(Opcode.ICONST_0) || c.is(Opcode.ICONST_1)))
+				return false;
+			int j = m.next(i);
+			if (j < 0)
+				return false;
+			Instruction test = m.get(j);
+			if (!(test.is(Opcode.IFEQ) || test.is(Opcode.IFNE)))
+				return false;
+			if (c.is(Opcode.ICONST_0) == test.is(Opcode.IFEQ))
+				m.set(j, test.at(Instruction.jump(Opcode.GOTO, test.label)));
+			else
+				m.remove(j);
+			m.remove(i);
+			return true;
+		}
+	}
+
+	private static final class BranchOverGoto extends Rule {
+
+		BranchOverGoto() {
+			super("branch-over-goto");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction jump = m.get(i);
+			if (!jump.isCode() || !jump.opcode.isConditional())
+				return false;
+			int j = m.next(i);
+			if (j < 0 || !m.get(j).is(Opcode.GOTO))
+				return false;
+			int k = m.next(j);
+			if (k < 0 || !isLabel(m.get(k), jump.label))
+				return false;
+			m.set(i, jump.negate().retarget(m.get(j).label));
+			m.remove(j);
+			return true;
+		}
+	}
+
+	private static final class JumpChain extends Rule {
+
+		JumpChain() {
+			super("jump-chain");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction jump = m.get(i);
+			if (!jump.isCode() || !jump.opcode.isJump())
+				return false;
+			HashSet<String> seen = new HashSet<String>();
+			seen.add(jump.label);
+			String target = jump.label;
+			Instruction dest;
+			while ((dest = destination(m, target)) != null && dest.is(Opcode.GOTO)
+					&& seen.add(dest.label))
+				target = dest.label;
+			if (!target.equals(jump.label)) {
+				m.set(i, jump.retarget(target));
+				return true;
+			}
+			if (jump.is(Opcode.GOTO) && dest != null && dest.opcode.isReturn()) {
+				m.set(i, jump.at(Instruction.code(dest.opcode)));
+				return true;
+			}
+			return false;
+		}
+
+		// the first instruction executed after a jump to label
+		private static Instruction destination(Method m, String label) {
+			int l = m.labelIndex(label);
+			if (l < 0)
+				return null;
+			int j = m.nextCode(l);
+			return j < 0 ? null : m.get(j);
+		}
+	}
+
+	private static final class GotoNext extends Rule {
+
+		GotoNext() {
+			super("goto-next");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction jump = m.get(i);
+			if (!jump.is(Opcode.GOTO))
+				return false;
+			for (int j = m.next(i); j >= 0 && m.get(j).isLabel(); j = m.next(j))
+				if (m.get(j).label.equals(jump.label)) {
+					m.remove(i);
+					return true;
+				}
+			return false;
+		}
+	}
+
+	private static final class Unreachable extends Rule {
+
+		Unreachable() {
+			super("unreachable");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction inst = m.get(i);
+			if (!inst.isCode() || !inst.opcode.endsFlow())
+				return false;
+			int j = m.next(i);
+			if (j < 0 || !m.get(j).isCode())
+				return false;
+			m.remove(j);
+			return true;
+		}
+	}
+
+	private static final class UnusedLabel extends Rule {
+
+		UnusedLabel() {
+			super("unused-label");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction inst = m.get(i);
+			if (!inst.isLabel() || m.uses(inst.label) > 0)
+				return false;
+			m.remove(i);
+			return true;
+		}
+	}
+
+	private static final class StoreLoad extends Rule {
+
+		StoreLoad() {
+			super("store-load");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction store = m.get(i);
+			if (!store.isCode() || !store.opcode.isStore())
+				return false;
+			int j = m.next(i);
+			if (j < 0 || !m.get(j).is(store.opcode.load()) || m.get(j).value != store.value)
+				return false;
+			m.set(i, store.at(Instruction.code(Opcode.DUP)));
+			m.set(j, store);
+			return true;
+		}
+	}
+
+	private static final class PushPop extends Rule {
+
+		PushPop() {
+			super("push-pop");
+		}
+
+		boolean apply(Method m, int i) {
+			Instruction push = m.get(i);
+			if (!push.isCode() || !(push.is(Opcode.DUP) || isPurePush(push.opcode))
+					|| !m.isFollowedBy(i, Opcode.POP))
+				return false;
+			m.remove(m.next(i));
+			m.remove(i);
+			return true;
+		}
+	}
+
+	// The maximum depth of the operand stack
+
+	private static int maxStack(Method m) {
+		HashMap<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 0; i < m.lines.size(); i++)
+			if (m.get(i).isLabel())
+				labels.put(m.get(i).label, i);
+
+		int[] depth = new int[m.lines.size()];
+		Arrays.fill(depth, -1);
+		ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		depth[0] = 0;
+		work.add(0);
+		int max = 0;
+		while (!work.isEmpty()) {
+			int start = work.poll();
+			int d = depth[start];
+			for (int i = start; i < m.lines.size(); i++) {
+				Instruction inst = m.get(i);
+				if (inst.isLabel() && i != start) {
+					// falls through to a label
+					if (depth[i] >= 0)
+						break;
+					depth[i] = d;
+				}
+				if (!inst.isCode())
+					continue;
+				int[] effect = inst.stackEffect();
+				d = d - effect[0] + effect[1];
+				max = Math.max(max, d);
+				if (inst.opcode.isJump()) {
+					Integer l = labels.get(inst.label);
+					if (l != null && depth[l] < 0) {
+						depth[l] = d;
+						work.add(l);
+					}
+				}
+				if (inst.opcode.endsFlow())
+					break;
+			}
+		}
+		return max;
+	}
+
+	private static boolean isLabel(Instruction inst, String label) {
+		return inst.isLabel() && inst.label.equals(label);
+	}
+
+	// loads of locals, globals and constants
+	private static boolean isPurePush(Opcode op) {
+		switch (op) {
+		case ILOAD: case FLOAD: case ALOAD:
+		case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2:
+		case ICONST_3: case ICONST_4: case ICONST_5:
+		case FCONST_0: case FCONST_1: case FCONST_2:
+		case BIPUSH: case SIPUSH: case LDC: case GETSTATIC:
+			return true;
+		default:
+			return false;
+		}
+	}
+}
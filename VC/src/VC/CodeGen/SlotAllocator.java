@@ -0,0 +1,250 @@
+/*
+ * SlotAllocator.java
+ */
+
+// Assigns the JVM local variables of a function lowered from the IR.
+//
+// A value needs a local if it is a parameter or a phi, or if it is used
+// and not passed on the operand stack. An update emitted as iinc shares
+// the local of its phi. Two values interfere if one is stored while the
+// other is live, and interfering values must have different locals.
+//
+// Liveness is computed backwards over the code as IREmitter lays it out:
+// the operands of an instruction are loaded just before it stores its
+// value, the copies into the phis of a successor load all their values
+// before they store any, and a jump replaced by a return loads the
+// returned value. The values live at the start of a block are found by
+// iterating to a fixed point.
+//
+// The values are then coloured greedily, the most frequently executed
+// first: a use or store in a loop nested d deep counts 8^d times. Each
+// value gets the lowest local not taken by a value it interferes with,
+// so the hottest values get the low locals, which have the short forms
+// iload_n and istore_n. The locals reserved by the calling convention
+// (this, or argv and vc$ in main) are never reused; a parameter keeps
+// its local but other values may reuse it once it is dead.
+
+package VC.CodeGen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import VC.CFG.BasicBlock;
+import VC.CFG.DominatorTree;
+import VC.CFG.LoopNest;
+import VC.IR.*;
+
+final class SlotAllocator {
+
+	private final IRFunction fn;
+	private final ArrayList<IRBlock> layout;
+	private final HashSet<Instr> onStack;
+	private final HashMap<Instr, Instr> increments;
+
+	// true if jumps to the exit block are replaced by its return
+	private final boolean inlineReturn;
+
+	// the values that need a local, and their numbers
+	private ArrayList<Value> values;
+	private HashMap<Value, Integer> numbers;
+
+	private BitSet[] interference;
+	private long[] weights;
+
+	SlotAllocator(IRFunction fn, ArrayList<IRBlock> layout, HashSet<Instr> onStack,
+			HashMap<Instr, Instr> increments, boolean inlineReturn) {
+		this.fn = fn;
+		this.layout = layout;
+		this.onStack = onStack;
+		this.increments = increments;
+		this.inlineReturn = inlineReturn;
+	}
+
+	// Returns the local of every value that needs one, and of every
+	// update emitted as iinc. The locals below reserved are left alone;
+	// the parameters come right after them.
+	HashMap<Value, Integer> allocate(int reserved) {
+		values = new ArrayList<Value>();
+		numbers = new HashMap<Value, Integer>();
+		for (Param p : fn.params)
+			number(p);
+		for (IRBlock b : layout)
+			for (Instr i : b.instrs)
+				if (i.isPhi() || (i.hasUsers() && !onStack.contains(i)
+						&& !increments.containsKey(i)))
+					number(i);
+
+		interference = new BitSet[values.size()];
+		for (int n = 0; n < values.size(); n++)
+			interference[n] = new BitSet();
+		weights = new long[values.size()];
+		computeInterference();
+
+		int[] slots = new int[values.size()];
+		for (int n = 0; n < fn.params.size(); n++)
+			slots[n] = reserved + n;
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int n = fn.params.size(); n < values.size(); n++)
+			order.add(n);
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(weights[b], weights[a]);
+			}
+		});
+		boolean[] done = new boolean[values.size()];
+		for (int n = 0; n < fn.params.size(); n++)
+			done[n] = true;
+		for (int n : order) {
+			BitSet taken = new BitSet();
+			for (int m = interference[n].nextSetBit(0); m >= 0; m = interference[n].nextSetBit(m + 1))
+				if (done[m])
+					taken.set(slots[m]);
+			slots[n] = taken.nextClearBit(reserved);
+			done[n] = true;
+		}
+
+		HashMap<Value, Integer> result = new HashMap<Value, Integer>();
+		for (int n = 0; n < values.size(); n++)
+			result.put(values.get(n), slots[n]);
+		for (Instr i : increments.keySet())
+			result.put(i, result.get(increments.get(i)));
+		return result;
+	}
+
+	private void number(Value v) {
+		numbers.put(v, values.size());
+		values.add(v);
+	}
+
+	// the number of the value whose local holds v, or -1
+	private int number(Value v, boolean count, long weight) {
+		if (v instanceof Instr && increments.containsKey(v))
+			v = increments.get(v);
+		Integer n = numbers.get(v);
+		if (n == null)
+			return -1;
+		if (count)
+			weights[n] += weight;
+		return n;
+	}
+
+	private void computeInterference() {
+		LoopNest loops = new LoopNest(fn.cfg, new DominatorTree(fn.cfg));
+		HashMap<BasicBlock, BitSet> liveIn = new HashMap<BasicBlock, BitSet>();
+		for (IRBlock b : layout)
+			liveIn.put(b, new BitSet());
+
+		// the last round, in which nothing changes, records the
+		// interferences and weights
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int k = layout.size() - 1; k >= 0; k--) {
+				IRBlock b = layout.get(k);
+				BitSet in = scan(b, liveIn, false, 0);
+				if (!in.equals(liveIn.get(b))) {
+					liveIn.put(b, in);
+					changed = true;
+				}
+			}
+		}
+		for (IRBlock b : layout)
+			scan(b, liveIn, true, weight(loops.depth(b)));
+	}
+
+	private static long weight(int depth) {
+		long w = 1;
+		for (int d = 0; d < Math.min(depth, 10); d++)
+			w *= 8;
+		return w;
+	}
+
+	// Walks b backwards from its end and returns the values live at its
+	// start after its phis. If record is set, the interferences and the
+	// weights of the values are recorded.
+	private BitSet scan(IRBlock b, HashMap<BasicBlock, BitSet> liveIn,
+			boolean record, long weight) {
+		BitSet live = new BitSet();
+		Instr t = b.terminator();
+		if (t.op == Op.JUMP && b.succ(0) == fn.exit() && inlineReturn) {
+			Instr ret = fn.exit().terminator();
+			if (ret.numOperands() > 0)
+				use(live, returnedValue(ret, b), record, weight);
+		} else {
+			for (BasicBlock s : b.succs) {
+				BitSet in = liveIn.get(s);
+				if (in != null)
+					live.or(in);
+			}
+			// the copies into the phis of the successors
+			ArrayList<Integer> stored = new ArrayList<Integer>();
+			ArrayList<Value> loaded = new ArrayList<Value>();
+			for (BasicBlock s : b.succs) {
+				int index = s.preds.indexOf(b);
+				for (Instr phi : ((IRBlock) s).phis()) {
+					Value v = phi.operand(index);
+					if (v == phi || increments.get(v) == phi)
+						continue;
+					stored.add(number(phi, record, weight));
+					loaded.add(v);
+				}
+			}
+			// the phis are stored one after another, so each is live
+			// while the others are stored
+			for (int n : stored)
+				live.set(n);
+			for (int n : stored)
+				define(live, n, record);
+			for (Value v : loaded)
+				use(live, v, record, weight);
+		}
+		for (int k = b.instrs.size() - 1; k >= 0; k--) {
+			Instr i = b.instrs.get(k);
+			if (i.isPhi())
+				break;
+			if (i.op == Op.JUMP)
+				continue;
+			if (increments.containsKey(i)) {
+				int n = number(i, record, weight);
+				define(live, n, record);
+				live.set(n);
+				continue;
+			}
+			int n = number(i, record, weight);
+			if (n >= 0)
+				define(live, n, record);
+			for (Value v : i.operands)
+				use(live, v, record, weight);
+		}
+		return live;
+	}
+
+	// the value n is stored while the values in live are live
+	private void define(BitSet live, int n, boolean record) {
+		live.clear(n);
+		if (!record)
+			return;
+		for (int m = live.nextSetBit(0); m >= 0; m = live.nextSetBit(m + 1)) {
+			interference[n].set(m);
+			interference[m].set(n);
+		}
+	}
+
+	private void use(BitSet live, Value v, boolean record, long weight) {
+		int n = number(v, record, weight);
+		if (n >= 0)
+			live.set(n);
+	}
+
+	// as in IREmitter
+	private static Value returnedValue(Instr ret, IRBlock pred) {
+		Value v = ret.operand(0);
+		if (v instanceof Instr && ((Instr) v).block == ret.block)
+			v = ((Instr) v).operand(((Instr) v).block.preds.indexOf(pred));
+		return v;
+	}
+}
@@ -0,0 +1,339 @@
+/*
+ * StackMapFrames.java
+ */
+
+// Computes the stack map frames of a method: the types of its locals
+// and of its operand stack at every instruction that is the target of
+// a jump.
+//
+// The types are found by running through the code from its start,
+// where the locals hold the parameters given by the descriptor of the
+// method. Each instruction gives the types of the values it pushes: an
+// iload an int, an fadd a float, a getstatic or an invoke the type in
+// its descriptor, and so on, and a store gives its local the type of
+// the value stored. Where two paths meet, a local that has different
+// types on them is unusable (top). The operand stack is the same
+// height on both, and only the receivers of the method calls that VC
+// makes hold references, so two different reference types on the
+// stack only meet as java/lang/Object.
+//
+// A type is written as a string:
+//
+//   T             top, the type of a local that is unusable
+//   I, F          int (also boolean), float
+//   Lname         an object of the class name, e.g. Ljava/lang/String
+//                 or L[I, an array of ints
+//   U             this in a constructor before Object.<init> is called
+//   Un            the object created by the new at offset n before its
+//                 constructor is called
+//
+// Code that cannot be reached has no types. The class file writer
+// replaces it with nops and an athrow and gives it the frame of a method
+// with no locals and a Throwable on the stack, which is what a verifier
+// expects of unreachable code.
+
+package VC.CodeGen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+final class StackMapFrames {
+
+	static final String TOP = "T", INT = "I", FLOAT = "F", UNINITIALIZED_THIS = "U";
+
+	static final class Frame {
+		final int offset;
+		final String[] locals;
+		final String[] stack;
+
+		Frame(int offset, String[] locals, String[] stack) {
+			this.offset = offset;
+			this.locals = locals;
+			this.stack = stack;
+		}
+	}
+
+	// the frame of unreachable code
+	static Frame unreachable(int offset) {
+		return new Frame(offset, new String[0], new String[] {"Ljava/lang/Throwable"});
+	}
+
+	private final List<Instruction> insts;
+	private final int[] offsets;
+	private final String thisClass;
+
+	private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+	// the locals on entry to the method
+	private String[] entry;
+
+	// the locals and stack before each instruction, or null if the
+	// instruction cannot be reached
+	private final String[][] locals;
+	private final String[][] stacks;
+
+	StackMapFrames(List<Instruction> insts, int[] offsets, String thisClass) {
+		this.insts = insts;
+		this.offsets = offsets;
+		this.thisClass = thisClass;
+		this.locals = new String[insts.size()][];
+		this.stacks = new String[insts.size()][];
+		for (int i = 0; i < insts.size(); i++)
+			if (insts.get(i).isLabel())
+				labels.put(insts.get(i).label, i);
+	}
+
+	// Runs through the code of a method with the given name, descriptor
+	// and maximum number of locals.
+
+	void analyse(String name, String descriptor, boolean isStatic, int maxLocals) {
+		entry = new String[maxLocals];
+		Arrays.fill(entry, TOP);
+		int local = 0;
+		if (!isStatic)
+			entry[local++] = name.equals("<init>") ? UNINITIALIZED_THIS : "L" + thisClass;
+		for (String param : parameterTypes(descriptor))
+			entry[local++] = param;
+
+		ArrayList<Integer> worklist = new ArrayList<Integer>();
+		if (merge(0, entry, new String[0]))
+			worklist.add(0);
+		while (!worklist.isEmpty()) {
+			int i = worklist.remove(worklist.size() - 1);
+			String[] l = locals[i].clone();
+			ArrayList<String> stack = new ArrayList<String>(Arrays.asList(stacks[i]));
+			Instruction inst = insts.get(i);
+			if (inst.isCode())
+				execute(inst, offsets[i], l, stack);
+			String[] s = stack.toArray(new String[stack.size()]);
+
+			if (inst.isCode() && inst.opcode.isJump()) {
+				int target = labels.get(inst.label);
+				if (merge(target, l, s))
+					worklist.add(target);
+			}
+			if (i + 1 < insts.size() && !(inst.isCode() && inst.opcode.endsFlow()))
+				if (merge(i + 1, l, s))
+					worklist.add(i + 1);
+		}
+	}
+
+	// the locals on entry, without the unusable ones at the end
+	String[] entryLocals() {
+		return trim(entry);
+	}
+
+	boolean isReachable(int i) {
+		return locals[i] != null;
+	}
+
+	// The frames at the reachable jump targets, in order. Several labels
+	// at the same offset have a single frame.
+
+	List<Frame> frames() {
+		ArrayList<Frame> frames = new ArrayList<Frame>();
+		boolean[] isTarget = new boolean[insts.size()];
+		for (Instruction inst : insts)
+			if (inst.isCode() && inst.opcode.isJump())
+				isTarget[labels.get(inst.label)] = true;
+
+		int last = -1;
+		for (int i = 0; i < insts.size(); i++)
+			if (isTarget[i] && offsets[i] != last) {
+				Frame f = frameAt(i);
+				if (f != null)
+					frames.add(f);
+				last = offsets[i];
+			}
+		return frames;
+	}
+
+	// The frame before insts[i], or null if it cannot be reached. The
+	// state after the last of a row of labels holds what reaches any of
+	// them.
+
+	Frame frameAt(int i) {
+		while (insts.get(i).isLabel() && i + 1 < insts.size() && offsets[i + 1] == offsets[i])
+			i++;
+		if (!isReachable(i))
+			return null;
+		return new Frame(offsets[i], trim(locals[i]), stacks[i]);
+	}
+
+	// the locals without the unusable ones at the end
+	private static String[] trim(String[] locals) {
+		int n = locals.length;
+		while (n > 0 && locals[n - 1].equals(TOP))
+			n--;
+		return Arrays.copyOf(locals, n);
+	}
+
+	// Merges a state into the state before insts[i] and returns true if
+	// the latter has changed.
+
+	private boolean merge(int i, String[] l, String[] s) {
+		if (locals[i] == null) {
+			locals[i] = l.clone();
+			stacks[i] = s.clone();
+			return true;
+		}
+		if (stacks[i].length != s.length)
+			throw new IllegalStateException("the stack heights differ at " + offsets[i]);
+		boolean changed = false;
+		for (int k = 0; k < l.length; k++)
+			if (!locals[i][k].equals(l[k]) && !locals[i][k].equals(TOP)) {
+				locals[i][k] = TOP;
+				changed = true;
+			}
+		for (int k = 0; k < s.length; k++)
+			if (!stacks[i][k].equals(s[k])) {
+				if (!stacks[i][k].startsWith("L") || !s[k].startsWith("L"))
+					throw new IllegalStateException("the stacks differ at " + offsets[i]);
+				if (!stacks[i][k].equals("Ljava/lang/Object")) {
+					stacks[i][k] = "Ljava/lang/Object";
+					changed = true;
+				}
+			}
+		return changed;
+	}
+
+	// the effect of inst, at the given offset, on the locals and stack
+
+	private void execute(Instruction inst, int offset, String[] l, ArrayList<String> stack) {
+		Opcode op = inst.opcode;
+		switch (op) {
+		case ILOAD:
+		case FLOAD:
+		case ALOAD:
+			stack.add(l[inst.value]);
+			return;
+		case ISTORE:
+		case FSTORE:
+		case ASTORE:
+			l[inst.value] = pop(stack);
+			return;
+		case LDC:
+			stack.add(inst.constant instanceof Integer ? INT
+					: inst.constant instanceof Float ? FLOAT : "Ljava/lang/String");
+			return;
+		case NEWARRAY:
+			pop(stack);
+			stack.add(inst.name.equals("float") ? "L[F" : inst.name.equals("boolean") ? "L[Z" : "L[I");
+			return;
+		case NEW:
+			stack.add("U" + offset);
+			return;
+		case DUP:
+			stack.add(stack.get(stack.size() - 1));
+			return;
+		case DUP_X2: {
+			String v1 = pop(stack), v2 = pop(stack), v3 = pop(stack);
+			stack.add(v1);
+			stack.add(v3);
+			stack.add(v2);
+			stack.add(v1);
+			return;
+		}
+		case GETSTATIC:
+			stack.add(type(inst.descriptor));
+			return;
+		case PUTSTATIC:
+			pop(stack);
+			return;
+		case INVOKEVIRTUAL:
+		case INVOKESPECIAL:
+		case INVOKESTATIC: {
+			for (int k = parameterTypes(inst.descriptor).size(); k > 0; k--)
+				pop(stack);
+			if (op != Opcode.INVOKESTATIC) {
+				String receiver = pop(stack);
+				if (inst.name.equals("<init>") && receiver.startsWith("U"))
+					initialise(receiver, receiver.equals(UNINITIALIZED_THIS)
+							? "L" + thisClass : "L" + inst.owner, l, stack);
+			}
+			String result = inst.descriptor.substring(inst.descriptor.indexOf(')') + 1);
+			if (!result.equals("V"))
+				stack.add(type(result));
+			return;
+		}
+		default:
+			break;
+		}
+
+		for (int k = 0; k < op.pops; k++)
+			pop(stack);
+		if (op.pushes > 0)
+			stack.add(result(op));
+	}
+
+	// the type pushed by the other instructions that push a value
+	private static String result(Opcode op) {
+		switch (op) {
+		case FCONST_0:
+		case FCONST_1:
+		case FCONST_2:
+		case FALOAD:
+		case FADD:
+		case FSUB:
+		case FMUL:
+		case FDIV:
+		case FNEG:
+		case I2F:
+			return FLOAT;
+		default:
+			return INT;
+		}
+	}
+
+	// replaces an uninitialised object by its class once its constructor
+	// has been called
+	private static void initialise(String uninitialised, String type, String[] l,
+			ArrayList<String> stack) {
+		for (int k = 0; k < l.length; k++)
+			if (l[k].equals(uninitialised))
+				l[k] = type;
+		for (int k = 0; k < stack.size(); k++)
+			if (stack.get(k).equals(uninitialised))
+				stack.set(k, type);
+	}
+
+	private static String pop(ArrayList<String> stack) {
+		return stack.remove(stack.size() - 1);
+	}
+
+	// the type of a value with a field descriptor
+	static String type(String descriptor) {
+		switch (descriptor.charAt(0)) {
+		case 'I':
+		case 'Z':
+		case 'B':
+		case 'C':
+		case 'S':
+			return INT;
+		case 'F':
+			return FLOAT;
+		case 'L':
+			return descriptor.substring(0, descriptor.length() - 1);
+		default: // an array
+			return "L" + descriptor;
+		}
+	}
+
+	// the types of the parameters of a method descriptor
+	static List<String> parameterTypes(String descriptor) {
+		ArrayList<String> types = new ArrayList<String>();
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			int start = i;
+			while (descriptor.charAt(i) == '[')
+				i++;
+			if (descriptor.charAt(i) == 'L')
+				i = descriptor.indexOf(';', i);
+			i++;
+			types.add(type(descriptor.substring(start, i)));
+		}
+		return types;
+	}
+}
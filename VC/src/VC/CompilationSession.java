@@ -0,0 +1,348 @@
+/*
+ * CompilationSession.java
+ */
+
+package VC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import VC.ASTs.AST;
+import VC.CFG.CFGPrinter;
+import VC.Checker.Checker;
+import VC.CodeGen.Emitter;
+import VC.CodeGen.JVM;
+import VC.CodeGen.Peephole;
+import VC.IR.IRBuilder;
+import VC.IR.IRPrinter;
+import VC.IR.IRProgram;
+import VC.IR.PassManager;
+import VC.Optimiser.CFGSimplifier;
+import VC.Optimiser.CommonSubexpressionElimination;
+import VC.Optimiser.ConstantFolder;
+import VC.Optimiser.DeadCodeElimination;
+import VC.Optimiser.Inliner;
+import VC.Optimiser.LoopInvariantCodeMotion;
+import VC.Optimiser.StrengthReduction;
+import VC.Optimiser.TailRecursionElimination;
+import VC.Parser.Parser;
+import VC.Scanner.Scanner;
+import VC.Scanner.SourceFile;
+import VC.TreeDrawer.Drawer;
+import VC.TreePrinter.Printer;
+import VC.UnParser.UnParser;
+
+// One compilation of one VC program. A session owns everything the
+// compilation changes: the error reporter, the standard environment,
+// the code store, the peephole optimiser with its counts and the phase
+// timings. Nothing is kept in static fields, so sessions can run one
+// after another or at the same time in the same JVM.
+//
+// The progress of the compilation is printed to the stream given to
+// the session rather than to System.out. A file that cannot be read or
+// written stops the compilation with an error, never the JVM.
+
+public final class CompilationSession {
+
+  private final String inputFilename;
+  private final Options options;
+  // where the progress is printed, which is a buffer while a
+  // compilation that will be cached runs
+  private PrintStream out;
+
+  private final ErrorReporter reporter;
+  private final StdEnvironment env;
+  private final JVM jvm;
+  private final Peephole peephole;
+  private final PassManager passManager;
+
+  // the directory of relative file names, or null for the current
+  // directory of the JVM
+  private File directory;
+
+  private AST theAST;
+  private IRProgram program;
+  private Inliner inliner;
+  private byte[] classFile;
+  private boolean aborted;
+
+  public CompilationSession(String inputFilename, Options options, PrintStream out) {
+    this.inputFilename = inputFilename;
+    this.options = options;
+    this.out = out;
+    reporter = new ErrorReporter();
+    reporter.setJSON(options.jsonDiagnostics);
+    reporter.setMaxErrors(options.maxErrors);
+    env = new StdEnvironment();
+    jvm = new JVM();
+    peephole = new Peephole();
+    for (String rule : options.disabledRules)
+      if (rule.equals("all"))
+        peephole.disableAll();
+      else
+        peephole.disable(rule);
+    passManager = new PassManager();
+  }
+
+  // Compiles the program and prints its diagnostics. Returns true if
+  // there were no errors.
+  //
+  // With a cache, a compilation found in it is not compiled again: what
+  // it printed is printed and the file it wrote is written. Otherwise
+  // the compilation prints into a buffer, which is printed and cached
+  // with the output file once it has finished.
+  public boolean compile() {
+    Cache cache = null;
+    String key = null;
+    if (!options.cacheDirectory.equals("") && Cache.cacheable(options))
+      cache = Cache.at(resolve(options.cacheDirectory), options.cacheSize);
+    if (cache != null)
+      key = cache.key(options, inputFilename, new File(resolve(inputFilename)));
+    File output = new File(resolve(Emitter.className(inputFilename)
+        + (options.writingClassFile ? ".class" : ".j")));
+    if (key != null) {
+      int errors = cache.load(key, output, out);
+      if (errors >= 0) {
+        reporter.numErrors = errors;
+        return errors == 0;
+      }
+    }
+
+    PrintStream printing = out;
+    ByteArrayOutputStream printed = null;
+    if (key != null) {
+      printed = new ByteArrayOutputStream();
+      out = new PrintStream(printed);
+    }
+    try {
+      compile(new SourceFile(resolve(inputFilename)));
+    } catch (ErrorReporter.ErrorLimitReached e) {
+      out.println("[# vc #]: " + e.getMessage() + ", compilation stopped");
+    } catch (ErrorReporter.CompilationAborted e) {
+      reporter.reportAborted(e.getMessage());
+      aborted = true;
+    }
+    flushDiagnostics();
+
+    if (reporter.numErrors == 0)
+      out.println ("Compilation was successful.");
+    else
+      out.println ("Compilation was unsuccessful.");
+
+    if (key != null) {
+      out.flush();
+      out = printing;
+      out.write(printed.toByteArray(), 0, printed.size());
+      out.flush();
+      // an aborted compilation, e.g. one whose output could not be
+      // written, may well succeed the next time
+      if (!aborted)
+        cache.store(key, printed.toByteArray(), reporter.numErrors,
+            reporter.numErrors == 0 ? output : null);
+    }
+    return reporter.numErrors == 0;
+  }
+
+  // Takes the input file and the files written as relative to
+  // directory, for a compilation asked for by a client of the daemon
+  // that runs in another directory. The names printed and the class
+  // name are as given.
+  public void setDirectory(File directory) {
+    this.directory = directory;
+  }
+
+  private String resolve(String filename) {
+    if (directory == null || new File(filename).isAbsolute())
+      return filename;
+    return new File(directory, filename).getPath();
+  }
+
+  public ErrorReporter reporter() {
+    return reporter;
+  }
+
+  // true if the compilation was stopped by a file that could not be
+  // read or written or by a fault in the code generator
+  public boolean aborted() {
+    return aborted;
+  }
+
+  // the class file kept in memory with --run
+  public byte[] classFile() {
+    return classFile;
+  }
+
+  public void reportPhases(PrintStream out) {
+    passManager.report(out);
+  }
+
+  public void reportPeephole(PrintStream out) {
+    peephole.report(out);
+  }
+
+  // Diagnostics are printed together, sorted by position, once all
+  // passes have run (or the error limit has stopped them).
+  private void flushDiagnostics() {
+    if (!options.jsonDiagnostics) {
+      reporter.flush(out);
+      return;
+    }
+    String jsonFilename = options.jsonFilename;
+    if (jsonFilename.equals(""))
+      jsonFilename = inputFilename + "e";
+    try {
+      PrintStream json = new PrintStream(new FileOutputStream(resolve(jsonFilename)));
+      reporter.flush(json);
+      json.close();
+      out.println("[# vc #]: The diagnostics printed to " + jsonFilename);
+    } catch (IOException e) {
+      out.println("[# vc #]: cannot write " + jsonFilename + ": " + e.getMessage());
+    }
+  }
+
+  // The passes run over the IR with -O, in order.
+  private void addOptimisationPasses() {
+    inliner = new Inliner(options.inlineBudget);
+    passManager.add(inliner);
+    passManager.add(new TailRecursionElimination());
+    passManager.add(new DeadCodeElimination());
+    passManager.add(new CFGSimplifier());
+    passManager.add(new LoopInvariantCodeMotion());
+    passManager.add(new StrengthReduction());
+    passManager.add(new CommonSubexpressionElimination());
+    passManager.add(new CFGSimplifier());
+  }
+
+  private void compile(SourceFile source) {
+
+    out.println("Pass 1: Lexical and syntactic Analysis");
+    long start = System.nanoTime();
+    Scanner scanner = new Scanner(source, reporter);
+    Parser parser = new Parser(scanner, reporter);
+
+    theAST = parser.parseProgram();
+    passManager.record("parsing", System.nanoTime() - start);
+
+    if (reporter.numErrors == 0) {
+      // We unparse and print the AST created by the parser. Both
+      // are useful for debugging the construction of the AST
+      // (Assignment 3).
+      // We can also unparse and print the annotated AST from the
+      // checker but this is not as useful.
+      if (options.unparsingAST) {
+        String unparsingFilename = options.unparsingFilename;
+        if (unparsingFilename.equals(""))
+          unparsingFilename = inputFilename + "u";
+        new UnParser(resolve(unparsingFilename)).unparse(theAST);
+        out.println("[# vc #]: The unparsed VC program printed to " + unparsingFilename);
+      }
+      if (options.printingAST) {
+        String astFilename = options.astFilename;
+        if (astFilename.equals(""))
+          astFilename = inputFilename + "p";
+        new Printer(resolve(astFilename)).print(theAST);
+        out.println("[# vc #]: The linearised AST printed to " + astFilename);
+      }
+      if (1 <= options.drawingAST && options.drawingAST <= 2) {
+        Drawer drawer = new Drawer();
+        if (options.drawingAST == 2)
+          drawer.enableDebugging(); // show SourcePosition
+        drawer.draw(theAST); // draw the AST
+      }
+
+      out.println("Pass 2: Semantic Analysis");
+      start = System.nanoTime();
+      new Checker(reporter, env).check(theAST);
+      passManager.record("semantic analysis", System.nanoTime() - start);
+
+      int pass = 3;
+      if (reporter.numErrors == 0 && options.optimising) {
+        out.println("Pass " + pass++ + ": Optimisation");
+        start = System.nanoTime();
+        new ConstantFolder(env, reporter).fold(theAST);
+        passManager.record("constant folding", System.nanoTime() - start);
+      }
+
+      // the folder reports the int literals that are out of range
+      if (reporter.numErrors == 0 && options.optimising) {
+        start = System.nanoTime();
+        program = IRBuilder.build(theAST);
+        passManager.record("IR construction", System.nanoTime() - start);
+        passManager.setVerifying(options.verifyingIR);
+        addOptimisationPasses();
+        passManager.run(program);
+
+        if (options.loggingInlining) {
+          String inlineLogFilename = options.inlineLogFilename;
+          if (inlineLogFilename.equals(""))
+            inlineLogFilename = inputFilename + "l";
+          try {
+            PrintWriter log = new PrintWriter(new FileWriter(resolve(inlineLogFilename)));
+            inliner.printLog(log);
+            log.close();
+            out.println("[# vc #]: The inlining decisions printed to " + inlineLogFilename);
+          } catch (IOException e) {
+            out.println("[# vc #]: cannot write " + inlineLogFilename + ": " + e.getMessage());
+          }
+        }
+
+        if (options.printingIR) {
+          String irFilename = options.irFilename;
+          if (irFilename.equals(""))
+            irFilename = inputFilename + "i";
+          try {
+            PrintWriter ir = new PrintWriter(new FileWriter(resolve(irFilename)));
+            new IRPrinter(ir).print(program);
+            ir.close();
+            out.println("[# vc #]: The IR printed to " + irFilename);
+          } catch (IOException e) {
+            out.println("[# vc #]: cannot write " + irFilename + ": " + e.getMessage());
+          }
+        }
+      }
+
+      if (reporter.numErrors == 0 && options.printingCFG) {
+        String cfgFilename = options.cfgFilename;
+        if (cfgFilename.equals(""))
+          cfgFilename = inputFilename + "g";
+        new CFGPrinter(resolve(cfgFilename)).print(theAST);
+        out.println("[# vc #]: The control-flow graphs printed to " + cfgFilename);
+      }
+
+      if (reporter.numErrors == 0) {
+        out.println("Pass " + pass + ": Code Generation");
+        out.println();
+        start = System.nanoTime();
+        Emitter emitter = new Emitter(inputFilename, reporter, env, jvm);
+        emitter.setPeephole(peephole);
+        emitter.setDirectory(directory);
+        emitter.setWriteClassFile(options.writingClassFile);
+        emitter.setKeepClassFile(options.running);
+        emitter.setStaticMethods(options.staticMethods);
+        emitter.setParallel(!options.serialCodeGen);
+        if (program != null)
+          emitter.gen(theAST, program);
+        else
+          emitter.gen(theAST);
+        classFile = emitter.classFile();
+        passManager.record("code generation", System.nanoTime() - start);
+        if (options.timing && !options.running) {
+          passManager.report(out);
+          peephole.report(out);
+        }
+      }
+
+      if (options.drawingAST >= 3) {
+        Drawer drawer = new Drawer();
+        if (options.drawingAST == 4)
+          drawer.enableDebugging(); // show SourcePosition
+        drawer.draw(theAST); // draw the AST
+      }
+    }
+  }
+}
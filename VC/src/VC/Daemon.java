@@ -0,0 +1,266 @@
+/*
+ * Daemon.java
+ */
+
+package VC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A compiler that keeps running, so that its classes are loaded and
+// compiled by the JIT once rather than for every program. vc --daemon
+// listens on a Unix domain socket, and vc --client sends it the
+// command line and the current directory of the client. The daemon
+// runs the command line as vc would in that directory, each client on
+// a thread of its own, and sends back what vc would print and its exit
+// status, which the client prints and exits with.
+//
+// A request is the directory, the number of arguments and the
+// arguments, written with writeUTF and writeInt. The reply is the
+// number of bytes printed, the bytes and the exit status.
+//
+// Only the user who started the daemon can use its socket, since the
+// daemon writes files as that user, and a client only talks to a
+// daemon of its own user, since it sends the daemon its command line
+// and trusts what it prints. So the socket must be in a directory that
+// belongs to the user and that no one else can enter, such as
+// $XDG_RUNTIME_DIR or a vc-<user> directory made in the temporary
+// directory with no rights for anyone else. The daemon makes the
+// socket there, so no one else can reach it even before it is
+// chmodded, and the client checks the directory and the owner of the
+// socket before it connects.
+
+public final class Daemon {
+
+  // the most arguments a request may have and the most bytes a reply
+  // may have, so that a broken peer cannot make the other side
+  // allocate without bound
+  private static final int MAX_ARGS = 4096;
+  private static final int MAX_REPLY = 64 << 20;
+
+  private final Path socket;
+
+  public Daemon(String socket) {
+    this.socket = Paths.get(socket);
+  }
+
+  static String defaultSocket() {
+    String runtime = System.getenv("XDG_RUNTIME_DIR");
+    File dir = runtime != null && new File(runtime).isDirectory() ? new File(runtime)
+        : new File(System.getProperty("java.io.tmpdir"), "vc-" + System.getProperty("user.name"));
+    return new File(dir, "vc.sock").getPath();
+  }
+
+  // Why the directory of socket is not private to this user, or null if
+  // it is. With create, a directory that does not exist is made.
+  private static String checkDirectory(Path socket, boolean create) {
+    Path dir = socket.toAbsolutePath().getParent();
+    try {
+      if (create && !Files.exists(dir, LinkOption.NOFOLLOW_LINKS))
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(
+            PosixFilePermissions.fromString("rwx------")));
+      PosixFileAttributes attributes = Files.readAttributes(dir, PosixFileAttributes.class,
+          LinkOption.NOFOLLOW_LINKS);
+      if (!attributes.isDirectory())
+        return dir + " is not a directory";
+      if (!attributes.owner().equals(currentUser()))
+        return dir + " belongs to " + attributes.owner().getName();
+      for (PosixFilePermission permission : attributes.permissions())
+        if (permission != PosixFilePermission.OWNER_READ
+            && permission != PosixFilePermission.OWNER_WRITE
+            && permission != PosixFilePermission.OWNER_EXECUTE)
+          return dir + " can be used by other users (" + PosixFilePermissions.toString(
+              attributes.permissions()) + ")";
+      return null;
+    } catch (IOException | UnsupportedOperationException e) {
+      return "cannot check " + dir + ": " + e;
+    }
+  }
+
+  // true if path is a socket, and not a link to one, of this user
+  private static boolean isOwnSocket(Path path) {
+    try {
+      int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+      return (mode & 0170000) == 0140000
+          && Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(currentUser());
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static UserPrincipal currentUser() throws IOException {
+    return FileSystems.getDefault().getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+  }
+
+  // Serves clients until the JVM is stopped. Returns the exit status
+  // of vc if it cannot listen on the socket.
+  public int serve() {
+    String problem = checkDirectory(socket, true);
+    if (problem != null) {
+      System.out.println("[# vc #]: cannot listen on " + socket + ": " + problem);
+      return 1;
+    }
+    if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+      if (!isOwnSocket(socket)) {
+        System.out.println("[# vc #]: cannot listen on " + socket + ": it is not a socket of "
+            + System.getProperty("user.name"));
+        return 1;
+      }
+      if (connect(socket.toString()) != null) {
+        System.out.println("[# vc #]: a daemon is already listening on " + socket);
+        return 1;
+      }
+    }
+    ServerSocketChannel server;
+    try {
+      // the socket left by a daemon that was killed
+      Files.deleteIfExists(socket);
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      server.bind(UnixDomainSocketAddress.of(socket));
+      Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+    } catch (IOException | UnsupportedOperationException e) {
+      System.out.println("[# vc #]: cannot listen on " + socket + ": " + e);
+      return 1;
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      public void run() {
+        try {
+          Files.deleteIfExists(socket);
+        } catch (IOException e) {
+          // nothing more can be done as the JVM stops
+        }
+      }
+    });
+    System.out.println("[# vc #]: the daemon is listening on " + socket);
+
+    ExecutorService clients = Executors.newCachedThreadPool();
+    while (true) {
+      final SocketChannel client;
+      try {
+        client = server.accept();
+      } catch (IOException e) {
+        System.out.println("[# vc #]: cannot accept a client: " + e);
+        continue;
+      }
+      clients.execute(new Runnable() {
+        public void run() {
+          answer(client);
+        }
+      });
+    }
+  }
+
+  private static void answer(SocketChannel client) {
+    try {
+      DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+      File directory = new File(in.readUTF());
+      int n = in.readInt();
+      if (n < 0 || n > MAX_ARGS)
+        return;
+      String[] args = new String[n];
+      for (int i = 0; i < args.length; i++)
+        args[i] = in.readUTF();
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      PrintStream out = new PrintStream(bytes);
+      int status;
+      try {
+        status = vc.compile(args, directory, out);
+      } catch (RuntimeException | StackOverflowError e) {
+        out.println("[# vc #]: the compiler failed with " + e);
+        status = 1;
+      }
+      out.flush();
+
+      DataOutputStream reply = new DataOutputStream(Channels.newOutputStream(client));
+      reply.writeInt(bytes.size());
+      bytes.writeTo(reply);
+      reply.writeInt(status);
+      reply.flush();
+    } catch (IOException e) {
+      // the client has gone; there is no one to tell
+    } finally {
+      try {
+        client.close();
+      } catch (IOException e) {
+        // closed already
+      }
+    }
+  }
+
+  private static SocketChannel connect(String socket) {
+    try {
+      return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  // Has the daemon listening on socket run the command line args, and
+  // prints its output to out. Returns the exit status, or -1 if no
+  // daemon is listening. A socket that another user could have made is
+  // not used.
+  static int request(String socket, String[] args, PrintStream out) {
+    Path path = Paths.get(socket);
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+      return -1;
+    String problem = checkDirectory(path, false);
+    if (problem == null && !isOwnSocket(path))
+      problem = "it is not a socket of " + System.getProperty("user.name");
+    if (problem != null) {
+      out.println("[# vc #]: not using the daemon on " + socket + ": " + problem);
+      return 1;
+    }
+    SocketChannel daemon = connect(socket);
+    if (daemon == null)
+      return -1;
+    try {
+      DataOutputStream request = new DataOutputStream(Channels.newOutputStream(daemon));
+      request.writeUTF(new File("").getAbsolutePath());
+      request.writeInt(args.length);
+      for (String arg : args)
+        request.writeUTF(arg);
+      request.flush();
+
+      DataInputStream in = new DataInputStream(Channels.newInputStream(daemon));
+      int n = in.readInt();
+      if (n < 0 || n > MAX_REPLY)
+        throw new IOException("a reply of " + n + " bytes");
+      byte[] bytes = new byte[n];
+      in.readFully(bytes);
+      out.write(bytes);
+      out.flush();
+      return in.readInt();
+    } catch (IOException e) {
+      out.println("[# vc #]: the daemon on " + socket + " failed: " + e);
+      return 1;
+    } finally {
+      try {
+        daemon.close();
+      } catch (IOException e) {
+        // closed already
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Diagnostic.java
+ */
+
+package VC;
+
+import VC.Scanner.SourcePosition;
+
+// A single error or restriction reported by one of the passes.
+//
+// Diagnostics are recorded by ErrorReporter as they are found and are
+// rendered only when the reporter is flushed, so that the output can be
+// sorted by source position and written either as plain text or as one
+// JSON object per line.
+
+public final class Diagnostic implements Comparable<Diagnostic> {
+
+  public enum Severity { ERROR, RESTRICTION }
+
+  public final Severity severity;
+
+  // the number n of a Checker message "*n: ...", or -1 for messages
+  // from the scanner and parser, which are not numbered
+  public final int code;
+
+  // the message with every '%' standing for the argument; the scanner
+  // reports its errors with a null argument
+  public final String template;
+  public final String argument;
+
+  public final SourcePosition position;
+
+  // lineStart and charStart packed into one long; used as the sort key
+  public final long packedPosition;
+
+  // the order in which the diagnostic was reported, used to keep the
+  // sort stable for diagnostics at the same position
+  private final int sequence;
+
+  public Diagnostic(Severity severity, String template, String argument,
+                    SourcePosition position, int sequence) {
+    this.severity = severity;
+    this.template = template;
+    this.argument = argument;
+    this.position = position;
+    this.sequence = sequence;
+    this.code = codeOf(template);
+    this.packedPosition = (position == null) ? Long.MAX_VALUE
+        : ((long) position.lineStart << 32) | (position.charStart & 0xffffffffL);
+  }
+
+  // extracts n from a message of the form "*n: ..."
+  private static int codeOf(String template) {
+    if (template == null || !template.startsWith("*"))
+      return -1;
+    int i = 1;
+    int n = 0;
+    while (i < template.length() && Character.isDigit(template.charAt(i))) {
+      n = n * 10 + (template.charAt(i) - '0');
+      i++;
+    }
+    if (i == 1 || i >= template.length() || template.charAt(i) != ':')
+      return -1;
+    return n;
+  }
+
+  // the message with every '%' replaced by the argument, if there is
+  // one
+  public String message() {
+    if (argument == null)
+      return template;
+    StringBuilder sb = new StringBuilder(template.length() + 16);
+    for (int p = 0; p < template.length(); p++) {
+      char c = template.charAt(p);
+      if (c == '%')
+        sb.append(argument);
+      else
+        sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  public int compareTo(Diagnostic other) {
+    if (packedPosition != other.packedPosition)
+      return packedPosition < other.packedPosition ? -1 : 1;
+    return Integer.compare(sequence, other.sequence);
+  }
+
+  // The traditional one-line form, e.g.
+  //   ERROR: 3(5)..3(7): *9: incompatible type for this binary operator
+  public void appendText(StringBuilder sb) {
+    if (severity == Severity.RESTRICTION) {
+      sb.append("RESTRICTION: ").append(template).append('\n');
+      return;
+    }
+    sb.append("ERROR: ");
+    if (position == null) {
+      // a compilation that was aborted
+      sb.append(message()).append('\n');
+      return;
+    }
+    sb.append(position.lineStart).append('(').append(position.charStart).append(")..")
+      .append(position.lineFinish).append('(').append(position.charFinish).append("): ");
+    sb.append(message()).append('\n');
+  }
+
+  // One JSON object on a single line, e.g.
+  //   {"severity":"error","code":9,"line":3,"column":5,"endLine":3,
+  //    "endColumn":7,"message":"...","argument":"+"}
+  public void appendJSON(StringBuilder sb) {
+    sb.append("{\"severity\":\"").append(severity == Severity.ERROR ? "error" : "restriction").append('"');
+    sb.append(",\"code\":").append(code);
+    if (position != null) {
+      sb.append(",\"line\":").append(position.lineStart);
+      sb.append(",\"column\":").append(position.charStart);
+      sb.append(",\"endLine\":").append(position.lineFinish);
+      sb.append(",\"endColumn\":").append(position.charFinish);
+    }
+    sb.append(",\"message\":");
+    appendJSONString(sb, severity == Severity.ERROR ? message() : template);
+    if (argument != null) {
+      sb.append(",\"argument\":");
+      appendJSONString(sb, argument);
+    }
+    sb.append("}\n");
+  }
+
+  private static void appendJSONString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':  sb.append("\\\""); break;
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n"); break;
+        case '\r': sb.append("\\r"); break;
+        case '\t': sb.append("\\t"); break;
+        default:
+          if (c < 0x20)
+            sb.append(String.format("\\u%04x", (int) c));
+          else
+            sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+}
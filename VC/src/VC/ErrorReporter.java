@@ -4,32 +4,109 @@
 
 package VC;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+
 import VC.Scanner.SourcePosition;
 
+// Errors are not printed when they are reported. They are kept as
+// Diagnostic records and written out in one go, sorted by source
+// position, when flush() is called at the end of a compilation.
+
 public class ErrorReporter {
 
+  // Thrown by reportError once maxErrors errors have been reported, so
+  // that a pass does not keep going on a hopeless input. Caught by
+  // CompilationSession.
+  public static class ErrorLimitReached extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ErrorLimitReached(int limit) {
+      super("too many errors (" + limit + ")");
+    }
+  }
+
+  // Thrown where the compiler cannot go on: a file that cannot be read
+  // or written, or code that the code generator gets wrong, such as an
+  // operand stack that would go below zero. CompilationSession reports
+  // the message as an error without a position and stops the
+  // compilation, so that nothing in it stops the JVM.
+  public static class CompilationAborted extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CompilationAborted(String message) {
+      super(message);
+    }
+  }
+
   public int numErrors;
 
+  // 0 means no limit
+  private int maxErrors;
+  private boolean json;
+  private ArrayList<Diagnostic> diagnostics;
+
   public ErrorReporter() {
     numErrors = 0;
+    maxErrors = 0;
+    json = false;
+    diagnostics = new ArrayList<Diagnostic>();
   }
 
-  public void reportError(String message, String tokenName, SourcePosition pos) {
-    System.out.print ("ERROR: ");
-    System.out.print(pos.lineStart + "(" + pos.charStart + ").." +
-                     pos.lineFinish+ "(" + pos.charFinish + "): ");
+  public void setMaxErrors(int maxErrors) {
+    this.maxErrors = maxErrors;
+  }
 
-    for (int p = 0; p < message.length(); p++)
-    if (message.charAt(p) == '%')
-      System.out.print(tokenName);
-    else
-      System.out.print(message.charAt(p));
+  public void setJSON(boolean json) {
+    this.json = json;
+  }
+
+  public void reportError(String message, String tokenName, SourcePosition pos) {
+    diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, message,
+        tokenName, pos, diagnostics.size()));
+    numErrors++;
+    if (maxErrors > 0 && numErrors >= maxErrors)
+      throw new ErrorLimitReached(maxErrors);
+  }
 
-    System.out.println();
+  // Reports why a compilation was aborted. Unlike reportError it does
+  // not throw ErrorLimitReached, as the compilation has stopped already.
+  public void reportAborted(String message) {
+    diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, message,
+        null, null, diagnostics.size()));
     numErrors++;
   }
 
   public void reportRestriction(String message) {
-    System.out.println("RESTRICTION: " + message);
+    diagnostics.add(new Diagnostic(Diagnostic.Severity.RESTRICTION, message,
+        null, null, diagnostics.size()));
+  }
+
+  // the diagnostics reported so far, sorted by position
+  public java.util.List<Diagnostic> getDiagnostics() {
+    ArrayList<Diagnostic> sorted = new ArrayList<Diagnostic>(diagnostics);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  // Renders all pending diagnostics to out and forgets them.
+  public void flush(PrintStream out) {
+    if (diagnostics.isEmpty())
+      return;
+    StringBuilder sb = new StringBuilder(diagnostics.size() * 80);
+    for (Diagnostic d : getDiagnostics()) {
+      if (json)
+        d.appendJSON(sb);
+      else
+        d.appendText(sb);
+    }
+    out.print(sb);
+    out.flush();
+    diagnostics.clear();
+  }
+
+  public void flush() {
+    flush(System.out);
   }
 }
@@ -0,0 +1,82 @@
+/*
+ * Constant.java
+ */
+
+package VC.IR;
+
+// A literal int, float, boolean or string. Booleans are stored as 0 or
+// 1 in intValue.
+
+public final class Constant extends Value {
+
+	public final int intValue;
+	public final float floatValue;
+	public final String stringValue;
+
+	private Constant(IRType type, int i, float f, String s) {
+		super(type);
+		intValue = i;
+		floatValue = f;
+		stringValue = s;
+	}
+
+	public static Constant ofInt(int i) {
+		return new Constant(IRType.INT, i, 0, null);
+	}
+
+	public static Constant ofFloat(float f) {
+		return new Constant(IRType.FLOAT, 0, f, null);
+	}
+
+	public static Constant ofBool(boolean b) {
+		return new Constant(IRType.BOOL, b ? 1 : 0, 0, null);
+	}
+
+	public static Constant ofString(String s) {
+		return new Constant(IRType.STRING, 0, 0, s);
+	}
+
+	// the value used for a variable that is read before it is assigned
+	public static Constant zero(IRType type) {
+		switch (type) {
+		case FLOAT:
+			return ofFloat(0.0f);
+		case BOOL:
+			return ofBool(false);
+		default:
+			return ofInt(0);
+		}
+	}
+
+	public boolean boolValue() {
+		return intValue != 0;
+	}
+
+	// true if both constants denote the same value; floats are compared
+	// by their bits so that 0.0 and -0.0 differ and NaN equals itself
+	public boolean sameAs(Constant c) {
+		if (type != c.type)
+			return false;
+		switch (type) {
+		case FLOAT:
+			return Float.floatToIntBits(floatValue) == Float.floatToIntBits(c.floatValue);
+		case STRING:
+			return stringValue.equals(c.stringValue);
+		default:
+			return intValue == c.intValue;
+		}
+	}
+
+	public String name() {
+		switch (type) {
+		case FLOAT:
+			return floatValue + "f";
+		case BOOL:
+			return boolValue() ? "true" : "false";
+		case STRING:
+			return "\"" + stringValue + "\"";
+		default:
+			return Integer.toString(intValue);
+		}
+	}
+}
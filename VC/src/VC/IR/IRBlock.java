@@ -0,0 +1,101 @@
+/*
+ * IRBlock.java
+ */
+
+package VC.IR;
+
+import java.util.ArrayList;
+
+import VC.CFG.BasicBlock;
+
+// A basic block of the IR. instrs holds the phis of the block first and
+// ends with a terminator (JUMP, BRANCH or RET) once the block is
+// complete. The successors follow the convention of BasicBlock: a
+// BRANCH goes to succs.get(0) when its operand is true.
+//
+// The operands of every phi are in the order of preds, so edges must be
+// changed with the methods of this class and of IRFunction.
+
+public final class IRBlock extends BasicBlock {
+
+	public IRFunction func;
+	public ArrayList<Instr> instrs;
+
+	public IRBlock(IRFunction func) {
+		super(0);
+		this.func = func;
+		instrs = new ArrayList<Instr>();
+	}
+
+	public IRBlock pred(int i) {
+		return (IRBlock) preds.get(i);
+	}
+
+	public IRBlock succ(int i) {
+		return (IRBlock) succs.get(i);
+	}
+
+	// the terminator of the block, or null if it has none yet
+	public Instr terminator() {
+		if (instrs.isEmpty())
+			return null;
+		Instr last = instrs.get(instrs.size() - 1);
+		return last.isTerminator() ? last : null;
+	}
+
+	public ArrayList<Instr> phis() {
+		ArrayList<Instr> result = new ArrayList<Instr>();
+		for (Instr i : instrs) {
+			if (!i.isPhi())
+				break;
+			result.add(i);
+		}
+		return result;
+	}
+
+	public Instr append(Instr i) {
+		return insert(instrs.size(), i);
+	}
+
+	// appends i before the terminator
+	public Instr insertAtEnd(Instr i) {
+		return insert(terminator() == null ? instrs.size() : instrs.size() - 1, i);
+	}
+
+	public Instr insertBefore(Instr i, Instr before) {
+		return insert(instrs.indexOf(before), i);
+	}
+
+	// adds a phi after the other phis of the block
+	public Instr addPhi(Instr phi) {
+		int n = 0;
+		while (n < instrs.size() && instrs.get(n).isPhi())
+			n++;
+		return insert(n, phi);
+	}
+
+	private Instr insert(int index, Instr i) {
+		i.block = this;
+		i.id = func.newValueId();
+		instrs.add(index, i);
+		return i;
+	}
+
+	// moves i, which may be in another block, to the end of this block
+	public void moveToEnd(Instr i) {
+		i.block.instrs.remove(i);
+		i.block = this;
+		int n = terminator() == null ? instrs.size() : instrs.size() - 1;
+		instrs.add(n, i);
+	}
+
+	// removes the edge from p, together with the operands of the phis
+	// that belong to it
+	public void removePred(BasicBlock p) {
+		int index = preds.indexOf(p);
+		preds.remove(index);
+		p.succs.remove(this);
+		for (Instr phi : phis())
+			phi.removeOperand(index);
+	}
+}
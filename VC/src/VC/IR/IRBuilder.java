@@ -0,0 +1,559 @@
+/*
+ * IRBuilder.java
+ */
+
+// Translates the functions of a checked program into SSA form, using the
+// algorithm of Braun, Buchwald, Hack, Leissa, Mallon and Zwinkau
+// ("Simple and Efficient Construction of Static Single Assignment Form",
+// CC 2013). The scalar locals and parameters of a function become SSA
+// values; phis are created on demand when a variable is read in a block
+// whose definition comes from several predecessors. A block is sealed
+// once all its predecessors are known; reads in unsealed blocks create
+// incomplete phis whose operands are filled in when the block is sealed.
+//
+// Local arrays are the values of their NEWARRAY instructions; arrays and
+// global variables are accessed with ALOAD/ASTORE and GETSTATIC/
+// PUTSTATIC. && and || are translated into branches and a phi.
+//
+// Statements that cannot be reached, such as those after a return, are
+// not translated. A variable read before it is assigned is 0 (or 0.0 or
+// false), and so is the result of a non-void function whose end is
+// reached without a return.
+
+package VC.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Stack;
+
+import VC.ASTs.*;
+
+public final class IRBuilder {
+
+	private IRProgram program;
+	private IRFunction fn;
+
+	// the block to which instructions are appended, or null if control
+	// cannot reach the code being translated
+	private IRBlock cur;
+
+	// the line of the statement being translated
+	private int line;
+
+	private Stack<IRBlock> brkStack;
+	private Stack<IRBlock> conStack;
+
+	// the value returned along each edge into the exit block
+	private HashMap<IRBlock, Value> returnValues;
+
+	// the current value of each variable at the end of each block
+	private HashMap<IRBlock, HashMap<Decl, Value>> currentDef;
+	private HashSet<IRBlock> sealed;
+	private HashMap<IRBlock, HashMap<Decl, Instr>> incompletePhis;
+
+	// trivial phis that have been removed, and the values replacing them
+	private HashMap<Instr, Value> replaced;
+
+	// phis whose operands are being added; one is not trivial just
+	// because the operands added so far are the same
+	private HashSet<Instr> filling;
+
+	// PRE: ast is a checked Program
+
+	public static IRProgram build(AST ast) {
+		return new IRBuilder().buildProgram((Program) ast);
+	}
+
+	private IRProgram buildProgram(Program ast) {
+		program = new IRProgram();
+		List list = ast.FL;
+		while (!list.isEmpty()) {
+			DeclList dl = (DeclList) list;
+			if (dl.D instanceof FuncDecl)
+				program.add(new IRFunction((FuncDecl) dl.D));
+			list = dl.DL;
+		}
+		for (IRFunction f : program.functions)
+			buildFunction(f);
+		return program;
+	}
+
+	private void buildFunction(IRFunction f) {
+		fn = f;
+		brkStack = new Stack<IRBlock>();
+		conStack = new Stack<IRBlock>();
+		returnValues = new HashMap<IRBlock, Value>();
+		currentDef = new HashMap<IRBlock, HashMap<Decl, Value>>();
+		sealed = new HashSet<IRBlock>();
+		incompletePhis = new HashMap<IRBlock, HashMap<Decl, Instr>>();
+		replaced = new HashMap<Instr, Value>();
+		filling = new HashSet<Instr>();
+
+		IRBlock entry = fn.newBlock();
+		fn.cfg.entry = entry;
+		fn.cfg.exit = fn.newBlock();
+		sealed.add(entry);
+		cur = entry;
+		line = fn.decl.position.lineStart;
+
+		List pl = fn.decl.PL;
+		while (!pl.isEmpty()) {
+			ParaDecl p = ((ParaList) pl).P;
+			Param v = new Param(fn.params.size(), p);
+			fn.params.add(v);
+			writeVariable(p, entry, v);
+			pl = ((ParaList) pl).PL;
+		}
+
+		stmt(fn.decl.S);
+		if (cur != null)
+			returnFrom(fn.returnType == IRType.VOID ? null : Constant.zero(fn.returnType));
+		buildExit();
+		fn.removeUnreachable();
+	}
+
+	private void buildExit() {
+		IRBlock exit = fn.exit();
+		sealBlock(exit);
+		if (fn.returnType == IRType.VOID) {
+			exit.append(new Instr(Op.RET, IRType.VOID));
+		} else if (exit.preds.isEmpty()) {
+			exit.append(new Instr(Op.RET, IRType.VOID, Constant.zero(fn.returnType)));
+		} else {
+			Instr phi = exit.addPhi(new Instr(Op.PHI, fn.returnType));
+			for (int i = 0; i < exit.preds.size(); i++)
+				phi.addOperand(resolve(returnValues.get(exit.pred(i))));
+			exit.append(new Instr(Op.RET, IRType.VOID, phi));
+			tryRemoveTrivialPhi(phi);
+		}
+	}
+
+	// Variables
+
+	private void writeVariable(Decl d, IRBlock b, Value v) {
+		HashMap<Decl, Value> defs = currentDef.get(b);
+		if (defs == null) {
+			defs = new HashMap<Decl, Value>();
+			currentDef.put(b, defs);
+		}
+		defs.put(d, resolve(v));
+	}
+
+	private Value readVariable(Decl d, IRBlock b) {
+		HashMap<Decl, Value> defs = currentDef.get(b);
+		if (defs != null && defs.containsKey(d))
+			return resolve(defs.get(d));
+		return readVariableRecursive(d, b);
+	}
+
+	// A value held while a trivial phi is removed may be that phi, so
+	// values are resolved before they are stored or used.
+	private Value resolve(Value v) {
+		while (v instanceof Instr && replaced.containsKey(v))
+			v = replaced.get(v);
+		return v;
+	}
+
+	private Value readVariableRecursive(Decl d, IRBlock b) {
+		IRType type = IRType.of(d.T);
+		Value v;
+		if (!sealed.contains(b)) {
+			Instr phi = b.addPhi(new Instr(Op.PHI, type));
+			HashMap<Decl, Instr> phis = incompletePhis.get(b);
+			if (phis == null) {
+				phis = new HashMap<Decl, Instr>();
+				incompletePhis.put(b, phis);
+			}
+			phis.put(d, phi);
+			v = phi;
+		} else if (b.preds.size() == 1) {
+			v = readVariable(d, b.pred(0));
+		} else if (b.preds.isEmpty()) {
+			v = Constant.zero(type);
+		} else {
+			Instr phi = b.addPhi(new Instr(Op.PHI, type));
+			writeVariable(d, b, phi);
+			v = addPhiOperands(d, phi);
+		}
+		v = resolve(v);
+		writeVariable(d, b, v);
+		return v;
+	}
+
+	private Value addPhiOperands(Decl d, Instr phi) {
+		filling.add(phi);
+		for (int i = 0; i < phi.block.preds.size(); i++)
+			phi.addOperand(readVariable(d, phi.block.pred(i)));
+		filling.remove(phi);
+		return resolve(tryRemoveTrivialPhi(phi));
+	}
+
+	// A phi whose operands are all the same value v, or the phi itself,
+	// is replaced by v.
+	private Value tryRemoveTrivialPhi(Instr phi) {
+		Value same = null;
+		for (Value op : phi.operands) {
+			if (op == same || op == phi)
+				continue;
+			if (same != null)
+				return phi;
+			same = op;
+		}
+		if (same == null)
+			same = Constant.zero(phi.type); // the phi is unreachable
+		ArrayList<Instr> users = new ArrayList<Instr>();
+		for (Instr u : phi.users)
+			if (u != phi && !users.contains(u))
+				users.add(u);
+		phi.replaceAllUsesWith(same);
+		phi.remove();
+		replaced.put(phi, same);
+		for (Instr u : users)
+			if (u.isPhi() && u.block != null && !filling.contains(u))
+				tryRemoveTrivialPhi(u);
+		return resolve(same);
+	}
+
+	private void sealBlock(IRBlock b) {
+		HashMap<Decl, Instr> phis = incompletePhis.remove(b);
+		sealed.add(b);
+		if (phis != null)
+			for (Decl d : phis.keySet())
+				addPhiOperands(d, phis.get(d));
+	}
+
+	// Control flow
+
+	private Instr emit(Instr i) {
+		for (int k = 0; k < i.numOperands(); k++)
+			i.setOperand(k, resolve(i.operand(k)));
+		i.line = line;
+		return cur.append(i);
+	}
+
+	// ends the current block with a jump to target
+	private void jump(IRBlock target) {
+		if (cur == null)
+			return;
+		emit(new Instr(Op.JUMP, IRType.VOID));
+		IRFunction.addEdge(cur, target);
+		cur = null;
+	}
+
+	// ends the current block with a two-way branch on cond; a constant
+	// condition becomes a jump
+	private void branch(Value cond, IRBlock ifTrue, IRBlock ifFalse) {
+		if (cond instanceof Constant) {
+			jump(((Constant) cond).boolValue() ? ifTrue : ifFalse);
+			return;
+		}
+		emit(new Instr(Op.BRANCH, IRType.VOID, cond));
+		IRFunction.addEdge(cur, ifTrue);
+		IRFunction.addEdge(cur, ifFalse);
+		cur = null;
+	}
+
+	// makes b the current block, or leaves no current block if b
+	// cannot be reached
+	private void enter(IRBlock b) {
+		cur = b.preds.isEmpty() ? null : b;
+	}
+
+	private void returnFrom(Value v) {
+		returnValues.put(cur, v);
+		jump(fn.exit());
+	}
+
+	// Statements
+
+	private void stmt(Stmt s) {
+		if (cur == null)
+			return; // unreachable
+		line = s.position.lineStart;
+		switch (s.kind) {
+		case COMPOUND_STMT: {
+			CompoundStmt c = (CompoundStmt) s;
+			List dl = c.DL;
+			while (!dl.isEmpty()) {
+				localVarDecl((LocalVarDecl) ((DeclList) dl).D);
+				dl = ((DeclList) dl).DL;
+			}
+			List sl = c.SL;
+			while (!sl.isEmpty()) {
+				stmt(((StmtList) sl).S);
+				sl = ((StmtList) sl).SL;
+			}
+			break;
+		}
+		case EXPR_STMT:
+			expr(((ExprStmt) s).E);
+			break;
+		case IF_STMT: {
+			IfStmt ifStmt = (IfStmt) s;
+			IRBlock thenB = fn.newBlock();
+			IRBlock join = fn.newBlock();
+			IRBlock elseB = ifStmt.S2.isEmptyStmt() ? join : fn.newBlock();
+			branch(expr(ifStmt.E), thenB, elseB);
+			sealBlock(thenB);
+			enter(thenB);
+			stmt(ifStmt.S1);
+			jump(join);
+			if (elseB != join) {
+				sealBlock(elseB);
+				enter(elseB);
+				stmt(ifStmt.S2);
+				jump(join);
+			}
+			sealBlock(join);
+			enter(join);
+			break;
+		}
+		case WHILE_STMT: {
+			WhileStmt w = (WhileStmt) s;
+			IRBlock header = fn.newBlock();
+			IRBlock body = fn.newBlock();
+			IRBlock after = fn.newBlock();
+			jump(header);
+			cur = header;
+			branch(expr(w.E), body, after);
+			sealBlock(body);
+			loopBody(w.S, body, header, after);
+			jump(header);
+			sealBlock(header);
+			sealBlock(after);
+			enter(after);
+			break;
+		}
+		case FOR_STMT: {
+			ForStmt f = (ForStmt) s;
+			expr(f.E1);
+			IRBlock header = fn.newBlock();
+			IRBlock body = fn.newBlock();
+			IRBlock step = fn.newBlock();
+			IRBlock after = fn.newBlock();
+			jump(header);
+			cur = header;
+			if (f.E2.isEmptyExpr())
+				jump(body);
+			else
+				branch(expr(f.E2), body, after);
+			sealBlock(body);
+			loopBody(f.S, body, step, after);
+			jump(step);
+			sealBlock(step);
+			enter(step);
+			if (cur != null) {
+				expr(f.E3);
+				jump(header);
+			}
+			sealBlock(header);
+			sealBlock(after);
+			enter(after);
+			break;
+		}
+		case BREAK_STMT:
+			jump(brkStack.peek());
+			break;
+		case CONTINUE_STMT:
+			jump(conStack.peek());
+			break;
+		case RETURN_STMT: {
+			Value v = expr(((ReturnStmt) s).E);
+			returnFrom(fn.returnType == IRType.VOID ? null : v);
+			break;
+		}
+		default:
+			// EmptyStmt and EmptyCompStmt
+			break;
+		}
+	}
+
+	private void loopBody(Stmt s, IRBlock body, IRBlock continueTarget,
+			IRBlock breakTarget) {
+		conStack.push(continueTarget);
+		brkStack.push(breakTarget);
+		enter(body);
+		stmt(s);
+		conStack.pop();
+		brkStack.pop();
+	}
+
+	private void localVarDecl(LocalVarDecl d) {
+		line = d.position.lineStart;
+		if (d.T.isArrayType()) {
+			ArrayType t = (ArrayType) d.T;
+			int length = Integer.parseInt(((IntExpr) t.E).IL.spelling);
+			Instr array = emit(new Instr(Op.NEWARRAY, IRType.of(t), Constant.ofInt(length)));
+			if (d.E instanceof InitExpr) {
+				List il = ((InitExpr) d.E).IL;
+				int index = 0;
+				while (!il.isEmpty()) {
+					ExprList el = (ExprList) il;
+					emit(new Instr(Op.ASTORE, IRType.VOID, array, Constant.ofInt(index++), expr(el.E)));
+					il = el.EL;
+				}
+			}
+			writeVariable(d, cur, array);
+		} else if (d.E.isEmptyExpr()) {
+			writeVariable(d, cur, Constant.zero(IRType.of(d.T)));
+		} else {
+			writeVariable(d, cur, expr(d.E));
+		}
+	}
+
+	// Expressions
+
+	// returns the value of e, or null if e is empty or a call of a void
+	// function
+	private Value expr(Expr e) {
+		switch (e.kind) {
+		case INT_EXPR:
+			return Constant.ofInt(Integer.parseInt(((IntExpr) e).IL.spelling));
+		case FLOAT_EXPR:
+			return Constant.ofFloat(Float.parseFloat(((FloatExpr) e).FL.spelling));
+		case BOOLEAN_EXPR:
+			return Constant.ofBool(((BooleanExpr) e).BL.spelling.equals("true"));
+		case STRING_EXPR:
+			return Constant.ofString(((StringExpr) e).SL.spelling);
+		case VAR_EXPR:
+			return variable((SimpleVar) ((VarExpr) e).V);
+		case ARRAY_EXPR: {
+			ArrayExpr a = (ArrayExpr) e;
+			Value array = variable((SimpleVar) a.V);
+			Value index = expr(a.E);
+			return emit(new Instr(Op.ALOAD, IRType.of(a.type), array, index));
+		}
+		case UNARY_EXPR:
+			return unaryExpr((UnaryExpr) e);
+		case BINARY_EXPR:
+			return binaryExpr((BinaryExpr) e);
+		case ASSIGN_EXPR:
+			return assignExpr((AssignExpr) e);
+		case CALL_EXPR:
+			return callExpr((CallExpr) e);
+		default:
+			// EmptyExpr
+			return null;
+		}
+	}
+
+	private Value variable(SimpleVar v) {
+		if (v.I.decl instanceof GlobalVarDecl) {
+			Instr get = emit(new Instr(Op.GETSTATIC, IRType.of(v.type)));
+			get.symbol = v.I.spelling;
+			return get;
+		}
+		return readVariable((Decl) v.I.decl, cur);
+	}
+
+	private Value unaryExpr(UnaryExpr e) {
+		Value v = expr(e.E);
+		String op = e.O.spelling;
+		if (op.equals("i!"))
+			return emit(new Instr(Op.NOT, IRType.BOOL, v));
+		else if (op.equals("i-") || op.equals("f-"))
+			return emit(new Instr(Op.NEG, v.type, v));
+		else if (op.equals("i2f"))
+			return emit(new Instr(Op.I2F, IRType.FLOAT, v));
+		else // unary +
+			return v;
+	}
+
+	private Value binaryExpr(BinaryExpr e) {
+		String op = e.O.spelling.substring(1);
+		if (op.equals("&&") || op.equals("||"))
+			return shortCircuit(e, op.equals("&&"));
+		Value left = expr(e.E1);
+		Value right = expr(e.E2);
+		Op irOp;
+		if (op.equals("+"))
+			irOp = Op.ADD;
+		else if (op.equals("-"))
+			irOp = Op.SUB;
+		else if (op.equals("*"))
+			irOp = Op.MUL;
+		else if (op.equals("/"))
+			irOp = Op.DIV;
+		else if (op.equals("=="))
+			irOp = Op.EQ;
+		else if (op.equals("!="))
+			irOp = Op.NE;
+		else if (op.equals("<"))
+			irOp = Op.LT;
+		else if (op.equals("<="))
+			irOp = Op.LE;
+		else if (op.equals(">"))
+			irOp = Op.GT;
+		else // if (op.equals(">="))
+			irOp = Op.GE;
+		IRType type = irOp.isComparison() ? IRType.BOOL : left.type;
+		return emit(new Instr(irOp, type, left, right));
+	}
+
+	// E1 && E2 is false if E1 is false and E2 otherwise; E1 || E2 is
+	// true if E1 is true and E2 otherwise
+	private Value shortCircuit(BinaryExpr e, boolean isAnd) {
+		Value left = expr(e.E1);
+		IRBlock leftEnd = cur;
+		IRBlock rhs = fn.newBlock();
+		IRBlock join = fn.newBlock();
+		if (isAnd)
+			branch(left, rhs, join);
+		else
+			branch(left, join, rhs);
+		sealBlock(rhs);
+		enter(rhs);
+		Value right = (cur == null) ? null : expr(e.E2);
+		IRBlock rightEnd = cur;
+		jump(join);
+		sealBlock(join);
+		enter(join);
+		if (join.preds.size() == 1)
+			return join.pred(0) == rightEnd ? resolve(right) : Constant.ofBool(!isAnd);
+		Instr phi = join.addPhi(new Instr(Op.PHI, IRType.BOOL));
+		phi.line = line;
+		for (int i = 0; i < join.preds.size(); i++)
+			phi.addOperand(join.pred(i) == leftEnd ? Constant.ofBool(!isAnd) : resolve(right));
+		return phi;
+	}
+
+	private Value assignExpr(AssignExpr e) {
+		if (e.E1 instanceof ArrayExpr) {
+			ArrayExpr a = (ArrayExpr) e.E1;
+			Value array = variable((SimpleVar) a.V);
+			Value index = expr(a.E);
+			Value v = expr(e.E2);
+			emit(new Instr(Op.ASTORE, IRType.VOID, array, index, v));
+			return v;
+		}
+		SimpleVar var = (SimpleVar) ((VarExpr) e.E1).V;
+		Value v = expr(e.E2);
+		if (var.I.decl instanceof GlobalVarDecl) {
+			Instr put = emit(new Instr(Op.PUTSTATIC, IRType.VOID, v));
+			put.symbol = var.I.spelling;
+		} else {
+			writeVariable((Decl) var.I.decl, cur, v);
+		}
+		return v;
+	}
+
+	private Value callExpr(CallExpr e) {
+		FuncDecl callee = (FuncDecl) e.I.decl;
+		Instr call;
+		if (program.function(callee) != null) {
+			call = new Instr(Op.CALL, IRType.of(callee.T));
+			call.callee = callee;
+		} else {
+			call = new Instr(Op.INTRINSIC, IRType.of(callee.T));
+			call.symbol = e.I.spelling;
+		}
+		List al = e.AL;
+		while (!al.isEmpty()) {
+			call.addOperand(expr(((ArgList) al).A.E));
+			al = ((ArgList) al).AL;
+		}
+		emit(call);
+		return call.type == IRType.VOID ? null : call;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * IRFunction.java
+ */
+
+package VC.IR;
+
+import java.util.ArrayList;
+
+import VC.ASTs.FuncDecl;
+import VC.CFG.BasicBlock;
+import VC.CFG.CFG;
+
+// The IR of one VC function. Its blocks form a CFG, so DominatorTree and
+// LoopNest apply to it unchanged.
+//
+// Every return branches to the exit block, which holds the only RET of
+// the function. main is translated as a function returning void since
+// it becomes the Java method main.
+
+public final class IRFunction {
+
+	public FuncDecl decl;
+	public String name;
+	public IRType returnType;
+	public ArrayList<Param> params;
+	public CFG cfg;
+
+	private int nextValueId;
+
+	public IRFunction(FuncDecl decl) {
+		this.decl = decl;
+		name = decl.I.spelling;
+		returnType = isMain() ? IRType.VOID : IRType.of(decl.T);
+		params = new ArrayList<Param>();
+		cfg = new CFG(decl);
+		nextValueId = 0;
+	}
+
+	public boolean isMain() {
+		return name.equals("main");
+	}
+
+	public IRBlock entry() {
+		return (IRBlock) cfg.entry;
+	}
+
+	public IRBlock exit() {
+		return (IRBlock) cfg.exit;
+	}
+
+	public IRBlock newBlock() {
+		IRBlock b = new IRBlock(this);
+		cfg.addBlock(b);
+		return b;
+	}
+
+	public IRBlock block(int id) {
+		return (IRBlock) cfg.blocks.get(id);
+	}
+
+	public ArrayList<IRBlock> blocks() {
+		ArrayList<IRBlock> result = new ArrayList<IRBlock>(cfg.blocks.size());
+		for (BasicBlock b : cfg.blocks)
+			result.add((IRBlock) b);
+		return result;
+	}
+
+	int newValueId() {
+		return nextValueId++;
+	}
+
+	public static void addEdge(IRBlock from, IRBlock to) {
+		CFG.addEdge(from, to);
+	}
+
+	// Inserts a new block on the edge from -> to and returns it. The
+	// phis of to keep their operands, which now flow in from the new
+	// block.
+	public IRBlock splitEdge(IRBlock from, IRBlock to) {
+		IRBlock mid = newBlock();
+		from.succs.set(from.succs.indexOf(to), mid);
+		to.preds.set(to.preds.indexOf(from), mid);
+		mid.preds.add(from);
+		mid.succs.add(to);
+		mid.append(new Instr(Op.JUMP, IRType.VOID));
+		return mid;
+	}
+
+	// Moves the instructions after i into a new block, which takes over
+	// the successors of the block of i, and returns it. The block of i
+	// is left without a terminator or successors.
+	public IRBlock splitAfter(Instr i) {
+		IRBlock b = i.block;
+		IRBlock rest = newBlock();
+		int k = b.instrs.indexOf(i) + 1;
+		while (b.instrs.size() > k) {
+			Instr moved = b.instrs.remove(k);
+			moved.block = rest;
+			rest.instrs.add(moved);
+		}
+		for (BasicBlock s : b.succs) {
+			s.preds.set(s.preds.indexOf(b), rest);
+			rest.succs.add(s);
+		}
+		b.succs.clear();
+		return rest;
+	}
+
+	// Replaces the successor to of from by target, which gets a new
+	// predecessor; the caller adds the operands of the phis of target.
+	public static void redirect(IRBlock from, IRBlock to, IRBlock target) {
+		int index = from.succs.indexOf(to);
+		to.removePred(from);
+		from.succs.add(index, target);
+		target.preds.add(from);
+	}
+
+	// Deletes the blocks that cannot be reached from entry, except the
+	// exit block, and renumbers the remaining ones. Returns true if any
+	// block was deleted.
+	public boolean removeUnreachable() {
+		boolean[] seen = cfg.reachable();
+		seen[cfg.exit.id] = true;
+		ArrayList<BasicBlock> live = new ArrayList<BasicBlock>();
+		ArrayList<IRBlock> dead = new ArrayList<IRBlock>();
+		for (BasicBlock b : cfg.blocks) {
+			if (seen[b.id])
+				live.add(b);
+			else
+				dead.add((IRBlock) b);
+		}
+		if (dead.isEmpty())
+			return false;
+		// only the edges into live blocks need their phis fixed
+		for (IRBlock b : dead)
+			for (BasicBlock s : new ArrayList<BasicBlock>(b.succs))
+				if (seen[s.id])
+					((IRBlock) s).removePred(b);
+		for (IRBlock b : dead) {
+			b.preds.clear();
+			b.succs.clear();
+		}
+		// The values of dead blocks may only be used in dead blocks.
+		for (IRBlock b : dead) {
+			for (Instr i : b.instrs) {
+				i.dropOperands();
+				i.block = null;
+			}
+			b.instrs.clear();
+		}
+		for (int i = 0; i < live.size(); i++)
+			live.get(i).id = i;
+		cfg.blocks = live;
+		return true;
+	}
+
+	// the number of instructions, phis included
+	public int size() {
+		int n = 0;
+		for (BasicBlock b : cfg.blocks)
+			n += ((IRBlock) b).instrs.size();
+		return n;
+	}
+}
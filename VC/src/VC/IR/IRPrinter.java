@@ -0,0 +1,90 @@
+/*
+ * IRPrinter.java
+ *
+ * Prints the IR of a program in a text form meant for debugging the
+ * passes, for example:
+ *
+ *   function gcd(%a int, %b int) int
+ *   B0:
+ *     jump B2
+ *   B2: preds B0 B3
+ *     %3 = phi int [%b, B0] [%6, B3]
+ *     ...
+ */
+
+package VC.IR;
+
+import java.io.PrintWriter;
+
+import VC.CFG.BasicBlock;
+
+public final class IRPrinter {
+
+	private PrintWriter textOut;
+
+	public IRPrinter(PrintWriter textOut) {
+		this.textOut = textOut;
+	}
+
+	public void print(IRProgram program) {
+		for (IRFunction f : program.functions)
+			print(f);
+		textOut.flush();
+	}
+
+	public void print(IRFunction f) {
+		StringBuffer sb = new StringBuffer("function " + f.name + "(");
+		for (int i = 0; i < f.params.size(); i++) {
+			Param p = f.params.get(i);
+			sb.append((i == 0 ? "" : ", ") + p.name() + " " + p.type);
+		}
+		sb.append(") " + f.returnType);
+		textOut.println(sb);
+		for (IRBlock b : f.blocks()) {
+			sb = new StringBuffer(b + ":");
+			if (!b.preds.isEmpty()) {
+				sb.append(" preds");
+				for (BasicBlock p : b.preds)
+					sb.append(" " + p);
+			}
+			if (b == f.exit())
+				sb.append(" exit");
+			textOut.println(sb);
+			for (Instr i : b.instrs)
+				textOut.println("  " + format(i));
+		}
+		textOut.println();
+	}
+
+	public static String format(Instr i) {
+		StringBuffer sb = new StringBuffer();
+		if (i.type != IRType.VOID)
+			sb.append(i.name() + " = ");
+		sb.append(i.op.mnemonic);
+		if (i.type != IRType.VOID)
+			sb.append(" " + i.type);
+		switch (i.op) {
+		case PHI:
+			for (int k = 0; k < i.numOperands(); k++)
+				sb.append(" [" + i.operand(k) + ", " + i.block.preds.get(k) + "]");
+			return sb.toString();
+		case CALL:
+			sb.append(" " + i.callee.I.spelling);
+			break;
+		case INTRINSIC:
+		case GETSTATIC:
+		case PUTSTATIC:
+			sb.append(" @" + i.symbol);
+			break;
+		default:
+			break;
+		}
+		for (int k = 0; k < i.numOperands(); k++)
+			sb.append((k == 0 ? " " : ", ") + i.operand(k));
+		if (i.op == Op.JUMP)
+			sb.append(" " + i.block.succs.get(0));
+		else if (i.op == Op.BRANCH)
+			sb.append(", " + i.block.succs.get(0) + ", " + i.block.succs.get(1));
+		return sb.toString();
+	}
+}
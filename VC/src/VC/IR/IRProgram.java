@@ -0,0 +1,36 @@
+/*
+ * IRProgram.java
+ */
+
+package VC.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import VC.ASTs.FuncDecl;
+
+// The IR of the functions of a VC program, in declaration order. Global
+// variables and their initialisers stay in the AST; functions access
+// them with GETSTATIC and PUTSTATIC.
+
+public final class IRProgram {
+
+	public ArrayList<IRFunction> functions;
+
+	private HashMap<FuncDecl, IRFunction> byDecl;
+
+	public IRProgram() {
+		functions = new ArrayList<IRFunction>();
+		byDecl = new HashMap<FuncDecl, IRFunction>();
+	}
+
+	public void add(IRFunction f) {
+		functions.add(f);
+		byDecl.put(f.decl, f);
+	}
+
+	// the IR of a function of the program, or null for a built-in
+	public IRFunction function(FuncDecl decl) {
+		return byDecl.get(decl);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * IRType.java
+ */
+
+package VC.IR;
+
+import VC.ASTs.ArrayType;
+import VC.ASTs.Type;
+
+// The types of IR values. Booleans are kept apart from ints so that
+// the IR printer and the passes can tell them apart, although both are
+// represented as JVM ints.
+
+public enum IRType {
+
+	INT("I"),
+	FLOAT("F"),
+	BOOL("Z"),
+	STRING("Ljava/lang/String;"),
+	INT_ARRAY("[I"),
+	FLOAT_ARRAY("[F"),
+	BOOL_ARRAY("[Z"),
+	VOID("V");
+
+	// the JVM field descriptor of the type
+	public final String descriptor;
+
+	IRType(String descriptor) {
+		this.descriptor = descriptor;
+	}
+
+	public boolean isArray() {
+		return this == INT_ARRAY || this == FLOAT_ARRAY || this == BOOL_ARRAY;
+	}
+
+	// true if values of this type are held in JVM int locals
+	public boolean isIntLike() {
+		return this == INT || this == BOOL;
+	}
+
+	public IRType elementType() {
+		switch (this) {
+		case INT_ARRAY:
+			return INT;
+		case FLOAT_ARRAY:
+			return FLOAT;
+		case BOOL_ARRAY:
+			return BOOL;
+		default:
+			throw new IllegalStateException(this + " is not an array type");
+		}
+	}
+
+	public static IRType of(Type t) {
+		if (t.isIntType())
+			return INT;
+		else if (t.isFloatType())
+			return FLOAT;
+		else if (t.isBooleanType())
+			return BOOL;
+		else if (t.isStringType())
+			return STRING;
+		else if (t.isArrayType()) {
+			IRType element = of(((ArrayType) t).T);
+			if (element == FLOAT)
+				return FLOAT_ARRAY;
+			else if (element == BOOL)
+				return BOOL_ARRAY;
+			else
+				return INT_ARRAY;
+		} else
+			return VOID;
+	}
+
+	public String toString() {
+		return name().toLowerCase();
+	}
+}
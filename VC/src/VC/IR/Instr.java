@@ -0,0 +1,134 @@
+/*
+ * Instr.java
+ */
+
+package VC.IR;
+
+import java.util.ArrayList;
+
+import VC.ASTs.FuncDecl;
+
+// An instruction of the IR. The instruction is also the value it
+// computes; type is VOID for instructions without a result.
+//
+// Operands must be changed with the methods below, which keep the
+// users lists of the operands up to date.
+
+public final class Instr extends Value {
+
+	public Op op;
+	public ArrayList<Value> operands;
+
+	// the block containing the instruction, or null once it is removed
+	public IRBlock block;
+
+	// numbers the instructions of a function for printing
+	public int id;
+
+	// GETSTATIC, PUTSTATIC: the global variable
+	// INTRINSIC: the built-in function
+	public String symbol;
+
+	// CALL: the function called
+	public FuncDecl callee;
+
+	// the source line the instruction was translated from, or 0
+	public int line;
+
+	public Instr(Op op, IRType type, Value... operands) {
+		super(type);
+		this.op = op;
+		this.operands = new ArrayList<Value>(operands.length);
+		for (Value v : operands)
+			addOperand(v);
+	}
+
+	public Value operand(int i) {
+		return operands.get(i);
+	}
+
+	public int numOperands() {
+		return operands.size();
+	}
+
+	public void addOperand(Value v) {
+		operands.add(v);
+		v.users.add(this);
+	}
+
+	public void setOperand(int i, Value v) {
+		Value old = operands.get(i);
+		if (old == v)
+			return;
+		removeUser(old);
+		operands.set(i, v);
+		v.users.add(this);
+	}
+
+	public void removeOperand(int i) {
+		removeUser(operands.remove(i));
+	}
+
+	public void replaceOperand(Value old, Value v) {
+		for (int i = 0; i < operands.size(); i++)
+			if (operands.get(i) == old)
+				setOperand(i, v);
+	}
+
+	// detaches the instruction from its operands
+	public void dropOperands() {
+		while (!operands.isEmpty())
+			removeOperand(operands.size() - 1);
+	}
+
+	private void removeUser(Value v) {
+		for (int i = 0; i < v.users.size(); i++) {
+			if (v.users.get(i) == this) {
+				v.users.remove(i);
+				return;
+			}
+		}
+	}
+
+	// removes the instruction from its block; its value must be unused
+	public void remove() {
+		dropOperands();
+		block.instrs.remove(this);
+		block = null;
+	}
+
+	public boolean isPhi() {
+		return op == Op.PHI;
+	}
+
+	public boolean isTerminator() {
+		return op.isTerminator();
+	}
+
+	// true if the instruction may throw an exception: an int division
+	// by zero, an array index out of bounds, a negative array size, or
+	// anything a called function does
+	public boolean mayTrap() {
+		switch (op) {
+		case DIV:
+			return type == IRType.INT;
+		case ALOAD:
+		case ASTORE:
+		case NEWARRAY:
+		case CALL:
+		case INTRINSIC:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// true if the instruction can be deleted when its value is unused
+	public boolean isRemovable() {
+		return !op.hasSideEffects() && !mayTrap();
+	}
+
+	public String name() {
+		return "%" + id;
+	}
+}
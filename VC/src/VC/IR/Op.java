@@ -0,0 +1,133 @@
+/*
+ * Op.java
+ */
+
+package VC.IR;
+
+// The operations of the IR.
+//
+//   ADD SUB MUL DIV          a op b on ints or floats (DIV on ints traps
+//                            when b is 0)
+//   NEG                      -a
+//   I2F                      the int a converted to float
+//   EQ NE LT LE GT GE        a op b on ints, booleans or floats, giving
+//                            a boolean
+//   NOT                      !a
+//   PHI                      one operand per predecessor of the block,
+//                            in the order of IRBlock.preds
+//   NEWARRAY                 a new array of length a
+//   ALOAD                    a[b]
+//   ASTORE                   a[b] = c
+//   GETSTATIC PUTSTATIC      read or write the global variable symbol
+//   CALL                     call the VC function callee
+//   INTRINSIC                call the built-in function symbol, such as
+//                            putInt
+//   JUMP                     branch to succs.get(0)
+//   BRANCH                   branch on a to succs.get(0) or succs.get(1)
+//   RET                      return a, or nothing
+
+public enum Op {
+
+	ADD("add"),
+	SUB("sub"),
+	MUL("mul"),
+	DIV("div"),
+	NEG("neg"),
+	I2F("i2f"),
+	EQ("eq"),
+	NE("ne"),
+	LT("lt"),
+	LE("le"),
+	GT("gt"),
+	GE("ge"),
+	NOT("not"),
+	PHI("phi"),
+	NEWARRAY("newarray"),
+	ALOAD("aload"),
+	ASTORE("astore"),
+	GETSTATIC("getstatic"),
+	PUTSTATIC("putstatic"),
+	CALL("call"),
+	INTRINSIC("intrinsic"),
+	JUMP("jump"),
+	BRANCH("branch"),
+	RET("ret");
+
+	public final String mnemonic;
+
+	Op(String mnemonic) {
+		this.mnemonic = mnemonic;
+	}
+
+	public boolean isTerminator() {
+		return this == JUMP || this == BRANCH || this == RET;
+	}
+
+	public boolean isComparison() {
+		return this == EQ || this == NE || this == LT || this == LE
+				|| this == GT || this == GE;
+	}
+
+	public boolean isCommutative() {
+		return this == ADD || this == MUL || this == EQ || this == NE;
+	}
+
+	// true if executing the operation changes the state of the program
+	// other than by defining its value: stores, calls and terminators
+	public boolean hasSideEffects() {
+		switch (this) {
+		case ASTORE:
+		case PUTSTATIC:
+		case CALL:
+		case INTRINSIC:
+		case JUMP:
+		case BRANCH:
+		case RET:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// true if the result depends on the contents of arrays or globals,
+	// which stores and calls may change
+	public boolean readsMemory() {
+		return this == ALOAD || this == GETSTATIC;
+	}
+
+	// the comparison that gives the opposite result on ints
+	public Op negate() {
+		switch (this) {
+		case EQ:
+			return NE;
+		case NE:
+			return EQ;
+		case LT:
+			return GE;
+		case LE:
+			return GT;
+		case GT:
+			return LE;
+		case GE:
+			return LT;
+		default:
+			throw new IllegalStateException(this + " is not a comparison");
+		}
+	}
+
+	// the comparison that gives the same result with the operands swapped
+	public Op swap() {
+		switch (this) {
+		case LT:
+			return GT;
+		case LE:
+			return GE;
+		case GT:
+			return LT;
+		case GE:
+			return LE;
+		default:
+			return this;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+/*
+ * Param.java
+ */
+
+package VC.IR;
+
+import VC.ASTs.ParaDecl;
+
+// The value of a parameter on entry to a function. index counts the
+// parameters from 0 in declaration order.
+
+public final class Param extends Value {
+
+	public final int index;
+	public final ParaDecl decl;
+
+	public Param(int index, ParaDecl decl) {
+		super(IRType.of(decl.T));
+		this.index = index;
+		this.decl = decl;
+	}
+
+	public String name() {
+		return "%" + decl.I.spelling;
+	}
+}
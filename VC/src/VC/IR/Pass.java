@@ -0,0 +1,27 @@
+/*
+ * Pass.java
+ */
+
+package VC.IR;
+
+// An optimisation pass over the IR. Most passes transform one function
+// at a time; passes that look across functions, such as an inliner,
+// override run(IRProgram).
+
+public abstract class Pass {
+
+	// the name used in timing reports
+	public abstract String name();
+
+	// returns true if f was changed
+	public abstract boolean run(IRFunction f);
+
+	// returns the number of functions changed
+	public int run(IRProgram program) {
+		int changed = 0;
+		for (IRFunction f : program.functions)
+			if (run(f))
+				changed++;
+		return changed;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * PassManager.java
+ */
+
+// Runs a pipeline of passes over the IR of a program and records how
+// long each pass took. Other phases of the compiler, such as building
+// the IR and lowering it, may record their times here too so that they
+// appear in the same report.
+//
+// If verification is enabled, the IR is checked after every pass and
+// a broken invariant stops the compilation with the name of the pass
+// that broke it.
+
+package VC.IR;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public final class PassManager {
+
+	private ArrayList<Pass> passes;
+	private boolean verifying;
+
+	// phase name -> total time in nanoseconds and number of runs, in the
+	// order the phases were first recorded
+	private LinkedHashMap<String, long[]> timings;
+
+	// pass name -> number of functions changed
+	private LinkedHashMap<String, Integer> changes;
+
+	public PassManager() {
+		passes = new ArrayList<Pass>();
+		verifying = false;
+		timings = new LinkedHashMap<String, long[]>();
+		changes = new LinkedHashMap<String, Integer>();
+	}
+
+	public void add(Pass pass) {
+		passes.add(pass);
+	}
+
+	public void setVerifying(boolean verifying) {
+		this.verifying = verifying;
+	}
+
+	public void run(IRProgram program) {
+		if (verifying)
+			Verifier.verify(program, "IR construction");
+		for (Pass pass : passes) {
+			long start = System.nanoTime();
+			int changed = pass.run(program);
+			record(pass.name(), System.nanoTime() - start);
+			Integer total = changes.get(pass.name());
+			changes.put(pass.name(), (total == null ? 0 : total) + changed);
+			if (verifying)
+				Verifier.verify(program, pass.name());
+		}
+	}
+
+	public void record(String phase, long nanos) {
+		long[] t = timings.get(phase);
+		if (t == null) {
+			t = new long[2];
+			timings.put(phase, t);
+		}
+		t[0] += nanos;
+		t[1]++;
+	}
+
+	public void report(PrintStream out) {
+		long total = 0;
+		for (long[] t : timings.values())
+			total += t[0];
+		out.println("Phase timings:");
+		for (String phase : timings.keySet()) {
+			long[] t = timings.get(phase);
+			StringBuffer sb = new StringBuffer(String.format("  %-20s %9.3f ms %5.1f%%",
+					phase, t[0] / 1e6, total == 0 ? 0.0 : 100.0 * t[0] / total));
+			if (t[1] > 1)
+				sb.append("  (" + t[1] + " runs)");
+			if (changes.containsKey(phase))
+				sb.append("  changed " + changes.get(phase) + " function(s)");
+			out.println(sb);
+		}
+		out.println(String.format("  %-20s %9.3f ms", "total", total / 1e6));
+	}
+}
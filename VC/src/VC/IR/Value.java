@@ -0,0 +1,44 @@
+/*
+ * Value.java
+ */
+
+package VC.IR;
+
+import java.util.ArrayList;
+
+// Anything that can be an operand of an instruction: a constant, a
+// parameter or the result of an instruction.
+//
+// Every value knows the instructions that use it. An instruction using
+// a value twice appears twice in users.
+
+public abstract class Value {
+
+	public IRType type;
+
+	public ArrayList<Instr> users;
+
+	protected Value(IRType type) {
+		this.type = type;
+		users = new ArrayList<Instr>();
+	}
+
+	public boolean hasUsers() {
+		return !users.isEmpty();
+	}
+
+	// makes every user of this value use v instead
+	public void replaceAllUsesWith(Value v) {
+		if (v == this)
+			return;
+		for (Instr user : new ArrayList<Instr>(users))
+			user.replaceOperand(this, v);
+	}
+
+	// the name of the value in the printed IR
+	public abstract String name();
+
+	public String toString() {
+		return name();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Verifier.java
+ */
+
+// Checks the invariants the passes rely on:
+//
+//   - every block ends with its only terminator and starts with its phis;
+//   - the successors of a block match its terminator, and the edge lists
+//     of blocks agree with each other;
+//   - every phi has one operand per predecessor;
+//   - the users lists agree with the operands;
+//   - every value is defined before it is used: the definition of an
+//     operand dominates its use, or, for a phi operand, the end of the
+//     corresponding predecessor.
+//
+// A failure is a bug in the compiler, not in the VC program, and is
+// reported with an IllegalStateException.
+
+package VC.IR;
+
+import VC.CFG.BasicBlock;
+import VC.CFG.DominatorTree;
+
+public final class Verifier {
+
+	private final IRFunction f;
+	private final String phase;
+
+	private Verifier(IRFunction f, String phase) {
+		this.f = f;
+		this.phase = phase;
+	}
+
+	public static void verify(IRProgram program, String phase) {
+		for (IRFunction f : program.functions)
+			verify(f, phase);
+	}
+
+	public static void verify(IRFunction f, String phase) {
+		new Verifier(f, phase).check();
+	}
+
+	private void fail(String message) {
+		throw new IllegalStateException("IR verification failed after "
+				+ phase + " in " + f.name + ": " + message);
+	}
+
+	private void check() {
+		for (int k = 0; k < f.cfg.blocks.size(); k++) {
+			IRBlock b = f.block(k);
+			if (b.id != k || b.func != f)
+				fail(b + " is misnumbered or belongs to another function");
+			checkBlock(b);
+		}
+		DominatorTree dom = new DominatorTree(f.cfg);
+		for (IRBlock b : f.blocks())
+			if (dom.isReachable(b))
+				for (Instr i : b.instrs)
+					checkDominance(i, dom);
+	}
+
+	private void checkBlock(IRBlock b) {
+		Instr t = b.terminator();
+		if (t == null)
+			fail(b + " has no terminator");
+		boolean inPhis = true;
+		for (int k = 0; k < b.instrs.size(); k++) {
+			Instr i = b.instrs.get(k);
+			if (i.block != b)
+				fail(i + " in " + b + " belongs to " + i.block);
+			if (i.isTerminator() && i != t)
+				fail(b + " has a terminator before its end");
+			if (i.isPhi()) {
+				if (!inPhis)
+					fail(i + " in " + b + " follows a non-phi");
+				if (i.numOperands() != b.preds.size())
+					fail(i + " has " + i.numOperands() + " operands but "
+							+ b + " has " + b.preds.size() + " predecessors");
+			} else
+				inPhis = false;
+			checkOperands(i);
+		}
+		int expected = (t.op == Op.JUMP) ? 1 : (t.op == Op.BRANCH) ? 2 : 0;
+		if (b.succs.size() != expected)
+			fail(b + " ends with " + t.op.mnemonic + " but has "
+					+ b.succs.size() + " successors");
+		if (t.op == Op.BRANCH && t.operand(0).type != IRType.BOOL)
+			fail("the condition of " + b + " is not a boolean");
+		for (BasicBlock s : b.succs)
+			if (count(s.preds, b) != count(b.succs, s))
+				fail("the edge " + b + " -> " + s + " is not recorded in both blocks");
+		for (BasicBlock p : b.preds)
+			if (count(p.succs, b) != count(b.preds, p))
+				fail("the edge " + p + " -> " + b + " is not recorded in both blocks");
+	}
+
+	private void checkOperands(Instr i) {
+		for (Value v : i.operands) {
+			if (v == null)
+				fail(i + " has a missing operand");
+			if (v instanceof Instr) {
+				Instr def = (Instr) v;
+				if (def.block == null || def.block.func != f)
+					fail(i + " uses " + def + ", which is not in the function");
+				if (def.type == IRType.VOID)
+					fail(i + " uses " + def + ", which has no value");
+			}
+			if (count(v.users, i) != count(i.operands, v))
+				fail("the users of " + v + " do not agree with the operands of " + i);
+		}
+		for (Instr u : i.users)
+			if (u.block == null)
+				fail(i + " is used by the removed instruction " + u);
+	}
+
+	private void checkDominance(Instr i, DominatorTree dom) {
+		for (int k = 0; k < i.numOperands(); k++) {
+			if (!(i.operand(k) instanceof Instr))
+				continue;
+			Instr def = (Instr) i.operand(k);
+			if (i.isPhi()) {
+				IRBlock pred = i.block.pred(k);
+				if (dom.isReachable(pred) && !dom.dominates(def.block, pred))
+					fail(def + " does not reach " + i + " from " + pred);
+			} else if (def.block == i.block) {
+				if (i.block.instrs.indexOf(def) > i.block.instrs.indexOf(i))
+					fail(def + " is used by " + i + " before it is defined");
+			} else if (!dom.dominates(def.block, i.block)) {
+				fail(def + " does not dominate its use in " + i);
+			}
+		}
+	}
+
+	private static int count(java.util.List<?> list, Object x) {
+		int n = 0;
+		for (Object y : list)
+			if (y == x)
+				n++;
+		return n;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * CFGSimplifier.java
+ */
+
+// Tidies the CFG of a function after other passes have changed it:
+//
+//   - a phi whose operands are all the same value (or the phi itself)
+//     is replaced by that value;
+//   - a branch whose two targets are the same block becomes a jump;
+//   - a block that only jumps to another block is bypassed, as long as
+//     the phis of the target can take their operands from the bypassed
+//     block's predecessors instead;
+//   - a block is merged into its only predecessor if that predecessor
+//     has no other successor.
+//
+// The result has fewer blocks, and so fewer gotos once lowered.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+
+import VC.IR.*;
+
+public final class CFGSimplifier extends Pass {
+
+	public String name() {
+		return "CFG simplification";
+	}
+
+	public boolean run(IRFunction f) {
+		boolean changed = false;
+		boolean again = true;
+		while (again) {
+			again = removeTrivialPhis(f);
+			for (IRBlock b : f.blocks()) {
+				if (b.preds.isEmpty() && b != f.entry())
+					continue; // removed below
+				again |= foldSameTargetBranch(b);
+				again |= bypass(f, b);
+				again |= mergeIntoPredecessor(f, b);
+			}
+			f.removeUnreachable();
+			changed |= again;
+		}
+		return changed;
+	}
+
+	static boolean removeTrivialPhis(IRFunction f) {
+		boolean changed = false;
+		boolean again = true;
+		while (again) {
+			again = false;
+			for (IRBlock b : f.blocks()) {
+				for (Instr phi : b.phis()) {
+					Value same = trivialValue(phi);
+					if (same == null)
+						continue;
+					phi.replaceAllUsesWith(same);
+					phi.remove();
+					again = changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	// the only value other than itself that phi can take, or null
+	private static Value trivialValue(Instr phi) {
+		Value same = null;
+		for (Value v : phi.operands) {
+			if (v == phi || v == same)
+				continue;
+			if (same != null) {
+				if (!(v instanceof Constant && same instanceof Constant
+						&& ((Constant) v).sameAs((Constant) same)))
+					return null;
+				continue;
+			}
+			same = v;
+		}
+		return same; // null for a phi in an unreachable block
+	}
+
+	private static boolean foldSameTargetBranch(IRBlock b) {
+		Instr t = b.terminator();
+		if (t.op != Op.BRANCH || b.succ(0) != b.succ(1))
+			return false;
+		t.remove();
+		b.succ(1).removePred(b);
+		b.append(new Instr(Op.JUMP, IRType.VOID)).line = t.line;
+		return true;
+	}
+
+	// If b holds nothing but a jump to s, its predecessors branch to s
+	// directly. A predecessor that already branches to s is left alone,
+	// since the phis of s could need different operands on the two
+	// edges, and so is one that ends with a branch when s has phis,
+	// since that edge would be split again when the code is generated.
+	private static boolean bypass(IRFunction f, IRBlock b) {
+		if (b == f.entry() || b.instrs.size() != 1 || b.terminator().op != Op.JUMP)
+			return false;
+		IRBlock s = b.succ(0);
+		if (s == b)
+			return false;
+		boolean changed = false;
+		ArrayList<Instr> phis = s.phis();
+		int index = s.preds.indexOf(b);
+		for (IRBlock p : preds(b)) {
+			if (p.succs.contains(s) || p.succs.indexOf(b) != p.succs.lastIndexOf(b))
+				continue;
+			if (!phis.isEmpty() && p.terminator().op != Op.JUMP)
+				continue;
+			IRFunction.redirect(p, b, s);
+			for (Instr phi : phis)
+				phi.addOperand(phi.operand(index));
+			changed = true;
+		}
+		return changed;
+	}
+
+	// If b is the only successor of its only predecessor p, the
+	// instructions of b are moved to the end of p.
+	private static boolean mergeIntoPredecessor(IRFunction f, IRBlock b) {
+		if (b.preds.size() != 1 || b == f.entry() || b == f.exit())
+			return false;
+		IRBlock p = b.pred(0);
+		if (p == b || p.succs.size() != 1)
+			return false;
+		for (Instr phi : b.phis()) {
+			phi.replaceAllUsesWith(phi.operand(0));
+			phi.remove();
+		}
+		p.terminator().remove();
+		for (Instr i : new ArrayList<Instr>(b.instrs))
+			p.moveToEnd(i);
+		// p takes the place of b as a predecessor of b's successors
+		p.succs.clear();
+		for (int k = 0; k < b.succs.size(); k++) {
+			IRBlock s = b.succ(k);
+			s.preds.set(s.preds.indexOf(b), p);
+			p.succs.add(s);
+		}
+		b.succs.clear();
+		b.preds.clear();
+		return true;
+	}
+
+	private static ArrayList<IRBlock> preds(IRBlock b) {
+		ArrayList<IRBlock> result = new ArrayList<IRBlock>();
+		for (int k = 0; k < b.preds.size(); k++)
+			result.add(b.pred(k));
+		return result;
+	}
+}
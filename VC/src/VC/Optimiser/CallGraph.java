@@ -0,0 +1,100 @@
+/*
+ * CallGraph.java
+ */
+
+// The calls between the functions of a program. Calls of the built-in
+// functions are not part of it.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import VC.ASTs.FuncDecl;
+import VC.IR.*;
+
+final class CallGraph {
+
+	private IRProgram program;
+
+	// the functions called by each function, in the order of their first
+	// call
+	private HashMap<IRFunction, ArrayList<IRFunction>> callees;
+
+	// the functions that can call themselves, directly or through others
+	private HashSet<IRFunction> recursive;
+
+	// callees before their callers
+	private ArrayList<IRFunction> bottomUp;
+
+	// the state of strongConnect
+	private HashMap<IRFunction, Integer> index;
+	private HashMap<IRFunction, Integer> lowlink;
+	private ArrayList<IRFunction> stack;
+
+	CallGraph(IRProgram program) {
+		this.program = program;
+		callees = new HashMap<IRFunction, ArrayList<IRFunction>>();
+		for (IRFunction f : program.functions) {
+			ArrayList<IRFunction> list = new ArrayList<IRFunction>();
+			for (IRBlock b : f.blocks())
+				for (Instr i : b.instrs)
+					if (i.op == Op.CALL && !list.contains(program.function(i.callee)))
+						list.add(program.function(i.callee));
+			callees.put(f, list);
+		}
+		recursive = new HashSet<IRFunction>();
+		bottomUp = new ArrayList<IRFunction>();
+		index = new HashMap<IRFunction, Integer>();
+		lowlink = new HashMap<IRFunction, Integer>();
+		stack = new ArrayList<IRFunction>();
+		for (IRFunction f : program.functions)
+			if (!index.containsKey(f))
+				strongConnect(f);
+	}
+
+	IRFunction function(FuncDecl decl) {
+		return program.function(decl);
+	}
+
+	ArrayList<IRFunction> callees(IRFunction f) {
+		return callees.get(f);
+	}
+
+	boolean isRecursive(IRFunction f) {
+		return recursive.contains(f);
+	}
+
+	ArrayList<IRFunction> bottomUp() {
+		return bottomUp;
+	}
+
+	// Tarjan's algorithm: the strongly connected components are found
+	// callees first, which gives the bottom-up order. A function is
+	// recursive if its component has more than one function or it calls
+	// itself.
+	private void strongConnect(IRFunction f) {
+		index.put(f, index.size());
+		lowlink.put(f, index.get(f));
+		stack.add(f);
+		for (IRFunction g : callees.get(f)) {
+			if (!index.containsKey(g)) {
+				strongConnect(g);
+				lowlink.put(f, Math.min(lowlink.get(f), lowlink.get(g)));
+			} else if (stack.contains(g)) {
+				lowlink.put(f, Math.min(lowlink.get(f), index.get(g)));
+			}
+		}
+		if (!lowlink.get(f).equals(index.get(f)))
+			return;
+		int start = stack.lastIndexOf(f);
+		boolean isCycle = stack.size() - start > 1 || callees.get(f).contains(f);
+		while (stack.size() > start) {
+			IRFunction g = stack.remove(stack.size() - 1);
+			if (isCycle)
+				recursive.add(g);
+			bottomUp.add(g);
+		}
+	}
+}
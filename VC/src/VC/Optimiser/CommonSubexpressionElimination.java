@@ -0,0 +1,197 @@
+/*
+ * CommonSubexpressionElimination.java
+ */
+
+// Reuses the value of an expression computed earlier instead of
+// computing it again.
+//
+// The blocks are visited in a preorder walk of the dominator tree with
+// a scoped table of the expressions computed so far, keyed by operator,
+// type and operands (a commutative operator sorts its operands). An
+// expression without side effects is available in every block dominated
+// by the block computing it, so a later occurrence is replaced by the
+// earlier value. This covers local value numbering within a block and
+// its extension across the dominator tree. An int division is reused
+// too, since the first one would have trapped already.
+//
+// Loads from arrays and globals are reused only while no store or call
+// in between may have changed the memory they read, as decided by
+// MemoryEffects. The available loads flow from a block into a block
+// whose only predecessor it is, and are forgotten at a join or a loop
+// header. A store also makes its value available to later loads of the
+// same element or global.
+//
+// A value that is used more than once is held in a local of its own
+// when the IR is lowered.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import VC.CFG.BasicBlock;
+import VC.CFG.DominatorTree;
+import VC.IR.*;
+
+public final class CommonSubexpressionElimination extends Pass {
+
+	private MemoryEffects effects = new MemoryEffects();
+
+	private DominatorTree dom;
+
+	// the pure expressions available in the block being visited
+	private HashMap<String, Instr> available;
+
+	// the value a load of a location would read, and the load or store
+	// that last accessed it
+	private static final class Load {
+		final Value value;
+		final Instr access;
+
+		Load(Value value, Instr access) {
+			this.value = value;
+			this.access = access;
+		}
+	}
+
+	// the loads available at the end of each visited block
+	private HashMap<BasicBlock, HashMap<String, Load>> loadsAtEnd;
+
+	private boolean changed;
+
+	public String name() {
+		return "common subexpression elimination";
+	}
+
+	public int run(IRProgram program) {
+		effects = new MemoryEffects(program);
+		return super.run(program);
+	}
+
+	public boolean run(IRFunction f) {
+		dom = new DominatorTree(f.cfg);
+		available = new HashMap<String, Instr>();
+		loadsAtEnd = new HashMap<BasicBlock, HashMap<String, Load>>();
+		changed = false;
+
+		// an iterative preorder walk, since the dominator tree of a long
+		// function can be deep; added.get(k) lists the keys to take out
+		// of available when leaving stack.get(k)
+		ArrayList<BasicBlock> stack = new ArrayList<BasicBlock>();
+		ArrayList<Integer> next = new ArrayList<Integer>();
+		ArrayList<ArrayList<String>> added = new ArrayList<ArrayList<String>>();
+		stack.add(f.entry());
+		next.add(0);
+		added.add(visit(f.entry()));
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			ArrayList<BasicBlock> children = dom.children(stack.get(top));
+			int k = next.get(top);
+			if (k < children.size()) {
+				next.set(top, k + 1);
+				stack.add(children.get(k));
+				next.add(0);
+				added.add(visit((IRBlock) children.get(k)));
+			} else {
+				for (String key : added.get(top))
+					available.remove(key);
+				stack.remove(top);
+				next.remove(top);
+				added.remove(top);
+			}
+		}
+		return changed;
+	}
+
+	// returns the keys added to available
+	private ArrayList<String> visit(IRBlock b) {
+		ArrayList<String> added = new ArrayList<String>();
+		HashMap<String, Load> loads = (b.preds.size() == 1)
+				? new HashMap<String, Load>(loadsAtEnd.get(b.preds.get(0)))
+				: new HashMap<String, Load>();
+		for (Instr i : new ArrayList<Instr>(b.instrs)) {
+			if (isPure(i)) {
+				String key = key(i);
+				Instr e = available.get(key);
+				if (e != null) {
+					replace(i, e);
+				} else {
+					available.put(key, i);
+					added.add(key);
+				}
+			} else if (i.op.readsMemory()) {
+				String key = key(i);
+				Load l = loads.get(key);
+				if (l != null)
+					replace(i, l.value);
+				else
+					loads.put(key, new Load(i, i));
+			} else if (MemoryEffects.writesMemory(i)) {
+				Iterator<Load> it = loads.values().iterator();
+				while (it.hasNext())
+					if (effects.mayClobber(i, it.next().access))
+						it.remove();
+				if (i.op == Op.ASTORE) {
+					Value v = i.operand(2);
+					loads.put(key(Op.ALOAD, v.type, null, i.operand(0), i.operand(1)),
+							new Load(v, i));
+				} else if (i.op == Op.PUTSTATIC) {
+					Value v = i.operand(0);
+					loads.put(key(Op.GETSTATIC, v.type, i.symbol), new Load(v, i));
+				}
+			}
+		}
+		loadsAtEnd.put(b, loads);
+		return added;
+	}
+
+	private void replace(Instr i, Value v) {
+		i.replaceAllUsesWith(v);
+		i.remove();
+		changed = true;
+	}
+
+	private static boolean isPure(Instr i) {
+		switch (i.op) {
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+		case NEG:
+		case I2F:
+		case NOT:
+		case PHI:
+			return true;
+		default:
+			return i.op.isComparison();
+		}
+	}
+
+	private static String key(Instr i) {
+		// phis are only equal to phis of the same block
+		String symbol = i.isPhi() ? i.block.toString() : i.symbol;
+		Value[] operands = i.operands.toArray(new Value[0]);
+		if (i.op.isCommutative() && operand(operands[0]).compareTo(operand(operands[1])) > 0) {
+			Value t = operands[0];
+			operands[0] = operands[1];
+			operands[1] = t;
+		}
+		return key(i.op, i.type, symbol, operands);
+	}
+
+	private static String key(Op op, IRType type, String symbol, Value... operands) {
+		StringBuffer sb = new StringBuffer(op.mnemonic + " " + type);
+		if (symbol != null)
+			sb.append(" @" + symbol);
+		for (Value v : operands)
+			sb.append(" " + operand(v));
+		return sb.toString();
+	}
+
+	// Instructions and parameters have unique names within a function;
+	// constants are identified by type and value.
+	private static String operand(Value v) {
+		return (v instanceof Constant) ? v.type + ":" + v.name() : v.name();
+	}
+}
@@ -0,0 +1,604 @@
+/*
+ * ConstantFolder.java
+ */
+
+// Constant folding and constant propagation over the checked AST.
+//
+// The pass runs between the Checker and the Emitter, so operators are
+// already overloaded ("i+", "f<", "i!", "i2f", ...) and every expression
+// carries its type.
+//
+// (1) Folding. A unary or binary expression whose operands are int,
+//     float or boolean literals is replaced by the literal it evaluates
+//     to, computed with Java's own int and float arithmetic. Integer
+//     division by zero is left alone so that it still throws at run
+//     time, and float results that cannot be written as a Jasmin
+//     literal (NaN, the infinities and -0.0) are not folded either.
+//     && and || are simplified when one operand is a literal, provided
+//     that no side effect is lost.
+//
+// (2) Propagation. A local scalar variable that is defined exactly once
+//     by a constant is replaced by that constant at every use that the
+//     definition is known to reach:
+//       int x = 3 * 4;   (and x is never assigned)  all uses
+//       int x; ... x = 12; (only assignment, at the top level of the
+//                           block declaring x)      uses after it
+//     The now redundant stores are left for the Emitter to generate.
+//
+// Each function is walked twice: the first walk folds and counts the
+// assignments to every local, the second folds again and propagates.
+//
+// An int literal is at most 2147483647, except as the operand of a
+// unary minus, where 2147483648 folds to -2147483648. Any other literal
+// out of that range is reported as an error.
+
+package VC.Optimiser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import VC.ASTs.*;
+import VC.ErrorReporter;
+import VC.StdEnvironment;
+
+public final class ConstantFolder extends SwitchVisitor {
+
+	// number of assignments (initialisers excluded) to each local scalar
+	// of the function being folded
+	private Map<Decl, Integer> assignCount;
+
+	// locals known to hold a constant at the current point of the walk
+	private Map<Decl, Expr> constants;
+
+	// true during the first walk over a function
+	private boolean counting;
+
+	private int numFolded;
+	private int numPropagated;
+
+	// the types of the folded literals
+	private StdEnvironment env;
+
+	private ErrorReporter reporter;
+
+	public ConstantFolder(StdEnvironment env, ErrorReporter reporter) {
+		this.env = env;
+		this.reporter = reporter;
+		assignCount = new HashMap<Decl, Integer>();
+		constants = new HashMap<Decl, Expr>();
+		counting = false;
+		numFolded = 0;
+		numPropagated = 0;
+	}
+
+	// PRE: ast must be a checked Program node
+
+	public void fold(AST ast) {
+		dispatch(ast, null);
+	}
+
+	public int getNumFolded() {
+		return numFolded;
+	}
+
+	public int getNumPropagated() {
+		return numPropagated;
+	}
+
+	// Auxiliary methods
+
+	private Expr fold(Expr e) {
+		Expr r = (Expr) dispatch(e, null);
+		if (r != e) {
+			r.parent = e.parent;
+			if (!counting)
+				numFolded++;
+		}
+		return r;
+	}
+
+	// an int literal in range; one that is not is reported rather than
+	// folded
+	private static boolean isIntConst(Expr e) {
+		if (!(e instanceof IntExpr))
+			return false;
+		long value = literalValue((IntExpr) e);
+		return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+	}
+
+	private static boolean isFloatConst(Expr e) {
+		return e instanceof FloatExpr;
+	}
+
+	private static boolean isBoolConst(Expr e) {
+		return e instanceof BooleanExpr;
+	}
+
+	private static int intValue(Expr e) {
+		return (int) literalValue((IntExpr) e);
+	}
+
+	// Long.MAX_VALUE for a literal that does not even fit a long
+	private static long literalValue(IntExpr e) {
+		try {
+			return Long.parseLong(e.IL.spelling);
+		} catch (NumberFormatException x) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	private static float floatValue(Expr e) {
+		return Float.parseFloat(((FloatExpr) e).FL.spelling);
+	}
+
+	private static boolean boolValue(Expr e) {
+		return ((BooleanExpr) e).BL.spelling.equals("true");
+	}
+
+	private Expr intConst(int value, Expr old) {
+		Expr e = new IntExpr(new IntLiteral(Integer.toString(value), old.position), old.position);
+		e.type = env.intType;
+		return e;
+	}
+
+	// returns null if value cannot be written as a float literal
+	private Expr floatConst(float value, Expr old) {
+		if (Float.isNaN(value) || Float.isInfinite(value)
+				|| Float.floatToIntBits(value) == Float.floatToIntBits(-0.0f))
+			return null;
+		Expr e = new FloatExpr(new FloatLiteral(Float.toString(value), old.position), old.position);
+		e.type = env.floatType;
+		return e;
+	}
+
+	private Expr boolConst(boolean value, Expr old) {
+		Expr e = new BooleanExpr(new BooleanLiteral(value ? "true" : "false", old.position), old.position);
+		e.type = env.booleanType;
+		return e;
+	}
+
+	// a copy of a literal, since a node can only have one parent
+	private Expr copyConst(Expr c, Expr old) {
+		if (isIntConst(c))
+			return intConst(intValue(c), old);
+		else if (isFloatConst(c))
+			return floatConst(floatValue(c), old);
+		else
+			return boolConst(boolValue(c), old);
+	}
+
+	private static boolean isConst(Expr e) {
+		return isIntConst(e) || isFloatConst(e) || isBoolConst(e);
+	}
+
+	// true if evaluating e can neither have a side effect nor trap, so
+	// that it may be dropped when its value is not needed
+	public static boolean isPure(Expr e) {
+		if (isConst(e) || e instanceof VarExpr)
+			return true;
+		if (e instanceof UnaryExpr)
+			return isPure(((UnaryExpr) e).E);
+		if (e instanceof BinaryExpr) {
+			BinaryExpr b = (BinaryExpr) e;
+			// i/ may throw ArithmeticException
+			return !b.O.spelling.equals("i/") && isPure(b.E1) && isPure(b.E2);
+		}
+		// calls and assignments have side effects, array accesses may trap
+		return false;
+	}
+
+	// the local scalar declaration that e reads or writes, or null
+	private static Decl localScalar(Expr e) {
+		if (!(e instanceof VarExpr) || !(((VarExpr) e).V instanceof SimpleVar))
+			return null;
+		AST decl = ((SimpleVar) ((VarExpr) e).V).I.decl;
+		if (!(decl instanceof LocalVarDecl) || ((LocalVarDecl) decl).T.isArrayType())
+			return null;
+		return (Decl) decl;
+	}
+
+	// the compound statement that directly contains a statement or a
+	// local declaration, or null if it is nested inside another statement
+	private static AST enclosingBlock(AST ast) {
+		AST p = ast.parent;
+		while (p instanceof StmtList || p instanceof DeclList)
+			p = p.parent;
+		return (p instanceof CompoundStmt) ? p : null;
+	}
+
+	// Programs
+
+	public Object visitProgram(Program ast, Object o) {
+		dispatch(ast.FL, o);
+		return null;
+	}
+
+	// Declarations
+
+	public Object visitDeclList(DeclList ast, Object o) {
+		dispatch(ast.D, o);
+		dispatch(ast.DL, o);
+		return null;
+	}
+
+	public Object visitEmptyDeclList(EmptyDeclList ast, Object o) {
+		return null;
+	}
+
+	public Object visitFuncDecl(FuncDecl ast, Object o) {
+		assignCount.clear();
+		constants.clear();
+		counting = true;
+		dispatch(ast.S, o);
+		counting = false;
+		dispatch(ast.S, o);
+		return null;
+	}
+
+	public Object visitGlobalVarDecl(GlobalVarDecl ast, Object o) {
+		ast.E = fold(ast.E);
+		return null;
+	}
+
+	public Object visitLocalVarDecl(LocalVarDecl ast, Object o) {
+		ast.E = fold(ast.E);
+		if (!counting && !ast.T.isArrayType() && isConst(ast.E)
+				&& !assignCount.containsKey(ast))
+			constants.put(ast, ast.E);
+		return null;
+	}
+
+	// Statements
+
+	public Object visitStmtList(StmtList ast, Object o) {
+		dispatch(ast.S, o);
+		dispatch(ast.SL, o);
+		return null;
+	}
+
+	public Object visitCompoundStmt(CompoundStmt ast, Object o) {
+		dispatch(ast.DL, o);
+		dispatch(ast.SL, o);
+		return null;
+	}
+
+	public Object visitIfStmt(IfStmt ast, Object o) {
+		ast.E = fold(ast.E);
+		dispatch(ast.S1, o);
+		dispatch(ast.S2, o);
+		return null;
+	}
+
+	public Object visitWhileStmt(WhileStmt ast, Object o) {
+		ast.E = fold(ast.E);
+		dispatch(ast.S, o);
+		return null;
+	}
+
+	public Object visitForStmt(ForStmt ast, Object o) {
+		ast.E1 = fold(ast.E1);
+		ast.E2 = fold(ast.E2);
+		ast.E3 = fold(ast.E3);
+		dispatch(ast.S, o);
+		return null;
+	}
+
+	public Object visitBreakStmt(BreakStmt ast, Object o) {
+		return null;
+	}
+
+	public Object visitContinueStmt(ContinueStmt ast, Object o) {
+		return null;
+	}
+
+	public Object visitReturnStmt(ReturnStmt ast, Object o) {
+		ast.E = fold(ast.E);
+		return null;
+	}
+
+	public Object visitExprStmt(ExprStmt ast, Object o) {
+		ast.E = fold(ast.E);
+
+		// x = c as a statement of the block declaring x, and the only
+		// assignment to a local without an initialiser: c reaches every
+		// later use in that block.
+		if (!counting && ast.E instanceof AssignExpr) {
+			AssignExpr assign = (AssignExpr) ast.E;
+			Decl decl = localScalar(assign.E1);
+			if (decl != null && isConst(assign.E2)
+					&& ((LocalVarDecl) decl).E.isEmptyExpr()
+					&& Integer.valueOf(1).equals(assignCount.get(decl))
+					&& enclosingBlock(ast) != null
+					&& enclosingBlock(ast) == enclosingBlock(decl))
+				constants.put(decl, assign.E2);
+		}
+		return null;
+	}
+
+	public Object visitEmptyStmtList(EmptyStmtList ast, Object o) {
+		return null;
+	}
+
+	public Object visitEmptyCompStmt(EmptyCompStmt ast, Object o) {
+		return null;
+	}
+
+	public Object visitEmptyStmt(EmptyStmt ast, Object o) {
+		return null;
+	}
+
+	// Expressions
+	//
+	// Each method returns the expression that replaces ast, which is ast
+	// itself if nothing could be folded.
+
+	public Object visitIntExpr(IntExpr ast, Object o) {
+		long value = literalValue(ast);
+		boolean negated = ast.parent instanceof UnaryExpr
+				&& ((UnaryExpr) ast.parent).O.spelling.equals("i-");
+		// a function is walked twice, and the error is reported once
+		if (!counting && value > Integer.MAX_VALUE
+				&& !(negated && value == -(long) Integer.MIN_VALUE))
+			reporter.reportError("integer literal out of range: %", ast.IL.spelling, ast.position);
+		return ast;
+	}
+
+	public Object visitFloatExpr(FloatExpr ast, Object o) {
+		return ast;
+	}
+
+	public Object visitBooleanExpr(BooleanExpr ast, Object o) {
+		return ast;
+	}
+
+	public Object visitStringExpr(StringExpr ast, Object o) {
+		return ast;
+	}
+
+	public Object visitEmptyExpr(EmptyExpr ast, Object o) {
+		return ast;
+	}
+
+	public Object visitUnaryExpr(UnaryExpr ast, Object o) {
+		ast.E = fold(ast.E);
+		String op = ast.O.spelling;
+		Expr e = ast.E;
+		Expr r = null;
+
+		if (op.equals("i+") || op.equals("f+")) {
+			r = e;
+		} else if (op.equals("i-") && isIntConst(e)) {
+			r = intConst(-intValue(e), ast);
+		} else if (op.equals("i-") && e instanceof IntExpr
+				&& literalValue((IntExpr) e) == -(long) Integer.MIN_VALUE) {
+			r = intConst(Integer.MIN_VALUE, ast);
+		} else if (op.equals("f-") && isFloatConst(e)) {
+			r = floatConst(-floatValue(e), ast);
+		} else if (op.equals("i!") && isBoolConst(e)) {
+			r = boolConst(!boolValue(e), ast);
+		} else if (op.equals("i2f") && isIntConst(e)) {
+			r = floatConst((float) intValue(e), ast);
+		}
+		return (r == null) ? ast : r;
+	}
+
+	public Object visitBinaryExpr(BinaryExpr ast, Object o) {
+		ast.E1 = fold(ast.E1);
+		ast.E2 = fold(ast.E2);
+		String op = ast.O.spelling;
+		Expr e1 = ast.E1, e2 = ast.E2;
+		Expr r = null;
+
+		if (op.equals("i&&")) {
+			if (isBoolConst(e1))
+				r = boolValue(e1) ? e2 : e1;        // true && b, false && b
+			else if (isBoolConst(e2) && boolValue(e2))
+				r = e1;                             // b && true
+			else if (isBoolConst(e2) && isPure(e1))
+				r = e2;                             // b && false
+		} else if (op.equals("i||")) {
+			if (isBoolConst(e1))
+				r = boolValue(e1) ? e1 : e2;        // true || b, false || b
+			else if (isBoolConst(e2) && !boolValue(e2))
+				r = e1;                             // b || false
+			else if (isBoolConst(e2) && isPure(e1))
+				r = e2;                             // b || true
+		} else if (isIntConst(e1) && isIntConst(e2)) {
+			int a = intValue(e1), b = intValue(e2);
+			if (op.equals("i+"))
+				r = intConst(a + b, ast);
+			else if (op.equals("i-"))
+				r = intConst(a - b, ast);
+			else if (op.equals("i*"))
+				r = intConst(a * b, ast);
+			else if (op.equals("i/") && b != 0)
+				r = intConst(a / b, ast);
+			else if (op.equals("i<"))
+				r = boolConst(a < b, ast);
+			else if (op.equals("i<="))
+				r = boolConst(a <= b, ast);
+			else if (op.equals("i>"))
+				r = boolConst(a > b, ast);
+			else if (op.equals("i>="))
+				r = boolConst(a >= b, ast);
+			else if (op.equals("i=="))
+				r = boolConst(a == b, ast);
+			else if (op.equals("i!="))
+				r = boolConst(a != b, ast);
+		} else if (isFloatConst(e1) && isFloatConst(e2)) {
+			float a = floatValue(e1), b = floatValue(e2);
+			if (op.equals("f+"))
+				r = floatConst(a + b, ast);
+			else if (op.equals("f-"))
+				r = floatConst(a - b, ast);
+			else if (op.equals("f*"))
+				r = floatConst(a * b, ast);
+			else if (op.equals("f/"))
+				r = floatConst(a / b, ast);
+			else if (op.equals("f<"))
+				r = boolConst(a < b, ast);
+			else if (op.equals("f<="))
+				r = boolConst(a <= b, ast);
+			else if (op.equals("f>"))
+				r = boolConst(a > b, ast);
+			else if (op.equals("f>="))
+				r = boolConst(a >= b, ast);
+			else if (op.equals("f=="))
+				r = boolConst(a == b, ast);
+			else if (op.equals("f!="))
+				r = boolConst(a != b, ast);
+		} else if (isBoolConst(e1) && isBoolConst(e2)) {
+			boolean a = boolValue(e1), b = boolValue(e2);
+			if (op.equals("i=="))
+				r = boolConst(a == b, ast);
+			else if (op.equals("i!="))
+				r = boolConst(a != b, ast);
+		}
+		return (r == null) ? ast : r;
+	}
+
+	public Object visitInitExpr(InitExpr ast, Object o) {
+		dispatch(ast.IL, o);
+		return ast;
+	}
+
+	public Object visitExprList(ExprList ast, Object o) {
+		ast.E = fold(ast.E);
+		dispatch(ast.EL, o);
+		return null;
+	}
+
+	public Object visitEmptyExprList(EmptyExprList ast, Object o) {
+		return null;
+	}
+
+	public Object visitArrayExpr(ArrayExpr ast, Object o) {
+		ast.E = fold(ast.E);
+		return ast;
+	}
+
+	public Object visitVarExpr(VarExpr ast, Object o) {
+		Decl decl = localScalar(ast);
+		if (decl != null && constants.containsKey(decl)) {
+			Expr r = copyConst(constants.get(decl), ast);
+			if (r != null) {
+				numPropagated++;
+				return r;
+			}
+		}
+		return ast;
+	}
+
+	public Object visitCallExpr(CallExpr ast, Object o) {
+		dispatch(ast.AL, o);
+		return ast;
+	}
+
+	public Object visitAssignExpr(AssignExpr ast, Object o) {
+		// the left-hand side is not a use, but an array subscript is
+		if (ast.E1 instanceof ArrayExpr)
+			((ArrayExpr) ast.E1).E = fold(((ArrayExpr) ast.E1).E);
+		ast.E2 = fold(ast.E2);
+
+		Decl decl = localScalar(ast.E1);
+		if (decl != null) {
+			if (counting) {
+				Integer n = assignCount.get(decl);
+				assignCount.put(decl, (n == null) ? 1 : n + 1);
+			} else {
+				// a later definition must not be overridden by an earlier one
+				constants.remove(decl);
+			}
+		}
+		return ast;
+	}
+
+	// Arguments
+
+	public Object visitArgList(ArgList ast, Object o) {
+		dispatch(ast.A, o);
+		dispatch(ast.AL, o);
+		return null;
+	}
+
+	public Object visitArg(Arg ast, Object o) {
+		ast.E = fold(ast.E);
+		return null;
+	}
+
+	public Object visitEmptyArgList(EmptyArgList ast, Object o) {
+		return null;
+	}
+
+	// Parameters, types, variables, literals, identifiers and operators
+	// contain nothing to fold.
+
+	public Object visitParaList(ParaList ast, Object o) {
+		return null;
+	}
+
+	public Object visitParaDecl(ParaDecl ast, Object o) {
+		return null;
+	}
+
+	public Object visitEmptyParaList(EmptyParaList ast, Object o) {
+		return null;
+	}
+
+	public Object visitIntLiteral(IntLiteral ast, Object o) {
+		return null;
+	}
+
+	public Object visitFloatLiteral(FloatLiteral ast, Object o) {
+		return null;
+	}
+
+	public Object visitBooleanLiteral(BooleanLiteral ast, Object o) {
+		return null;
+	}
+
+	public Object visitStringLiteral(StringLiteral ast, Object o) {
+		return null;
+	}
+
+	public Object visitIdent(Ident ast, Object o) {
+		return null;
+	}
+
+	public Object visitOperator(Operator ast, Object o) {
+		return null;
+	}
+
+	public Object visitSimpleVar(SimpleVar ast, Object o) {
+		return null;
+	}
+
+	public Object visitVoidType(VoidType ast, Object o) {
+		return null;
+	}
+
+	public Object visitBooleanType(BooleanType ast, Object o) {
+		return null;
+	}
+
+	public Object visitIntType(IntType ast, Object o) {
+		return null;
+	}
+
+	public Object visitFloatType(FloatType ast, Object o) {
+		return null;
+	}
+
+	public Object visitStringType(StringType ast, Object o) {
+		return null;
+	}
+
+	public Object visitArrayType(ArrayType ast, Object o) {
+		return null;
+	}
+
+	public Object visitErrorType(ErrorType ast, Object o) {
+		return null;
+	}
+
+}
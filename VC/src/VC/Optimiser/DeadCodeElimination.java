@@ -0,0 +1,87 @@
+/*
+ * DeadCodeElimination.java
+ */
+
+// Removes the code of a function that cannot affect its result:
+//
+//   - a branch on a constant becomes a jump, and the blocks that can no
+//     longer be reached are deleted;
+//   - instructions whose values are never used are deleted unless they
+//     have side effects or may trap.
+//
+// The second step marks the instructions that are needed, starting from
+// stores, calls, terminators and instructions that may trap, and then
+// sweeps the rest. Because the scalar locals of VC are SSA values, an
+// assignment to a local that is never read leaves only an unused value
+// or phi, so dead stores disappear too, including those kept alive only
+// by a loop-carried phi.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import VC.IR.*;
+
+public final class DeadCodeElimination extends Pass {
+
+	public String name() {
+		return "dead code elimination";
+	}
+
+	public boolean run(IRFunction f) {
+		boolean changed = foldConstantBranches(f);
+		changed |= f.removeUnreachable();
+		changed |= removeDeadInstructions(f);
+		return changed;
+	}
+
+	private static boolean foldConstantBranches(IRFunction f) {
+		boolean changed = false;
+		for (IRBlock b : f.blocks()) {
+			Instr t = b.terminator();
+			if (t.op != Op.BRANCH || !(t.operand(0) instanceof Constant))
+				continue;
+			boolean cond = ((Constant) t.operand(0)).boolValue();
+			IRBlock notTaken = b.succ(cond ? 1 : 0);
+			t.remove();
+			notTaken.removePred(b);
+			b.append(new Instr(Op.JUMP, IRType.VOID)).line = t.line;
+			changed = true;
+		}
+		return changed;
+	}
+
+	private static boolean removeDeadInstructions(IRFunction f) {
+		HashSet<Instr> live = new HashSet<Instr>();
+		ArrayList<Instr> work = new ArrayList<Instr>();
+		for (IRBlock b : f.blocks()) {
+			for (Instr i : b.instrs) {
+				if (!i.isRemovable()) {
+					live.add(i);
+					work.add(i);
+				}
+			}
+		}
+		while (!work.isEmpty()) {
+			Instr i = work.remove(work.size() - 1);
+			for (Value v : i.operands) {
+				if (v instanceof Instr && live.add((Instr) v))
+					work.add((Instr) v);
+			}
+		}
+
+		ArrayList<Instr> dead = new ArrayList<Instr>();
+		for (IRBlock b : f.blocks())
+			for (Instr i : b.instrs)
+				if (!live.contains(i))
+					dead.add(i);
+		// dead instructions may use each other, so all of them are
+		// detached before any is removed
+		for (Instr i : dead)
+			i.dropOperands();
+		for (Instr i : dead)
+			i.remove();
+		return !dead.isEmpty();
+	}
+}
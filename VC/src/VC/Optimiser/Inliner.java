@@ -0,0 +1,156 @@
+/*
+ * Inliner.java
+ */
+
+// Replaces calls of small functions by a copy of their bodies.
+//
+// The functions are visited bottom-up in the call graph, so a function
+// is inlined after the calls in its own body have been. A call is
+// inlined if the called function is not recursive and has at most
+// budget instructions, and the caller has not grown beyond
+// MAX_CALLER_SIZE instructions.
+//
+// To inline a call, its block is split after the call, and the blocks
+// of the called function are copied between the two halves. The copy
+// uses the arguments in place of the parameters, and its locals become
+// new values of the caller, which receive JVM locals of their own when
+// the IR is lowered. The return of the copy becomes a jump to the
+// second half, and the returned value, merged by the phi of the exit
+// block of the called function, replaces the value of the call.
+//
+// Every decision, positive or not, is added to a log.
+
+package VC.Optimiser;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import VC.CFG.BasicBlock;
+import VC.IR.*;
+
+public final class Inliner extends Pass {
+
+	public static final int DEFAULT_BUDGET = 24;
+
+	// the size up to which a caller may grow by inlining
+	private static final int MAX_CALLER_SIZE = 2000;
+
+	private int budget;
+	private CallGraph callGraph;
+	private ArrayList<String> log;
+
+	public Inliner(int budget) {
+		this.budget = budget;
+		log = new ArrayList<String>();
+	}
+
+	public String name() {
+		return "inlining";
+	}
+
+	public int run(IRProgram program) {
+		callGraph = new CallGraph(program);
+		int changed = 0;
+		for (IRFunction f : callGraph.bottomUp())
+			if (run(f))
+				changed++;
+		return changed;
+	}
+
+	public boolean run(IRFunction f) {
+		if (callGraph == null)
+			return false; // the call graph is that of a program
+		ArrayList<Instr> calls = new ArrayList<Instr>();
+		for (IRBlock b : f.blocks())
+			for (Instr i : b.instrs)
+				if (i.op == Op.CALL)
+					calls.add(i);
+		// in source order, for the log
+		Collections.sort(calls, new Comparator<Instr>() {
+			public int compare(Instr a, Instr b) {
+				return a.line - b.line;
+			}
+		});
+		boolean changed = false;
+		for (Instr call : calls) {
+			IRFunction g = callGraph.function(call.callee);
+			String site = f.name + ": " + g.name + " called at line " + call.line;
+			if (callGraph.isRecursive(g)) {
+				log.add(site + " not inlined: recursive");
+			} else if (g.size() > budget) {
+				log.add(site + " not inlined: " + g.size() + " instructions, budget " + budget);
+			} else if (f.size() + g.size() > MAX_CALLER_SIZE) {
+				log.add(site + " not inlined: " + f.name + " has " + f.size() + " instructions");
+			} else {
+				inline(f, call, g);
+				log.add(site + " inlined: " + g.size() + " instructions");
+				changed = true;
+			}
+		}
+		if (changed)
+			f.removeUnreachable();
+		return changed;
+	}
+
+	public void printLog(PrintWriter out) {
+		for (String line : log)
+			out.println(line);
+	}
+
+	private static void inline(IRFunction f, Instr call, IRFunction g) {
+		IRBlock before = call.block;
+		IRBlock after = f.splitAfter(call);
+
+		HashMap<Value, Value> values = new HashMap<Value, Value>();
+		for (int k = 0; k < g.params.size(); k++)
+			values.put(g.params.get(k), call.operand(k));
+		HashMap<BasicBlock, IRBlock> blocks = new HashMap<BasicBlock, IRBlock>();
+		for (IRBlock b : g.blocks())
+			blocks.put(b, f.newBlock());
+
+		// copy the instructions first and their operands once every value
+		// has its copy, since a phi may use a value defined after it
+		Value returned = null;
+		for (IRBlock b : g.blocks()) {
+			IRBlock copy = blocks.get(b);
+			for (BasicBlock p : b.preds)
+				copy.preds.add(blocks.get(p));
+			for (BasicBlock s : b.succs)
+				copy.succs.add(blocks.get(s));
+			for (Instr i : b.instrs) {
+				if (i.op == Op.RET) {
+					if (i.numOperands() > 0)
+						returned = i.operand(0);
+					continue;
+				}
+				Instr c = new Instr(i.op, i.type);
+				c.symbol = i.symbol;
+				c.callee = i.callee;
+				c.line = call.line;
+				values.put(i, copy.append(c));
+			}
+		}
+		for (IRBlock b : g.blocks())
+			for (Instr i : b.instrs)
+				if (i.op != Op.RET)
+					for (Value v : i.operands)
+						((Instr) values.get(i)).addOperand(map(values, v));
+
+		IRBlock exit = blocks.get(g.exit());
+		exit.append(new Instr(Op.JUMP, IRType.VOID));
+		IRFunction.addEdge(exit, after);
+		if (returned != null)
+			call.replaceAllUsesWith(map(values, returned));
+		call.remove();
+		before.append(new Instr(Op.JUMP, IRType.VOID));
+		IRFunction.addEdge(before, blocks.get(g.entry()));
+	}
+
+	// constants are shared; everything else has a copy
+	private static Value map(HashMap<Value, Value> values, Value v) {
+		return (v instanceof Constant) ? v : values.get(v);
+	}
+}
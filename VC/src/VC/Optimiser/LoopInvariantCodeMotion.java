@@ -0,0 +1,166 @@
+/*
+ * LoopInvariantCodeMotion.java
+ */
+
+// Moves computations whose value does not change while a loop runs out
+// of the loop, so that they are evaluated once before it is entered.
+//
+// Every loop first gets a preheader: a block outside the loop whose only
+// successor is the header and which is the only predecessor of the
+// header outside the loop. An instruction of the loop is invariant if
+// all its operands are constants, parameters or values computed outside
+// the loop, and it is hoisted to the end of the preheader if
+//
+//   - it has no side effects and cannot trap, such as arithmetic on
+//     ints and floats or the load of a global, or
+//   - it may trap, as an array load or an int division does, but is
+//     computed by the header before anything else with an effect, so
+//     that it is evaluated, and traps, exactly when it would have been
+//     in the first iteration.
+//
+// A load is invariant only if no store or call in the loop may write
+// the location it reads, as decided by MemoryEffects.
+//
+// Loops are processed from the innermost outwards. A preheader of an
+// inner loop belongs to the enclosing loop, so a computation that is
+// invariant in both moves out of both.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+
+import VC.CFG.BasicBlock;
+import VC.CFG.DominatorTree;
+import VC.CFG.Loop;
+import VC.CFG.LoopNest;
+import VC.IR.*;
+
+public final class LoopInvariantCodeMotion extends Pass {
+
+	private MemoryEffects effects = new MemoryEffects();
+
+	public String name() {
+		return "loop-invariant code motion";
+	}
+
+	public int run(IRProgram program) {
+		effects = new MemoryEffects(program);
+		return super.run(program);
+	}
+
+	public boolean run(IRFunction f) {
+		LoopNest nest = new LoopNest(f.cfg, new DominatorTree(f.cfg));
+		if (nest.loops.isEmpty())
+			return false;
+		int size = f.cfg.blocks.size();
+		for (Loop loop : nest.loops)
+			preheader(f, loop);
+		boolean changed = f.cfg.blocks.size() != size;
+
+		// the new blocks change the dominator tree and the loops
+		DominatorTree dom = new DominatorTree(f.cfg);
+		nest = new LoopNest(f.cfg, dom);
+		ArrayList<BasicBlock> order = dom.reversePostorder();
+		for (int k = nest.loops.size() - 1; k >= 0; k--)
+			changed |= hoist(f, nest.loops.get(k), order);
+		return changed;
+	}
+
+	// Returns the preheader of the loop, creating it if necessary, or
+	// null if the header has no predecessor outside the loop. A new
+	// preheader takes over the edges entering the loop, and a phi of the
+	// header whose operands on those edges differ gets a phi in it that
+	// merges them.
+	static IRBlock preheader(IRFunction f, Loop loop) {
+		IRBlock h = (IRBlock) loop.header;
+		ArrayList<Integer> outside = new ArrayList<Integer>();
+		for (int k = 0; k < h.preds.size(); k++)
+			if (!loop.contains(h.preds.get(k)))
+				outside.add(k);
+		if (outside.isEmpty())
+			return null;
+		if (outside.size() == 1 && h.pred(outside.get(0)).succs.size() == 1)
+			return h.pred(outside.get(0));
+
+		IRBlock p = f.newBlock();
+		ArrayList<Value> entering = new ArrayList<Value>();
+		for (Instr phi : h.phis()) {
+			Value v = phi.operand(outside.get(0));
+			for (int k : outside)
+				if (phi.operand(k) != v)
+					v = null;
+			if (v == null) {
+				Instr merge = new Instr(Op.PHI, phi.type);
+				for (int k : outside)
+					merge.addOperand(phi.operand(k));
+				v = p.addPhi(merge);
+			}
+			entering.add(v);
+		}
+		for (int k : outside) {
+			IRBlock b = h.pred(k);
+			b.succs.set(b.succs.indexOf(h), p);
+			p.preds.add(b);
+		}
+		for (int n = outside.size() - 1; n >= 0; n--) {
+			int k = outside.get(n);
+			h.preds.remove(k);
+			for (Instr phi : h.phis())
+				phi.removeOperand(k);
+		}
+		p.append(new Instr(Op.JUMP, IRType.VOID));
+		IRFunction.addEdge(p, h);
+		ArrayList<Instr> phis = h.phis();
+		for (int n = 0; n < phis.size(); n++)
+			phis.get(n).addOperand(entering.get(n));
+		return p;
+	}
+
+	private boolean hoist(IRFunction f, Loop loop, ArrayList<BasicBlock> order) {
+		IRBlock p = preheader(f, loop);
+		if (p == null)
+			return false;
+		ArrayList<Instr> writers = new ArrayList<Instr>();
+		for (BasicBlock b : loop.blocks)
+			for (Instr i : ((IRBlock) b).instrs)
+				if (MemoryEffects.writesMemory(i))
+					writers.add(i);
+
+		boolean changed = false;
+		for (BasicBlock b : order) {
+			if (!loop.contains(b))
+				continue;
+			// true while nothing with an effect has been left in the header
+			boolean first = b == loop.header;
+			for (Instr i : new ArrayList<Instr>(((IRBlock) b).instrs)) {
+				if (i.isPhi())
+					continue;
+				if (isInvariant(i, loop, writers) && (i.isRemovable() || first && canTrap(i))) {
+					p.moveToEnd(i);
+					changed = true;
+				} else if (!i.isRemovable()) {
+					first = false;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private boolean isInvariant(Instr i, Loop loop, ArrayList<Instr> writers) {
+		if (i.isTerminator())
+			return false;
+		for (Value v : i.operands)
+			if (v instanceof Instr && loop.contains(((Instr) v).block))
+				return false;
+		if (i.op.readsMemory())
+			for (Instr w : writers)
+				if (effects.mayClobber(w, i))
+					return false;
+		return true;
+	}
+
+	// true if i may trap but has no other effect
+	private static boolean canTrap(Instr i) {
+		return i.op == Op.ALOAD || i.op == Op.DIV;
+	}
+}
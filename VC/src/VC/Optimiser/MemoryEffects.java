@@ -0,0 +1,98 @@
+/*
+ * MemoryEffects.java
+ */
+
+// The model of memory used by the passes that reuse or move loads.
+// The memory of a VC program consists of its arrays and its global
+// variables.
+//
+//   - ASTORE writes an array element. Arrays with different element
+//     types are distinct JVM types, so a store into an int array never
+//     changes a float or boolean array.
+//   - PUTSTATIC writes the global it names and nothing else.
+//   - CALL writes what the called function and the functions it calls
+//     in turn may write: the array types it stores into and the globals
+//     it assigns. Without the program, a call may write anything.
+//   - INTRINSIC calls the built-in functions, which only do I/O and
+//     write neither.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import VC.ASTs.FuncDecl;
+import VC.IR.*;
+
+final class MemoryEffects {
+
+	// what a function may write, including through its calls
+	private static final class Summary {
+		HashSet<IRType> arrays = new HashSet<IRType>();
+		HashSet<String> globals = new HashSet<String>();
+		ArrayList<FuncDecl> callees = new ArrayList<FuncDecl>();
+	}
+
+	private HashMap<FuncDecl, Summary> summaries;
+
+	// a model in which every call may write anything
+	MemoryEffects() {
+		summaries = new HashMap<FuncDecl, Summary>();
+	}
+
+	MemoryEffects(IRProgram program) {
+		this();
+		for (IRFunction f : program.functions) {
+			Summary s = new Summary();
+			for (IRBlock b : f.blocks())
+				for (Instr i : b.instrs) {
+					if (i.op == Op.ASTORE)
+						s.arrays.add(i.operand(0).type);
+					else if (i.op == Op.PUTSTATIC)
+						s.globals.add(i.symbol);
+					else if (i.op == Op.CALL && !s.callees.contains(i.callee))
+						s.callees.add(i.callee);
+				}
+			summaries.put(f.decl, s);
+		}
+		// propagate along the call graph until nothing changes; this
+		// terminates because the sets only grow
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Summary s : summaries.values())
+				for (FuncDecl callee : s.callees) {
+					Summary c = summaries.get(callee);
+					changed |= s.arrays.addAll(c.arrays);
+					changed |= s.globals.addAll(c.globals);
+				}
+		}
+	}
+
+	static boolean writesMemory(Instr i) {
+		return i.op == Op.ASTORE || i.op == Op.PUTSTATIC || i.op == Op.CALL;
+	}
+
+	// true if executing writer may change the location that access (a
+	// load or a store) reads or writes
+	boolean mayClobber(Instr writer, Instr access) {
+		boolean isArray = access.op == Op.ALOAD || access.op == Op.ASTORE;
+		boolean isGlobal = access.op == Op.GETSTATIC || access.op == Op.PUTSTATIC;
+		switch (writer.op) {
+		case ASTORE:
+			return isArray && access.operand(0).type == writer.operand(0).type;
+		case PUTSTATIC:
+			return isGlobal && access.symbol.equals(writer.symbol);
+		case CALL: {
+			Summary s = summaries.get(writer.callee);
+			if (s == null)
+				return isArray || isGlobal;
+			return isArray ? s.arrays.contains(access.operand(0).type)
+					: isGlobal && s.globals.contains(access.symbol);
+		}
+		default:
+			return false;
+		}
+	}
+}
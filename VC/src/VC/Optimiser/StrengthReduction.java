@@ -0,0 +1,163 @@
+/*
+ * StrengthReduction.java
+ */
+
+// Replaces multiplications by the counter of a loop with additions.
+//
+// A basic induction variable is an int phi of a loop header with two
+// predecessors, the preheader and a latch, whose value from the latch
+// is the phi plus or minus a loop-invariant step:
+//
+//   i = phi [init, preheader] [i', latch]       i' = add i, step
+//
+// The update of the counter is first put in this canonical form, with
+// the phi as the first operand of an add, so that i - 1 becomes
+// i + -1.
+//
+// A multiplication j = mul i, k by a loop-invariant k is a derived
+// induction variable: it starts at init * k and grows by step * k on
+// every iteration. It is replaced by a phi of its own,
+//
+//   j = phi [init * k, preheader] [j', latch]   j' = add j, step * k
+//
+// where the products are computed in the preheader, or folded when both
+// factors are constants, and j' is computed next to i'. The identity
+// j = i * k holds wherever i is defined, also when the int arithmetic
+// overflows, since multiplication distributes over addition modulo
+// 2^32. Floats are left alone because their rounding does not allow
+// this.
+//
+// An update of the counter by a constant is lowered to iinc when its
+// phi can share a local with it.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import VC.CFG.BasicBlock;
+import VC.CFG.DominatorTree;
+import VC.CFG.Loop;
+import VC.CFG.LoopNest;
+import VC.IR.*;
+
+public final class StrengthReduction extends Pass {
+
+	private boolean changed;
+
+	public String name() {
+		return "strength reduction";
+	}
+
+	public boolean run(IRFunction f) {
+		LoopNest nest = new LoopNest(f.cfg, new DominatorTree(f.cfg));
+		if (nest.loops.isEmpty())
+			return false;
+		int size = f.cfg.blocks.size();
+		for (Loop loop : nest.loops)
+			LoopInvariantCodeMotion.preheader(f, loop);
+		changed = f.cfg.blocks.size() != size;
+		if (changed)
+			nest = new LoopNest(f.cfg, new DominatorTree(f.cfg));
+		for (int k = nest.loops.size() - 1; k >= 0; k--)
+			reduce(f, nest.loops.get(k));
+		return changed;
+	}
+
+	private void reduce(IRFunction f, Loop loop) {
+		IRBlock h = (IRBlock) loop.header;
+		IRBlock p = LoopInvariantCodeMotion.preheader(f, loop);
+		if (p == null || h.preds.size() != 2)
+			return;
+		int entering = h.preds.indexOf(p);
+		int latch = 1 - entering;
+
+		// phi -> its update
+		HashMap<Instr, Instr> counters = new HashMap<Instr, Instr>();
+		for (Instr phi : h.phis()) {
+			Instr next = update(phi, phi.operand(latch), loop);
+			if (next != null)
+				counters.put(phi, next);
+		}
+		if (counters.isEmpty())
+			return;
+
+		// "phi k" -> the phi replacing phi * k
+		HashMap<String, Instr> derived = new HashMap<String, Instr>();
+		for (BasicBlock b : loop.blocks) {
+			for (Instr i : new ArrayList<Instr>(((IRBlock) b).instrs)) {
+				if (i.op != Op.MUL || i.type != IRType.INT)
+					continue;
+				Instr phi = null;
+				Value k = null;
+				for (int n = 0; n < 2; n++)
+					if (counters.containsKey(i.operand(n))
+							&& isInvariant(i.operand(1 - n), loop)) {
+						phi = (Instr) i.operand(n);
+						k = i.operand(1 - n);
+					}
+				if (phi == null)
+					continue;
+				String key = phi.name() + " " + k.type + ":" + k.name();
+				Instr j = derived.get(key);
+				if (j == null) {
+					Instr next = counters.get(phi);
+					j = h.addPhi(new Instr(Op.PHI, IRType.INT));
+					Instr jNext = new Instr(Op.ADD, IRType.INT, j,
+							multiply(p, next.operand(1), k));
+					next.block.insertBefore(jNext,
+							next.block.instrs.get(next.block.instrs.indexOf(next) + 1));
+					if (entering == 0) {
+						j.addOperand(multiply(p, phi.operand(entering), k));
+						j.addOperand(jNext);
+					} else {
+						j.addOperand(jNext);
+						j.addOperand(multiply(p, phi.operand(entering), k));
+					}
+					derived.put(key, j);
+				}
+				i.replaceAllUsesWith(j);
+				i.remove();
+				changed = true;
+			}
+		}
+	}
+
+	// Returns the update of a basic induction variable phi, whose value
+	// from the latch is v, in canonical form, or null if phi is not one.
+	private Instr update(Instr phi, Value v, Loop loop) {
+		if (phi.type != IRType.INT || !(v instanceof Instr))
+			return null;
+		Instr next = (Instr) v;
+		if (!loop.contains(next.block))
+			return null;
+		if (next.op == Op.ADD && next.operand(1) == phi
+				&& isInvariant(next.operand(0), loop)) {
+			Value step = next.operand(0);
+			next.setOperand(0, phi);
+			next.setOperand(1, step);
+			changed = true;
+		} else if (next.op == Op.SUB && next.operand(0) == phi
+				&& next.operand(1) instanceof Constant) {
+			next.op = Op.ADD;
+			next.setOperand(1, Constant.ofInt(-((Constant) next.operand(1)).intValue));
+			changed = true;
+		}
+		if (next.op == Op.ADD && next.operand(0) == phi
+				&& isInvariant(next.operand(1), loop))
+			return next;
+		return null;
+	}
+
+	private static boolean isInvariant(Value v, Loop loop) {
+		return !(v instanceof Instr) || !loop.contains(((Instr) v).block);
+	}
+
+	// a * b, computed at the end of the preheader p unless both are
+	// constants
+	private static Value multiply(IRBlock p, Value a, Value b) {
+		if (a instanceof Constant && b instanceof Constant)
+			return Constant.ofInt(((Constant) a).intValue * ((Constant) b).intValue);
+		return p.insertAtEnd(new Instr(Op.MUL, IRType.INT, a, b));
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * TailRecursionElimination.java
+ */
+
+// Turns calls of a function by itself in tail position into a loop.
+//
+// A self call is in tail position if it is the last instruction before
+// a jump to the exit block, possibly through blocks that only jump, and
+// the function returns nothing or the value of the call. Such a call
+// is replaced by a jump back to a new header after the entry block,
+// where a phi for every parameter takes the arguments of the call:
+//
+//   entry:  jump header
+//   header: %a = phi [%a0, entry] [arg, tail call block] ...
+//
+// The parameters are used only by these phis afterwards, so the body
+// runs again with the new arguments, and recursion of any depth takes
+// no stack. Phis whose parameter is passed on unchanged are removed by
+// CFG simplification.
+
+package VC.Optimiser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import VC.CFG.BasicBlock;
+import VC.IR.*;
+
+public final class TailRecursionElimination extends Pass {
+
+	public String name() {
+		return "tail-recursion elimination";
+	}
+
+	public boolean run(IRFunction f) {
+		if (f.isMain())
+			return false;
+		ArrayList<Instr> calls = new ArrayList<Instr>();
+		for (IRBlock b : f.blocks())
+			for (Instr i : b.instrs)
+				if (i.op == Op.CALL && i.callee == f.decl && isTailCall(f, i))
+					calls.add(i);
+		if (calls.isEmpty())
+			return false;
+
+		IRBlock header = splitEntry(f);
+		ArrayList<Instr> phis = new ArrayList<Instr>();
+		for (Param p : f.params) {
+			Instr phi = new Instr(Op.PHI, p.type);
+			p.replaceAllUsesWith(phi);
+			phi.addOperand(p);
+			phis.add(header.addPhi(phi));
+		}
+		for (Instr call : calls) {
+			IRBlock b = call.block;
+			IRFunction.redirect(b, b.succ(0), header);
+			for (int k = 0; k < phis.size(); k++)
+				phis.get(k).addOperand(call.operand(k));
+			// the return of the call is left only if b was the sole way
+			// to the exit, which can then no longer be reached
+			call.replaceAllUsesWith(Constant.zero(call.type));
+			call.remove();
+		}
+		f.removeUnreachable();
+		return true;
+	}
+
+	private static boolean isTailCall(IRFunction f, Instr call) {
+		IRBlock b = call.block;
+		if (b.terminator().op != Op.JUMP || b.instrs.indexOf(call) != b.instrs.size() - 2)
+			return false;
+		// blocks that only jump may lie between b and the exit, unless
+		// they jump round in a loop that never reaches it
+		IRBlock last = b;
+		HashSet<IRBlock> seen = new HashSet<IRBlock>();
+		while (last.succ(0) != f.exit()) {
+			IRBlock s = last.succ(0);
+			if (s.instrs.size() != 1 || s.terminator().op != Op.JUMP || !seen.add(s))
+				return false;
+			last = s;
+		}
+		Instr ret = f.exit().terminator();
+		if (ret.numOperands() == 0)
+			return true;
+		// the returned value must be the call, and nothing else may use it
+		Value v = ret.operand(0);
+		if (v instanceof Instr && ((Instr) v).isPhi() && ((Instr) v).block == f.exit())
+			v = ((Instr) v).operand(f.exit().preds.indexOf(last));
+		return v == call && call.users.size() == 1;
+	}
+
+	// Moves the code of the entry block into a new block, which becomes
+	// the only successor of the entry, and returns it.
+	private static IRBlock splitEntry(IRFunction f) {
+		IRBlock entry = f.entry();
+		IRBlock header = f.newBlock();
+		for (Instr i : entry.instrs)
+			i.block = header;
+		header.instrs.addAll(entry.instrs);
+		entry.instrs.clear();
+		for (BasicBlock s : entry.succs) {
+			s.preds.set(s.preds.indexOf(entry), header);
+			header.succs.add(s);
+		}
+		entry.succs.clear();
+		entry.append(new Instr(Op.JUMP, IRType.VOID));
+		IRFunction.addEdge(entry, header);
+		return header;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Options.java
+ */
+
+package VC;
+
+import java.util.ArrayList;
+
+import VC.Optimiser.Inliner;
+
+// The options of a compilation, as given on the command line of vc.
+// A file name left empty defaults to the name of the input file
+// followed by a letter, e.g. "i" for the IR.
+
+public final class Options {
+
+  public int drawingAST = 0;          // -d: 1..4, or 0 for none
+  public boolean printingAST = false; // -t
+  public String astFilename = "";
+  public boolean unparsingAST = false; // -u
+  public String unparsingFilename = "";
+  public boolean jsonDiagnostics = false; // -j
+  public String jsonFilename = "";
+  public int maxErrors = 0;           // -e: 0 means no limit
+
+  public boolean optimising = false;  // -O
+  public boolean printingIR = false;  // -i
+  public String irFilename = "";
+  public int inlineBudget = Inliner.DEFAULT_BUDGET; // -b
+  public boolean loggingInlining = false; // -l
+  public String inlineLogFilename = "";
+  public boolean verifyingIR = false; // -V
+  public boolean printingCFG = false; // -g
+  public String cfgFilename = "";
+
+  // -P: the names of the peephole rules to disable, or "all"
+  public ArrayList<String> disabledRules = new ArrayList<String>();
+
+  public boolean timing = false;      // -T
+  public boolean writingClassFile = false; // -c
+  public boolean staticMethods = false;    // -s
+  public boolean serialCodeGen = false;    // --serial
+  public boolean batch = false;            // --batch
+  public int jobs = 0;                     // --jobs: 0 means one per processor
+
+  // --cache: the directory of the compilation cache, or "" for none,
+  // and --cache-size, the most bytes its entries may take
+  public String cacheDirectory = "";
+  public long cacheSize = Cache.DEFAULT_SIZE;
+
+  // --run: the class file is kept in memory to be run rather than
+  // written, and the timings are reported after the run
+  public boolean running = false;
+}
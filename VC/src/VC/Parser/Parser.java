@@ -141,6 +141,7 @@ public class Parser {
 				rightMostDeclListAST = (DeclList) rightMostDeclListAST.DL;
 			}
 			rightMostDeclListAST.DL = subList;
+			subList.parent = rightMostDeclListAST;
 			declListAST = varDeclAST;
 		}
 		return declListAST;
@@ -379,6 +380,7 @@ public class Parser {
 				rightMostDeclListAST = (DeclList) rightMostDeclListAST.DL;
 			}
 			rightMostDeclListAST.DL =  parseVarDeclList();
+			rightMostDeclListAST.DL.parent = rightMostDeclListAST;
 		} else {
 			finish(declListPos);
 			listAST = new EmptyDeclList(dummyPos);
@@ -0,0 +1,75 @@
+/*
+ * Runner.java
+ */
+
+package VC;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// Runs a compiled VC program in the JVM that compiled it. The class is
+// defined from the bytes of its class file by a class loader of its
+// own, so programs compiled one after another do not see each other,
+// and the VC.lang.System library is found through the loader of the
+// compiler. An exception thrown by the program is reported as the JVM
+// would report it, with the frames of the program only, and is not
+// thrown out of run.
+
+public final class Runner {
+
+  private static final class Loader extends ClassLoader {
+    Loader() {
+      super(Runner.class.getClassLoader());
+    }
+
+    Class<?> define(byte[] classFile) {
+      return defineClass(null, classFile, 0, classFile.length);
+    }
+  }
+
+  private long nanos;
+
+  // Calls main of the class with args, and returns true if it returned
+  // normally.
+  public boolean run(byte[] classFile, String[] args) {
+    long start = System.nanoTime();
+    try {
+      Class<?> c = new Loader().define(classFile);
+      Method main = c.getMethod("main", String[].class);
+      main.invoke(null, (Object) args);
+      return true;
+    } catch (InvocationTargetException e) {
+      System.out.flush();
+      System.err.print("Exception in thread \"main\" ");
+      Throwable cause = e.getCause();
+      cause.setStackTrace(programFrames(cause.getStackTrace()));
+      cause.printStackTrace();
+      return false;
+    } catch (LinkageError e) {
+      System.out.flush();
+      System.err.println("[# vc #]: cannot load the class: " + e);
+      return false;
+    } catch (ReflectiveOperationException e) {
+      System.out.flush();
+      System.err.println("[# vc #]: cannot run main: " + e);
+      return false;
+    } finally {
+      System.out.flush();
+      nanos = System.nanoTime() - start;
+    }
+  }
+
+  // the frames of a stack trace above the call of main by run
+  private static StackTraceElement[] programFrames(StackTraceElement[] trace) {
+    int n = 0;
+    while (n < trace.length && !trace[n].getClassName().startsWith("jdk.internal.reflect.")
+           && !trace[n].getClassName().equals("java.lang.reflect.Method"))
+      n++;
+    return java.util.Arrays.copyOf(trace, n);
+  }
+
+  // the time taken by the last run, including loading the class
+  public long nanos() {
+    return nanos;
+  }
+}
@@ -8,6 +8,8 @@ import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.LineNumberReader;
 
+import VC.ErrorReporter;
+
 public class SourceFile {
 
 	static final char eof = '\u0000';
@@ -17,12 +19,9 @@ public class SourceFile {
 		try {
 			reader = new LineNumberReader(new BufferedReader(new FileReader(filename)));
 		} catch (java.io.FileNotFoundException e) {
-			System.out.println("[# vc #]: can't read: " + filename);
-			System.exit(1);
+			throw new ErrorReporter.CompilationAborted("can't read: " + filename);
 		} catch (Exception e) {
-			e.printStackTrace();
-			System.out.println("Caught IOException: " + e.getMessage());
-			System.exit(1);
+			throw new ErrorReporter.CompilationAborted("can't read " + filename + ": " + e.getMessage());
 		}
 	}
 
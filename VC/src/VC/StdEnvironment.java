@@ -22,6 +22,10 @@
  * explicitly its "declaration" and enter the name of the corresponding 
  * function into the symbol table. This is accomplished by the method
  * establishStdEnvironment of the class Checker in Checker.java.
+ *
+ * Every compilation has a standard environment of its own, owned by
+ * its CompilationSession, so that the types and declarations of one
+ * compilation are never shared with another.
  * 
  */
 
@@ -31,11 +35,11 @@ import VC.ASTs.*;
 
 public final class StdEnvironment {
 
-  public static Type booleanType, intType, floatType, stringType, voidType, errorType;
+  public Type booleanType, intType, floatType, stringType, voidType, errorType;
 
   // Small ASTs representing "declarations" of nine built-in functions
 
-  public static FuncDecl
+  public FuncDecl
     putBoolDecl, putBoolLnDecl, 
     getIntDecl, putIntDecl, putIntLnDecl, 
     getFloatDecl, putFloatDecl, putFloatLnDecl, 
@@ -24,7 +24,8 @@ class DrawerFrame extends JFrame {
     addWindowListener(
       new WindowAdapter() {
         public void windowClosing (WindowEvent e) {
-      	  System.exit(0);
+      	  // the JVM stops once vc has finished and no window is left
+      	  dispose();
         }
       }
     );
@@ -11,6 +11,7 @@ package VC.TreePrinter;
 
 
 import VC.ASTs.*;
+import VC.ErrorReporter;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 
@@ -26,8 +27,7 @@ public class Printer implements Visitor {
     try {
       textOut = new PrintWriter(new FileWriter(filename));
     } catch (java.io.IOException e) {
-      System.out.println("Caught IOException: " + e.getMessage());
-      System.exit(1);
+      throw new ErrorReporter.CompilationAborted("Caught IOException: " + e.getMessage());
     }
   }
 
@@ -18,6 +18,7 @@ package VC.UnParser;
 
 
 import VC.ASTs.*;
+import VC.ErrorReporter;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 
@@ -39,8 +40,7 @@ public class UnParser implements Visitor {
     try {
       textOut = new PrintWriter(new FileWriter(filename));
     } catch (java.io.IOException e) {
-      System.out.println("Caught IOException: " + e.getMessage());
-      System.exit(1);
+      throw new ErrorReporter.CompilationAborted("Caught IOException: " + e.getMessage());
     }
   }
 
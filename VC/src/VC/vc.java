@@ -6,57 +6,129 @@
 
 package VC;
 
-import VC.Scanner.Scanner;
-import VC.Scanner.SourceFile;
-import VC.Parser.Parser;
-import VC.ASTs.AST;
-import VC.TreeDrawer.Drawer;
-import VC.TreePrinter.Printer;
-import VC.UnParser.UnParser;
-import VC.Checker.Checker;
-import VC.CodeGen.Emitter;
+import java.io.File;
+import java.io.PrintStream;
+
+import VC.CodeGen.Peephole;
+import VC.Optimiser.Inliner;
+
+// The command line of the compiler. The options are parsed into an
+// Options object, and the program is compiled by a CompilationSession.
+// A command line is parsed and run by a vc of its own, which prints to
+// the stream it is given, so that the daemon can run the command lines
+// of its clients.
 
 public class vc {
 
-    private static Scanner scanner;
-    private static ErrorReporter reporter;
-    private static Parser parser;
-    private static Drawer drawer; 
-    private static Printer printer;
-    private static UnParser unparser;
-    private static Checker checker; 
-    private static Emitter emitter; 
-
-    private static int drawingAST = 0;
-    private static boolean printingAST = false;
-    private static boolean unparsingAST = false;
-    private static String inputFilename; 
-    private static String astFilename = ""; 
-    private static String unparsingFilename = ""; 
-
-    private static AST theAST;
+    private final Options options = new Options();
+    private String inputFilename; 
+    private String[] programArgs = new String[0];
+    private final PrintStream out;
+
+    private vc(PrintStream out) {
+      this.out = out;
+    }
  
-    private static void cmdLineOptions() {
-      System.out.println("\nUsage: java VC.vc [-options] filename");
-      System.out.println();
-      System.out.println("where options include:");
-      System.out.println("	-d [1234]           display the AST (without SourcePosition)");
-      System.out.println("	                    1:  the AST from the parser (without SourcePosition)");
-      System.out.println("	                    2:  the AST from the parser (with SourcePosition)");
-      System.out.println("	                    3:  the AST from the checker (without SourcePosition)");
-      System.out.println("	                    4:  the AST from the checker (with SourcePosition)");
-      System.out.println("	-t [file]           print the (non-annotated) AST into <file>"); 
-      System.out.println("	                    (or filename + \"t\" if <file> is unspecified)"); 
-      System.out.println("	-u [file]  	    unparse the (non-annotated) AST into <file>");
-      System.out.println("	                    (or filename + \"u\" if <file> is unspecified)"); 
-      System.exit(1);
+    // prints the usage and returns the exit status of a bad command line
+    private int usage() {
+      out.println("\nUsage: java VC.vc [-options] filename");
+      out.println("   or  java VC.vc --run [-options] filename [args...]");
+      out.println("   or  java VC.vc --batch [-options] files...");
+      out.println("   or  java VC.vc --client [--socket file] [-options] filename");
+      out.println("   or  java VC.vc --daemon [--socket file]");
+      out.println();
+      out.println("where options include:");
+      out.println("	-d [1234]           display the AST (without SourcePosition)");
+      out.println("	                    1:  the AST from the parser (without SourcePosition)");
+      out.println("	                    2:  the AST from the parser (with SourcePosition)");
+      out.println("	                    3:  the AST from the checker (without SourcePosition)");
+      out.println("	                    4:  the AST from the checker (with SourcePosition)");
+      out.println("	-t [file]           print the (non-annotated) AST into <file>"); 
+      out.println("	                    (or filename + \"t\" if <file> is unspecified)"); 
+      out.println("	-u [file]  	    unparse the (non-annotated) AST into <file>");
+      out.println("	                    (or filename + \"u\" if <file> is unspecified)"); 
+      out.println("	-j [file]           write the diagnostics as JSON lines into <file>");
+      out.println("	                    (or filename + \"e\" if <file> is unspecified)"); 
+      out.println("	-e n                stop after n errors");
+      out.println("	-O                  optimise the generated code");
+      out.println("	-i [file]           print the optimised IR into <file> (with -O)");
+      out.println("	                    (or filename + \"i\" if <file> is unspecified)"); 
+      out.println("	-b n                inline functions of up to n IR instructions (with -O)");
+      out.println("	                    (0 disables inlining; the default is " + Inliner.DEFAULT_BUDGET + ")");
+      out.println("	-l [file]           print the inlining decisions into <file> (with -O)");
+      out.println("	                    (or filename + \"l\" if <file> is unspecified)"); 
+      out.println("	-P rules            disable the given peephole rules: a comma-separated");
+      out.println("	                    list of " + new Peephole().ruleNames() + ",");
+      out.println("	                    or all");
+      out.println("	-c                  write a class file instead of Jasmin assembly");
+      out.println("	-s                  compile the functions to static methods");
+      out.println("	--serial            generate the methods one after another rather than");
+      out.println("	                    concurrently");
+      out.println("	--run               run the program in this JVM, passing it args, and");
+      out.println("	                    print the phase and execution timings");
+      out.println("	--batch             compile many files, each given by name, by a glob such");
+      out.println("	                    as 'src/**/*.vc' or by @list, a file of names and globs");
+      out.println("	--jobs n            compile n files at once with --batch");
+      out.println("	                    (the default is one per processor)");
+      out.println("	--cache dir         reuse the output of an earlier compilation of the same");
+      out.println("	                    source with the same options and compiler, kept in dir");
+      out.println("	--cache-size n      keep at most n MB in the cache, deleting the least");
+      out.println("	                    recently used compilations (the default is " + (Cache.DEFAULT_SIZE >> 20) + ")");
+      out.println("	--client            have the daemon compile the program, or compile it here");
+      out.println("	                    if no daemon is running");
+      out.println("	--daemon            keep the compiler running to compile the programs of");
+      out.println("	                    vc --client, which it reaches through a socket file");
+      out.println("	                    (the default is " + Daemon.defaultSocket() + ")");
+      out.println("	-V                  check the IR after every optimisation pass");
+      out.println("	-T                  print the time taken by each phase");
+      out.println("	-g [file]           print the control-flow graphs into <file>");
+      out.println("	                    (or filename + \"g\" if <file> is unspecified)"); 
+      return 1;
     }
 
     public static void main(String[] args) {
+        int i = 0;
+        String socket = Daemon.defaultSocket();
+        if (args.length > 0 && (args[0].equals("--daemon") || args[0].equals("--client"))) {
+          i = 1;
+          if (i + 1 < args.length && args[i].equals("--socket")) {
+            socket = args[i + 1];
+            i += 2;
+          }
+        }
+        if (i > 0 && args[0].equals("--daemon")) {
+          if (i < args.length) {
+            System.out.println("[# vc #]: --daemon takes no file"); 
+            System.exit(new vc(System.out).usage());
+          }
+          System.exit(new Daemon(socket).serve());
+        }
+
+        String[] vcArgs = java.util.Arrays.copyOfRange(args, i, args.length);
+        int status;
+        if (i > 0) {
+          // --client: the daemon compiles the program if one is running
+          status = Daemon.request(socket, vcArgs, System.out);
+          if (status >= 0)
+            System.exit(status);
+        }
+        status = new vc(System.out).execute(vcArgs, null);
+        if (status != 0)
+          System.exit(status);
+    }
+
+    // Compiles as vc does with the command line args, taking relative
+    // file names as relative to directory, and returns the exit status.
+    // The daemon compiles the programs of its clients this way.
+    static int compile(String[] args, File directory, PrintStream out) {
+        return new vc(out).execute(args, directory);
+    }
+
+    private int execute(String[] args, File directory) {
         int i = 0;
         String arg;
 
-        System.out.println("======= The VC compiler =======\n");
+        out.println("======= The VC compiler =======\n");
 
         while (i < args.length && args[i].startsWith("-")) {
           arg = args[i++];
@@ -66,122 +138,225 @@ public class vc {
             try {
               n = Integer.parseInt(arg.substring(2));
             } catch (NumberFormatException e) {
-              System.out.println("[# vc #]: invalid option " + arg); 
-              cmdLineOptions();
+              out.println("[# vc #]: invalid option " + arg); 
+              return usage();
             }
             if (1 <= n && n <= 4) 
-              drawingAST = n;
+              options.drawingAST = n;
             else {
-              System.out.println("[# vc #]: invalid option " + arg); 
-              cmdLineOptions();
+              out.println("[# vc #]: invalid option " + arg); 
+              return usage();
             }
           } else if (arg.equals("-d")) {
             if (i < args.length) { 
               if (args[i].equals("1")) {
-                drawingAST = 1;
+                options.drawingAST = 1;
                 i++;
               } else if (args[i].equals("2")) {
-                drawingAST = 2;
+                options.drawingAST = 2;
                 i++;
               } else if (args[i].equals("3")) {
-                drawingAST = 3;
+                options.drawingAST = 3;
                 i++;
               } else if (args[i].equals("4")) {
-                drawingAST = 4;
+                options.drawingAST = 4;
                 i++;
               } else {
-                System.out.println("[# vc #]: invalid option -d " + args[i]); 
-                cmdLineOptions();
+                out.println("[# vc #]: invalid option -d " + args[i]); 
+                return usage();
               }
             }
           } else if (arg.startsWith("-t")) {
-            printingAST = true;
+            options.printingAST = true;
             if (! arg.equals("-t")) 
-                astFilename = arg.substring(2);
+                options.astFilename = arg.substring(2);
             else if (i < args.length && !args[i].startsWith("-"))
-                astFilename = args[i++];
+                options.astFilename = args[i++];
             // the default is inputFilename + "p"
+          } else if (arg.startsWith("-j")) {
+            options.jsonDiagnostics = true;
+            if (! arg.equals("-j")) 
+                options.jsonFilename = arg.substring(2);
+            else if (i < args.length && !args[i].startsWith("-") && i + 1 < args.length)
+                options.jsonFilename = args[i++];
+            // the default is inputFilename + "e"
+          } else if (arg.startsWith("-g")) {
+            options.printingCFG = true;
+            if (! arg.equals("-g")) 
+                options.cfgFilename = arg.substring(2);
+            else if (i < args.length && !args[i].startsWith("-") && i + 1 < args.length)
+                options.cfgFilename = args[i++];
+            // the default is inputFilename + "g"
+          } else if (arg.startsWith("-i")) {
+            options.printingIR = true;
+            if (! arg.equals("-i")) 
+                options.irFilename = arg.substring(2);
+            else if (i < args.length && !args[i].startsWith("-") && i + 1 < args.length)
+                options.irFilename = args[i++];
+            // the default is inputFilename + "i"
+          } else if (arg.startsWith("-l")) {
+            options.loggingInlining = true;
+            if (! arg.equals("-l")) 
+                options.inlineLogFilename = arg.substring(2);
+            else if (i < args.length && !args[i].startsWith("-") && i + 1 < args.length)
+                options.inlineLogFilename = args[i++];
+            // the default is inputFilename + "l"
+          } else if (arg.equals("-b")) {
+            options.inlineBudget = -1;
+            if (i < args.length) {
+              try {
+                options.inlineBudget = Integer.parseInt(args[i++]);
+              } catch (NumberFormatException e) {
+                out.println("[# vc #]: invalid option -b " + args[i - 1]); 
+                return usage();
+              }
+            }
+            if (options.inlineBudget < 0) {
+              out.println("[# vc #]: -b expects a number"); 
+              return usage();
+            }
+          } else if (arg.equals("-P")) {
+            if (i == args.length) {
+              out.println("[# vc #]: -P expects a list of rules"); 
+              return usage();
+            }
+            Peephole rules = new Peephole();
+            for (String rule : args[i++].split(",")) {
+              if (!rule.equals("all") && !rules.disable(rule)) {
+                out.println("[# vc #]: unknown peephole rule " + rule); 
+                return usage();
+              }
+              options.disabledRules.add(rule);
+            }
+          } else if (arg.equals("-O")) {
+            options.optimising = true;
+          } else if (arg.equals("--run")) {
+            options.running = true;
+          } else if (arg.equals("--batch")) {
+            options.batch = true;
+          } else if (arg.equals("--jobs")) {
+            if (i < args.length) {
+              try {
+                options.jobs = Integer.parseInt(args[i++]);
+              } catch (NumberFormatException e) {
+                out.println("[# vc #]: invalid option --jobs " + args[i - 1]); 
+                return usage();
+              }
+            }
+            if (options.jobs <= 0) {
+              out.println("[# vc #]: --jobs expects a positive number"); 
+              return usage();
+            }
+          } else if (arg.equals("--cache")) {
+            if (i == args.length) {
+              out.println("[# vc #]: --cache expects a directory"); 
+              return usage();
+            }
+            options.cacheDirectory = args[i++];
+          } else if (arg.equals("--cache-size")) {
+            long megabytes = 0;
+            if (i < args.length) {
+              try {
+                megabytes = Long.parseLong(args[i++]);
+              } catch (NumberFormatException e) {
+                out.println("[# vc #]: invalid option --cache-size " + args[i - 1]); 
+                return usage();
+              }
+            }
+            if (megabytes <= 0) {
+              out.println("[# vc #]: --cache-size expects a positive number"); 
+              return usage();
+            }
+            options.cacheSize = megabytes << 20;
+          } else if (arg.equals("--serial")) {
+            options.serialCodeGen = true;
+          } else if (arg.equals("-s")) {
+            options.staticMethods = true;
+          } else if (arg.equals("-c")) {
+            options.writingClassFile = true;
+          } else if (arg.equals("-V")) {
+            options.verifyingIR = true;
+          } else if (arg.equals("-T")) {
+            options.timing = true;
+          } else if (arg.equals("-e")) {
+            if (i < args.length) {
+              try {
+                options.maxErrors = Integer.parseInt(args[i++]);
+              } catch (NumberFormatException e) {
+                out.println("[# vc #]: invalid option -e " + args[i - 1]); 
+                return usage();
+              }
+            }
+            if (options.maxErrors <= 0) {
+              out.println("[# vc #]: -e expects a positive number"); 
+              return usage();
+            }
           } else if (arg.startsWith("-u")) {
-            unparsingAST = true;
+            options.unparsingAST = true;
             if (! arg.equals("-u")) 
-                astFilename = arg.substring(2);
+                options.astFilename = arg.substring(2);
             if (i < args.length && !args[i].startsWith("-"))
-              unparsingFilename = args[i++];
+              options.unparsingFilename = args[i++];
             // the default is inputFilename + "u"
           } else {
-            System.out.println("[# vc #]: invalid option " + arg); 
-            cmdLineOptions();
+            out.println("[# vc #]: invalid option " + arg); 
+            return usage();
           }
         }
         if (i == args.length) {
-          System.out.println("[# vc #]: no input file"); 
-          cmdLineOptions();
-        } else
+          out.println("[# vc #]: no input file"); 
+          return usage();
+        } else if (directory != null
+                   && (options.batch || options.running || options.drawingAST != 0)) {
+          // the daemon has no terminal or window of its own
+          out.println("[# vc #]: the daemon cannot be used with -d, --run or --batch"); 
+          return usage();
+        } else if (options.batch) {
+          return batch(java.util.Arrays.copyOfRange(args, i, args.length));
+        } else {
            inputFilename = args[i];
+           if (options.running)
+             programArgs = java.util.Arrays.copyOfRange(args, i + 1, args.length);
+        }
 
-        SourceFile source = new SourceFile(inputFilename);
-
-        reporter = new ErrorReporter();
-
-        System.out.println("Pass 1: Lexical and syntactic Analysis");
-        scanner  = new Scanner(source, reporter);
-        parser   = new Parser(scanner, reporter);
-
-	theAST = parser.parseProgram();
-
-        if (reporter.numErrors == 0) {
-          // We unparse and print the AST created by the parser. Both 
-          // are useful for debugging the construction of the AST 
-          // (Assignment 3).
-          // We can also unparse and print the annotated AST from the 
-          // checker but this is not as useful.
-          if (unparsingAST) {
-            if (unparsingFilename.equals(""))
-              unparsingFilename = inputFilename + "u";
-   	    unparser = new UnParser(unparsingFilename);
-            unparser.unparse(theAST); 
-            System.out.println("[# vc #]: The unparsed VC program printed to " + unparsingFilename);
-          }
-          if (printingAST) {
-            if (astFilename.equals(""))
-              astFilename = inputFilename + "p";
-   	    printer = new Printer(astFilename);
-            printer.print(theAST); 
-            System.out.println("[# vc #]: The linearised AST printed to " + astFilename);
-          }
-          if (1 <= drawingAST && drawingAST <= 2) {
- 	    drawer   = new Drawer();
-            if (drawingAST == 2)
-              drawer.enableDebugging(); // show SourcePosition
-            drawer.draw(theAST); // draw the AST
-          }
+        CompilationSession session = new CompilationSession(inputFilename, options, out);
+        session.setDirectory(directory);
+        if (session.compile() && options.running)
+          return run(session);
+        // a program with errors is a successful run of vc, but one it
+        // could not read or write is not
+        return session.aborted() ? 1 : 0;
+    }
 
-          System.out.println("Pass 2: Semantic Analysis");
-          checker  = new Checker(reporter);
-          checker.check(theAST);
-
-          if (reporter.numErrors == 0) {
-            System.out.println("Pass 3: Code Generation");
-            System.out.println();
-            emitter = new Emitter(inputFilename, reporter);
-            emitter.gen(theAST);
-            if (reporter.numErrors == 0) 
-              System.out.println ("Compilation was successful.");
-            else
-              System.out.println ("Compilation was unsuccessful.");
-          } else
-            System.out.println ("Compilation was unsuccessful.");
-
-          if (drawingAST >= 3) {
- 	    drawer   = new Drawer();
-            if (drawingAST == 4)
-              drawer.enableDebugging(); // show SourcePosition
-            drawer.draw(theAST); // draw the AST
-          }
-       }
-       else 
-         System.out.println ("Compilation was unsuccessful.");
+    // --batch: the files are compiled together, and only their status
+    // and the logs of the ones that fail are printed. The options that
+    // display a window, run the program or name an output file would
+    // make the compilations get in each other's way.
+    private int batch(String[] files) {
+        if (options.running || options.drawingAST != 0
+            || !options.astFilename.equals("") || !options.unparsingFilename.equals("")
+            || !options.jsonFilename.equals("") || !options.irFilename.equals("")
+            || !options.inlineLogFilename.equals("") || !options.cfgFilename.equals("")) {
+          out.println("[# vc #]: --batch cannot be used with -d, --run or an output file name"); 
+          return usage();
+        }
+        Batch batch = new Batch(options, options.jobs);
+        for (String file : files)
+          batch.add(file);
+        return batch.run(out) ? 0 : 1;
     }
 
+    // --run: the class kept in memory by the session is run here, then
+    // the time of every phase and of the run itself are printed.
+    private int run(CompilationSession session) {
+        out.println();
+        Runner runner = new Runner();
+        boolean ok = runner.run(session.classFile(), programArgs);
+        out.println();
+        session.reportPhases(out);
+        out.println(String.format("  %-20s %9.3f ms", "execution", runner.nanos() / 1e6));
+        if (options.timing)
+          session.reportPeephole(out);
+        return ok ? 0 : 1;
+    }
 }
-
@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# daemon.sh
+#
+# Compiles the compiler, starts a daemon on a socket of its own and
+# sends it a request for a file that does not exist, which must fail
+# with exit status 1 and say why, and then a good program, which the
+# same daemon must still compile. A request that stopped the daemon
+# would leave the second one to be compiled by the client itself, so
+# the daemon is checked to be running after each request.
+#
+#   sh VC/tests/daemon.sh
+
+tests=$(cd "$(dirname "$0")" && pwd)
+work=$(mktemp -d)
+pid=
+trap '[ -n "$pid" ] && kill $pid 2>/dev/null; rm -rf "$work"' EXIT
+
+mkdir "$work/classes" "$work/run"
+javac -nowarn -d "$work/classes" $(find "$tests/../src" -name '*.java') 2>&1 | grep -v '^Note:'
+cp "$tests/forcond.vc" "$work/run/"
+socket="$work/vc.sock"
+
+java -cp "$work/classes" VC.vc --daemon --socket "$socket" > "$work/daemon.out" 2>&1 &
+pid=$!
+i=0
+while ! grep -q "listening" "$work/daemon.out" 2>/dev/null; do
+  i=$((i + 1))
+  if [ $i -gt 100 ] || ! kill -0 $pid 2>/dev/null; then
+    echo "FAILED  the daemon did not start"
+    cat "$work/daemon.out"
+    exit 1
+  fi
+  sleep 0.1
+done
+
+failed=0
+cd "$work/run"
+
+java -cp "$work/classes" VC.vc --client --socket "$socket" nosuch.vc > missing.out 2>&1
+status=$?
+if [ $status -eq 1 ] && grep -q "nosuch.vc" missing.out && kill -0 $pid 2>/dev/null; then
+  echo "ok      a missing file fails and the daemon keeps running"
+else
+  echo "FAILED  a missing file (status $status)"
+  cat missing.out
+  failed=1
+fi
+
+java -cp "$work/classes" VC.vc --client --socket "$socket" forcond.vc > good.out 2>&1
+status=$?
+if [ $status -eq 0 ] && grep -q "^Compilation was successful" good.out && [ -f forcond.j ] \
+    && kill -0 $pid 2>/dev/null; then
+  echo "ok      the daemon compiles the next program"
+else
+  echo "FAILED  the next program (status $status)"
+  cat good.out
+  failed=1
+fi
+exit $failed
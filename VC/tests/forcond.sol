@@ -0,0 +1,6 @@
+0
+1
+2
+false
+1098
+false
@@ -0,0 +1,45 @@
+#!/bin/sh
+#
+# run.sh
+#
+# Compiles the compiler, then compiles every program in this directory
+# to a class file with each set of options below and runs it, comparing
+# what it prints with its .sol file. The class files are verified, so
+# code with a wrong operand stack or stack map fails here rather than
+# on some later JVM.
+#
+# VC_LIB must name the directory that holds VC/lang/System.class.
+#
+#   VC_LIB=/path/to/lib sh VC/tests/run.sh
+
+if [ -z "$VC_LIB" ]; then
+  echo "run.sh: VC_LIB must name the directory of VC/lang/System.class"
+  exit 2
+fi
+tests=$(cd "$(dirname "$0")" && pwd)
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir "$work/classes"
+javac -nowarn -d "$work/classes" $(find "$tests/../src" -name '*.java') 2>&1 | grep -v '^Note:'
+
+failed=0
+for f in "$tests"/*.vc; do
+  name=$(basename "$f" .vc)
+  for opts in "" "-O -V" "-s" "-O -s"; do
+    rm -rf "$work/run"
+    mkdir "$work/run"
+    cp "$f" "$work/run/"
+    if (cd "$work/run" && java -cp "$work/classes" VC.vc -c $opts "$name.vc" > vc.out 2>&1) \
+        && grep -q "^Compilation was successful" "$work/run/vc.out" \
+        && java -Xverify:all -cp "$work/run:$VC_LIB" "$name" > "$work/run/out" 2>&1 \
+        && cmp -s "$work/run/out" "$tests/$name.sol"; then
+      echo "ok      $name $opts"
+    else
+      echo "FAILED  $name $opts"
+      tail -5 "$work/run/vc.out" "$work/run/out" 2>/dev/null
+      failed=1
+    fi
+  done
+done
+exit $failed